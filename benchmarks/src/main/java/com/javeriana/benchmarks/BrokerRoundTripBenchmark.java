@@ -0,0 +1,92 @@
+package com.javeriana.benchmarks;
+
+import com.javeriana.Broker;
+import com.javeriana.IngestMode;
+import com.javeriana.MessageEncoder;
+import com.javeriana.SensorType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.zeromq.SocketType;
+import org.zeromq.ZContext;
+import org.zeromq.ZMQ;
+
+import java.util.concurrent.TimeUnit;
+
+// Benchmark de ida y vuelta sensor -> broker -> ack dentro del proceso
+// (transporte inproc://). El sensor usa REQ como hoy; el broker corre en modo
+// router, que responde a los REQ uno por uno sin imprimir cada mensaje. Incluye
+// la publicación hacia un suscriptor para medir el salto completo hasta el monitor.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BrokerRoundTripBenchmark {
+
+    private ZContext context;
+    private Thread brokerThread;
+    private ZMQ.Socket sensor;
+    private ZMQ.Socket monitor;
+    private byte[] frame;
+
+    @Setup(Level.Trial)
+    public void setup() throws InterruptedException {
+        context = new ZContext();
+        Broker broker = new Broker(IngestMode.router, "inproc://bench-frontend", "inproc://bench-backend");
+        brokerThread = new Thread(() -> broker.run(context), "broker");
+        brokerThread.setDaemon(true);
+        brokerThread.start();
+
+        // Esperar a que el broker haga bind antes de conectar (inproc lo requiere en jeromq 0.5)
+        Thread.sleep(200);
+
+        monitor = context.createSocket(SocketType.SUB);
+        monitor.connect("inproc://bench-backend");
+        monitor.subscribe(MessageEncoder.topic(SensorType.ph));
+
+        sensor = context.createSocket(SocketType.REQ);
+        sensor.connect("inproc://bench-frontend");
+
+        frame = new MessageEncoder().encode(SensorType.ph, 7.25, System.currentTimeMillis(), 42).clone();
+
+        // Esperar a que la suscripción llegue al broker
+        Thread.sleep(200);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        brokerThread.interrupt();
+    }
+
+    // Envío de un sensor y espera del ack del broker
+    @Benchmark
+    public byte[] sensorRoundTrip() {
+        sensor.send(frame, 0);
+        byte[] ack = sensor.recv(0);
+        // Vaciar lo publicado para que la cola del suscriptor no crezca
+        while (monitor.recv(ZMQ.DONTWAIT) != null) {
+            // Descartar
+        }
+        return ack;
+    }
+
+    // Envío de un sensor hasta que el monitor recibe el mensaje publicado
+    @Benchmark
+    public byte[] sensorToMonitor() {
+        sensor.send(frame, 0);
+        byte[] published = monitor.recv(0);
+        sensor.recv(0);
+        return published;
+    }
+}
@@ -0,0 +1,95 @@
+package com.javeriana.benchmarks;
+
+import com.javeriana.MeasurementData;
+import com.javeriana.MessageDecoder;
+import com.javeriana.MessageEncoder;
+import com.javeriana.SensorType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+// Benchmark de codificación y decodificación de mensajes: formato de texto
+// "tipo#medida#timestamp" (split + parseDouble) contra el formato binario
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CodecBenchmark {
+
+    private final MessageEncoder encoder = new MessageEncoder();
+    private final MessageDecoder decoder = new MessageDecoder(true);
+
+    private String timestamp;
+    private byte[] textFrame;
+    private byte[] binaryFrame;
+    private byte[] batchFrame;
+    private int batchLength;
+
+    @Setup
+    public void setup() {
+        timestamp = LocalDateTime.now().format(MeasurementData.TIMESTAMP_FORMAT);
+        textFrame = MessageEncoder.encodeLegacy(SensorType.ph, 7.25, timestamp);
+        binaryFrame = new MessageEncoder().encode(SensorType.ph, 7.25, System.currentTimeMillis(), 42).clone();
+
+        MessageEncoder batchEncoder = new MessageEncoder();
+        batchEncoder.startBatch(SensorType.ph, 256);
+        for (int i = 0; i < 256; i++) {
+            batchEncoder.add(6.0 + i / 128.0, System.currentTimeMillis(), i);
+        }
+        batchLength = batchEncoder.getBatchLength();
+        batchFrame = batchEncoder.getBatchFrame().clone();
+    }
+
+    // Codificación de texto como la hacía Sensor
+    @Benchmark
+    public byte[] encodeText() {
+        String message = SensorType.ph + "#" + 7.25 + "#" + timestamp;
+        return message.getBytes(StandardCharsets.UTF_8);
+    }
+
+    // Decodificación de texto como la hacía Monitor (recvStr + split + parseDouble)
+    @Benchmark
+    public void decodeText(Blackhole blackhole) {
+        String message = new String(textFrame, StandardCharsets.UTF_8);
+        String[] parts = message.split("#");
+        blackhole.consume(parts[0]);
+        blackhole.consume(Double.parseDouble(parts[1]));
+        blackhole.consume(parts[2]);
+    }
+
+    @Benchmark
+    public byte[] encodeBinary() {
+        return encoder.encode(SensorType.ph, 7.25, 1_700_000_000_000L, 42);
+    }
+
+    @Benchmark
+    public void decodeBinary(Blackhole blackhole) {
+        decoder.decode(binaryFrame);
+        blackhole.consume(decoder.getMeasurement());
+        blackhole.consume(decoder.getEpochMillis());
+    }
+
+    // Decodificación de un lote de 256 medidas (tiempo por lote)
+    @Benchmark
+    public void decodeBatch256(Blackhole blackhole) {
+        decoder.decode(batchFrame, batchLength);
+        for (int i = 0; i < decoder.getRecordCount(); i++) {
+            decoder.select(i);
+            blackhole.consume(decoder.getMeasurement());
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.javeriana.benchmarks;
+
+import com.javeriana.MeasurementData;
+import com.javeriana.MeasurementGenerator;
+import com.javeriana.SensorType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Benchmark de la generación de medidas del sensor: la versión original (un
+// Random nuevo por llamada y un DateTimeFormatter por mensaje) contra
+// MeasurementGenerator
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class GeneratorBenchmark {
+
+    // Probabilidades de config.txt
+    private final double[] probabilities = { 0.05, 0.05, 0.9 };
+    private final MeasurementGenerator generator = new MeasurementGenerator(SensorType.temperatura, probabilities,
+            42);
+
+    @Benchmark
+    public double generateOriginal() {
+        Random random = new Random();
+        double randomValue = random.nextDouble();
+        if (randomValue < probabilities[0]) {
+            return 68 + (89 - 68) * new Random().nextDouble();
+        } else if (randomValue < probabilities[0] + probabilities[1]) {
+            Random outside = new Random();
+            double offset = (89 - 68) * outside.nextDouble();
+            return outside.nextBoolean() ? 68 - offset : 89 + offset;
+        }
+        return -1.0;
+    }
+
+    @Benchmark
+    public double generate() {
+        return generator.next();
+    }
+
+    // Timestamp como lo construía Sensor en cada iteración
+    @Benchmark
+    public String timestampOriginal() {
+        return LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
+    }
+
+    @Benchmark
+    public String timestampCachedFormatter() {
+        return LocalDateTime.now().format(MeasurementData.TIMESTAMP_FORMAT);
+    }
+
+    @Benchmark
+    public long timestampEpochMillis() {
+        return System.currentTimeMillis();
+    }
+}
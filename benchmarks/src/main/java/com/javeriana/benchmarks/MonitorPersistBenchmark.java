@@ -0,0 +1,104 @@
+package com.javeriana.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.javeriana.MeasurementData;
+import com.javeriana.MeasurementLog;
+import com.javeriana.MessageDecoder;
+import com.javeriana.MessageEncoder;
+import com.javeriana.SensorType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// Benchmark del camino por mensaje del Monitor: decodificar, agregar a la lista
+// y persistir. Compara la reescritura completa del JSON (comportamiento original)
+// contra el log binario append-only.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MonitorPersistBenchmark {
+
+    // Tamaño del historial ya almacenado cuando llega el mensaje
+    @Param({ "100", "10000" })
+    public int history;
+
+    private final ObjectMapper objectMapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+    private final MessageDecoder decoder = new MessageDecoder(true);
+
+    private File directory;
+    private File jsonFile;
+    private List<MeasurementData> measurementDataList;
+    private MeasurementLog measurementLog;
+    private byte[] textFrame;
+    private byte[] binaryFrame;
+
+    @Setup(Level.Iteration)
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("monitor-bench").toFile();
+        jsonFile = new File(directory, "ph_data.json");
+        measurementLog = new MeasurementLog(new File(directory, "ph_data"), 1_000_000, 256, 1000);
+
+        measurementDataList = new ArrayList<>();
+        String timestamp = MeasurementData.formatTimestamp(System.currentTimeMillis());
+        for (int i = 0; i < history; i++) {
+            measurementDataList.add(new MeasurementData("ph", 7.0, timestamp));
+        }
+
+        textFrame = MessageEncoder.encodeLegacy(SensorType.ph, 7.25, timestamp);
+        binaryFrame = new MessageEncoder().encode(SensorType.ph, 7.25, System.currentTimeMillis(), 42).clone();
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws IOException {
+        measurementLog.close();
+        try (Stream<Path> paths = Files.walk(directory.toPath())) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    // Camino original: split + parseDouble, agregar a la lista y reescribir el JSON
+    @Benchmark
+    public void originalJsonRewrite() throws IOException {
+        String[] parts = new String(textFrame, StandardCharsets.UTF_8).split("#");
+        double measurement = Double.parseDouble(parts[1]);
+        measurementDataList.add(new MeasurementData(parts[0], measurement, parts[2]));
+        objectMapper.writeValue(jsonFile, measurementDataList);
+        measurementDataList.remove(measurementDataList.size() - 1);
+    }
+
+    // Camino actual: decodificación binaria, lista en memoria y append al log
+    @Benchmark
+    public void binaryLogAppend() throws IOException {
+        decoder.decode(binaryFrame);
+        long epochMillis = decoder.getEpochMillis();
+        measurementLog.append(decoder.getSensorType(), decoder.getMeasurement(), epochMillis);
+        measurementDataList.add(new MeasurementData(decoder.getSensorType().toString(), decoder.getMeasurement(),
+                MeasurementData.formatTimestamp(epochMillis)));
+        measurementDataList.remove(measurementDataList.size() - 1);
+    }
+}
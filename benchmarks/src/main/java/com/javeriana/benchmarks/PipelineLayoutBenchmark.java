@@ -0,0 +1,199 @@
+package com.javeriana.benchmarks;
+
+import com.javeriana.Broker;
+import com.javeriana.BrokerPartitions;
+import com.javeriana.Launcher;
+import com.javeriana.LocalRegistry;
+import com.javeriana.MessageEncoder;
+import com.javeriana.Monitor;
+import com.javeriana.SensorType;
+import com.javeriana.ServiceRegistry;
+import com.javeriana.SistemaDeCalidad;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.zeromq.SocketType;
+import org.zeromq.ZContext;
+import org.zeromq.ZMQ;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+// Benchmark del camino completo sensor -> broker -> monitor -> sistema de calidad
+// con tres despliegues en una sola máquina:
+//   - inproc: Launcher, un proceso con contexto compartido y endpoints inproc://
+//   - tcp: Launcher, un proceso pero con endpoints TCP de loopback
+//   - processes: broker, monitor y sistema de calidad en JVMs separadas (como hoy)
+// Cada operación envía 'batch' medidas que generan alerta y espera a que el
+// sistema de calidad las haya guardado: con batch 1 es la latencia de punta a
+// punta y con batch 1000, el tiempo de 1000 medidas (throughput).
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PipelineLayoutBenchmark {
+
+    private static final String FRONTEND = "tcp://127.0.0.1:15559";
+    private static final String BACKEND = "tcp://127.0.0.1:15560";
+    private static final String CALIDAD = "tcp://127.0.0.1:15555";
+    private static final String QUERY = "tcp://127.0.0.1:15556";
+    // Fuera del rango de ph: cada medida genera una alerta
+    private static final double ALERT_VALUE = 9.5;
+
+    @Param({ "inproc", "tcp", "processes" })
+    public String layout;
+
+    @Param({ "1", "1000" })
+    public int batch;
+
+    private File directory;
+    private ZContext context;
+    private final List<Process> processes = new ArrayList<>();
+    private ZMQ.Socket sensor;
+    private ZMQ.Socket query;
+    private final MessageEncoder encoder = new MessageEncoder();
+    private long stored;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        directory = Files.createTempDirectory("layout-bench").toFile();
+        context = new ZContext();
+        String quiet = " --logPerSecond 0 --metricsPort 0";
+        // Colas amplias: se mide el transporte, no el descarte de medidas con el monitor saturado
+        String monitorArgs = "--dataDir " + directory + " --alertDebounceMs 0 --alertLingerMs 0 --noSeries"
+                + " --rcvHwm 100000" + quiet;
+        String brokerArgs = "-m pull --sndHwm 100000" + quiet;
+        String calidadArgs = "--dataDir " + new File(directory, "calidad") + quiet;
+        String frontend;
+        String queryAddress;
+        switch (layout) {
+            case "inproc":
+                frontend = "inproc://bench-frontend";
+                queryAddress = "inproc://bench-query";
+                new Launcher("ph", frontend, brokerArgs, monitorArgs,
+                        calidadArgs + " --queryBind " + queryAddress).start(context);
+                break;
+            case "tcp":
+                frontend = FRONTEND;
+                queryAddress = QUERY;
+                new Launcher("ph", frontend, brokerArgs + " --backend " + BACKEND, monitorArgs,
+                        calidadArgs + " --bind " + CALIDAD + " --queryBind " + QUERY).start(context);
+                break;
+            default:
+                frontend = FRONTEND;
+                queryAddress = QUERY;
+                startProcess(SistemaDeCalidad.class, "--bind " + CALIDAD + " --queryBind " + QUERY + " " + calidadArgs);
+                startProcess(Broker.class, brokerArgs + " --frontend " + FRONTEND + " --backend " + BACKEND);
+                startProcess(Monitor.class, "-t ph --broker " + BACKEND + " --calidad " + CALIDAD + " " + monitorArgs);
+                break;
+        }
+        if (layout.equals("inproc")) {
+            // inproc necesita el bind antes del connect: esperar a que el broker y el
+            // sistema de calidad se publiquen en el registro del proceso
+            awaitRegistered(BrokerPartitions.SERVICE);
+            awaitRegistered(ServiceRegistry.CALIDAD_QUERY);
+        }
+        sensor = context.createSocket(SocketType.PUSH);
+        sensor.connect(frontend);
+        query = context.createSocket(SocketType.REQ);
+        query.setReceiveTimeOut(30_000);
+        query.connect(queryAddress);
+
+        // Esperar a que el monitor esté suscrito: la primera alerta guardada
+        stored = storedAlerts();
+        long deadline = System.currentTimeMillis() + 30_000;
+        while (storedAlerts() == stored) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new IllegalStateException("The pipeline did not store any alert");
+            }
+            send(1);
+            Thread.sleep(100);
+        }
+        Thread.sleep(500);
+        stored = storedAlerts();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        for (Process process : processes) {
+            process.destroy();
+            process.waitFor(5, TimeUnit.SECONDS);
+        }
+        // Los componentes del Launcher terminan con el proceso del benchmark
+    }
+
+    // Envío de 'batch' medidas hasta que sus alertas están guardadas
+    @Benchmark
+    public long endToEnd() {
+        send(batch);
+        long target = stored + batch;
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while ((stored = storedAlerts()) < target) {
+            if (System.nanoTime() > deadline) {
+                throw new IllegalStateException("Only " + (stored - target + batch) + " of " + batch
+                        + " alerts stored");
+            }
+            LockSupport.parkNanos(20_000);
+        }
+        return stored;
+    }
+
+    private void send(int count) {
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < count; i++) {
+            // jeromq no copia el arreglo: uno nuevo por mensaje
+            sensor.send(encoder.encode(SensorType.ph, ALERT_VALUE, now, i).clone(), 0);
+        }
+    }
+
+    // Alertas de ph guardadas, según el INFO del servicio de consultas de alertas
+    private long storedAlerts() {
+        query.send("INFO");
+        String reply = query.recvStr();
+        if (reply == null) {
+            throw new IllegalStateException("The alert query service did not answer");
+        }
+        for (String line : reply.split("\n")) {
+            if (line.startsWith("ph#")) {
+                return Long.parseLong(line.split("#")[1]);
+            }
+        }
+        throw new IllegalStateException("Unexpected reply " + reply);
+    }
+
+    private static void awaitRegistered(String service) throws InterruptedException {
+        while (LocalRegistry.shared().resolve(service).isEmpty()) {
+            Thread.sleep(10);
+        }
+    }
+
+    private void startProcess(Class<?> mainClass, String args) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(mainClass.getName());
+        command.addAll(Arrays.asList(args.trim().split("\\s+")));
+        processes.add(new ProcessBuilder(command).redirectErrorStream(true)
+                .redirectOutput(new File(directory, mainClass.getSimpleName() + ".log")).start());
+    }
+}
@@ -0,0 +1,108 @@
+package com.javeriana.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.javeriana.MeasurementData;
+import com.javeriana.TimeSeriesStore;
+import com.javeriana.TimeSeriesSummary;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// Benchmark de una consulta de rango + agregado (conteo, min, max, media) sobre
+// el historial de un tipo: cargar y recorrer el JSON (lo único que había antes)
+// contra la serie comprimida con resúmenes por bloque.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SeriesQueryBenchmark {
+
+    // Medidas almacenadas (una cada 10 ms)
+    @Param({ "100000" })
+    public int history;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private File directory;
+    private File jsonFile;
+    private TimeSeriesStore store;
+    private long from;
+    private long to;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("series-bench").toFile();
+        jsonFile = new File(directory, "ph_data.json");
+        store = new TimeSeriesStore(new File(directory, "series"), 4096, Long.MAX_VALUE);
+
+        Random random = new Random(42);
+        long start = System.currentTimeMillis() - history * 10L;
+        List<MeasurementData> measurementDataList = new ArrayList<>(history);
+        for (int i = 0; i < history; i++) {
+            long epochMillis = start + i * 10L;
+            double measurement = 6.0 + random.nextDouble() * 2.0;
+            measurementDataList.add(new MeasurementData("ph", measurement,
+                    MeasurementData.formatTimestamp(epochMillis)));
+            store.append(epochMillis, measurement);
+        }
+        objectMapper.writeValue(jsonFile, measurementDataList);
+
+        // Rango del 25% al 75% del historial, en segundos completos como el JSON
+        from = (start + history * 10L / 4) / 1000 * 1000;
+        to = (start + history * 10L * 3 / 4) / 1000 * 1000;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        store.close();
+        try (Stream<Path> paths = Files.walk(directory.toPath())) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    // Antes: cargar el JSON completo y filtrar por timestamp
+    @Benchmark
+    public TimeSeriesSummary jsonScan() throws IOException {
+        List<MeasurementData> measurementDataList = objectMapper.readValue(jsonFile,
+                objectMapper.getTypeFactory().constructCollectionType(List.class, MeasurementData.class));
+        TimeSeriesSummary summary = new TimeSeriesSummary();
+        for (MeasurementData data : measurementDataList) {
+            long epochMillis = MeasurementData.toEpochMillis(data.getTimestamp());
+            if (epochMillis >= from && epochMillis < to) {
+                summary.add(epochMillis, data.getMeasurement());
+            }
+        }
+        return summary;
+    }
+
+    // Ahora: resúmenes del índice y solo los bloques de los bordes descomprimidos
+    @Benchmark
+    public TimeSeriesSummary seriesAggregate() throws IOException {
+        TimeSeriesSummary summary = new TimeSeriesSummary();
+        store.aggregate(from, to, summary);
+        return summary;
+    }
+}
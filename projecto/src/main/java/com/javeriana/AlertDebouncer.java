@@ -0,0 +1,110 @@
+package com.javeriana;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.function.IntFunction;
+
+// Definición de la clase AlertDebouncer
+// Supresión de alertas repetidas por sensor. La primera alerta de un sensor se
+// envía; las siguientes con el mismo motivo dentro de debounceMs (tiempo de la
+// medida) se suprimen y se cuentan. La siguiente alerta que sí se envía lleva el
+// número de alertas suprimidas desde la anterior. Un cambio de motivo (por
+// ejemplo de "low" a "high") se envía siempre.
+//
+// Cada shard de evaluación tiene su propio AlertDebouncer: un sensor siempre cae
+// en el mismo shard, así que no hay estado compartido entre hilos.
+public class AlertDebouncer {
+
+    // Estado de alertas de un sensor
+    private static final class SensorState {
+        final int sensorId;
+        long lastAlertMillis;
+        byte lastReason;
+        int suppressed;
+
+        SensorState(int sensorId) {
+            this.sensorId = sensorId;
+        }
+    }
+
+    private final long debounceMs;
+    private final IntObjectMap<SensorState> sensors = new IntObjectMap<>();
+    private long lastEvictionMillis;
+    private long suppressedTotal;
+
+    // Constructor del AlertDebouncer
+    public AlertDebouncer(long debounceMs) {
+        this.debounceMs = debounceMs;
+    }
+
+    // Método para decidir si una alerta se envía. Devuelve -1 si se suprime, o
+    // el número de alertas suprimidas antes de ésta si se debe enviar.
+    public int admit(int sensorId, byte reason, long epochMillis) {
+        if (debounceMs <= 0) {
+            return 0;
+        }
+        SensorState state = sensors.get(sensorId);
+        if (state == null) {
+            state = sensors.computeIfAbsent(sensorId, SensorState::new);
+        } else if (state.lastReason == reason && epochMillis - state.lastAlertMillis < debounceMs) {
+            state.suppressed++;
+            suppressedTotal++;
+            return -1;
+        }
+        int suppressed = state.suppressed;
+        state.lastAlertMillis = epochMillis;
+        state.lastReason = reason;
+        state.suppressed = 0;
+        evictIdle(epochMillis);
+        return suppressed;
+    }
+
+    // Método para guardar el estado de los sensores (puntos de control del monitor)
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(sensors.size());
+        IOException[] error = { null };
+        sensors.forEachValue(state -> {
+            try {
+                out.writeInt(state.sensorId);
+                out.writeLong(state.lastAlertMillis);
+                out.writeByte(state.lastReason);
+                out.writeInt(state.suppressed);
+            } catch (IOException e) {
+                error[0] = e;
+            }
+        });
+        if (error[0] != null) {
+            throw error[0];
+        }
+    }
+
+    // Método para recuperar estados guardados con writeTo. Cada sensor va al
+    // AlertDebouncer que debouncerOf le asigna, así el número de shards puede
+    // cambiar entre un arranque y otro.
+    public static void readFrom(DataInput in, IntFunction<AlertDebouncer> debouncerOf) throws IOException {
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            int sensorId = in.readInt();
+            AlertDebouncer debouncer = debouncerOf.apply(sensorId);
+            SensorState state = debouncer.sensors.computeIfAbsent(sensorId, SensorState::new);
+            state.lastAlertMillis = in.readLong();
+            state.lastReason = in.readByte();
+            state.suppressed = in.readInt();
+        }
+    }
+
+    // Alertas suprimidas desde que se creó el AlertDebouncer
+    public long getSuppressedTotal() {
+        return suppressedTotal;
+    }
+
+    // Método para olvidar los sensores sin alertas recientes (como mucho una vez por ventana)
+    private void evictIdle(long nowMillis) {
+        if (nowMillis - lastEvictionMillis < debounceMs) {
+            return;
+        }
+        lastEvictionMillis = nowMillis;
+        sensors.removeIf(state -> state.suppressed == 0 && nowMillis - state.lastAlertMillis >= debounceMs);
+    }
+}
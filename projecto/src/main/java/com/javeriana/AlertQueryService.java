@@ -0,0 +1,133 @@
+package com.javeriana;
+
+import org.zeromq.SocketType;
+import org.zeromq.ZContext;
+import org.zeromq.ZMQ;
+
+import java.io.IOException;
+
+// Definición de la clase AlertQueryService
+// Servicio de consultas (REQ/REP) sobre las alertas que guarda el sistema de
+// calidad (AlertStore) y sus contadores móviles (AlertRates). Atiende en su
+// propio hilo mientras la recepción sigue. Los tiempos son epoch millis de la
+// medida que causó la alerta y las ventanas [desde, hasta); tipo puede ser "all".
+// Solicitudes:
+//   INFO                             -> OK y una línea por tipo: tipo#guardadas#último minuto#5 min#15 min
+//   COUNT#tipo#desde#hasta           -> OK#total#invalid#low#high#bloquesLeídos
+//   ALERTS#tipo#desde#hasta#máximo   -> OK#total#devueltas#bloquesLeídos y una línea por alerta, en el
+//                                       formato en que llegó: tipo#timestamp#medida#idSensor#motivo#suprimidas
+// Las líneas van en el mismo frame, separadas por salto de línea (como los lotes de alertas).
+public class AlertQueryService {
+
+    // Límite para que una consulta no arme respuestas enormes
+    private static final int MAX_ALERTS = 100_000;
+
+    private final AlertStore store;
+    private final AlertRates rates;
+
+    // Constructor del AlertQueryService
+    public AlertQueryService(AlertStore store, AlertRates rates) {
+        this.store = store;
+        this.rates = rates;
+    }
+
+    // Método para atender consultas hasta que se interrumpa el hilo
+    public void run(ZContext context, String bindAddress) {
+        ZMQ.Socket socket = context.createSocket(SocketType.REP);
+        try {
+            socket.setReceiveTimeOut(100);
+            socket.bind(bindAddress);
+            System.out.println("Answering alert queries on " + bindAddress);
+            while (!Thread.currentThread().isInterrupted()) {
+                String request = socket.recvStr(0);
+                if (request != null) {
+                    socket.send(handle(request), 0);
+                }
+            }
+        } finally {
+            context.destroySocket(socket);
+        }
+    }
+
+    // Método para responder una solicitud
+    public String handle(String request) {
+        String[] parts = request.split("#");
+        try {
+            switch (parts[0]) {
+                case "INFO":
+                    return info();
+                case "COUNT":
+                    if (parts.length == 4) {
+                        return count(types(parts[1]), Long.parseLong(parts[2]), Long.parseLong(parts[3]));
+                    }
+                    break;
+                case "ALERTS":
+                    if (parts.length == 5) {
+                        return alerts(types(parts[1]), Long.parseLong(parts[2]), Long.parseLong(parts[3]),
+                                Integer.parseInt(parts[4]));
+                    }
+                    break;
+                default:
+                    break;
+            }
+            return "ERROR#invalid request " + request;
+        } catch (IllegalArgumentException e) {
+            // También NumberFormatException y los tipos desconocidos de SensorType.valueOf
+            return "ERROR#invalid type or number in " + request;
+        } catch (IOException e) {
+            return "ERROR#" + e.getMessage();
+        }
+    }
+
+    private static SensorType[] types(String name) {
+        return name.equals("all") ? SensorType.values() : new SensorType[] { SensorType.valueOf(name) };
+    }
+
+    private String info() {
+        long now = System.currentTimeMillis();
+        StringBuilder reply = new StringBuilder("OK");
+        for (SensorType sensorType : SensorType.values()) {
+            reply.append('\n').append(sensorType)
+                    .append('#').append(store.size(sensorType))
+                    .append('#').append(rates.count(sensorType, 60, now))
+                    .append('#').append(rates.count(sensorType, 300, now))
+                    .append('#').append(rates.count(sensorType, 900, now));
+        }
+        return reply.toString();
+    }
+
+    private String count(SensorType[] types, long from, long to) throws IOException {
+        long[] byReason = new long[AlertRules.ABOVE_MAX + 1];
+        int blocksRead = 0;
+        for (SensorType sensorType : types) {
+            blocksRead += store.query(sensorType, from, to,
+                    (type, epochMillis, measurement, sensorId, reason, suppressed) -> byReason[reason]++);
+        }
+        long total = byReason[AlertRules.INVALID] + byReason[AlertRules.BELOW_MIN] + byReason[AlertRules.ABOVE_MAX];
+        return "OK#" + total + "#" + byReason[AlertRules.INVALID] + "#" + byReason[AlertRules.BELOW_MIN] + "#"
+                + byReason[AlertRules.ABOVE_MAX] + "#" + blocksRead;
+    }
+
+    private String alerts(SensorType[] types, long from, long to, int limit) throws IOException {
+        int max = Math.max(0, Math.min(limit, MAX_ALERTS));
+        StringBuilder lines = new StringBuilder();
+        long[] counts = new long[2]; // Total y devueltas
+        int blocksRead = 0;
+        for (SensorType sensorType : types) {
+            blocksRead += store.query(sensorType, from, to,
+                    (type, epochMillis, measurement, sensorId, reason, suppressed) -> {
+                        if (counts[1] < max) {
+                            lines.append('\n').append(type)
+                                    .append('#').append(MeasurementData.formatTimestamp(epochMillis))
+                                    .append('#').append(measurement)
+                                    .append('#').append(sensorId)
+                                    .append('#').append(AlertRules.reasonName(reason))
+                                    .append('#').append(suppressed);
+                            counts[1]++;
+                        }
+                        counts[0]++;
+                    });
+        }
+        return "OK#" + counts[0] + "#" + counts[1] + "#" + blocksRead + lines;
+    }
+}
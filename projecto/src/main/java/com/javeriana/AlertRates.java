@@ -0,0 +1,42 @@
+package com.javeriana;
+
+// Definición de la clase AlertRates
+// Contadores móviles de alertas recibidas por tipo de sensor: un arreglo
+// circular de cubetas de un segundo (por hora de llegada) que cubre los últimos
+// WINDOW_SECONDS segundos. Con él se responde cuántas alertas llegaron en el
+// último minuto, 5 o 15 minutos sin guardar cada alerta en memoria.
+public class AlertRates {
+
+    static final int WINDOW_SECONDS = 900;
+
+    private final long[][] counts = new long[SensorType.values().length][WINDOW_SECONDS];
+    private final long[] seconds = new long[WINDOW_SECONDS]; // Segundo al que corresponde cada cubeta
+
+    // Método para sumar alertas de un tipo llegadas en nowMillis
+    public synchronized void add(SensorType sensorType, long count, long nowMillis) {
+        long second = nowMillis / 1000;
+        int bucket = (int) (second % WINDOW_SECONDS);
+        if (seconds[bucket] != second) {
+            // La cubeta era de hace WINDOW_SECONDS segundos o más: se reutiliza
+            for (long[] typeCounts : counts) {
+                typeCounts[bucket] = 0;
+            }
+            seconds[bucket] = second;
+        }
+        counts[sensorType.ordinal()][bucket] += count;
+    }
+
+    // Método para contar las alertas de un tipo en los últimos windowSeconds segundos
+    public synchronized long count(SensorType sensorType, int windowSeconds, long nowMillis) {
+        long now = nowMillis / 1000;
+        long first = now - Math.min(windowSeconds, WINDOW_SECONDS) + 1;
+        long[] typeCounts = counts[sensorType.ordinal()];
+        long total = 0;
+        for (int bucket = 0; bucket < WINDOW_SECONDS; bucket++) {
+            if (seconds[bucket] >= first && seconds[bucket] <= now) {
+                total += typeCounts[bucket];
+            }
+        }
+        return total;
+    }
+}
@@ -0,0 +1,113 @@
+package com.javeriana;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Properties;
+
+// Definición de la clase AlertRules
+// Reglas de alerta del Monitor. Se leen una vez (rangos por defecto de SensorType,
+// opcionalmente reemplazados por un archivo de reglas) y quedan como arreglos
+// primitivos indexados por tipo de sensor, de modo que evaluar una medida es solo
+// un par de comparaciones.
+//
+// Formato del archivo de reglas (java.util.Properties):
+//   ph.min=6.5
+//   ph.max=7.5
+//   invalid=true      (alertar también por el valor no válido -1)
+public class AlertRules {
+
+    // Motivos de alerta (0 = sin alerta)
+    public static final byte NONE = 0;
+    public static final byte INVALID = 1;
+    public static final byte BELOW_MIN = 2;
+    public static final byte ABOVE_MAX = 3;
+
+    private static final String[] REASON_NAMES = { "ok", "invalid", "low", "high" };
+
+    private final double[] min;
+    private final double[] max;
+    private final boolean alertInvalid;
+
+    private AlertRules(double[] min, double[] max, boolean alertInvalid) {
+        this.min = min;
+        this.max = max;
+        this.alertInvalid = alertInvalid;
+    }
+
+    // Método para crear las reglas con los rangos de SensorType
+    public static AlertRules defaults() {
+        return compile(new Properties());
+    }
+
+    // Método para leer un archivo de reglas
+    public static AlertRules load(File file) throws IOException {
+        Properties properties = new Properties();
+        try (Reader reader = new FileReader(file)) {
+            properties.load(reader);
+        }
+        return compile(properties);
+    }
+
+    // Método para compilar las reglas: los tipos sin regla usan su rango válido
+    static AlertRules compile(Properties properties) {
+        SensorType[] types = SensorType.values();
+        double[] min = new double[types.length];
+        double[] max = new double[types.length];
+        for (SensorType type : types) {
+            min[type.ordinal()] = parse(properties, type + ".min", type.getMin());
+            max[type.ordinal()] = parse(properties, type + ".max", type.getMax());
+            if (min[type.ordinal()] > max[type.ordinal()]) {
+                throw new IllegalArgumentException("Invalid rule for " + type + ": min is greater than max");
+            }
+        }
+        boolean alertInvalid = Boolean.parseBoolean(properties.getProperty("invalid", "true"));
+        return new AlertRules(min, max, alertInvalid);
+    }
+
+    private static double parse(Properties properties, String key, double defaultValue) {
+        String value = properties.getProperty(key);
+        return value == null ? defaultValue : Double.parseDouble(value.trim());
+    }
+
+    // Método para evaluar una medida; devuelve el motivo de la alerta o NONE
+    public byte evaluate(SensorType sensorType, double measurement) {
+        if (measurement == MeasurementGenerator.INVALID_VALUE) {
+            return alertInvalid ? INVALID : NONE;
+        }
+        int type = sensorType.ordinal();
+        if (measurement < min[type]) {
+            return BELOW_MIN;
+        }
+        if (measurement > max[type]) {
+            return ABOVE_MAX;
+        }
+        return NONE;
+    }
+
+    // Nombre del motivo, tal como se envía al sistema de calidad
+    public static String reasonName(byte reason) {
+        return REASON_NAMES[reason];
+    }
+
+    // Código del motivo a partir de su nombre (-1 si no se conoce)
+    public static byte reasonCode(String name) {
+        for (byte reason = 0; reason < REASON_NAMES.length; reason++) {
+            if (REASON_NAMES[reason].equals(name)) {
+                return reason;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (SensorType type : SensorType.values()) {
+            builder.append(type).append("=[").append(min[type.ordinal()]).append(", ").append(max[type.ordinal()])
+                    .append("] ");
+        }
+        return builder.append("invalid=").append(alertInvalid).toString();
+    }
+}
@@ -0,0 +1,314 @@
+package com.javeriana;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+
+// Definición de la clase AlertStore
+// Almacén de las alertas que recibe el sistema de calidad. Cada tipo de sensor
+// tiene su archivo de registros de ancho fijo (<tipo>.alerts), así que el tipo es
+// el primer índice, y su índice de tiempo (<tipo>.index): el rango de tiempo de
+// cada bloque de BLOCK_RECORDS alertas. Una consulta por tipo y ventana recorre
+// el índice en memoria y solo lee los bloques que se cruzan con la ventana.
+//
+// Un solo hilo agrega (la recepción) y otros pueden consultar a la vez. Las
+// alertas se escriben al archivo en cada flush (al final de cada lote drenado) y
+// se fuerzan a disco como mucho cada syncIntervalMs; un bloque se escribe antes
+// que su entrada del índice. Al abrir, los registros incompletos se descartan y
+// el índice se completa desde los datos.
+public class AlertStore implements Closeable {
+
+    // Registro: timestamp de la medida en epoch millis (long), medida (double),
+    // id del sensor (int), motivo (byte, ver AlertRules) y alertas suprimidas antes (int)
+    static final int RECORD_SIZE = 8 + 8 + 4 + 1 + 4;
+    // Alertas por entrada del índice de tiempo; entrada: tiempo mínimo y máximo del bloque
+    static final int BLOCK_RECORDS = 256;
+    private static final int ENTRY_SIZE = 8 + 8;
+
+    // Receptor de las alertas de una consulta
+    public interface AlertConsumer {
+        void accept(SensorType sensorType, long epochMillis, double measurement, int sensorId, byte reason,
+                int suppressed);
+    }
+
+    private final Map<SensorType, TypeLog> logs = new EnumMap<>(SensorType.class);
+    private final long syncIntervalMs;
+    private long lastSync = System.currentTimeMillis();
+    private boolean unsynced;
+
+    // Constructor del AlertStore: abre (o crea) los archivos de cada tipo
+    public AlertStore(File directory, long syncIntervalMs) throws IOException {
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Could not create alert directory " + directory);
+        }
+        this.syncIntervalMs = syncIntervalMs;
+        for (SensorType sensorType : SensorType.values()) {
+            logs.put(sensorType, new TypeLog(sensorType, directory));
+        }
+    }
+
+    // Método para agregar una alerta al lote pendiente de su tipo
+    public void append(SensorType sensorType, long epochMillis, double measurement, int sensorId, byte reason,
+            int suppressed) {
+        logs.get(sensorType).append(epochMillis, measurement, sensorId, reason, suppressed);
+    }
+
+    // Método para escribir las alertas pendientes (visibles para las consultas) y
+    // forzarlas a disco si pasó syncIntervalMs
+    public void flush() throws IOException {
+        for (TypeLog log : logs.values()) {
+            unsynced |= log.write();
+        }
+        if (unsynced && System.currentTimeMillis() - lastSync >= syncIntervalMs) {
+            sync();
+        }
+    }
+
+    // Método para forzar a disco todo lo escrito
+    public void sync() throws IOException {
+        for (TypeLog log : logs.values()) {
+            log.force();
+        }
+        unsynced = false;
+        lastSync = System.currentTimeMillis();
+    }
+
+    // Alertas guardadas de un tipo
+    public long size(SensorType sensorType) {
+        return logs.get(sensorType).snapshot().records;
+    }
+
+    // Método para recorrer las alertas de un tipo con timestamp en [from, to), en
+    // orden de llegada. Devuelve los bloques leídos.
+    public int query(SensorType sensorType, long from, long to, AlertConsumer consumer) throws IOException {
+        return logs.get(sensorType).query(from, to, consumer);
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        sync();
+        for (TypeLog log : logs.values()) {
+            log.close();
+        }
+    }
+
+    // Índice de tiempo visible para las consultas: bloques completos y el bloque en curso
+    private static final class Snapshot {
+        final long records;
+        final long[] blockMin;
+        final long[] blockMax;
+        final long[] blockMaxSoFar; // Máximo de los bloques hasta éste: creciente, permite búsqueda binaria
+        final long lastMin;
+        final long lastMax;
+
+        Snapshot(long records, long[] blockMin, long[] blockMax, long[] blockMaxSoFar, long lastMin, long lastMax) {
+            this.records = records;
+            this.blockMin = blockMin;
+            this.blockMax = blockMax;
+            this.blockMaxSoFar = blockMaxSoFar;
+            this.lastMin = lastMin;
+            this.lastMax = lastMax;
+        }
+    }
+
+    // Archivos de un tipo de sensor
+    private static final class TypeLog {
+        private final SensorType sensorType;
+        private final FileChannel dataChannel;
+        private final FileChannel indexChannel;
+        private ByteBuffer pending = ByteBuffer.allocate(RECORD_SIZE * BLOCK_RECORDS);
+        private final ByteBuffer entries = ByteBuffer.allocate(ENTRY_SIZE * 64);
+
+        // Estado del escritor
+        private long records; // Escritas al archivo
+        private long appended; // Escritas y pendientes
+        private long[] blockMin = new long[64];
+        private long[] blockMax = new long[64];
+        private long[] blockMaxSoFar = new long[64];
+        private int blocks;
+        private int indexedBlocks; // Entradas ya escritas al índice
+        private long currentMin = Long.MAX_VALUE;
+        private long currentMax = Long.MIN_VALUE;
+        private long maxSoFar = Long.MIN_VALUE;
+
+        private volatile Snapshot snapshot;
+
+        TypeLog(SensorType sensorType, File directory) throws IOException {
+            this.sensorType = sensorType;
+            dataChannel = FileChannel.open(new File(directory, sensorType + ".alerts").toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            indexChannel = FileChannel.open(new File(directory, sensorType + ".index").toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            recover();
+        }
+
+        // Descarta el registro incompleto que dejó una caída y completa el índice
+        private void recover() throws IOException {
+            records = dataChannel.size() / RECORD_SIZE;
+            dataChannel.truncate(records * RECORD_SIZE);
+            long fullBlocks = records / BLOCK_RECORDS;
+            long entryCount = Math.min(indexChannel.size() / ENTRY_SIZE, fullBlocks);
+            indexChannel.truncate(entryCount * ENTRY_SIZE);
+
+            ByteBuffer index = ByteBuffer.allocate((int) (entryCount * ENTRY_SIZE));
+            readFully(indexChannel, index, 0);
+            index.flip();
+            while (index.hasRemaining()) {
+                addBlock(index.getLong(), index.getLong());
+            }
+            indexedBlocks = blocks;
+            // Bloques sin entrada y el bloque en curso: recorrer sus registros
+            ByteBuffer block = ByteBuffer.allocate(RECORD_SIZE * BLOCK_RECORDS);
+            for (long first = (long) blocks * BLOCK_RECORDS; first < records; first += BLOCK_RECORDS) {
+                int count = (int) Math.min(BLOCK_RECORDS, records - first);
+                block.clear().limit(count * RECORD_SIZE);
+                readFully(dataChannel, block, first * RECORD_SIZE);
+                for (int i = 0; i < count; i++) {
+                    long epochMillis = block.getLong(i * RECORD_SIZE);
+                    currentMin = Math.min(currentMin, epochMillis);
+                    currentMax = Math.max(currentMax, epochMillis);
+                }
+                if (count == BLOCK_RECORDS) {
+                    addBlock(currentMin, currentMax);
+                    currentMin = Long.MAX_VALUE;
+                    currentMax = Long.MIN_VALUE;
+                }
+            }
+            appended = records;
+            writeEntries();
+            publish();
+        }
+
+        void append(long epochMillis, double measurement, int sensorId, byte reason, int suppressed) {
+            if (pending.remaining() < RECORD_SIZE) {
+                pending = ByteBuffer.allocate(pending.capacity() * 2).put(pending.flip());
+            }
+            pending.putLong(epochMillis).putDouble(measurement).putInt(sensorId).put(reason).putInt(suppressed);
+            currentMin = Math.min(currentMin, epochMillis);
+            currentMax = Math.max(currentMax, epochMillis);
+            if (++appended % BLOCK_RECORDS == 0) {
+                addBlock(currentMin, currentMax);
+                currentMin = Long.MAX_VALUE;
+                currentMax = Long.MIN_VALUE;
+            }
+        }
+
+        private void addBlock(long min, long max) {
+            if (blocks == blockMin.length) {
+                blockMin = Arrays.copyOf(blockMin, blocks * 2);
+                blockMax = Arrays.copyOf(blockMax, blocks * 2);
+                blockMaxSoFar = Arrays.copyOf(blockMaxSoFar, blocks * 2);
+            }
+            maxSoFar = Math.max(maxSoFar, max);
+            blockMin[blocks] = min;
+            blockMax[blocks] = max;
+            blockMaxSoFar[blocks] = maxSoFar;
+            blocks++;
+        }
+
+        // Escribe los registros pendientes y después las entradas de sus bloques completos
+        boolean write() throws IOException {
+            if (appended == records) {
+                return false;
+            }
+            pending.flip();
+            while (pending.hasRemaining()) {
+                dataChannel.write(pending, records * RECORD_SIZE + pending.position());
+            }
+            pending.clear();
+            records = appended;
+            writeEntries();
+            publish();
+            return true;
+        }
+
+        private void writeEntries() throws IOException {
+            while (indexedBlocks < blocks) {
+                entries.clear();
+                for (; indexedBlocks < blocks && entries.hasRemaining(); indexedBlocks++) {
+                    entries.putLong(blockMin[indexedBlocks]).putLong(blockMax[indexedBlocks]);
+                }
+                entries.flip();
+                long position = indexChannel.size();
+                while (entries.hasRemaining()) {
+                    indexChannel.write(entries, position + entries.position());
+                }
+            }
+        }
+
+        // Publica el estado escrito para las consultas (los arreglos solo crecen al final)
+        private void publish() {
+            snapshot = new Snapshot(records, blockMin, blockMax, blockMaxSoFar, currentMin, currentMax);
+        }
+
+        Snapshot snapshot() {
+            return snapshot;
+        }
+
+        void force() throws IOException {
+            dataChannel.force(false);
+            indexChannel.force(false);
+        }
+
+        int query(long from, long to, AlertConsumer consumer) throws IOException {
+            Snapshot view = snapshot;
+            int fullBlocks = (int) (view.records / BLOCK_RECORDS);
+            // Primer bloque que puede tener alertas desde 'from'
+            int low = 0;
+            int high = fullBlocks;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (view.blockMaxSoFar[middle] < from) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            int blocksRead = 0;
+            ByteBuffer block = ByteBuffer.allocate(RECORD_SIZE * BLOCK_RECORDS);
+            for (int b = low; b <= fullBlocks; b++) {
+                int count = b < fullBlocks ? BLOCK_RECORDS : (int) (view.records % BLOCK_RECORDS);
+                long min = b < fullBlocks ? view.blockMin[b] : view.lastMin;
+                long max = b < fullBlocks ? view.blockMax[b] : view.lastMax;
+                if (count == 0 || min >= to || max < from) {
+                    continue;
+                }
+                block.clear().limit(count * RECORD_SIZE);
+                readFully(dataChannel, block, (long) b * BLOCK_RECORDS * RECORD_SIZE);
+                block.flip();
+                blocksRead++;
+                for (int i = 0; i < count; i++) {
+                    long epochMillis = block.getLong();
+                    double measurement = block.getDouble();
+                    int sensorId = block.getInt();
+                    byte reason = block.get();
+                    int suppressed = block.getInt();
+                    if (epochMillis >= from && epochMillis < to) {
+                        consumer.accept(sensorType, epochMillis, measurement, sensorId, reason, suppressed);
+                    }
+                }
+            }
+            return blocksRead;
+        }
+
+        void close() throws IOException {
+            dataChannel.close();
+            indexChannel.close();
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of alert file");
+            }
+        }
+    }
+}
@@ -1,41 +1,502 @@
 package com.javeriana;
 
+import org.kohsuke.args4j.CmdLineParser;
+import org.kohsuke.args4j.Option;
 import org.zeromq.SocketType;
 import org.zeromq.ZContext;
 import org.zeromq.ZMQ;
 import org.zeromq.ZMQ.Socket;
+import org.zeromq.ZMQException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
 
 // Definición de la clase Broker
 public class Broker {
+
+    // Frame que sigue a cada mensaje publicado, cinco long: id del flujo (el del
+    // diario, o uno al azar por ejecución sin diario), offset en el diario (-1 sin
+    // diario), offset del mensaje anterior con el mismo primer byte (el tópico, -1
+    // si no hay), número de secuencia dentro del tópico y hora de envío en epoch
+    // millis. Con la secuencia el monitor cuenta los mensajes que perdió su SUB.
+    public static final int SEQUENCE_FRAME_SIZE = 40;
+
+    // Mensajes drenados como máximo antes de volver al bucle: bajo carga sostenida la
+    // cola nunca se vacía y así los acks pendientes y el reporte siguen saliendo a tiempo
+    private static final int MAX_DRAIN = 4096;
+
+    // Definición de opciones de línea de comandos usando args4j
+    @Option(name = "-m", aliases = "--mode", usage = "Ingest mode (rep, router or pull)")
+    private IngestMode mode = IngestMode.rep;
+
+    @Option(name = "--ackBatch", usage = "Router mode: send one ack every N messages per sensor (0 disables acks)")
+    private int ackBatch = 64;
+
+    @Option(name = "--ackLingerMs", usage = "Router mode: longest milliseconds a partial ack batch waits under traffic")
+    private long ackLingerMs = 20;
+
+    @Option(name = "--frontend", usage = "Endpoint where sensors connect")
+    private String frontendAddress = "tcp://localhost:5559";
+
+    @Option(name = "--backend", usage = "Endpoint where monitors subscribe")
+    private String backendAddress = "tcp://192.168.0.4:5560"; // IP DE DONDE SE ESTA CORRIENDO EL BROKER
+
+    @Option(name = "--registry", usage = "Service registry endpoint, or \"local\" for the in-process registry")
+    private String registryAddress;
+
+    @Option(name = "--advertiseHost", usage = "Host published in the registry for wildcard binds (default: local IP)")
+    private String advertiseHost;
+
+    @Option(name = "--journal", usage = "Directory of the replayable journal of forwarded messages (off by default)")
+    private File journalDirectory;
+
+    @Option(name = "--journalSegmentMb", usage = "Size of each memory-mapped journal segment in MB")
+    private int journalSegmentMb = 64;
+
+    @Option(name = "--retentionMb", usage = "Journal size in MB above which old segments are deleted (0: no limit)")
+    private long retentionMb = 1024;
+
+    @Option(name = "--retentionMs", usage = "Age in ms after which journal segments are deleted (0: no limit)")
+    private long retentionMs = 24 * 3600 * 1000L;
+
+    @Option(name = "--journalSyncMs", usage = "Milliseconds between forced writes of the journal to disk (0: OS)")
+    private long journalSyncMs = 1000;
+
+    @Option(name = "--replay", usage = "Endpoint where monitors request the journal backlog")
+    private String replayAddress = "tcp://*:5561";
+
+    @Option(name = "--sndHwm", usage = "Messages queued per monitor in the backend before the PUB drops them")
+    private int sndHwm = 1000;
+
+    @Option(name = "--rcvHwm", usage = "Messages queued per sensor in the frontend before sensors are blocked")
+    private int rcvHwm = 1000;
+
+    @Option(name = "--monitorHeartbeats", usage = "Monitor heartbeat endpoints for flow control, comma separated")
+    private String monitorHeartbeats;
+
+    @Option(name = "--maxCredit", usage = "Router mode: unacknowledged messages allowed per sensor (upper bound)")
+    private int maxCredit = 1024;
+
+    @Option(name = "--minCredit", usage = "Router mode: lowest credit granted to a sensor while monitors lag")
+    private int minCredit = 16;
+
+    @Option(name = "--maxLagMs", usage = "Monitor lag in milliseconds above which sensors are slowed down")
+    private long maxLagMs = 1000;
+
+    @Option(name = "--metricsPort", usage = "HTTP port of the Prometheus metrics endpoint (0 disables it)")
+    private int metricsPort = 9400;
+
+    @Option(name = "--logPerSecond", usage = "Per-message log lines printed per second at most (0 disables them)")
+    private int logPerSecond = 10;
+
+    // Registro donde se publica la partición del broker (null sin registro)
+    private ServiceRegistry registry;
+
+    // Diario de lo reenviado (null si está desactivado), id del flujo y estado de
+    // cada tópico para los frames de secuencia
+    private BrokerJournal journal;
+    private long streamId;
+    private final long[] previousOffsets = new long[256];
+    private final long[] topicSequences = new long[256];
+
+    // Crédito anunciado a los sensores según el retraso de los monitores (null sin latidos)
+    private FlowControl flowControl;
+    // Acks que no se pudieron enviar (sensor desconectado o con la cola llena); lo lee el hilo de métricas
+    private volatile long failedAcks;
+
+    // Mensajes pendientes de ack por sensor (modo router)
+    private final Map<ByteBuffer, int[]> pendingAcks = new HashMap<>();
+
+    // Métricas del broker y log por mensaje muestreado
+    private final Metrics.Counter forwardedCounter = Metrics.global().counter("broker_messages_forwarded_total",
+            "Messages received from sensors and published to monitors", null);
+    private final Metrics.Counter journalErrors = Metrics.global().counter("broker_journal_errors_total",
+            "Messages that could not be written to the journal", null);
+    private final Metrics.Timer forwardTimer = Metrics.global().timer("broker_forward_seconds",
+            "Time to journal and publish one message", null);
+    private SampledLog receivedLog;
+
+    // Constructor usado por args4j (las opciones toman sus valores por defecto)
+    public Broker() {
+    }
+
+    // Constructor para ejecutar el broker dentro de otro proceso (pruebas, benchmarks)
+    public Broker(IngestMode mode, String frontendAddress, String backendAddress) {
+        this.mode = mode;
+        this.frontendAddress = frontendAddress;
+        this.backendAddress = backendAddress;
+    }
+
+    // Método para publicar los endpoints del broker en un registro. Debe llamarse antes de run().
+    public void useRegistry(ServiceRegistry registry, String advertiseHost) {
+        this.registry = registry;
+        this.advertiseHost = advertiseHost;
+    }
+
+    // Crédito actual de cada sensor (maxCredit sin control de flujo)
+    private int credit() {
+        return flowControl != null ? flowControl.getCredit() : maxCredit;
+    }
+
     public static void main(String[] args) throws Exception {
+        Broker broker = new Broker();
+        CmdLineParser parser = new CmdLineParser(broker);
+
+        try {
+            parser.parseArgument(args);
+        } catch (Exception e) {
+            System.err.println(e.getMessage());
+            parser.printUsage(System.err);
+            return;
+        }
+
+        SampledLog.setDefaultPerSecond(broker.logPerSecond);
+        Metrics.serve(broker.metricsPort);
+        broker.registry = ServiceRegistry.connect(broker.registryAddress);
+        if (broker.registry != null) {
+            // Al detener el broker se retira del registro y los sensores se rebalancean de inmediato
+            Runtime.getRuntime().addShutdownHook(new Thread(broker.registry::close));
+        }
         try (ZContext context = new ZContext()) {
-            // Socket para enfrentar a los clientes (sensores)
-            Socket frontend = context.createSocket(SocketType.REP);
-            frontend.bind("tcp://localhost:5559");
+            broker.run(context);
+        } finally {
+            if (broker.registry != null) {
+                broker.registry.close();
+            }
+        }
+    }
 
-            // Socket para publicar mensajes a los suscriptores (monitores)
-            Socket backend = context.createSocket(SocketType.PUB);
-            backend.bind("tcp://192.168.0.4:5560");// IP DE DONDE SE ESTA CORRIENDO EL BROKER
+    // Método que ejecuta el broker sobre un contexto ZeroMQ
+    public void run(ZContext context) {
+        if (journalDirectory != null) {
+            try {
+                journal = new BrokerJournal(journalDirectory, journalSegmentMb << 20, retentionMb << 20, retentionMs,
+                        journalSyncMs);
+            } catch (IOException e) {
+                System.err.println("Error opening journal: " + e.getMessage());
+                return;
+            }
+            System.out.println("Journal " + journalDirectory + " offsets " + journal.getFirstOffset() + " to "
+                    + journal.getEndOffset() + ", replay on " + replayAddress);
+            // Tras reiniciar se desconoce el último mensaje de cada tópico: se supone el
+            // último del diario, así el monitor revisa si le falta algo anterior
+            Arrays.fill(previousOffsets, journal.getEndOffset() - 1);
+            Thread replay = new Thread(() -> runReplay(context), "broker-replay");
+            replay.setDaemon(true);
+            replay.start();
+        } else {
+            Arrays.fill(previousOffsets, -1);
+        }
+        streamId = journal != null ? journal.getJournalId() : new Random().nextLong() & Long.MAX_VALUE;
 
-            System.out.println("Launch and connect broker.");
+        // Control de flujo: el crédito de los sensores sigue el retraso de los monitores
+        List<EndpointWatch> heartbeats = FlowControl.heartbeatWatches(registry, monitorHeartbeats);
+        if (!heartbeats.isEmpty()) {
+            flowControl = new FlowControl(heartbeats, maxCredit, minCredit, maxLagMs);
+            Thread flow = new Thread(() -> flowControl.run(context), "broker-flow-control");
+            flow.setDaemon(true);
+            flow.start();
+        }
+        registerMetrics();
+
+        // Socket para enfrentar a los clientes (sensores)
+        Socket frontend = context.createSocket(mode.getBrokerSocketType());
+        frontend.setRcvHWM(rcvHwm);
+        if (mode == IngestMode.router) {
+            // Un ack a un sensor que ya no está falla en lugar de descartarse en silencio
+            frontend.setRouterMandatory(true);
+        }
+        frontend.bind(frontendAddress);
+
+        // Socket para publicar mensajes a los suscriptores (monitores)
+        Socket backend = context.createSocket(SocketType.PUB);
+        backend.setSndHWM(sndHwm);
+        backend.bind(backendAddress);
+
+        if (registry != null) {
+            // Publicar la partición para que los sensores y monitores la agreguen a su anillo
+            registry.register(BrokerPartitions.SERVICE, BrokerPartitions.entry(
+                    ServiceRegistry.advertise(frontendAddress, advertiseHost),
+                    ServiceRegistry.advertise(backendAddress, advertiseHost),
+                    journal != null ? ServiceRegistry.advertise(replayAddress, advertiseHost) : null));
+        }
 
+        System.out.println("Launch and connect broker. Mode: " + mode);
+
+        try {
+            switch (mode) {
+                case rep:
+                    runRep(frontend, backend);
+                    break;
+                case router:
+                case pull:
+                    runAsync(context, frontend, backend);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Invalid ingest mode");
+            }
+        } finally {
+            if (journal != null) {
+                journal.close();
+            }
+        }
+    }
+
+    // Método para exportar los contadores que el broker ya lleva
+    private void registerMetrics() {
+        Metrics metrics = Metrics.global();
+        receivedLog = new SampledLog();
+        metrics.counterFunction("broker_acks_failed_total",
+                "Acks not sent because the sensor was gone or its queue was full", null, () -> failedAcks);
+        metrics.gauge("broker_pending_ack_sensors", "Sensors with unacknowledged messages", null, pendingAcks::size);
+        if (journal != null) {
+            metrics.gauge("broker_journal_end_offset", "Offset of the next journal record", null,
+                    journal::getEndOffset);
+            metrics.gauge("broker_journal_first_offset", "Oldest offset kept by retention", null,
+                    journal::getFirstOffset);
+        }
+        if (flowControl != null) {
+            metrics.gauge("broker_flow_credit", "Unacknowledged messages currently allowed per sensor", null,
+                    flowControl::getCredit);
+            metrics.gauge("broker_monitor_dropped", "Messages monitors report as dropped by their SUB sockets", null,
+                    flowControl::getDropped);
+        }
+    }
+
+    // Método para reenviar un mensaje a los monitores, seguido de su frame de
+    // secuencia. Con diario, el mensaje se escribe primero en él.
+    private void forward(Socket backend, byte[] message) {
+        long start = System.nanoTime();
+        long offset = -1;
+        if (journal != null) {
+            try {
+                offset = journal.append(message, message.length);
+            } catch (IOException e) {
+                journalErrors.increment();
+                System.err.println("Error writing journal: " + e.getMessage());
+            }
+        }
+        int topic = message.length > 0 ? message[0] & 0xff : 0;
+        // Un arreglo nuevo por mensaje: jeromq encola el arreglo sin copiarlo
+        byte[] sequenceFrame = new byte[SEQUENCE_FRAME_SIZE];
+        ByteBuffer.wrap(sequenceFrame)
+                .putLong(streamId)
+                .putLong(offset)
+                .putLong(offset >= 0 ? previousOffsets[topic] : -1)
+                .putLong(++topicSequences[topic])
+                .putLong(System.currentTimeMillis());
+        if (offset >= 0) {
+            previousOffsets[topic] = offset;
+        }
+        backend.sendMore(message);
+        backend.send(sequenceFrame, 0);
+        forwardedCounter.increment();
+        forwardTimer.recordSince(start);
+    }
+
+    // Hilo del endpoint de replay (REP). Solicitudes:
+    //   INFO                              -> OK#idDiario#primerOffset#offsetFinal
+    //   REPLAY#desde#hasta#máximo + tópicos -> OK#idDiario#siguiente#offsetFinal#primerOffset + registros
+    // Los registros van en un solo frame binario (ver JournalReplay) y solo incluyen
+    // los mensajes que empiezan con alguno de los tópicos pedidos.
+    private void runReplay(ZContext context) {
+        Socket replay = context.createSocket(SocketType.REP);
+        try {
+            replay.setReceiveTimeOut(100);
+            replay.bind(replayAddress);
+            ByteBuffer records = ByteBuffer.allocate(JournalReplay.MAX_BATCH_BYTES);
             while (!Thread.currentThread().isInterrupted()) {
+                String request = replay.recvStr(0);
+                if (request == null) {
+                    continue;
+                }
+                List<byte[]> topics = new ArrayList<>();
+                while (replay.hasReceiveMore()) {
+                    topics.add(replay.recv(0));
+                }
+                String[] parts = request.split("#");
+                if (parts[0].equals("REPLAY") && parts.length == 4) {
+                    long from;
+                    long until;
+                    int maxRecords;
+                    try {
+                        from = Long.parseLong(parts[1]);
+                        until = Long.parseLong(parts[2]);
+                        maxRecords = Integer.parseInt(parts[3]);
+                    } catch (NumberFormatException e) {
+                        // Una petición mal formada se rechaza sin dejar de atender las demás
+                        replay.send("ERROR#invalid number " + e.getMessage(), 0);
+                        continue;
+                    }
+                    records.clear();
+                    long next = JournalReplay.collect(journal, from, until, maxRecords, topics, records);
+                    replay.sendMore("OK#" + journal.getJournalId() + "#" + next + "#" + journal.getEndOffset() + "#"
+                            + journal.getFirstOffset());
+                    replay.send(Arrays.copyOf(records.array(), records.position()), 0);
+                } else if (parts[0].equals("INFO")) {
+                    replay.send("OK#" + journal.getJournalId() + "#" + journal.getFirstOffset() + "#"
+                            + journal.getEndOffset(), 0);
+                } else {
+                    replay.send("ERROR#invalid request " + request, 0);
+                }
+            }
+        } finally {
+            context.destroySocket(replay);
+        }
+    }
+
+    // Modo REQ/REP: un mensaje y una respuesta a la vez
+    private void runRep(Socket frontend, Socket backend) {
+        MessageDecoder decoder = new MessageDecoder(true);
+
+        while (!Thread.currentThread().isInterrupted()) {
+
+            // Recibir mensaje del cliente (sensor)
+            byte[] reply = frontend.recv(0);
+            if (reply == null) {
+                break;
+            }
+
+            // Enviar el mensaje al backend (suscriptores)
+            forward(backend, reply);
+
+            // Imprimir (muestreado) el mensaje recibido del cliente (sensor)
+            if (receivedLog.sample() && decoder.decode(reply)) {
+                receivedLog.log("Received from client: " + decoder);
+            }
+
+            // Enviar una respuesta al cliente (sensor)
+            frontend.send("nominal", 0);
+        }
+    }
+
+    // Modo asíncrono (ROUTER o PULL): se drenan los mensajes disponibles (hasta
+    // MAX_DRAIN por vuelta) antes de volver a esperar, y los acks se envían agrupados
+    private void runAsync(ZContext context, Socket frontend, Socket backend) {
+        ZMQ.Poller poller = context.createPoller(1);
+        poller.register(frontend, ZMQ.Poller.POLLIN);
+
+        long received = 0;
+        long lastReport = System.currentTimeMillis();
+        long lastAckFlush = lastReport;
+
+        while (!Thread.currentThread().isInterrupted()) {
+            if (poller.poll(100) < 0) {
+                break;
+            }
+
+            boolean idle = !poller.pollin(0);
+            if (!idle) {
+                // Drenar la cola del socket sin bloquear; si quedan mensajes el poll vuelve enseguida
+                int drained = mode == IngestMode.router ? drainRouter(frontend, backend) : drainPull(frontend, backend);
+                received += drained;
+            }
+
+            // Confirmar lo que quede pendiente sin tráfico, o cada ackLingerMs aunque el
+            // tráfico no pare: un sensor lento no espera a completar su lote de acks
+            long now = System.currentTimeMillis();
+            if (idle || now - lastAckFlush >= ackLingerMs) {
+                flushAcks(frontend);
+                lastAckFlush = now;
+            }
+
+            // Reportar el throughput en lugar de imprimir cada mensaje
+            if (now - lastReport >= 1000) {
+                if (received > 0) {
+                    System.out.println("Forwarded " + received + " messages in " + (now - lastReport) + " ms"
+                            + (flowControl != null ? ", " + flowControl.describe() : "")
+                            + (failedAcks > 0 ? ", failed acks " + failedAcks : ""));
+                }
+                received = 0;
+                lastReport = now;
+            }
+        }
+    }
 
-                // Recibir mensaje del cliente (sensor)
-                byte[] reply = frontend.recv(0);
+    // Método para drenar un socket PULL (hasta MAX_DRAIN mensajes)
+    private int drainPull(Socket frontend, Socket backend) {
+        int count = 0;
+        byte[] message;
+        while (count < MAX_DRAIN && (message = frontend.recv(ZMQ.DONTWAIT)) != null) {
+            forward(backend, message);
+            count++;
+        }
+        return count;
+    }
 
-                // Enviar el mensaje al backend (suscriptores)
-                backend.send(reply, 0);
+    // Método para drenar un socket ROUTER. Acepta sensores DEALER (identidad +
+    // mensaje) y sensores REQ (identidad + delimitador vacío + mensaje). Hasta MAX_DRAIN mensajes.
+    private int drainRouter(Socket frontend, Socket backend) {
+        int count = 0;
+        byte[] identity;
+        while (count < MAX_DRAIN && (identity = frontend.recv(ZMQ.DONTWAIT)) != null) {
+            byte[] message = frontend.recv(0);
+            boolean isReq = message.length == 0 && frontend.hasReceiveMore();
+            if (isReq) {
+                message = frontend.recv(0);
+            }
 
-                // Imprimir el mensaje recibido del cliente (sensor)
-                String messageReceived = new String(reply, ZMQ.CHARSET);
-                System.out.println("Received from client: " + messageReceived);
+            // Descartar frames adicionales inesperados
+            while (frontend.hasReceiveMore()) {
+                frontend.recv(0);
+            }
+
+            forward(backend, message);
+            count++;
 
-                // Manejar las solicitudes entrantes de los sensores
+            if (isReq) {
+                // Los sensores REQ necesitan una respuesta por mensaje
+                try {
+                    if (!frontend.send(identity, ZMQ.SNDMORE | ZMQ.DONTWAIT)
+                            || !frontend.send(new byte[0], ZMQ.SNDMORE | ZMQ.DONTWAIT)
+                            || !frontend.send("nominal", ZMQ.DONTWAIT)) {
+                        failedAcks++;
+                    }
+                } catch (ZMQException e) {
+                    failedAcks++; // El sensor se desconectó
+                }
+            } else if (ackBatch > 0) {
+                ByteBuffer key = ByteBuffer.wrap(identity);
+                int[] pending = pendingAcks.computeIfAbsent(key, k -> new int[1]);
+                // Con poco crédito se confirma antes, para que el sensor no quede esperando el lote
+                if (++pending[0] >= Math.min(ackBatch, Math.max(1, credit() / 2))) {
+                    sendAck(frontend, identity, pending[0]);
+                    pending[0] = 0;
+                }
+            }
+        }
+        return count;
+    }
+
+    // Método para enviar los acks pendientes de todos los sensores. Las entradas se
+    // retiran al confirmarse: un sensor desconectado no deja su identidad en el mapa.
+    private void flushAcks(Socket frontend) {
+        for (Map.Entry<ByteBuffer, int[]> entry : pendingAcks.entrySet()) {
+            int[] pending = entry.getValue();
+            if (pending[0] > 0) {
+                sendAck(frontend, entry.getKey().array(), pending[0]);
+            }
+        }
+        pendingAcks.clear();
+    }
 
-                // Enviar una respuesta al cliente (sensor)
-                frontend.send("nominal", 0);
+    // Método para enviar un ack agrupado: "nominal#<mensajes confirmados>#<crédito>"
+    private void sendAck(Socket frontend, byte[] identity, int count) {
+        try {
+            // Sin bloquear: con la cola del sensor llena el ack se pierde y se cuenta
+            if (!frontend.send(identity, ZMQ.SNDMORE | ZMQ.DONTWAIT)
+                    || !frontend.send("nominal#" + count + "#" + credit(), ZMQ.DONTWAIT)) {
+                failedAcks++;
             }
+        } catch (ZMQException e) {
+            failedAcks++; // El sensor se desconectó (identidad sin ruta)
         }
     }
 }
@@ -0,0 +1,308 @@
+package com.javeriana;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+// Definición de la clase BrokerJournal
+// Diario (journal) de solo escritura al final con todo lo que el broker reenvía.
+// Cada mensaje recibe un offset consecutivo; los segmentos son archivos de tamaño
+// fijo mapeados en memoria (<offset base>.journal), así que escribir es copiar
+// bytes a la memoria y el sistema operativo los lleva a disco. Registro:
+// longitud (int) y bytes del mensaje. La longitud se escribe después de los
+// bytes, de modo que una longitud distinta de cero siempre tiene su mensaje
+// completo; al abrir el diario se recorre el último segmento hasta la primera
+// longitud cero.
+//
+// Un único hilo escribe (el del broker) y otros pueden leer a la vez: los
+// lectores solo ven hasta endOffset, que se publica después de cada escritura.
+// Los segmentos más antiguos se borran por tamaño total o por antigüedad.
+public class BrokerJournal implements Closeable {
+
+    private static final String SUFFIX = ".journal";
+    private static final String ID_FILE = "journal.id";
+    // Un registro de cada INDEX_INTERVAL queda en el índice disperso de su segmento
+    private static final int INDEX_INTERVAL = 64;
+    // Cada cuántos mensajes se revisa la retención por tiempo
+    private static final int RETENTION_CHECK_INTERVAL = 4096;
+
+    // Receptor de los mensajes leídos del diario
+    public interface RecordConsumer {
+        // Devuelve false para detener la lectura antes de este mensaje (no cuenta como leído)
+        boolean accept(long offset, ByteBuffer message, int length);
+    }
+
+    private static final class Segment {
+        final File file;
+        final long baseOffset;
+        final MappedByteBuffer buffer;
+        volatile int recordCount;
+        volatile long lastWriteMillis;
+        int position; // Posición de escritura (solo el escritor)
+        int[] index = new int[64]; // Posición de los registros baseOffset + i * INDEX_INTERVAL
+
+        Segment(File file, long baseOffset, MappedByteBuffer buffer) {
+            this.file = file;
+            this.baseOffset = baseOffset;
+            this.buffer = buffer;
+        }
+    }
+
+    private final File directory;
+    private final int segmentBytes;
+    private final long retentionBytes;
+    private final long retentionMillis;
+    private final long syncIntervalMillis;
+    private final long journalId;
+
+    private volatile Segment[] segments; // Del más antiguo al activo
+    private volatile long endOffset; // Offset del siguiente mensaje
+    private long lastSyncMillis;
+    private long appendsSinceRetentionCheck;
+
+    // Constructor del BrokerJournal: abre el diario existente o crea uno nuevo
+    public BrokerJournal(File directory, int segmentBytes, long retentionBytes, long retentionMillis,
+            long syncIntervalMillis) throws IOException {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.retentionBytes = retentionBytes;
+        this.retentionMillis = retentionMillis;
+        this.syncIntervalMillis = syncIntervalMillis;
+        this.lastSyncMillis = System.currentTimeMillis();
+
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Could not create journal directory " + directory);
+        }
+        this.journalId = loadJournalId();
+
+        List<Segment> opened = new ArrayList<>();
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(SUFFIX));
+        if (files != null) {
+            Arrays.sort(files);
+            for (File file : files) {
+                String name = file.getName();
+                long baseOffset = Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+                Segment segment = new Segment(file, baseOffset, map(file, (int) Math.max(file.length(), 8)));
+                recover(segment);
+                opened.add(segment);
+            }
+        }
+        if (opened.isEmpty()) {
+            opened.add(createSegment(0));
+        }
+        this.segments = opened.toArray(new Segment[0]);
+        Segment active = segments[segments.length - 1];
+        this.endOffset = active.baseOffset + active.recordCount;
+    }
+
+    // Identificador del diario: distingue los offsets de distintos brokers
+    public long getJournalId() {
+        return journalId;
+    }
+
+    // Offset del mensaje más antiguo que se conserva
+    public long getFirstOffset() {
+        return segments[0].baseOffset;
+    }
+
+    // Offset que tendrá el siguiente mensaje
+    public long getEndOffset() {
+        return endOffset;
+    }
+
+    // Método para agregar un mensaje; devuelve su offset
+    public long append(byte[] message, int length) throws IOException {
+        Segment active = segments[segments.length - 1];
+        if (active.position + 4 + length > active.buffer.capacity()) {
+            if (active.position == 0) {
+                throw new IOException("Message of " + length + " bytes does not fit in a journal segment");
+            }
+            active = roll(active);
+        }
+        int position = active.position;
+        ByteBuffer buffer = active.buffer;
+        buffer.put(position + 4, message, 0, length);
+        buffer.putInt(position, length); // La longitud al final: el registro queda completo
+
+        int count = active.recordCount;
+        if (count % INDEX_INTERVAL == 0) {
+            int slot = count / INDEX_INTERVAL;
+            if (slot == active.index.length) {
+                active.index = Arrays.copyOf(active.index, slot * 2);
+            }
+            active.index[slot] = position;
+        }
+        active.position = position + 4 + length;
+        active.recordCount = count + 1;
+        long now = System.currentTimeMillis();
+        active.lastWriteMillis = now;
+        long offset = endOffset;
+        endOffset = offset + 1; // Publicar a los lectores
+
+        if (syncIntervalMillis > 0 && now - lastSyncMillis >= syncIntervalMillis) {
+            active.buffer.force();
+            lastSyncMillis = now;
+        }
+        if (++appendsSinceRetentionCheck >= RETENTION_CHECK_INTERVAL) {
+            enforceRetention(now);
+        }
+        return offset;
+    }
+
+    // Método para leer los mensajes desde fromOffset (o el más antiguo conservado)
+    // hasta untilOffset (exclusivo) o hasta que el receptor devuelva false.
+    // Devuelve el offset siguiente al último mensaje aceptado: el que el receptor
+    // rechazó se vuelve a entregar en la siguiente lectura.
+    public long read(long fromOffset, long untilOffset, RecordConsumer consumer) {
+        long end = Math.min(untilOffset, endOffset);
+        Segment[] current = segments;
+        long offset = Math.max(fromOffset, current[0].baseOffset);
+        for (int s = findSegment(current, offset); s < current.length && offset < end; s++) {
+            Segment segment = current[s];
+            long segmentEnd = Math.min(end, segment.baseOffset + segment.recordCount);
+            if (offset < segment.baseOffset) {
+                offset = segment.baseOffset;
+            }
+            ByteBuffer buffer = segment.buffer.duplicate();
+            // Saltar desde la entrada del índice más cercana
+            int relative = (int) (offset - segment.baseOffset);
+            int position = segment.index[relative / INDEX_INTERVAL];
+            for (int i = relative - relative % INDEX_INTERVAL; i < relative; i++) {
+                position += 4 + buffer.getInt(position);
+            }
+            for (; offset < segmentEnd; offset++) {
+                int length = buffer.getInt(position);
+                buffer.limit(position + 4 + length).position(position + 4);
+                boolean more = consumer.accept(offset, buffer, length);
+                buffer.limit(buffer.capacity());
+                position += 4 + length;
+                if (!more) {
+                    return offset;
+                }
+            }
+        }
+        return offset;
+    }
+
+    // Método para borrar los segmentos antiguos que exceden la retención
+    public void enforceRetention(long nowMillis) {
+        appendsSinceRetentionCheck = 0;
+        Segment[] current = segments;
+        long totalBytes = (long) current.length * segmentBytes;
+        int drop = 0;
+        while (drop < current.length - 1) {
+            Segment oldest = current[drop];
+            boolean tooBig = retentionBytes > 0 && totalBytes > retentionBytes;
+            boolean tooOld = retentionMillis > 0 && nowMillis - oldest.lastWriteMillis > retentionMillis;
+            if (!tooBig && !tooOld) {
+                break;
+            }
+            totalBytes -= segmentBytes;
+            drop++;
+        }
+        if (drop == 0) {
+            return;
+        }
+        segments = Arrays.copyOfRange(current, drop, current.length);
+        for (int i = 0; i < drop; i++) {
+            // Los lectores que aún lo usan conservan el mapeo hasta terminar
+            if (!current[i].file.delete()) {
+                System.err.println("Could not delete journal segment " + current[i].file);
+            }
+        }
+        System.out.println("Journal retention removed " + drop + " segment(s), first offset now "
+                + segments[0].baseOffset);
+    }
+
+    @Override
+    public void close() {
+        for (Segment segment : segments) {
+            segment.buffer.force();
+        }
+    }
+
+    private Segment roll(Segment active) throws IOException {
+        active.buffer.force();
+        Segment next = createSegment(active.baseOffset + active.recordCount);
+        Segment[] current = segments;
+        Segment[] rolled = Arrays.copyOf(current, current.length + 1);
+        rolled[current.length] = next;
+        segments = rolled;
+        enforceRetention(System.currentTimeMillis());
+        return next;
+    }
+
+    private Segment createSegment(long baseOffset) throws IOException {
+        File file = new File(directory, String.format("%020d", baseOffset) + SUFFIX);
+        Segment segment = new Segment(file, baseOffset, map(file, segmentBytes));
+        segment.lastWriteMillis = System.currentTimeMillis();
+        return segment;
+    }
+
+    private static MappedByteBuffer map(File file, int size) throws IOException {
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+                FileChannel channel = randomAccessFile.getChannel()) {
+            // El mapeo sigue siendo válido después de cerrar el canal
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+
+    // Método para reconstruir el índice y la posición de escritura de un segmento
+    private static void recover(Segment segment) {
+        ByteBuffer buffer = segment.buffer;
+        int position = 0;
+        int count = 0;
+        while (position + 4 <= buffer.capacity()) {
+            int length = buffer.getInt(position);
+            if (length <= 0 || position + 4 + length > buffer.capacity()) {
+                break;
+            }
+            if (count % INDEX_INTERVAL == 0) {
+                int slot = count / INDEX_INTERVAL;
+                if (slot == segment.index.length) {
+                    segment.index = Arrays.copyOf(segment.index, slot * 2);
+                }
+                segment.index[slot] = position;
+            }
+            position += 4 + length;
+            count++;
+        }
+        segment.position = position;
+        segment.recordCount = count;
+        segment.lastWriteMillis = segment.file.lastModified();
+    }
+
+    // Método para ubicar el segmento que contiene un offset
+    private static int findSegment(Segment[] current, long offset) {
+        int low = 0;
+        int high = current.length - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (current[middle].baseOffset <= offset) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    private long loadJournalId() throws IOException {
+        File file = new File(directory, ID_FILE);
+        if (file.exists()) {
+            return Long.parseLong(new String(Files.readAllBytes(file.toPath())).trim());
+        }
+        long id = new Random().nextLong() & Long.MAX_VALUE;
+        Files.write(file.toPath(), Long.toString(id).getBytes());
+        return id;
+    }
+}
@@ -0,0 +1,137 @@
+package com.javeriana;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+// Definición de la clase BrokerPartitions
+// Brokers del clúster y reparto de los sensores entre ellos con un anillo de
+// hash consistente (por id de sensor o por tipo). Cada broker es una partición
+// "frontend|backend" (o "frontend|backend|replay" si el broker lleva diario)
+// que se publica en el registro (servicio broker.partition) o se da fija con
+// --partitions. Cuando un broker entra o sale se reconstruye el anillo y se
+// actualizan los EndpointWatch entregados: cada sensor pasa al broker que ahora
+// le corresponde y cada monitor se suscribe a los backends que necesita.
+public class BrokerPartitions implements ServiceRegistry.Listener {
+
+    public static final String SERVICE = "broker.partition";
+
+    // Puntos por broker en el anillo: con 160 la carga queda repartida en ±10%
+    private static final int VIRTUAL_NODES = 160;
+
+    private final PartitionKey partitionKey;
+    private volatile HashRing ring = new HashRing(new ArrayList<>(), VIRTUAL_NODES); // Nodos: frontends
+    private volatile Map<String, String> backends = new HashMap<>(); // Frontend -> backend
+    private volatile Map<String, String> replays = new HashMap<>(); // Frontend -> endpoint de replay
+    private final List<Runnable> derivedWatches = new ArrayList<>();
+
+    private BrokerPartitions(PartitionKey partitionKey) {
+        this.partitionKey = partitionKey;
+    }
+
+    // Particiones del registro o, sin registro, la lista fija "frontend|backend,frontend|backend"
+    public static BrokerPartitions of(ServiceRegistry registry, String partitions, PartitionKey partitionKey) {
+        BrokerPartitions brokerPartitions = new BrokerPartitions(partitionKey);
+        if (registry != null) {
+            registry.watch(SERVICE, brokerPartitions);
+        } else {
+            List<String> entries = new ArrayList<>();
+            for (String entry : partitions.split(",")) {
+                if (!entry.trim().isEmpty()) {
+                    entries.add(entry.trim());
+                }
+            }
+            brokerPartitions.endpointsChanged(SERVICE, entries);
+        }
+        return brokerPartitions;
+    }
+
+    // Entrada con que un broker se publica en el registro (replay null si no tiene diario)
+    public static String entry(String frontend, String backend, String replay) {
+        return frontend + "|" + backend + (replay == null ? "" : "|" + replay);
+    }
+
+    @Override
+    public synchronized void endpointsChanged(String service, List<String> entries) {
+        List<String> frontends = new ArrayList<>();
+        Map<String, String> newBackends = new HashMap<>();
+        Map<String, String> newReplays = new HashMap<>();
+        for (String entry : entries) {
+            String[] parts = entry.split("\\|");
+            frontends.add(parts[0]);
+            if (parts.length > 1) {
+                newBackends.put(parts[0], parts[1]);
+            }
+            if (parts.length > 2) {
+                newReplays.put(parts[0], parts[2]);
+            }
+        }
+        backends = newBackends;
+        replays = newReplays;
+        ring = new HashRing(frontends, VIRTUAL_NODES);
+        System.out.println("Broker partitions (" + partitionKey + "): " + entries);
+        for (Runnable derivedWatch : derivedWatches) {
+            derivedWatch.run();
+        }
+    }
+
+    // Anillo actual; sus nodos son los frontends de los brokers
+    public HashRing getRing() {
+        return ring;
+    }
+
+    public PartitionKey getPartitionKey() {
+        return partitionKey;
+    }
+
+    // Frontend del broker de un sensor (null si no hay brokers)
+    public String frontendFor(SensorType sensorType, int sensorId) {
+        return ring.nodeFor(partitionKey.keyOf(sensorType, sensorId));
+    }
+
+    // Broker de un sensor, actualizado cuando el anillo cambia
+    public EndpointWatch watchFrontend(SensorType sensorType, int sensorId) {
+        return derive(() -> {
+            String frontend = frontendFor(sensorType, sensorId);
+            return frontend == null ? new ArrayList<>() : List.of(frontend);
+        });
+    }
+
+    // Backends que necesita el monitor de un tipo: todos si se reparte por id de
+    // sensor, o solo el del broker de su tipo si se reparte por tipo
+    public EndpointWatch watchBackends(SensorType sensorType) {
+        return derive(() -> select(backends, sensorType));
+    }
+
+    // Endpoints de replay de los mismos brokers que watchBackends (los que tienen diario)
+    public EndpointWatch watchReplays(SensorType sensorType) {
+        return derive(() -> select(replays, sensorType));
+    }
+
+    // Endpoints (backends o replays) de los brokers que le corresponden a un tipo
+    private List<String> select(Map<String, String> current, SensorType sensorType) {
+        if (partitionKey == PartitionKey.type) {
+            String endpoint = current.get(frontendFor(sensorType, 0));
+            return endpoint == null ? new ArrayList<>() : List.of(endpoint);
+        }
+        HashRing currentRing = ring;
+        List<String> all = new ArrayList<>();
+        for (int i = 0; i < currentRing.size(); i++) {
+            String endpoint = current.get(currentRing.getNode(i));
+            if (endpoint != null) {
+                all.add(endpoint);
+            }
+        }
+        return all;
+    }
+
+    private synchronized EndpointWatch derive(Supplier<List<String>> endpoints) {
+        EndpointWatch watch = EndpointWatch.fixed();
+        Runnable update = () -> watch.update(endpoints.get());
+        update.run();
+        derivedWatches.add(update);
+        return watch;
+    }
+}
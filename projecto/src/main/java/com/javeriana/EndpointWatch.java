@@ -0,0 +1,111 @@
+package com.javeriana;
+
+import org.zeromq.ZMQ;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Definición de la clase EndpointWatch
+// Lista de endpoints de un servicio que puede cambiar mientras el componente
+// corre: la actualiza el registro (desde su propio hilo) o el dueño con update().
+// Como los sockets de ZeroMQ no son seguros entre hilos, el socket no se toca
+// aquí: el hilo dueño del socket llama a Connection.sync() en su ciclo y solo
+// entonces se conecta a los endpoints nuevos y se desconecta de los retirados.
+public class EndpointWatch implements ServiceRegistry.Listener {
+
+    private volatile List<String> endpoints;
+    private volatile long version;
+
+    private EndpointWatch(List<String> endpoints) {
+        this.endpoints = endpoints;
+    }
+
+    // Endpoints fijos (sin registro); el dueño puede cambiarlos con update()
+    public static EndpointWatch fixed(String... endpoints) {
+        return new EndpointWatch(new ArrayList<>(Arrays.asList(endpoints)));
+    }
+
+    // Endpoints de un servicio del registro, o el endpoint por defecto si no hay registro
+    public static EndpointWatch of(ServiceRegistry registry, String service, String fallback) {
+        if (registry == null) {
+            return fixed(fallback);
+        }
+        EndpointWatch watch = new EndpointWatch(new ArrayList<>());
+        registry.watch(service, watch);
+        return watch;
+    }
+
+    @Override
+    public void endpointsChanged(String service, List<String> endpoints) {
+        update(endpoints);
+    }
+
+    // Método para reemplazar la lista de endpoints
+    public synchronized void update(List<String> endpoints) {
+        if (!endpoints.equals(this.endpoints)) {
+            this.endpoints = new ArrayList<>(endpoints);
+            version++;
+        }
+    }
+
+    // Endpoints actuales
+    public List<String> getEndpoints() {
+        return endpoints;
+    }
+
+    // Primer endpoint (null si no hay ninguno)
+    public String first() {
+        List<String> current = endpoints;
+        return current.isEmpty() ? null : current.get(0);
+    }
+
+    // Método para asociar un socket; no se conecta hasta el primer sync()
+    public Connection attach(ZMQ.Socket socket) {
+        return new Connection(socket);
+    }
+
+    // Conexiones de un socket a los endpoints del servicio. Solo la usa el hilo dueño del socket.
+    public final class Connection {
+        private final ZMQ.Socket socket;
+        private final List<String> connected = new ArrayList<>();
+        private long syncedVersion = -1;
+
+        private Connection(ZMQ.Socket socket) {
+            this.socket = socket;
+        }
+
+        // Método para aplicar los cambios pendientes. Devuelve true si hubo cambios.
+        public boolean sync() {
+            long current = version;
+            if (current == syncedVersion) {
+                return false;
+            }
+            List<String> target = endpoints;
+            syncedVersion = current;
+            for (int i = connected.size() - 1; i >= 0; i--) {
+                String endpoint = connected.get(i);
+                if (!target.contains(endpoint)) {
+                    socket.disconnect(endpoint);
+                    connected.remove(i);
+                }
+            }
+            for (String endpoint : target) {
+                if (!connected.contains(endpoint)) {
+                    socket.connect(endpoint);
+                    connected.add(endpoint);
+                }
+            }
+            return true;
+        }
+
+        // Hay al menos un endpoint conectado
+        public boolean isConnected() {
+            return !connected.isEmpty();
+        }
+
+        public List<String> getConnected() {
+            return connected;
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package com.javeriana;
+
+import org.zeromq.SocketType;
+import org.zeromq.ZContext;
+import org.zeromq.ZMQ.Socket;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Definición de la clase FlowControl
+// Control de flujo del broker hacia los sensores. El PUB del broker descarta en
+// silencio lo que un monitor lento no alcanza a leer, así que el broker escucha
+// los latidos de los monitores (retraso y mensajes perdidos por su SUB) y ajusta
+// el crédito que anuncia en los acks: cuántos mensajes sin confirmar puede tener
+// cada sensor. El crédito es uno solo para todos los sensores (el retraso de los
+// monitores no se puede atribuir a un sensor en particular). Con AIMD: si algún
+// monitor se atrasa más de maxLagMs o pierde mensajes el crédito se divide a la
+// mitad (una vez cada DECREASE_INTERVAL_MS), y mientras todos van al día sube de a
+// poco hasta maxCredit. Así la sobrecarga se ve como una tasa menor en los
+// sensores y no como medidas perdidas.
+public class FlowControl {
+
+    // Intervalo entre evaluaciones y tiempo mínimo entre dos reducciones del crédito
+    private static final long EVALUATE_INTERVAL_MS = 100;
+    private static final long DECREASE_INTERVAL_MS = 300;
+    // Un monitor sin latidos por este tiempo deja de contar
+    private static final long STALE_MS = 3000;
+
+    // Último estado informado por un monitor. Lo escribe el hilo del control de flujo
+    // y lo leen el reporte y las métricas del broker desde otros hilos.
+    private static final class Subscriber {
+        volatile long queueDepth;
+        volatile long lagMillis;
+        volatile long received;
+        volatile long dropped;
+        long droppedAtEvaluation; // Solo el hilo del control de flujo
+        volatile long updatedMillis;
+    }
+
+    private final List<EndpointWatch> heartbeats;
+    private final int maxCredit;
+    private final int minCredit;
+    private final long maxLagMs;
+    private volatile int credit;
+    private final Map<String, Subscriber> subscribers = new ConcurrentHashMap<>();
+
+    // Constructor del FlowControl
+    public FlowControl(List<EndpointWatch> heartbeats, int maxCredit, int minCredit, long maxLagMs) {
+        this.heartbeats = heartbeats;
+        this.maxCredit = Math.max(1, maxCredit);
+        this.minCredit = Math.max(1, Math.min(minCredit, this.maxCredit));
+        this.maxLagMs = maxLagMs;
+        this.credit = this.maxCredit;
+    }
+
+    // Latidos de los monitores de todos los tipos: los del registro o la lista fija
+    public static List<EndpointWatch> heartbeatWatches(ServiceRegistry registry, String fixedEndpoints) {
+        List<EndpointWatch> watches = new ArrayList<>();
+        if (registry != null) {
+            for (SensorType sensorType : SensorType.values()) {
+                // Todos los miembros del grupo de cada tipo (un monitor solo es un grupo de uno)
+                watches.add(MonitorGroup.watchHeartbeats(registry, sensorType));
+            }
+        } else if (fixedEndpoints != null) {
+            watches.add(EndpointWatch.fixed(fixedEndpoints.split(",")));
+        }
+        return watches;
+    }
+
+    // Crédito actual, el mismo para todos los sensores: mensajes sin confirmar que puede tener cada uno
+    public int getCredit() {
+        return credit;
+    }
+
+    // Mensajes que los monitores informan como perdidos por sus SUB
+    public long getDropped() {
+        long dropped = 0;
+        for (Subscriber subscriber : subscribers.values()) {
+            dropped += subscriber.dropped;
+        }
+        return dropped;
+    }
+
+    // Resumen por monitor para el reporte del broker
+    public String describe() {
+        StringBuilder description = new StringBuilder("credit " + credit);
+        long now = System.currentTimeMillis();
+        for (Map.Entry<String, Subscriber> entry : subscribers.entrySet()) {
+            Subscriber subscriber = entry.getValue();
+            description.append(", ").append(entry.getKey());
+            if (now - subscriber.updatedMillis > STALE_MS) {
+                description.append(" silent");
+                continue;
+            }
+            description.append(" lag ").append(subscriber.lagMillis).append(" ms queue ").append(subscriber.queueDepth)
+                    .append(" received ").append(subscriber.received).append(" dropped ").append(subscriber.dropped);
+        }
+        return description.toString();
+    }
+
+    // Hilo del control de flujo: lee los latidos y recalcula el crédito
+    public void run(ZContext context) {
+        Socket subscriber = context.createSocket(SocketType.SUB);
+        try {
+            subscriber.setReceiveTimeOut((int) EVALUATE_INTERVAL_MS);
+            subscriber.subscribe("hb#");
+            List<EndpointWatch.Connection> connections = new ArrayList<>();
+            for (EndpointWatch watch : heartbeats) {
+                connections.add(watch.attach(subscriber));
+            }
+            long nextEvaluation = 0;
+            long nextDecrease = 0;
+            while (!Thread.currentThread().isInterrupted()) {
+                for (EndpointWatch.Connection connection : connections) {
+                    connection.sync();
+                }
+                String heartbeat = subscriber.recvStr(0);
+                long now = System.currentTimeMillis();
+                if (heartbeat != null) {
+                    update(heartbeat, now);
+                }
+                if (now < nextEvaluation) {
+                    continue;
+                }
+                nextEvaluation = now + EVALUATE_INTERVAL_MS;
+                if (isOverloaded(now)) {
+                    if (now >= nextDecrease) {
+                        credit = Math.max(minCredit, credit / 2);
+                        nextDecrease = now + DECREASE_INTERVAL_MS;
+                    }
+                } else {
+                    credit = Math.min(maxCredit, credit + Math.max(1, maxCredit / 128));
+                }
+            }
+        } finally {
+            context.destroySocket(subscriber);
+        }
+    }
+
+    // Latido: hb#monitor#secuencia#timestamp#cola#retrasoMs#tasa#recibidos#perdidos#retrasoBrokerMs, donde
+    // monitor es el nombre del miembro de su grupo (ph, ph.1...): cada uno se sigue aparte
+    private void update(String heartbeat, long now) {
+        String[] parts = heartbeat.split("#");
+        if (parts.length < 10) {
+            return; // Monitor sin contadores de flujo
+        }
+        try {
+            Subscriber subscriber = subscribers.computeIfAbsent(parts[1], name -> new Subscriber());
+            subscriber.queueDepth = Long.parseLong(parts[4]);
+            subscriber.lagMillis = Math.max(Long.parseLong(parts[5]), Long.parseLong(parts[9]));
+            subscriber.received = Long.parseLong(parts[7]);
+            subscriber.dropped = Long.parseLong(parts[8]);
+            subscriber.updatedMillis = now;
+        } catch (NumberFormatException e) {
+            System.out.println("Invalid heartbeat: " + heartbeat);
+        }
+    }
+
+    // Algún monitor activo se atrasa o perdió mensajes desde la última evaluación
+    private boolean isOverloaded(long now) {
+        boolean overloaded = false;
+        for (Subscriber subscriber : subscribers.values()) {
+            if (now - subscriber.updatedMillis > STALE_MS) {
+                continue;
+            }
+            if (subscriber.lagMillis > maxLagMs || subscriber.dropped > subscriber.droppedAtEvaluation) {
+                overloaded = true;
+            }
+            subscriber.droppedAtEvaluation = subscriber.dropped;
+        }
+        return overloaded;
+    }
+}
@@ -0,0 +1,96 @@
+package com.javeriana;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+// Definición de la clase HashRing
+// Anillo de hash consistente: cada nodo ocupa varios puntos (nodos virtuales) en
+// un anillo de 64 bits y una clave pertenece al primer punto que encuentra en
+// sentido horario. Cuando un nodo entra o sale solo cambian de dueño las claves
+// de sus puntos (alrededor de 1/N del total), el resto sigue en el mismo nodo.
+// Es inmutable: ante un cambio de nodos se construye un anillo nuevo.
+public class HashRing {
+
+    private final String[] nodes;
+    private final long[] points; // Puntos ordenados
+    private final int[] owners; // Índice del nodo de cada punto
+
+    // Constructor del HashRing
+    public HashRing(List<String> nodes, int virtualNodes) {
+        this.nodes = nodes.toArray(new String[0]);
+        int count = this.nodes.length * virtualNodes;
+        long[] unsortedPoints = new long[count];
+        for (int node = 0, p = 0; node < this.nodes.length; node++) {
+            for (int v = 0; v < virtualNodes; v++, p++) {
+                unsortedPoints[p] = hash(this.nodes[node] + "#" + v);
+            }
+        }
+        // Ordenar los puntos conservando su dueño
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compareUnsigned(unsortedPoints[a], unsortedPoints[b]));
+        this.points = new long[count];
+        this.owners = new int[count];
+        for (int i = 0; i < count; i++) {
+            points[i] = unsortedPoints[order[i]];
+            owners[i] = order[i] / virtualNodes;
+        }
+    }
+
+    // Método para obtener el índice del nodo dueño de una clave (-1 si el anillo está vacío)
+    public int indexFor(long key) {
+        if (points.length == 0) {
+            return -1;
+        }
+        long hash = mix(key);
+        // Búsqueda binaria del primer punto >= hash (sin signo)
+        int low = 0;
+        int high = points.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (Long.compareUnsigned(points[middle], hash) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return owners[low == points.length ? 0 : low];
+    }
+
+    // Método para obtener el nodo dueño de una clave (null si el anillo está vacío)
+    public String nodeFor(long key) {
+        int index = indexFor(key);
+        return index < 0 ? null : nodes[index];
+    }
+
+    public String getNode(int index) {
+        return nodes[index];
+    }
+
+    public int size() {
+        return nodes.length;
+    }
+
+    // Hash de 64 bits de un nombre de nodo (FNV-1a y mezcla final)
+    private static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    // Mezcla final de MurmurHash3: reparte claves consecutivas (ids de sensor) por todo el anillo
+    private static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+}
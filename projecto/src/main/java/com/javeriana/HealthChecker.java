@@ -1,22 +1,46 @@
 package com.javeriana;
 
+import org.kohsuke.args4j.CmdLineParser;
+import org.kohsuke.args4j.Option;
 import org.zeromq.SocketType;
 import org.zeromq.ZContext;
 import org.zeromq.ZMQ;
 import org.zeromq.ZMQ.Socket;
-import org.zeromq.ZMQException;
 
+import java.io.File;
 import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 // Definición de la clase HealthChecker
+// Dos formas de vigilar a los monitores:
+//   - heartbeat (por defecto): se suscribe a los latidos que cada monitor publica
+//     desde su propio hilo y aplica un detector phi accrual. No cuesta una ida y
+//     vuelta por monitor y los latidos traen la carga (cola, retraso, tasa).
+//   - probe: cada ronda envía una sonda por monitor en un socket DEALER que se
+//     mantiene abierto, y el plazo de cada respuesta se guarda en una rueda de
+//     temporizadores. Un monitor se considera caído tras --failures sondas
+//     seguidas sin respuesta a tiempo.
+// En ambos casos el tiempo de detección se mide y se reporta.
+//
+// Con --groups un tipo tiene varios monitores (MonitorGroup): se vigila cada
+// miembro por separado, un miembro caído se retira del grupo (los demás toman sus
+// sensores) y se reinicia con su mismo número, y el reporte resume cada grupo.
 public class HealthChecker {
 
-    private static final int CHECK_INTERVAL = 5000; // Intervalo en milisegundos
+    // Forma de vigilar a los monitores
+    public enum CheckMode {
+        heartbeat, probe
+    }
 
-    private final ZContext context;// Contexto ZeroMQ
-    private final Map<SensorType, Socket> healthCheckSockets;// Mapa de sockets de salud
+    // El REP del monitor espera el delimitador vacío que agregaría un REQ
+    private static final byte[] EMPTY_DELIMITER = new byte[0];
 
     private static final Map<SensorType, String> MONITOR_BASE_ADDRESSES = new HashMap<>();
 
@@ -27,16 +51,123 @@ public class HealthChecker {
         MONITOR_BASE_ADDRESSES.put(SensorType.oxygeno, "tcp://10.43.101.124");
     }
 
+    // Definición de opciones de línea de comandos usando args4j
+    @Option(name = "-m", aliases = "--mode", usage = "Liveness check: heartbeat or probe")
+    private CheckMode mode = CheckMode.heartbeat;
+
+    @Option(name = "--phi", usage = "Phi accrual threshold to declare a monitor down (heartbeat mode)")
+    private double phiThreshold = 8;
+
+    @Option(name = "--heartbeatMs", usage = "Expected milliseconds between monitor heartbeats")
+    private long heartbeatMs = 100;
+
+    @Option(name = "--minStdDevMs", usage = "Minimum standard deviation of heartbeat intervals for the detector")
+    private double minStdDevMs = 50;
+
+    @Option(name = "--interval", usage = "Milliseconds between probe rounds")
+    private long intervalMs = 250;
+
+    @Option(name = "--timeout", usage = "Milliseconds a monitor has to answer a probe")
+    private long timeoutMs = 200;
+
+    @Option(name = "--failures", usage = "Consecutive missed probes before a monitor is declared down")
+    private int failures = 2;
+
+    @Option(name = "--restartGraceMs", usage = "Milliseconds to wait for a restarted monitor before probing it again")
+    private long restartGraceMs = 15000;
+
+    @Option(name = "--reportInterval", usage = "Milliseconds between status reports")
+    private long reportIntervalMs = 5000;
+
+    @Option(name = "--temperatura", usage = "Health check endpoint of the temperatura monitor")
+    private String temperaturaAddress = MONITOR_BASE_ADDRESSES.get(SensorType.temperatura) + ":"
+            + getHealthCheckPort(SensorType.temperatura);
+
+    @Option(name = "--ph", usage = "Health check endpoint of the ph monitor")
+    private String phAddress = MONITOR_BASE_ADDRESSES.get(SensorType.ph) + ":" + getHealthCheckPort(SensorType.ph);
+
+    @Option(name = "--oxygeno", usage = "Health check endpoint of the oxygeno monitor")
+    private String oxygenoAddress = MONITOR_BASE_ADDRESSES.get(SensorType.oxygeno) + ":"
+            + getHealthCheckPort(SensorType.oxygeno);
+
+    @Option(name = "--restartHost", usage = "Base address of the machine where failed monitors are restarted")
+    private String restartHost = "tcp://10.43.101.124"; // Ip de la maquina donde se esta corriendo el health checker
+
+    @Option(name = "--standby", usage = "Promote the warm standby monitor on the restart host instead of a cold start")
+    private boolean promoteStandby;
+
+    @Option(name = "--monitorArgs", usage = "Extra arguments for started monitors, e.g. \"--broker tcp://host:5560\"")
+    private String monitorArgs = "";
+
+    @Option(name = "--registry", usage = "Service registry endpoint used to find monitors instead of fixed addresses")
+    private String registryAddress;
+
+    @Option(name = "--noRestart", usage = "Only report failures, do not start replacement monitors")
+    private boolean noRestart;
+
+    @Option(name = "--groups", usage = "Monitors per sensor type, e.g. ph=3,temperatura=2 (1 for unlisted types)")
+    private String groups = "";
+
+    // Estado de la sonda de un monitor
+    private static final class MonitorProbe {
+        final SensorType sensorType;
+        final int member; // Número en el grupo del tipo (0 sin grupo)
+        final String name; // ph, ph.1...
+        String address;
+        EndpointWatch endpoints; // Chequeo de salud (probe) o latidos (heartbeat)
+        EndpointWatch.Connection connection;
+        Socket socket;
+        long probeSeq; // Número de la última sonda enviada
+        long sentNanos;
+        boolean answered = true;
+        int misses;
+        boolean up;
+        boolean failed; // Falla ya declarada (evita reiniciar dos veces)
+        long lastReplyMillis;
+        long graceUntilMillis;
+        final LatencyHistogram rtt = new LatencyHistogram();
+        LatencyHistogram lastReport = new LatencyHistogram();
+
+        // Modo heartbeat: detector y la última carga informada por el monitor
+        PhiAccrualDetector detector;
+        long heartbeatSeq;
+        long missedHeartbeats;
+        long queueDepth;
+        long lagMillis;
+        long ratePerSecond;
+        long droppedMessages; // Perdidos por el SUB del monitor (monitores con control de flujo)
+        long brokerLagMillis;
+
+        MonitorProbe(SensorType sensorType, int member, String address) {
+            this.sensorType = sensorType;
+            this.member = member;
+            this.name = MonitorGroup.memberName(sensorType, member);
+            this.address = address;
+        }
+    }
+
+    private final ZContext context;// Contexto ZeroMQ
+    private final List<MonitorProbe> probes = new ArrayList<>();
+    private final Map<SensorType, Integer> groupSizes = new HashMap<>();
+    private ServiceRegistry registry; // null: direcciones fijas
+
     // Constructor del HealthChecker
     public HealthChecker(ZContext context) {
         this.context = context;
-        this.healthCheckSockets = createHealthCheckSockets(context);
     }
 
     // Método principal para ejecutar el HealthChecker
     public static void main(String[] args) {
         try (ZContext context = new ZContext()) {
             HealthChecker healthChecker = new HealthChecker(context);
+            CmdLineParser parser = new CmdLineParser(healthChecker);
+            try {
+                parser.parseArgument(args);
+            } catch (Exception e) {
+                System.err.println(e.getMessage());
+                parser.printUsage(System.err);
+                return;
+            }
 
             // Iniciar el proceso de comprobación de salud
             healthChecker.startHealthCheck();
@@ -48,223 +179,578 @@ public class HealthChecker {
     }
 
     public void startHealthCheck() {
+        parseGroups();
+        addProbes(SensorType.temperatura, temperaturaAddress);
+        addProbes(SensorType.ph, phAddress);
+        addProbes(SensorType.oxygeno, oxygenoAddress);
+
+        // Con registro se vigilan los endpoints que publica cada monitor; sin él,
+        // las direcciones fijas (que cambian al reiniciar un monitor en restartHost)
+        registry = ServiceRegistry.connect(registryAddress);
+        String kind = mode == CheckMode.heartbeat ? "heartbeat" : "health";
+        for (MonitorProbe probe : probes) {
+            String fallback = mode == CheckMode.heartbeat
+                    ? heartbeatAddress(probe.address, probe.sensorType, probe.member) : probe.address;
+            probe.endpoints = EndpointWatch.of(registry,
+                    ServiceRegistry.monitorService(kind, probe.sensorType, probe.member), fallback);
+        }
+        try {
+            if (mode == CheckMode.heartbeat) {
+                runHeartbeats();
+            } else {
+                runProbes();
+            }
+        } finally {
+            if (registry != null) {
+                registry.close();
+            }
+        }
+    }
+
+    // Método para leer --groups ("ph=3,temperatura=2")
+    private void parseGroups() {
+        for (String group : groups.split(",")) {
+            if (group.trim().isEmpty()) {
+                continue;
+            }
+            String[] parts = group.trim().split("=");
+            int size = parts.length == 2 ? Integer.parseInt(parts[1].trim()) : 0;
+            if (size < 1) {
+                throw new IllegalArgumentException("Invalid monitor group " + group);
+            }
+            groupSizes.put(SensorType.valueOf(parts[0].trim()), size);
+        }
+    }
+
+    private int groupSize(SensorType sensorType) {
+        return groupSizes.getOrDefault(sensorType, 1);
+    }
+
+    // Método para agregar una sonda por miembro del grupo de un tipo. Sin registro,
+    // el miembro n está en la máquina del tipo, en sus puertos más n * PORT_STEP.
+    private void addProbes(SensorType sensorType, String address) {
+        String host = address.substring(0, address.lastIndexOf(':'));
+        for (int member = 0; member < groupSize(sensorType); member++) {
+            probes.add(new MonitorProbe(sensorType, member, member == 0 ? address
+                    : host + ":" + MonitorGroup.port(getHealthCheckPort(sensorType), member)));
+        }
+    }
+
+    // Método para aplicar los cambios de endpoints de un monitor en su socket
+    private void syncEndpoints(MonitorProbe probe) {
+        if (!probe.connection.sync()) {
+            return;
+        }
+        String address = probe.connection.isConnected() ? String.join(",", probe.connection.getConnected())
+                : "(not registered)";
+        if (!address.equals(probe.address)) {
+            System.out.println(probe.name + " Monitor endpoints: " + address);
+            probe.address = address;
+        }
+    }
+
+    // Modo heartbeat: un solo SUB conectado a los latidos de todos los monitores
+    private void runHeartbeats() {
+        Socket subscriber = context.createSocket(SocketType.SUB);
         try {
-            // Crear un Poller para verificar eventos de socket
-            ZMQ.Poller poller = createPoller();
+            subscriber.setReceiveTimeOut(20);
+            subscriber.subscribe("hb#".getBytes(ZMQ.CHARSET));
+            long now = System.currentTimeMillis();
+            for (MonitorProbe probe : probes) {
+                probe.detector = new PhiAccrualDetector(100, heartbeatMs, minStdDevMs);
+                probe.connection = probe.endpoints.attach(subscriber);
+                syncEndpoints(probe);
+                // Un monitor que nunca envía latidos se declara caído al cumplirse la espera
+                probe.graceUntilMillis = now + restartGraceMs;
+            }
+            System.out.println("Watching heartbeats of " + probes.size() + " monitors (phi threshold "
+                    + phiThreshold + ")");
 
+            long nextReport = now + reportIntervalMs;
             while (!Thread.currentThread().isInterrupted()) {
-                // Enviar solicitudes de comprobación de salud para cada tipo de monitor
-                for (Map.Entry<SensorType, Socket> entry : healthCheckSockets.entrySet()) {
-                    checkMonitor(entry.getValue(), entry.getKey());
+                String heartbeat = subscriber.recvStr(0);
+                now = System.currentTimeMillis();
+                if (heartbeat != null) {
+                    processHeartbeat(heartbeat, now);
                 }
-
-                // Utilizar el Poller para esperar una respuesta o un tiempo de espera (TIMEOUT)
-                if (poller.poll(5000) > 0) {
-                    // Si hay una respuesta, procesarla
-                    for (int i = 0; i < poller.getSize(); i++) {
-                        if (poller.pollin(i)) {
-                            Socket socket = poller.getSocket(i);
-                            SensorType sensorType = getSensorTypeBySocket(healthCheckSockets, socket);
-
-                            // Verificar si el socket está listo para recibir
-                            if (socket.getEvents() == ZMQ.Poller.POLLIN) {
-                                processMonitorResponse(socket, sensorType);
-                            } else {
-                                System.out.println("Socket not ready for receiving");
-                            }
-                        }
-                    }
-                } else {
-                    // Manejar el caso cuando no hay respuesta dentro del tiempo especificado
-                    System.out.println("Health check timed out");
+                for (MonitorProbe probe : probes) {
+                    syncEndpoints(probe);
+                    checkHeartbeat(probe, now);
                 }
-
-                // Esperar al siguiente intervalo antes de la próxima comprobación
-                try {
-                    Thread.sleep(CHECK_INTERVAL);
-                } catch (InterruptedException e) {
-                    // Imprimir un mensaje cuando se interrumpe el hilo
-                    System.out.println("Health check thread interrupted");
-                    Thread.currentThread().interrupt(); // Re-interrumpir el hilo
+                if (now >= nextReport) {
+                    reportHeartbeats(now);
+                    nextReport = now + reportIntervalMs;
                 }
-
-                // Actualizar las direcciones de los monitores
-                updateMonitorAddresses();
-                // Cerrar el poller y crear uno nuevo con las direcciones actualizadas
-                poller.close();
-                poller = createPoller();
             }
         } finally {
-            // Cerrar los sockets de comprobación de salud
-            healthCheckSockets.values().forEach(Socket::close);
+            context.destroySocket(subscriber);
         }
     }
 
-    // Método para crear sockets de comprobación de salud para cada tipo de sensor
-    private Map<SensorType, Socket> createHealthCheckSockets(ZContext context) {
-        Map<SensorType, Socket> healthCheckSockets = new HashMap<>();
-
-        for (Map.Entry<SensorType, String> entry : MONITOR_BASE_ADDRESSES.entrySet()) {
-            SensorType sensorType = entry.getKey();
-            String baseAddress = entry.getValue();
+    // Método para procesar un latido hb#monitor#secuencia#timestamp#cola#retraso#tasa, con
+    // #recibidos#perdidos#retrasoBrokerMs al final en los monitores con control de flujo.
+    // monitor es el tipo o, en un grupo, el nombre del miembro (ph.1).
+    private void processHeartbeat(String heartbeat, long now) {
+        String[] parts = heartbeat.split("#");
+        if (parts.length != 7 && parts.length != 10) {
+            System.out.println("Invalid heartbeat: " + heartbeat);
+            return;
+        }
+        MonitorProbe probe;
+        long sequence;
+        try {
+            probe = probeOf(parts[1]);
+            sequence = Long.parseLong(parts[2]);
+            probe.queueDepth = Long.parseLong(parts[4]);
+            probe.lagMillis = Long.parseLong(parts[5]);
+            probe.ratePerSecond = Long.parseLong(parts[6]);
+            if (parts.length == 10) {
+                probe.droppedMessages = Long.parseLong(parts[8]);
+                probe.brokerLagMillis = Long.parseLong(parts[9]);
+            }
+        } catch (IllegalArgumentException e) {
+            System.out.println("Invalid heartbeat: " + heartbeat);
+            return;
+        }
+        if (sequence > probe.heartbeatSeq + 1 && probe.heartbeatSeq > 0) {
+            probe.missedHeartbeats += sequence - probe.heartbeatSeq - 1;
+        }
+        probe.heartbeatSeq = sequence;
+        probe.detector.heartbeat(now);
+        probe.lastReplyMillis = now;
+        probe.failed = false;
+        if (!probe.up) {
+            probe.up = true;
+            System.out.println(probe.name + " Monitor is up at " + probe.address);
+        }
+    }
 
-            int healthCheckPort = getHealthCheckPort(sensorType);
-            String address = baseAddress + ":" + healthCheckPort;
+    // Método para revisar si un monitor dejó de enviar latidos
+    private void checkHeartbeat(MonitorProbe probe, long now) {
+        if (probe.failed || probe.lastReplyMillis == 0 && now < probe.graceUntilMillis) {
+            return; // Esperando el primer latido del monitor (o de su reemplazo)
+        }
+        double phi = probe.detector.phi(now);
+        if (probe.lastReplyMillis != 0 && phi < phiThreshold) {
+            return;
+        }
+        String detection = probe.lastReplyMillis == 0 ? "never sent a heartbeat"
+                : String.format("phi %.1f, detected %d ms after its last heartbeat", phi, now - probe.lastReplyMillis);
+        if (declareFailure(probe, now, detection)) {
+            // El socket se reconecta al reemplazo en el siguiente syncEndpoints
+            probe.detector.reset(heartbeatMs);
+            probe.heartbeatSeq = 0;
+            probe.lastReplyMillis = 0;
+        }
+    }
 
-            Socket socket = context.createSocket(SocketType.REQ);
-            socket.connect(address);
-            healthCheckSockets.put(sensorType, socket);
+    // Método para imprimir el estado y la carga informada por cada monitor
+    private void reportHeartbeats(long now) {
+        for (MonitorProbe probe : probes) {
+            if (probe.lastReplyMillis == 0) {
+                System.out.println(probe.name + " Monitor DOWN at " + probe.address + ": no heartbeats");
+                continue;
+            }
+            System.out.println(String.format(
+                    "%s Monitor %s at %s: heartbeat %d (%d missed), every %.0f ms, phi %.2f, queue %d, lag %d ms,"
+                            + " %d msgs/s, broker lag %d ms, %d messages dropped",
+                    probe.name, probe.up ? "UP" : "DOWN", probe.address, probe.heartbeatSeq,
+                    probe.missedHeartbeats, probe.detector.getMeanMillis(), probe.detector.phi(now),
+                    probe.queueDepth, probe.lagMillis, probe.ratePerSecond, probe.brokerLagMillis,
+                    probe.droppedMessages));
         }
+        for (SensorType sensorType : groupSizes.keySet()) {
+            reportGroup(sensorType);
+        }
+    }
 
-        return healthCheckSockets;
+    // Método para resumir un grupo: miembros arriba y carga total y máxima (en modo
+    // probe no hay carga). Un miembro con mucho más que la media indica sensores
+    // calientes, que el anillo no reparte más allá de uno por miembro.
+    private void reportGroup(SensorType sensorType) {
+        int up = 0;
+        long rate = 0;
+        long maxRate = 0;
+        long maxLag = 0;
+        for (MonitorProbe probe : probes) {
+            if (probe.sensorType == sensorType && probe.up) {
+                up++;
+                rate += probe.ratePerSecond;
+                maxRate = Math.max(maxRate, probe.ratePerSecond);
+                maxLag = Math.max(maxLag, probe.lagMillis);
+            }
+        }
+        String load = mode == CheckMode.heartbeat ? String.format(", %d msgs/s (busiest member %d), max lag %d ms",
+                rate, maxRate, maxLag) : "";
+        System.out.println(sensorType + " group: " + up + " of " + groupSize(sensorType) + " members up" + load);
     }
 
-    // Método para realizar la comprobación de salud para un monitor específico
-    private void checkMonitor(Socket healthCheckSocket, SensorType sensorType) {
-        // Antes de enviar una solicitud de comprobación de salud
-        System.out.println("Health Check Socket State before send: " + healthCheckSocket.getEvents());
+    private MonitorProbe probeOf(String name) {
+        for (MonitorProbe probe : probes) {
+            if (probe.name.equals(name)) {
+                return probe;
+            }
+        }
+        throw new IllegalArgumentException("Unknown monitor " + name);
+    }
 
-        boolean isUpdateNeeded = false;
+    // Dirección de los latidos: la misma máquina que el chequeo de salud
+    private static String heartbeatAddress(String healthCheckAddress, SensorType sensorType, int member) {
+        return healthCheckAddress.substring(0, healthCheckAddress.lastIndexOf(':')) + ":"
+                + MonitorGroup.port(Monitor.getHeartbeatPort(sensorType), member);
+    }
 
+    // Modo probe: sondas en paralelo con plazos en una rueda de temporizadores
+    private void runProbes() {
+        // Una sonda debe vencer antes de que salga la siguiente
+        timeoutMs = Math.min(timeoutMs, intervalMs);
+        ZMQ.Poller poller = context.createPoller(probes.size());
         try {
-            // Enviar una solicitud de comprobación de salud para un tipo específico de
-            // monitor
-            healthCheckSocket.send(sensorType.toString().getBytes(ZMQ.CHARSET), 0);
-            System.out.println("Health Check Socket State after send: " + healthCheckSocket.getEvents());
-
-            // Esperar un breve período antes de enviar la próxima solicitud de comprobación
-            // de salud
-            try {
-                Thread.sleep(100);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
+            // Los sockets y el poller se crean una sola vez
+            for (MonitorProbe probe : probes) {
+                probe.socket = createProbeSocket();
+                probe.connection = probe.endpoints.attach(probe.socket);
+                syncEndpoints(probe);
+                poller.register(probe.socket, ZMQ.Poller.POLLIN);
             }
+            System.out.println("Probing " + probes.size() + " monitors every " + intervalMs + " ms (timeout "
+                    + timeoutMs + " ms, " + failures + " misses to fail)");
 
-            /// Verificar si no hay respuesta dentro del tiempo especificado
-            if (healthCheckSocket.getEvents() == ZMQ.Poller.POLLIN) {
-                // Procesar la respuesta del monitor
-                processMonitorResponse(healthCheckSocket, sensorType);
-            } else {
-                // Manejar el caso cuando no hay respuesta dentro del tiempo especificado
-                System.out.println(
-                        sensorType + " Monitor did not respond within the specified timeout. Starting a new process.");
-                startMonitorProcess(sensorType);
-                isUpdateNeeded = true;
+            long now = System.currentTimeMillis();
+            TimerWheel timers = new TimerWheel(10, 256, now);
+            long nextRound = now;
+            long nextReport = now + reportIntervalMs;
+
+            while (!Thread.currentThread().isInterrupted()) {
+                now = System.currentTimeMillis();
+                if (now >= nextRound) {
+                    for (MonitorProbe probe : probes) {
+                        syncEndpoints(probe);
+                    }
+                    sendProbes(timers, now);
+                    nextRound += intervalMs;
+                    if (nextRound <= now) {
+                        nextRound = now + intervalMs; // No acumular rondas atrasadas
+                    }
+                }
+                if (now >= nextReport) {
+                    reportProbes();
+                    nextReport = now + reportIntervalMs;
+                }
+
+                long wait = nextRound - now;
+                if (timers.size() > 0) {
+                    wait = Math.min(wait, timers.millisToNextTick(now));
+                }
+                if (poller.poll(Math.max(1, wait)) > 0) {
+                    for (int i = 0; i < probes.size(); i++) {
+                        if (poller.pollin(i)) {
+                            receiveReplies(probes.get(i));
+                        }
+                    }
+                }
+                timers.advance(System.currentTimeMillis(), this::probeExpired);
             }
-        } catch (ZMQException e) {
-            // Manejar la excepción cuando el monitor no está disponible
-            System.out.println("Error sending health check request to " + sensorType + " monitor: " + e.getMessage());
+        } finally {
+            poller.close();
+            // Cerrar los sockets de comprobación de salud
+            for (MonitorProbe probe : probes) {
+                if (probe.socket != null) {
+                    context.destroySocket(probe.socket);
+                }
+            }
+        }
+    }
+
+    // Método para crear el socket DEALER de las sondas de un monitor
+    private Socket createProbeSocket() {
+        Socket socket = context.createSocket(SocketType.DEALER);
+        socket.setLinger(0);
+        socket.setImmediate(true); // Sin monitor conectado el envío falla en lugar de encolarse
+        socket.setSndHWM(1);
+        socket.setRcvHWM(100);
+        return socket;
+    }
 
-            // Iniciar un nuevo proceso para el monitor que no está disponible
-            startMonitorProcess(sensorType);
-            System.out.println(MONITOR_BASE_ADDRESSES.get(sensorType));
-            isUpdateNeeded = true;
+    // Método para enviar una sonda a todos los monitores
+    private void sendProbes(TimerWheel timers, long now) {
+        for (int i = 0; i < probes.size(); i++) {
+            MonitorProbe probe = probes.get(i);
+            if (now < probe.graceUntilMillis) {
+                continue; // Esperando a que arranque el monitor reemplazado
+            }
+            probe.probeSeq++;
+            probe.answered = false;
+            probe.sentNanos = System.nanoTime();
+            boolean sent = probe.socket.send(EMPTY_DELIMITER, ZMQ.SNDMORE | ZMQ.DONTWAIT)
+                    && probe.socket.send("probe#" + probe.probeSeq, ZMQ.DONTWAIT);
+            if (!sent) {
+                // No hay conexión con el monitor: cuenta como sonda perdida de inmediato
+                probeMissed(probe, now);
+                continue;
+            }
+            timers.schedule(now + timeoutMs, i, probe.probeSeq);
         }
+    }
 
-        if (isUpdateNeeded) {
-            // Actualizar las direcciones de los monitores después de iniciar un nuevo
-            // proceso para el monitor que no está disponible
-            updateMonitorAddresses(sensorType);
+    // Método para leer las respuestas disponibles de un monitor
+    private void receiveReplies(MonitorProbe probe) {
+        while (true) {
+            byte[] delimiter = probe.socket.recv(ZMQ.DONTWAIT);
+            if (delimiter == null) {
+                return;
+            }
+            String response = probe.socket.hasReceiveMore() ? probe.socket.recvStr(0) : new String(delimiter);
+            processMonitorResponse(probe, response);
         }
+    }
 
-        // Después de enviar una solicitud de comprobación de salud
-        System.out.println("Health Check Socket State after send: " + healthCheckSocket.getEvents());
+    // Método para procesar la respuesta del monitor ("OK#probe#<n>")
+    private void processMonitorResponse(MonitorProbe probe, String response) {
+        int separator = response.lastIndexOf('#');
+        long seq;
+        try {
+            seq = Long.parseLong(response.substring(separator + 1));
+        } catch (NumberFormatException e) {
+            System.out.println(probe.name + " Monitor sent an unexpected response: " + response);
+            return;
+        }
+        if (seq != probe.probeSeq || probe.answered) {
+            return; // Respuesta a una sonda ya vencida
+        }
+        long rttNanos = System.nanoTime() - probe.sentNanos;
+        probe.answered = true;
+        probe.misses = 0;
+        probe.rtt.record(rttNanos);
+        probe.lastReplyMillis = System.currentTimeMillis();
+        probe.failed = false;
+        if (!probe.up) {
+            probe.up = true;
+            System.out.println(probe.name + " Monitor is up at " + probe.address + " (rtt "
+                    + formatMillis(rttNanos) + " ms)");
+        }
     }
 
-    // Mapa que almacena las direcciones anteriores para cada tipo de sensor
-    private Map<SensorType, String> previousAddresses = new HashMap<>();
+    // Método que se llama cuando vence el plazo de una sonda
+    private void probeExpired(int index, long token, long deadlineMillis) {
+        MonitorProbe probe = probes.get(index);
+        if (token != probe.probeSeq || probe.answered) {
+            return; // El monitor respondió a tiempo
+        }
+        probe.answered = true; // Ya contada como perdida
+        probeMissed(probe, deadlineMillis);
+    }
 
-    // Método para actualizar las direcciones de los monitores
-    private void updateMonitorAddresses() {
-        String ipAddress = "tcp://10.43.101.124"; // Ip de la maquina donde se esta corriendo el health checker
+    // Método para contar una sonda perdida y declarar la falla del monitor
+    private void probeMissed(MonitorProbe probe, long now) {
+        probe.misses++;
+        if (probe.misses < failures || probe.failed) {
+            return;
+        }
+        String detection = probe.lastReplyMillis == 0 ? "never answered"
+                : "detected " + (now - probe.lastReplyMillis) + " ms after its last reply";
+        if (declareFailure(probe, now, "missed " + probe.misses + " probes, " + detection)) {
+            // La sonda se apunta al reemplazo en el siguiente syncEndpoints, reutilizando el socket
+            probe.misses = 0;
+        }
+    }
 
-        for (SensorType sensorType : MONITOR_BASE_ADDRESSES.keySet()) {
-            String previousAddress = previousAddresses.getOrDefault(sensorType, "");
-            if (!previousAddress.equals(MONITOR_BASE_ADDRESSES.get(sensorType))) {
-                System.out.println(
-                        "Changing address for " + sensorType + " to: " + MONITOR_BASE_ADDRESSES.get(sensorType));
+    // Método para declarar caído un monitor y, si corresponde, reemplazarlo.
+    // Devuelve true si se inició un reemplazo.
+    private boolean declareFailure(MonitorProbe probe, long now, String detection) {
+        probe.up = false;
+        probe.failed = true;
+        System.out.println(probe.name + " Monitor did not respond (" + detection + ").");
+        if (registry != null) {
+            // Retirar del registro los endpoints del monitor caído, para que nadie más los use
+            String kind = mode == CheckMode.heartbeat ? "heartbeat" : "health";
+            for (String endpoint : probe.endpoints.getEndpoints()) {
+                registry.deregister(ServiceRegistry.monitorService(kind, probe.sensorType, probe.member), endpoint);
+            }
+            // y sacarlo de su grupo sin esperar a que venza su plazo: los demás toman sus sensores
+            for (String entry : registry.resolve(MonitorGroup.service(probe.sensorType))) {
+                if (entry.startsWith(probe.name + "|")) {
+                    registry.deregister(MonitorGroup.service(probe.sensorType), entry);
+                }
             }
-            previousAddresses.put(sensorType, MONITOR_BASE_ADDRESSES.get(sensorType));
         }
+        if (noRestart) {
+            return false;
+        }
+        long graceMs = restartGraceMs;
+        if (promoteStandby && promoteStandby(probe.sensorType, probe.member)) {
+            // El standby ya está suscrito: basta con esperar sus primeros latidos.
+            // Se arranca otro standby para la próxima falla.
+            graceMs = Math.min(restartGraceMs, 1000);
+            startMonitorProcess(probe.sensorType, probe.member, true);
+        } else {
+            System.out.println("Starting a new process.");
+            startMonitorProcess(probe.sensorType, probe.member, false);
+        }
+        if (registry == null) {
+            // Sin registro el reemplazo queda en restartHost, en los puertos del tipo de sensor
+            MONITOR_BASE_ADDRESSES.put(probe.sensorType, restartHost);
+            String address = restartHost + ":" + MonitorGroup.port(getHealthCheckPort(probe.sensorType), probe.member);
+            System.out.println("Changing address for " + probe.name + " to: " + address);
+            probe.endpoints.update(List.of(mode == CheckMode.heartbeat
+                    ? heartbeatAddress(address, probe.sensorType, probe.member) : address));
+        }
+        // Si el reemplazo tampoco responde al terminar la espera, se vuelve a intentar
+        probe.graceUntilMillis = now + graceMs;
+        probe.failed = false;
+        return true;
+    }
 
-        // Imprimir un mensaje al actualizar las direcciones
-        System.out.println("Updated monitor addresses");
-
-        // Recrear sockets de comprobación de salud con las direcciones actualizadas
-        this.healthCheckSockets.values().forEach(Socket::close);
-        this.healthCheckSockets.clear();
-        this.healthCheckSockets.putAll(createHealthCheckSockets(context));
-
-        // Imprimir los valores actuales de las direcciones después de la actualización
-        for (SensorType sensorType : MONITOR_BASE_ADDRESSES.keySet()) {
-            System.out.println("Current address for " + sensorType + ": " + MONITOR_BASE_ADDRESSES.get(sensorType));
+    // Método para imprimir el estado y la latencia de las sondas de cada monitor
+    private void reportProbes() {
+        for (MonitorProbe probe : probes) {
+            LatencyHistogram current = probe.rtt.snapshot();
+            LatencyHistogram interval = current.minus(probe.lastReport);
+            probe.lastReport = current;
+            if (interval.getCount() == 0) {
+                System.out.println(probe.name + " Monitor " + (probe.up ? "UP" : "DOWN") + " at "
+                        + probe.address + ": no replies");
+                continue;
+            }
+            System.out.println(probe.name + " Monitor " + (probe.up ? "UP" : "DOWN") + " at " + probe.address
+                    + ": " + interval.getCount() + " replies, rtt p50="
+                    + formatMillis(interval.getValueAtPercentile(50)) + " p99="
+                    + formatMillis(interval.getValueAtPercentile(99)) + " max=" + formatMillis(interval.getMax())
+                    + " ms");
+        }
+        for (SensorType sensorType : groupSizes.keySet()) {
+            reportGroup(sensorType);
         }
     }
 
-    // Método para actualizar la dirección de un tipo de sensor específico
-    private void updateMonitorAddresses(SensorType sensorType) {
-        String ipAddress = "tcp://10.43.101.124"; // Ip de la maquina donde se esta corriendo el health checker
+    private static String formatMillis(long nanos) {
+        return String.format("%.2f", nanos / 1_000_000.0);
+    }
 
-        MONITOR_BASE_ADDRESSES.put(sensorType, ipAddress);
+    // Método para promover el monitor en espera de un miembro del grupo de un tipo
+    private boolean promoteStandby(SensorType sensorType, int member) {
+        String name = MonitorGroup.memberName(sensorType, member);
+        String address = restartHost + ":" + MonitorGroup.port(Monitor.getControlPort(sensorType), member);
+        if (registry != null) {
+            // El standby publica su puerto de control mientras espera
+            List<String> standbys = registry.resolve(ServiceRegistry.monitorService("control", sensorType, member));
+            if (standbys.isEmpty()) {
+                System.out.println("No standby " + name + " monitor registered");
+                return false;
+            }
+            address = standbys.get(0);
+        }
+        Socket controlSocket = context.createSocket(SocketType.REQ);
+        try {
+            controlSocket.setLinger(0);
+            controlSocket.setReceiveTimeOut(2000);
+            controlSocket.connect(address);
+            long start = System.nanoTime();
+            controlSocket.send("PROMOTE", 0);
+            String reply = controlSocket.recvStr(0);
+            if (reply == null || !reply.startsWith("PROMOTED")) {
+                System.out.println("Standby " + name + " monitor at " + address + " did not answer PROMOTE");
+                return false;
+            }
+            System.out.println("Promoted standby " + name + " monitor at " + address + " in "
+                    + formatMillis(System.nanoTime() - start) + " ms (" + reply + ")");
+            return true;
+        } finally {
+            context.destroySocket(controlSocket);
+        }
     }
 
-    // Método para iniciar un nuevo proceso de monitor para un tipo de sensor
-    // específico
-    private void startMonitorProcess(SensorType sensorType) {
-        System.out.println("Starting a new process for " + sensorType);
+    // Método para iniciar un nuevo proceso de monitor para un miembro del grupo de
+    // un tipo de sensor. Se ejecuta con la JVM y el classpath de este proceso, sin
+    // pasar por Maven; la salida queda en <monitor>_monitor.log.
+    private void startMonitorProcess(SensorType sensorType, int member, boolean standby) {
+        String name = MonitorGroup.memberName(sensorType, member);
+        System.out.println("Starting a new " + (standby ? "standby " : "") + "process for " + name);
         try {
-            String os = System.getProperty("os.name").toLowerCase();
-
-            ProcessBuilder processBuilder;
-            if (os.contains("win")) {
-                // Windows
-                processBuilder = new ProcessBuilder("cmd.exe", "/c", "start", "cmd.exe", "/k", "mvn", "exec:java",
-                        "-Dexec.mainClass=com.javeriana.Monitor", "-Dexec.args=-t " + sensorType.toString());
-            } else if (os.contains("nix") || os.contains("nux") || os.contains("mac")) {
-                // Unix/Linux/MacOS
-                processBuilder = new ProcessBuilder("sh", "-c",
-                        "mvn exec:java -Dexec.mainClass=com.javeriana.Monitor -Dexec.args=-t " + sensorType.toString());
-            } else {
-                throw new UnsupportedOperationException("Unsupported operating system: " + os);
+            List<String> command = monitorCommand();
+            command.add("-t");
+            command.add(sensorType.toString());
+            if (groupSize(sensorType) > 1) {
+                command.add("--member");
+                command.add(String.valueOf(member));
+                command.add("--groupSize");
+                command.add(String.valueOf(groupSize(sensorType)));
+            }
+            if (standby) {
+                command.add("--standby");
+            }
+            for (String argument : monitorArgs.trim().split("\\s+")) {
+                if (!argument.isEmpty()) {
+                    command.add(argument);
+                }
+            }
+            if (registryAddress != null && !registryAddress.equals("local") && !command.contains("--registry")) {
+                // El reemplazo se publica en el mismo registro
+                command.add("--registry");
+                command.add(registryAddress);
             }
 
+            ProcessBuilder processBuilder = new ProcessBuilder(command);
             processBuilder.redirectErrorStream(true);
-
-            Process process = processBuilder.start();
-
-            // Opcionalmente, puedes esperar a que el proceso termine u hacer otro manejo
-            // process.waitFor();
+            processBuilder.redirectOutput(ProcessBuilder.Redirect.appendTo(new File(name + "_monitor.log")));
+            processBuilder.start();
         } catch (IOException e) {
             System.err.println("Error starting a new process: " + e.getMessage());
         }
     }
 
-    // Método para procesar la respuesta del monitor
-    private void processMonitorResponse(Socket healthCheckSocket, SensorType sensorType) {
-        // Si hay una respuesta, recibir y procesarla
-        String response = healthCheckSocket.recvStr(0);
-        if (response != null) {
-            System.out.println(sensorType + " Monitor received: " + response);
-
-        } else {
-            // Manejar el caso cuando no hay respuesta dentro del tiempo especificado
-            System.out.println(sensorType + " Monitor did not respond within the specified timeout");
+    // Comando que inicia un monitor. Desde la imagen nativa es el mismo ejecutable
+    // (target/projecto monitor); desde la JVM, java con el classpath de este
+    // proceso y, si hay un archivo AppCDS junto al jar (target/projecto.jsa, perfil
+    // cds del pom), las clases se cargan de él y el monitor arranca antes.
+    private static List<String> monitorCommand() {
+        List<String> command = new ArrayList<>();
+        if (System.getProperty("org.graalvm.nativeimage.imagecode") != null) {
+            command.add(ProcessHandle.current().info().command().orElse("projecto"));
+            command.add("monitor");
+            return command;
+        }
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        String classPath = classPath();
+        if (classPath.endsWith(".jar") && !classPath.contains(File.pathSeparator)) {
+            File archive = new File(classPath.substring(0, classPath.length() - ".jar".length()) + ".jsa");
+            if (archive.isFile()) {
+                command.add("-XX:SharedArchiveFile=" + archive.getPath());
+            }
         }
+        command.add("-cp");
+        command.add(classPath);
+        command.add(Monitor.class.getName());
+        return command;
     }
 
-    // Método para obtener el tipo de sensor asociado a un socket
-    private SensorType getSensorTypeBySocket(Map<SensorType, Socket> sockets, Socket socket) {
-        for (Map.Entry<SensorType, Socket> entry : sockets.entrySet()) {
-            if (entry.getValue() == socket) {
-                return entry.getKey();
+    // Classpath de este proceso. Con mvn exec:java las clases se cargan desde un
+    // URLClassLoader propio y java.class.path solo tiene el lanzador de Maven.
+    private static String classPath() {
+        ClassLoader classLoader = HealthChecker.class.getClassLoader();
+        if (classLoader instanceof URLClassLoader) {
+            StringBuilder classPath = new StringBuilder();
+            for (URL url : ((URLClassLoader) classLoader).getURLs()) {
+                try {
+                    String path = new File(url.toURI()).getPath();
+                    if (classPath.length() > 0) {
+                        classPath.append(File.pathSeparatorChar);
+                    }
+                    classPath.append(path);
+                } catch (URISyntaxException | IllegalArgumentException e) {
+                    // URL que no es un archivo local: se omite
+                }
+            }
+            if (classPath.length() > 0) {
+                return classPath.toString();
             }
         }
-        throw new IllegalArgumentException("Socket not found for the given SensorType");
+        return System.getProperty("java.class.path");
     }
 
     // Método para obtener el puerto de comprobación de salud asociado a un tipo de
     // monitor
-    private int getHealthCheckPort(SensorType sensorType) {
+    private static int getHealthCheckPort(SensorType sensorType) {
         // Determinar el puerto de comprobación de salud según el tipo de sensor que
         // está asociado al monitor
         switch (sensorType) {
@@ -278,14 +764,4 @@ public class HealthChecker {
                 throw new IllegalArgumentException("Invalid sensor type");
         }
     }
-
-    // Método para crear un Poller con los sockets de comprobación de salud
-    private ZMQ.Poller createPoller() {
-        ZMQ.Poller poller = context.createPoller(healthCheckSockets.size());
-        for (Socket socket : healthCheckSockets.values()) {
-            poller.register(socket, ZMQ.Poller.POLLIN);
-        }
-        return poller;
-    }
-
 }
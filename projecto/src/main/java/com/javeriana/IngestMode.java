@@ -0,0 +1,45 @@
+package com.javeriana;
+
+import org.zeromq.SocketType;
+import org.zeromq.ZMQ;
+
+//Enum que especifica los modos de ingesta entre sensores y broker
+public enum IngestMode {
+
+    // REQ/REP: cada sensor espera la respuesta del broker antes de enviar otra medida
+    rep(SocketType.REP, SocketType.REQ),
+    // ROUTER/DEALER: los sensores envían sin esperar y el broker responde con acks agrupados
+    router(SocketType.ROUTER, SocketType.DEALER),
+    // PULL/PUSH: envío sin respuesta (fire-and-forget)
+    pull(SocketType.PULL, SocketType.PUSH);
+
+    private final SocketType brokerSocketType;
+    private final SocketType sensorSocketType;
+
+    IngestMode(SocketType brokerSocketType, SocketType sensorSocketType) {
+        this.brokerSocketType = brokerSocketType;
+        this.sensorSocketType = sensorSocketType;
+    }
+
+    // Tipo de socket que usa el broker para recibir de los sensores
+    public SocketType getBrokerSocketType() {
+        return brokerSocketType;
+    }
+
+    // Tipo de socket que usa el sensor para enviar al broker
+    public SocketType getSensorSocketType() {
+        return sensorSocketType;
+    }
+
+    // Método para configurar el socket de un sensor. En modo REQ/REP la espera de
+    // la respuesta tiene un límite y el REQ puede volver a enviar sin ella, para
+    // que un broker caído no deje al sensor bloqueado y pueda pasar a otro. No se
+    // usa REQ_CORRELATE (el REP de jeromq 0.5 no responde bien con él), así que una
+    // respuesta tardía puede tomarse como la de la medida siguiente.
+    public void configureSensorSocket(ZMQ.Socket socket) {
+        if (this == rep) {
+            socket.setReqRelaxed(true);
+            socket.setReceiveTimeOut(2000);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.javeriana;
+
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+import java.util.function.Predicate;
+
+// Definición de la clase IntObjectMap
+// Tabla hash de direccionamiento abierto con claves int (ids de sensor), para
+// buscar el estado de un sensor sin crear objetos Integer por cada medida.
+// No es segura para hilos.
+public class IntObjectMap<V> {
+
+    private int[] keys;
+    private Object[] values;
+    private int size;
+
+    // Constructor del IntObjectMap
+    public IntObjectMap() {
+        this(64);
+    }
+
+    public IntObjectMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(8, expectedSize * 2 - 1)) << 1;
+        this.keys = new int[capacity];
+        this.values = new Object[capacity];
+    }
+
+    // Método para obtener el valor de una clave (null si no existe)
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        int mask = keys.length - 1;
+        for (int index = mix(key) & mask; values[index] != null; index = (index + 1) & mask) {
+            if (keys[index] == key) {
+                return (V) values[index];
+            }
+        }
+        return null;
+    }
+
+    // Método para obtener el valor de una clave, creándolo si no existe
+    @SuppressWarnings("unchecked")
+    public V computeIfAbsent(int key, IntFunction<V> factory) {
+        int mask = keys.length - 1;
+        int index = mix(key) & mask;
+        for (; values[index] != null; index = (index + 1) & mask) {
+            if (keys[index] == key) {
+                return (V) values[index];
+            }
+        }
+        V value = factory.apply(key);
+        keys[index] = key;
+        values[index] = value;
+        if (++size * 2 > keys.length) {
+            rehash(keys.length * 2, null);
+        }
+        return value;
+    }
+
+    // Método para quitar los valores que cumplen una condición
+    public void removeIf(Predicate<V> filter) {
+        rehash(keys.length, filter);
+    }
+
+    // Método para recorrer los valores
+    @SuppressWarnings("unchecked")
+    public void forEachValue(Consumer<V> action) {
+        for (Object value : values) {
+            if (value != null) {
+                action.accept((V) value);
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void rehash(int capacity, Predicate<V> filter) {
+        int[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new int[capacity];
+        values = new Object[capacity];
+        size = 0;
+        int mask = capacity - 1;
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] == null || (filter != null && filter.test((V) oldValues[i]))) {
+                continue;
+            }
+            int index = mix(oldKeys[i]) & mask;
+            while (values[index] != null) {
+                index = (index + 1) & mask;
+            }
+            keys[index] = oldKeys[i];
+            values[index] = oldValues[i];
+            size++;
+        }
+    }
+
+    private static int mix(int key) {
+        int hash = key * 0x9E3779B9; // Repartir ids consecutivos
+        return hash ^ (hash >>> 16);
+    }
+}
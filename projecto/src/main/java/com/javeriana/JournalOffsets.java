@@ -0,0 +1,89 @@
+package com.javeriana;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Definición de la clase JournalOffsets
+// Offsets confirmados por el monitor en el diario de cada broker: el siguiente
+// mensaje que le falta, por id de diario. Solo se confirma lo que ya está en el
+// log con fsync, así que tras una caída el monitor puede volver a procesar
+// algunos mensajes (al menos una vez) pero no pierde ninguno que siga en el diario.
+// Se guarda en un archivo de propiedades reemplazado de forma atómica.
+public class JournalOffsets {
+
+    private final File file;
+    private final Map<Long, Long> offsets = new ConcurrentHashMap<>();
+    private volatile boolean dirty;
+    private long lastSave;
+
+    // Constructor del JournalOffsets: carga los offsets guardados, si existen
+    public JournalOffsets(File file) throws IOException {
+        this.file = file;
+        if (file.exists()) {
+            Properties properties = new Properties();
+            try (FileInputStream in = new FileInputStream(file)) {
+                properties.load(in);
+            }
+            for (String journalId : properties.stringPropertyNames()) {
+                offsets.put(Long.parseLong(journalId), Long.parseLong(properties.getProperty(journalId)));
+            }
+        }
+    }
+
+    // Método para volver a leer el archivo, que otro proceso pudo haber guardado después
+    // (el principal, cuando este monitor es su standby). Se queda con el mayor offset.
+    public void reload() throws IOException {
+        if (!file.exists()) {
+            return;
+        }
+        Properties properties = new Properties();
+        try (FileInputStream in = new FileInputStream(file)) {
+            properties.load(in);
+        }
+        for (String journalId : properties.stringPropertyNames()) {
+            offsets.merge(Long.parseLong(journalId), Long.parseLong(properties.getProperty(journalId)), Math::max);
+        }
+    }
+
+    // Offset confirmado en un diario (-1 si el monitor nunca lo leyó)
+    public long get(long journalId) {
+        return offsets.getOrDefault(journalId, -1L);
+    }
+
+    // Método para confirmar que los mensajes anteriores a nextOffset ya están persistidos
+    public void commit(long journalId, long nextOffset) {
+        offsets.merge(journalId, nextOffset, Math::max);
+        dirty = true;
+    }
+
+    // Método para guardar los offsets si hubo cambios y pasó el intervalo
+    public void maybeSave(long intervalMs) throws IOException {
+        long now = System.currentTimeMillis();
+        if (dirty && now - lastSave >= intervalMs) {
+            save();
+            lastSave = now;
+        }
+    }
+
+    // Método para guardar los offsets (archivo temporal + rename)
+    public void save() throws IOException {
+        dirty = false;
+        Properties properties = new Properties();
+        for (Map.Entry<Long, Long> entry : offsets.entrySet()) {
+            properties.setProperty(Long.toString(entry.getKey()), Long.toString(entry.getValue()));
+        }
+        File tmp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmp)) {
+            properties.store(out, "Next offset per broker journal");
+            out.getFD().sync();
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,351 @@
+package com.javeriana;
+
+import org.zeromq.SocketType;
+import org.zeromq.ZContext;
+import org.zeromq.ZMQ;
+import org.zeromq.ZMQ.Socket;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Definición de la clase JournalReplay
+// Lado del monitor del replay del diario de los brokers. Al arrancar, el monitor
+// pide a cada broker los mensajes de su tipo desde el último offset que confirmó
+// (JournalOffsets) y los recibe en lotes grandes, a la velocidad del disco,
+// mientras descarta los mismos mensajes que le llegan en vivo por el SUB. Cuando
+// el replay alcanza el final del diario pasa al flujo en vivo. Cada mensaje en
+// vivo trae el offset del anterior de su tópico (ver Broker.SEQUENCE_FRAME_SIZE):
+// si ese no le llegó (el SUB descarta al llenarse su cola, o se perdió en el
+// cambio) el monitor vuelve a recuperar desde el diario. Solo la usa el hilo de
+// recepción.
+//
+// Formato de los registros de un lote (un solo frame binario):
+// offset (long), longitud (int) y bytes del mensaje, uno tras otro.
+public class JournalReplay {
+
+    // Tamaño máximo de un lote de replay
+    static final int MAX_BATCH_BYTES = 4 << 20;
+    // Mensajes recorridos como máximo por lote (incluye los de otros tópicos)
+    private static final int MAX_SCANNED = 1 << 18;
+    private static final int BATCH_RECORDS = 8192;
+    private static final int REQUEST_TIMEOUT_MS = 5000;
+    private static final long RETRY_MS = 1000;
+
+    // Destino de los mensajes recuperados (la etapa de recepción los publica en el buffer)
+    public interface Sink {
+        void accept(byte[] message, long journalId, long offset) throws InterruptedException;
+    }
+
+    // Estado del replay de un broker
+    private static final class Cursor {
+        final String endpoint;
+        Socket socket;
+        long journalId = -1; // Desconocido hasta que responde INFO
+        long next; // Siguiente offset que le falta al monitor
+        boolean caughtUp;
+        boolean live; // Ya llegó un mensaje en vivo después de ponerse al día
+        long replayed;
+        long resyncs; // Veces que faltaron mensajes en vivo
+        long retryAt;
+        long reportAt;
+
+        Cursor(String endpoint) {
+            this.endpoint = endpoint;
+        }
+    }
+
+    private final ZContext context;
+    private final EndpointWatch endpoints;
+    private final JournalOffsets offsets;
+    private final List<byte[]> topics;
+    private final Map<String, Cursor> cursors = new HashMap<>();
+    private final Map<Long, Cursor> byJournal = new HashMap<>();
+    private List<String> syncedEndpoints;
+
+    // Constructor del JournalReplay
+    public JournalReplay(ZContext context, EndpointWatch endpoints, JournalOffsets offsets, List<byte[]> topics) {
+        this.context = context;
+        this.endpoints = endpoints;
+        this.offsets = offsets;
+        this.topics = topics;
+    }
+
+    // Método para seguir los brokers que entran o salen
+    public void sync() {
+        List<String> current = endpoints.getEndpoints();
+        if (current == syncedEndpoints) {
+            return;
+        }
+        syncedEndpoints = current;
+        for (String endpoint : current) {
+            cursors.computeIfAbsent(endpoint, Cursor::new);
+        }
+        cursors.values().removeIf(cursor -> {
+            if (current.contains(cursor.endpoint)) {
+                return false;
+            }
+            closeSocket(cursor);
+            byJournal.remove(cursor.journalId);
+            return true;
+        });
+    }
+
+    // Método para pedir un lote a cada broker que aún no está al día. Devuelve
+    // true si recuperó mensajes (el llamador no debe bloquearse esperando en vivo).
+    public boolean replay(Sink sink) throws InterruptedException {
+        boolean worked = false;
+        long now = System.currentTimeMillis();
+        for (Cursor cursor : cursors.values()) {
+            if (cursor.journalId < 0) {
+                if (now >= cursor.retryAt) {
+                    open(cursor);
+                }
+                continue;
+            }
+            if (!cursor.caughtUp && now >= cursor.retryAt) {
+                worked |= fetch(cursor, sink);
+            }
+        }
+        return worked;
+    }
+
+    // Método para saber si todos los brokers conocidos ya respondieron y el replay
+    // alcanzó el final de sus diarios (false mientras no haya ninguno)
+    public boolean isCaughtUp() {
+        if (cursors.isEmpty()) {
+            return false;
+        }
+        for (Cursor cursor : cursors.values()) {
+            if (cursor.journalId < 0 || !cursor.caughtUp) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Método para decidir si un mensaje en vivo se procesa. Devuelve false si es
+    // un duplicado o si el replay de su broker todavía no alcanza el final.
+    public boolean acceptLive(long journalId, long offset, long previousOffset) {
+        Cursor cursor = byJournal.get(journalId);
+        if (cursor == null) {
+            return true; // Broker sin replay conocido
+        }
+        if (!cursor.caughtUp || offset < cursor.next) {
+            return false; // Lo entrega (o ya lo entregó) el replay
+        }
+        if (previousOffset >= cursor.next) {
+            // Falta el mensaje anterior del tópico: recuperar desde el diario hasta
+            // alcanzar de nuevo el final (este mensaje incluido)
+            cursor.caughtUp = false;
+            cursor.live = false;
+            cursor.resyncs++;
+            long now = System.currentTimeMillis();
+            if (now >= cursor.reportAt) {
+                // Un monitor saturado pierde mensajes seguido: reportar como máximo cada segundo
+                cursor.reportAt = now + 1000;
+                System.out.println("Journal " + cursor.journalId + " at " + cursor.endpoint + ": missed live "
+                        + "messages after offset " + (cursor.next - 1) + ", replaying (" + cursor.resyncs + " times)");
+            }
+            return false;
+        }
+        if (!cursor.live) {
+            cursor.live = true;
+            if (cursor.resyncs == 0) {
+                System.out.println("Journal " + cursor.journalId + " at " + cursor.endpoint + ": switched to live "
+                        + "at offset " + offset + " after replaying " + cursor.replayed + " messages");
+            }
+        }
+        cursor.next = offset + 1;
+        return true;
+    }
+
+    // Método para cerrar los sockets del replay
+    public void close() {
+        for (Cursor cursor : cursors.values()) {
+            closeSocket(cursor);
+        }
+        cursors.clear();
+        byJournal.clear();
+    }
+
+    // Método para conocer el diario de un broker y el offset desde donde seguir
+    private void open(Cursor cursor) {
+        String[] reply = request(cursor, "INFO");
+        long journalId;
+        long first;
+        long end;
+        try {
+            if (reply == null || reply.length != 4 || !reply[0].equals("OK")) {
+                throw new NumberFormatException("unexpected reply");
+            }
+            journalId = Long.parseLong(reply[1]);
+            first = Long.parseLong(reply[2]);
+            end = Long.parseLong(reply[3]);
+        } catch (NumberFormatException e) {
+            cursor.retryAt = System.currentTimeMillis() + RETRY_MS;
+            return;
+        }
+        cursor.journalId = journalId;
+        long committed = offsets.get(cursor.journalId);
+        if (committed < 0) {
+            // Sin offset confirmado: solo los mensajes nuevos
+            cursor.next = end;
+            cursor.caughtUp = true;
+        } else {
+            if (committed < first) {
+                System.out.println("Journal " + cursor.journalId + ": " + (first - committed)
+                        + " messages were already removed by retention");
+            }
+            cursor.next = Math.max(first, Math.min(committed, end));
+            cursor.caughtUp = cursor.next >= end;
+        }
+        byJournal.put(cursor.journalId, cursor);
+        System.out.println("Journal " + cursor.journalId + " at " + cursor.endpoint + ": resuming at offset "
+                + cursor.next + " of " + end);
+    }
+
+    // Método para pedir y entregar el siguiente lote desde cursor.next.
+    // Devuelve true si el broker respondió con avance.
+    private boolean fetch(Cursor cursor, Sink sink) throws InterruptedException {
+        Socket socket = socket(cursor);
+        socket.sendMore("REPLAY#" + cursor.next + "#" + Long.MAX_VALUE + "#" + BATCH_RECORDS);
+        for (int i = 0; i < topics.size(); i++) {
+            socket.send(topics.get(i), i == topics.size() - 1 ? 0 : ZMQ.SNDMORE);
+        }
+        String header = socket.recvStr(0);
+        byte[] records = header != null && socket.hasReceiveMore() ? socket.recv(0) : null;
+        if (header == null || records == null) {
+            System.out.println("Journal replay from " + cursor.endpoint + " did not answer, retrying");
+            closeSocket(cursor);
+            return false;
+        }
+        // Cabecera: OK#diario#siguiente#final#primero
+        String[] parts = header.split("#");
+        long journalId;
+        long next;
+        long end;
+        try {
+            if (parts.length != 5 || !parts[0].equals("OK")) {
+                throw new NumberFormatException("unexpected reply");
+            }
+            journalId = Long.parseLong(parts[1]);
+            next = Long.parseLong(parts[2]);
+            end = Long.parseLong(parts[3]);
+        } catch (NumberFormatException e) {
+            // Respuesta de error o mal formada: esperar y volver a pedir el mismo lote
+            System.out.println("Journal replay from " + cursor.endpoint + " answered \"" + header + "\", retrying");
+            cursor.retryAt = System.currentTimeMillis() + RETRY_MS;
+            return false;
+        }
+        if (journalId != cursor.journalId) {
+            // El broker empezó otro diario: volver a preguntar desde dónde seguir
+            System.out.println("Journal at " + cursor.endpoint + " changed from " + cursor.journalId + " to "
+                    + journalId + ", reopening");
+            byJournal.remove(cursor.journalId);
+            cursor.journalId = -1;
+            cursor.caughtUp = false;
+            return false;
+        }
+
+        long from = cursor.next;
+        ByteBuffer buffer = ByteBuffer.wrap(records);
+        while (buffer.remaining() >= 12) {
+            long offset = buffer.getLong();
+            int length = buffer.getInt();
+            if (length < 0 || length > buffer.remaining()) {
+                // Lote truncado: lo entregado hasta aquí vale, el resto se vuelve a pedir
+                System.out.println("Journal replay from " + cursor.endpoint + " sent a truncated batch, retrying");
+                cursor.retryAt = System.currentTimeMillis() + RETRY_MS;
+                return false;
+            }
+            byte[] message = new byte[length];
+            buffer.get(message);
+            sink.accept(message, cursor.journalId, offset);
+            cursor.replayed++;
+            cursor.next = Math.max(cursor.next, offset + 1);
+        }
+        boolean advanced = next > from;
+        cursor.next = Math.max(cursor.next, next);
+        if (!cursor.caughtUp && cursor.next >= end) {
+            cursor.caughtUp = true;
+            if (cursor.resyncs == 0) {
+                System.out.println("Journal " + cursor.journalId + " at " + cursor.endpoint + ": caught up at "
+                        + "offset " + cursor.next + " (" + cursor.replayed + " messages replayed)");
+            }
+        }
+        return advanced;
+    }
+
+    private String[] request(Cursor cursor, String request) {
+        Socket socket = socket(cursor);
+        socket.send(request, 0);
+        String reply = socket.recvStr(0);
+        if (reply == null) {
+            closeSocket(cursor);
+            return null;
+        }
+        return reply.split("#");
+    }
+
+    private Socket socket(Cursor cursor) {
+        if (cursor.socket == null) {
+            cursor.socket = context.createSocket(SocketType.REQ);
+            cursor.socket.setLinger(0);
+            cursor.socket.setReceiveTimeOut(REQUEST_TIMEOUT_MS);
+            cursor.socket.connect(cursor.endpoint);
+        }
+        return cursor.socket;
+    }
+
+    private void closeSocket(Cursor cursor) {
+        if (cursor.socket != null) {
+            context.destroySocket(cursor.socket);
+            cursor.socket = null;
+        }
+    }
+
+    // Lado del broker: copia a out los mensajes desde from (hasta until, exclusivo)
+    // que empiezan con alguno de los tópicos, hasta maxRecords mensajes o hasta
+    // llenar out. Devuelve el offset siguiente al último mensaje revisado: uno que
+    // no alcanzó a copiarse (lote lleno o límite de revisión) va en el siguiente lote.
+    static long collect(BrokerJournal journal, long from, long until, int maxRecords, List<byte[]> topics,
+            ByteBuffer out) {
+        int[] counts = new int[2]; // Copiados y revisados
+        return journal.read(from, until, (offset, message, length) -> {
+            if (counts[0] >= maxRecords || ++counts[1] > MAX_SCANNED) {
+                return false;
+            }
+            if (!matches(message, length, topics)) {
+                return true;
+            }
+            if (out.remaining() < 12 + length) {
+                return false;
+            }
+            out.putLong(offset).putInt(length).put(message);
+            counts[0]++;
+            return true;
+        });
+    }
+
+    private static boolean matches(ByteBuffer message, int length, List<byte[]> topics) {
+        if (topics.isEmpty()) {
+            return true;
+        }
+        int start = message.position();
+        for (byte[] topic : topics) {
+            if (topic.length > length) {
+                continue;
+            }
+            int i = 0;
+            while (i < topic.length && message.get(start + i) == topic[i]) {
+                i++;
+            }
+            if (i == topic.length) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,113 @@
+package com.javeriana;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Definición de la clase LatencyHistogram
+// Histograma de latencias con cubetas log-lineales (estilo HDR): cada potencia de
+// dos se divide en SUB_BUCKETS / 2 cubetas, con un error relativo máximo de ~3%.
+// Registrar un valor es un incremento atómico sobre un arreglo primitivo, por lo
+// que varios hilos pueden registrar sin bloqueos.
+public class LatencyHistogram {
+
+    private static final int SUB_BITS = 6;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int HALF_BUCKETS = SUB_BUCKETS / 2;
+    private static final int BUCKET_COUNT = (64 - SUB_BITS) * HALF_BUCKETS + SUB_BUCKETS;
+
+    private final AtomicLongArray counts;
+
+    // Constructor del LatencyHistogram
+    public LatencyHistogram() {
+        this.counts = new AtomicLongArray(BUCKET_COUNT);
+    }
+
+    private LatencyHistogram(AtomicLongArray counts) {
+        this.counts = counts;
+    }
+
+    // Método para registrar un valor (por ejemplo, nanosegundos)
+    public void record(long value) {
+        counts.incrementAndGet(bucketIndex(Math.max(0, value)));
+    }
+
+    // Método para obtener una copia del estado actual
+    public LatencyHistogram snapshot() {
+        AtomicLongArray copy = new AtomicLongArray(BUCKET_COUNT);
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            copy.set(i, counts.get(i));
+        }
+        return new LatencyHistogram(copy);
+    }
+
+    // Método para obtener la diferencia con una copia anterior (valores del intervalo)
+    public LatencyHistogram minus(LatencyHistogram previous) {
+        AtomicLongArray diff = new AtomicLongArray(BUCKET_COUNT);
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            diff.set(i, counts.get(i) - previous.counts.get(i));
+        }
+        return new LatencyHistogram(diff);
+    }
+
+    // Método para sumar otro histograma a este
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            long count = other.counts.get(i);
+            if (count != 0) {
+                counts.addAndGet(i, count);
+            }
+        }
+    }
+
+    // Número total de valores registrados
+    public long getCount() {
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            total += counts.get(i);
+        }
+        return total;
+    }
+
+    // Método para obtener el valor en un percentil (0-100). Devuelve el límite
+    // superior de la cubeta correspondiente.
+    public long getValueAtPercentile(double percentile) {
+        long total = getCount();
+        if (total == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(total * percentile / 100.0));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts.get(i);
+            if (seen >= target) {
+                return bucketUpperBound(i);
+            }
+        }
+        return bucketUpperBound(BUCKET_COUNT - 1);
+    }
+
+    // Método para obtener el máximo registrado (límite superior de su cubeta)
+    public long getMax() {
+        for (int i = BUCKET_COUNT - 1; i >= 0; i--) {
+            if (counts.get(i) != 0) {
+                return bucketUpperBound(i);
+            }
+        }
+        return 0;
+    }
+
+    // Método para obtener la cubeta de un valor
+    static int bucketIndex(long value) {
+        int exponent = Math.max(0, 64 - Long.numberOfLeadingZeros(value) - SUB_BITS);
+        return exponent * HALF_BUCKETS + (int) (value >>> exponent);
+    }
+
+    // Método para obtener el mayor valor que cae en una cubeta
+    static long bucketUpperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = index / HALF_BUCKETS - 1;
+        long subBucket = index - (long) exponent * HALF_BUCKETS;
+        return ((subBucket + 1) << exponent) - 1;
+    }
+}
@@ -0,0 +1,176 @@
+package com.javeriana;
+
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.CmdLineParser;
+import org.kohsuke.args4j.Option;
+import org.zeromq.ZContext;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Definición de la clase Launcher
+// Ejecuta el broker, un monitor por tipo, el sistema de calidad y el HealthChecker
+// en un solo proceso, con un contexto ZeroMQ compartido, para una sola máquina.
+// Los saltos internos van por inproc:// en lugar de TCP: broker -> monitores
+// (inproc://broker-backend) y monitores -> sistema de calidad (inproc://calidad).
+// Los sensores siguen llegando por TCP al frontend del broker, y los puertos de
+// salud, latidos, agregados y consultas siguen siendo TCP.
+//
+// Cada componente se configura con sus opciones de siempre (--brokerArgs,
+// --monitorArgs, --calidadArgs, --healthArgs), que se aplican después de las del
+// lanzador y por eso pueden cambiarlas. Los componentes se encuentran en el
+// registro en memoria del proceso (--registry local); como cada uno publica su
+// endpoint después del bind, nadie se conecta antes a un inproc:// (jeromq 0.5 lo
+// requiere). Las métricas de todos se exponen en un solo puerto.
+public class Launcher {
+
+    // Endpoints internos
+    public static final String BACKEND = "inproc://broker-backend";
+    public static final String CALIDAD = "inproc://calidad";
+
+    // Definición de opciones de línea de comandos usando args4j
+    @Option(name = "--types", usage = "Sensor types that get a monitor, comma separated")
+    private String types = "temperatura,ph,oxygeno";
+
+    @Option(name = "--frontend", usage = "Endpoint where sensors connect to the broker")
+    private String frontendAddress = "tcp://*:5559";
+
+    @Option(name = "--brokerArgs", usage = "Broker options, e.g. \"-m router --journal journal\"")
+    private String brokerArgs = "";
+
+    @Option(name = "--monitorArgs", usage = "Options for every monitor, e.g. \"--shards 2\"")
+    private String monitorArgs = "";
+
+    @Option(name = "--calidadArgs", usage = "Sistema de calidad options, e.g. \"--dataDir calidad_data\"")
+    private String calidadArgs = "";
+
+    @Option(name = "--healthArgs", usage = "HealthChecker options, e.g. \"--phi 10\"")
+    private String healthArgs = "";
+
+    @Option(name = "--noHealthChecker", usage = "Do not run the HealthChecker")
+    private boolean noHealthChecker;
+
+    @Option(name = "--metricsPort", usage = "HTTP port of the Prometheus metrics of all components (0 disables it)")
+    private int metricsPort = 9400;
+
+    private final List<Thread> threads = new ArrayList<>();
+    private SistemaDeCalidad sistemaDeCalidad;
+    private Thread calidadThread;
+
+    // Constructor usado por args4j
+    public Launcher() {
+    }
+
+    // Constructor para iniciar los componentes desde otro proceso (benchmarks)
+    public Launcher(String types, String frontendAddress, String brokerArgs, String monitorArgs,
+            String calidadArgs) {
+        this.types = types;
+        this.frontendAddress = frontendAddress;
+        this.brokerArgs = brokerArgs;
+        this.monitorArgs = monitorArgs;
+        this.calidadArgs = calidadArgs;
+        this.noHealthChecker = true;
+    }
+
+    public static void main(String[] args) {
+        Launcher launcher = new Launcher();
+        CmdLineParser parser = new CmdLineParser(launcher);
+        try {
+            parser.parseArgument(args);
+        } catch (CmdLineException e) {
+            System.err.println(e.getMessage());
+            parser.printUsage(System.err);
+            return;
+        }
+
+        Metrics.serve(launcher.metricsPort);
+        try (ZContext context = new ZContext()) {
+            launcher.start(context);
+            // Los monitores se detienen con sus propios ganchos; el sistema de calidad con éste
+            Runtime.getRuntime().addShutdownHook(new Thread(launcher::stop));
+            launcher.awaitTermination();
+        } catch (CmdLineException e) {
+            System.err.println(e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Método para iniciar cada componente en su hilo. Las opciones de todos se
+    // analizan antes de iniciar alguno, así un error no deja el proceso a medias.
+    public void start(ZContext context) throws CmdLineException {
+        sistemaDeCalidad = configure(new SistemaDeCalidad(),
+                "--bind " + CALIDAD + " --registry local --metricsPort 0", calidadArgs);
+        Broker broker = configure(new Broker(),
+                "--frontend " + frontendAddress + " --backend " + BACKEND + " --metricsPort 0", brokerArgs);
+        broker.useRegistry(LocalRegistry.shared(), null);
+        String[] monitorTypes = types.split(",");
+        Monitor[] monitors = new Monitor[monitorTypes.length];
+        for (int i = 0; i < monitorTypes.length; i++) {
+            monitorTypes[i] = monitorTypes[i].trim();
+            monitors[i] = configure(new Monitor(), "-t " + monitorTypes[i] + " --registry local --metricsPort 0",
+                    monitorArgs);
+        }
+        HealthChecker healthChecker = noHealthChecker ? null
+                : configure(new HealthChecker(context), "--registry local --noRestart", healthArgs);
+
+        // En el orden en que se necesitan: quien recibe antes que quien envía
+        calidadThread = startThread("calidad", () -> sistemaDeCalidad.run(context));
+        startThread("broker", () -> broker.run(context));
+        for (int i = 0; i < monitors.length; i++) {
+            Monitor monitor = monitors[i];
+            startThread("monitor-" + monitorTypes[i], () -> {
+                try {
+                    monitor.run(context);
+                } catch (Exception e) {
+                    System.err.println("Monitor stopped: " + e.getMessage());
+                }
+            });
+        }
+        if (healthChecker != null) {
+            startThread("health-checker", healthChecker::startHealthCheck);
+        }
+    }
+
+    // Método para detener el sistema de calidad (escribe las alertas pendientes)
+    public void stop() {
+        if (sistemaDeCalidad == null) {
+            return;
+        }
+        sistemaDeCalidad.stop();
+        try {
+            calidadThread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Método para esperar a que terminen todos los componentes
+    public void awaitTermination() throws InterruptedException {
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+
+    // Los hilos no retienen el proceso: main los espera y, al terminar, los ganchos
+    // de cierre de los monitores y del sistema de calidad escriben lo pendiente
+    private Thread startThread(String name, Runnable component) {
+        Thread thread = new Thread(component, name);
+        thread.setDaemon(true);
+        thread.start();
+        threads.add(thread);
+        return thread;
+    }
+
+    // Método para analizar las opciones del lanzador y después las del usuario
+    private static <T> T configure(T component, String defaults, String extra) throws CmdLineException {
+        List<String> args = new ArrayList<>();
+        for (String argument : (defaults + " " + extra).trim().split("\\s+")) {
+            if (!argument.isEmpty()) {
+                args.add(argument);
+            }
+        }
+        new CmdLineParser(component).parseArgument(args);
+        return component;
+    }
+}
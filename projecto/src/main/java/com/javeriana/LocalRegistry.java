@@ -0,0 +1,112 @@
+package com.javeriana;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Definición de la clase LocalRegistry
+// Registro de servicios en memoria y seguro para hilos. Se usa directamente
+// cuando todos los componentes corren en un mismo proceso, y como almacén del
+// RegistryServer. Los endpoints registrados con un plazo (lease) vencen si no se
+// renuevan, de modo que un componente caído desaparece solo del registro.
+public class LocalRegistry implements ServiceRegistry {
+
+    private static final LocalRegistry SHARED = new LocalRegistry();
+
+    // Servicio -> endpoint -> vencimiento (Long.MAX_VALUE si no vence)
+    private final Map<String, Map<String, Long>> services = new HashMap<>();
+    private final Map<String, List<Listener>> listeners = new HashMap<>();
+
+    // Registro compartido por todos los componentes del proceso
+    public static LocalRegistry shared() {
+        return SHARED;
+    }
+
+    @Override
+    public void register(String service, String endpoint) {
+        register(service, endpoint, Long.MAX_VALUE);
+    }
+
+    // Método para registrar (o renovar) un endpoint que vence en expiresAtMillis
+    public void register(String service, String endpoint, long expiresAtMillis) {
+        boolean changed;
+        synchronized (this) {
+            Map<String, Long> endpoints = services.computeIfAbsent(service, s -> new LinkedHashMap<>());
+            changed = endpoints.put(endpoint, expiresAtMillis) == null;
+        }
+        if (changed) {
+            notifyListeners(service);
+        }
+    }
+
+    @Override
+    public void deregister(String service, String endpoint) {
+        boolean changed;
+        synchronized (this) {
+            Map<String, Long> endpoints = services.get(service);
+            changed = endpoints != null && endpoints.remove(endpoint) != null;
+        }
+        if (changed) {
+            notifyListeners(service);
+        }
+    }
+
+    @Override
+    public synchronized List<String> resolve(String service) {
+        Map<String, Long> endpoints = services.get(service);
+        return endpoints == null ? new ArrayList<>() : new ArrayList<>(endpoints.keySet());
+    }
+
+    @Override
+    public void watch(String service, Listener listener) {
+        synchronized (this) {
+            listeners.computeIfAbsent(service, s -> new ArrayList<>()).add(listener);
+        }
+        listener.endpointsChanged(service, resolve(service));
+    }
+
+    // Método para retirar los endpoints cuyo plazo venció
+    public void expire(long nowMillis) {
+        List<String> changedServices = new ArrayList<>();
+        synchronized (this) {
+            for (Map.Entry<String, Map<String, Long>> entry : services.entrySet()) {
+                boolean changed = false;
+                for (Iterator<Long> it = entry.getValue().values().iterator(); it.hasNext();) {
+                    if (it.next() <= nowMillis) {
+                        it.remove();
+                        changed = true;
+                    }
+                }
+                if (changed) {
+                    changedServices.add(entry.getKey());
+                }
+            }
+        }
+        for (String service : changedServices) {
+            notifyListeners(service);
+        }
+    }
+
+    @Override
+    public void close() {
+        // El registro local vive tanto como el proceso
+    }
+
+    private void notifyListeners(String service) {
+        List<Listener> serviceListeners;
+        synchronized (this) {
+            List<Listener> registered = listeners.get(service);
+            if (registered == null) {
+                return;
+            }
+            serviceListeners = new ArrayList<>(registered);
+        }
+        List<String> endpoints = resolve(service);
+        for (Listener listener : serviceListeners) {
+            listener.endpointsChanged(service, endpoints);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.javeriana;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.kohsuke.args4j.CmdLineParser;
+import org.zeromq.SocketType;
+import org.zeromq.ZContext;
+import org.zeromq.ZMQ;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+// Definición de la clase Main
+// Punto de entrada del jar ejecutable (target/projecto.jar) y de la imagen nativa:
+// el primer argumento elige el componente y el resto son sus opciones de siempre.
+//   java -jar target/projecto.jar monitor -t ph
+//   target/projecto monitor -t ph            (imagen nativa)
+// Cada componente sigue teniendo su propio main, así que también se puede usar
+// java -cp target/projecto.jar com.javeriana.Monitor -t ph.
+//
+// "warmup" es la carga de entrenamiento del archivo AppCDS (perfil cds del pom):
+// ejecuta unos segundos los componentes y termina, para que las clases que cargan
+// al arrancar y al procesar medidas queden en el archivo.
+public class Main {
+
+    // Componentes por nombre; referencias a métodos y no reflexión, por la imagen nativa
+    private static final Map<String, Consumer<String[]>> COMPONENTS = new LinkedHashMap<>();
+
+    static {
+        COMPONENTS.put("sensor", Sensor::main);
+        COMPONENTS.put("broker", Main::broker);
+        COMPONENTS.put("monitor", Monitor::main);
+        COMPONENTS.put("calidad", SistemaDeCalidad::main);
+        COMPONENTS.put("health", HealthChecker::main);
+        COMPONENTS.put("registry", RegistryServer::main);
+        COMPONENTS.put("series", SeriesQueryService::main);
+        COMPONENTS.put("launcher", Launcher::main);
+        COMPONENTS.put("warmup", Main::warmup);
+    }
+
+    public static void main(String[] args) {
+        Consumer<String[]> component = args.length > 0 ? COMPONENTS.get(args[0]) : null;
+        if (component == null) {
+            System.err.println("Usage: <component> [options], component one of " + COMPONENTS.keySet());
+            System.exit(1);
+        }
+        component.accept(Arrays.copyOfRange(args, 1, args.length));
+    }
+
+    private static void broker(String[] args) {
+        try {
+            Broker.main(args);
+        } catch (Exception e) {
+            System.err.println("Broker stopped: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    // Método de la carga de entrenamiento del archivo de clases compartidas: el
+    // pipeline completo del Launcher (broker, monitores y sistema de calidad) con
+    // datos en un directorio temporal, unas medidas con y sin alerta, y la
+    // exportación a JSON. Termina con System.exit, que es cuando se escribe el archivo.
+    private static void warmup(String[] args) {
+        try {
+            Path directory = Files.createTempDirectory("projecto-warmup");
+            ZContext context = new ZContext();
+            // Opciones de los componentes que el Launcher no analiza
+            OutputStream discard = OutputStream.nullOutputStream();
+            for (Object component : List.of(new Sensor(), new RegistryServer(), new SeriesQueryService(),
+                    new HealthChecker(context))) {
+                new CmdLineParser(component).printUsage(discard);
+            }
+
+            Launcher launcher = new Launcher("temperatura,ph,oxygeno", "inproc://warmup",
+                    "-m pull --logPerSecond 0", "--dataDir " + directory + " --logPerSecond 0",
+                    "--dataDir " + directory.resolve("calidad") + " --queryBind inproc://warmup-query");
+            launcher.start(context);
+            while (LocalRegistry.shared().resolve(BrokerPartitions.SERVICE).isEmpty()) {
+                Thread.sleep(10);
+            }
+            ZMQ.Socket sensor = context.createSocket(SocketType.PUSH);
+            sensor.connect("inproc://warmup");
+            MessageEncoder encoder = new MessageEncoder();
+            long deadline = System.currentTimeMillis() + 3000;
+            for (int i = 0; System.currentTimeMillis() < deadline; i++) {
+                for (SensorType sensorType : SensorType.values()) {
+                    // Una de cada diez medidas fuera de todo rango: genera alerta
+                    double measurement = i % 10 == 0 ? 100 : 7;
+                    sensor.send(encoder.encode(sensorType, measurement, System.currentTimeMillis(), i % 100).clone(),
+                            0);
+                }
+                Thread.sleep(1);
+            }
+            launcher.stop();
+
+            List<MeasurementData> measurements = List.of(new MeasurementData(SensorType.ph.toString(), 7,
+                    MeasurementData.formatTimestamp(System.currentTimeMillis())));
+            File jsonFile = directory.resolve("ph_data.json").toFile();
+            ObjectMapper objectMapper = new ObjectMapper();
+            objectMapper.writeValue(jsonFile, measurements);
+            objectMapper.readValue(jsonFile,
+                    objectMapper.getTypeFactory().constructCollectionType(List.class, MeasurementData.class));
+
+            try (Stream<Path> paths = Files.walk(directory)) {
+                paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+            }
+            System.out.println("Warmup finished");
+            System.exit(0);
+        } catch (Exception e) {
+            System.err.println("Warmup failed: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.javeriana;
+
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+
+// Definición de la clase MeasurementBuffer
+// Historial reciente de medidas en memoria, acotado: un arreglo circular por
+// columnas (timestamp, medida y tipo), 17 bytes por medida y sin un objeto por
+// medida. Cuando se llena, o cuando la medida más vieja sale de la ventana de
+// retención, se descartan las más viejas; esas ya están en disco (el log binario
+// y la serie), así que el buffer solo guarda la parte caliente del historial.
+// Con offHeap las columnas van en memoria directa, fuera del heap que recorre el GC.
+// Con withSensorIds guarda además el id del sensor (21 bytes por medida), como la
+// cola del standby, que luego se escribe en el log.
+//
+// Un solo hilo escribe (la etapa de persistencia); el tamaño y los contadores se
+// pueden leer desde otros hilos.
+public class MeasurementBuffer {
+
+    private static final SensorType[] TYPES = SensorType.values();
+
+    private final int capacity;
+    private final long retentionMs;
+    private final LongBuffer epochMillis;
+    private final DoubleBuffer measurements;
+    private final ByteBuffer types;
+    private final IntBuffer sensorIds; // null sin ids de sensor
+
+    // Secuencias de la medida más vieja y de la siguiente a escribir
+    private volatile long head;
+    private volatile long tail;
+    private long newestEpochMillis = Long.MIN_VALUE;
+
+    // Constructor del MeasurementBuffer. retentionMs <= 0 conserva las medidas
+    // hasta que se llene.
+    public MeasurementBuffer(int capacity, long retentionMs, boolean offHeap) {
+        this(capacity, retentionMs, offHeap, false);
+    }
+
+    // Constructor del MeasurementBuffer con la columna opcional de ids de sensor
+    public MeasurementBuffer(int capacity, long retentionMs, boolean offHeap, boolean withSensorIds) {
+        this.capacity = Math.max(1, capacity);
+        this.retentionMs = retentionMs;
+        if (offHeap) {
+            epochMillis = ByteBuffer.allocateDirect(this.capacity * Long.BYTES).asLongBuffer();
+            measurements = ByteBuffer.allocateDirect(this.capacity * Double.BYTES).asDoubleBuffer();
+            types = ByteBuffer.allocateDirect(this.capacity);
+            sensorIds = withSensorIds ? ByteBuffer.allocateDirect(this.capacity * Integer.BYTES).asIntBuffer() : null;
+        } else {
+            epochMillis = LongBuffer.allocate(this.capacity);
+            measurements = DoubleBuffer.allocate(this.capacity);
+            types = ByteBuffer.allocate(this.capacity);
+            sensorIds = withSensorIds ? IntBuffer.allocate(this.capacity) : null;
+        }
+    }
+
+    // Método para agregar una medida, descartando las que ya no caben o salieron de la ventana
+    public void add(SensorType sensorType, double measurement, long epochMillis) {
+        add(sensorType, measurement, epochMillis, MeasurementLog.UNKNOWN_SENSOR);
+    }
+
+    // Método para agregar una medida con el id de su sensor (se ignora sin la columna de ids)
+    public void add(SensorType sensorType, double measurement, long epochMillis, int sensorId) {
+        long next = tail;
+        if (next - head == capacity) {
+            head++;
+        }
+        int index = (int) (next % capacity);
+        this.epochMillis.put(index, epochMillis);
+        measurements.put(index, measurement);
+        types.put(index, (byte) sensorType.ordinal());
+        if (sensorIds != null) {
+            sensorIds.put(index, sensorId);
+        }
+        tail = next + 1;
+        if (epochMillis > newestEpochMillis) {
+            newestEpochMillis = epochMillis;
+            expire();
+        }
+    }
+
+    // Las medidas llegan casi en orden, así que basta con mirar las más viejas
+    private void expire() {
+        if (retentionMs <= 0) {
+            return;
+        }
+        long limit = newestEpochMillis - retentionMs;
+        long first = head;
+        long last = tail;
+        while (first < last && epochMillis.get((int) (first % capacity)) < limit) {
+            first++;
+        }
+        head = first;
+    }
+
+    // Método para recorrer las medidas en memoria, de la más vieja a la más nueva
+    public void forEach(MeasurementLog.RecordConsumer consumer) {
+        for (long n = head, last = tail; n < last; n++) {
+            int index = (int) (n % capacity);
+            consumer.accept(TYPES[types.get(index)], measurements.get(index), epochMillis.get(index));
+        }
+    }
+
+    // Método para recorrer las medidas en memoria con el id de su sensor
+    public void forEach(MeasurementLog.SensorRecordConsumer consumer) {
+        for (long n = head, last = tail; n < last; n++) {
+            int index = (int) (n % capacity);
+            consumer.accept(TYPES[types.get(index)], measurements.get(index), epochMillis.get(index),
+                    sensorIds != null ? sensorIds.get(index) : MeasurementLog.UNKNOWN_SENSOR);
+        }
+    }
+
+    // Medidas en memoria
+    public int size() {
+        long first = head;
+        return (int) Math.min(capacity, tail - first);
+    }
+
+    // Medidas agregadas desde que se creó el buffer
+    public long getAdded() {
+        return tail;
+    }
+
+    // Medidas descartadas (siguen en disco)
+    public long getEvicted() {
+        return head;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+}
@@ -1,8 +1,15 @@
 package com.javeriana;
 
 import java.io.Serializable;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 
 public class MeasurementData implements Serializable {
+    // Formato de fecha usado en los mensajes y en el archivo JSON
+    public static final DateTimeFormatter TIMESTAMP_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
     private String sensorType;
     private double measurement;
     private String timestamp;
@@ -42,4 +49,16 @@ public class MeasurementData implements Serializable {
     public void setTimestamp(String timestamp) {
         this.timestamp = timestamp;
     }
+
+    // Método para convertir un timestamp con formato a epoch millis
+    public static long toEpochMillis(String timestamp) {
+        return LocalDateTime.parse(timestamp, TIMESTAMP_FORMAT).atZone(ZoneId.systemDefault()).toInstant()
+                .toEpochMilli();
+    }
+
+    // Método para convertir epoch millis al formato de timestamp de los mensajes
+    public static String formatTimestamp(long epochMillis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneId.systemDefault())
+                .format(TIMESTAMP_FORMAT);
+    }
 }
@@ -0,0 +1,67 @@
+package com.javeriana;
+
+import java.util.SplittableRandom;
+
+// Definición de la clase MeasurementGenerator
+// Genera las medidas de un sensor sin crear objetos por medida: usa un único
+// SplittableRandom y los rangos del tipo de sensor precalculados. Con la misma
+// semilla produce la misma secuencia, para que las pruebas se puedan repetir.
+// No es seguro entre hilos: cada hilo usa su propia copia (ver split()).
+public class MeasurementGenerator {
+
+    // Se usa -1.0 para indicar que el valor es inválido
+    public static final double INVALID_VALUE = -1.0;
+
+    private final SensorType sensorType;
+    private final double[] probabilities;
+    private final SplittableRandom random;
+    private final double min;
+    private final double max;
+    private final double range;
+    private final double withinThreshold; // Probabilidad de valores dentro del rango
+    private final double outsideThreshold; // Probabilidad acumulada dentro + fuera del rango
+
+    // Constructor con semilla
+    public MeasurementGenerator(SensorType sensorType, double[] probabilities, long seed) {
+        this(sensorType, probabilities, new SplittableRandom(seed));
+    }
+
+    // Constructor con semilla aleatoria
+    public MeasurementGenerator(SensorType sensorType, double[] probabilities) {
+        this(sensorType, probabilities, new SplittableRandom());
+    }
+
+    private MeasurementGenerator(SensorType sensorType, double[] probabilities, SplittableRandom random) {
+        this.random = random;
+        this.min = sensorType.getMin();
+        this.max = sensorType.getMax();
+        this.range = max - min;
+        this.withinThreshold = probabilities[0];
+        this.outsideThreshold = probabilities[0] + probabilities[1];
+        this.sensorType = sensorType;
+        this.probabilities = probabilities;
+    }
+
+    // Método para crear un generador independiente (para otro hilo). Es
+    // determinista si el generador original tiene semilla.
+    public MeasurementGenerator split() {
+        return new MeasurementGenerator(sensorType, probabilities, random.split());
+    }
+
+    // Método para generar una medida del sensor
+    public double next() {
+        double randomValue = random.nextDouble();
+
+        // Verificar en qué rango de probabilidad cae el valor aleatorio
+        if (randomValue < withinThreshold) {
+            // Valor dentro del rango
+            return min + range * random.nextDouble();
+        } else if (randomValue < outsideThreshold) {
+            // Valor fuera del rango: por debajo del mínimo o por encima del máximo
+            double offset = range * random.nextDouble();
+            return random.nextBoolean() ? min - offset : max + offset;
+        }
+        // Valor inválido
+        return INVALID_VALUE;
+    }
+}
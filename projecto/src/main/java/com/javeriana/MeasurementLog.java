@@ -0,0 +1,417 @@
+package com.javeriana;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+// Definición de la clase MeasurementLog
+// Log binario de solo escritura al final (append-only) con registros de ancho fijo,
+// dividido en segmentos. Reemplaza la reescritura completa del archivo JSON en cada mensaje.
+// Es también el log de escritura anticipada de los puntos de control del monitor
+// (MonitorCheckpoint): por eso cada registro lleva el id del sensor.
+public class MeasurementLog implements Closeable {
+
+    // Cabecera de cada segmento: magic (int), versión (int), tamaño de registro (int)
+    private static final int MAGIC = 0x4D4C4F47; // "MLOG"
+    private static final int VERSION = 2;
+    static final int HEADER_SIZE = 12;
+
+    // Registro: tipo de sensor (byte), medida (double), timestamp en epoch millis (long), id del sensor (int)
+    static final int RECORD_SIZE = 1 + 8 + 8 + 4;
+    // Registro de la versión 1, sin id del sensor: los segmentos viejos se siguen leyendo
+    private static final int V1_RECORD_SIZE = 1 + 8 + 8;
+
+    // Id de sensor de las medidas que no lo conocen (importadas del JSON, cola del standby, versión 1)
+    public static final int UNKNOWN_SENSOR = -1;
+
+    private static final String INDEX_FILE = "index.bin";
+
+    // Interfaz para recorrer los registros almacenados
+    public interface RecordConsumer {
+        void accept(SensorType sensorType, double measurement, long epochMillis);
+    }
+
+    // Interfaz para recorrer los registros con el id del sensor
+    public interface SensorRecordConsumer {
+        void accept(SensorType sensorType, double measurement, long epochMillis, int sensorId);
+    }
+
+    // Entrada del índice: un segmento sellado con su rango de tiempo y número de registros
+    static final class SegmentInfo {
+        final int number;
+        long firstEpoch;
+        long lastEpoch;
+        long recordCount;
+
+        SegmentInfo(int number, long firstEpoch, long lastEpoch, long recordCount) {
+            this.number = number;
+            this.firstEpoch = firstEpoch;
+            this.lastEpoch = lastEpoch;
+            this.recordCount = recordCount;
+        }
+    }
+
+    private final File directory;
+    private final long segmentRecords; // Registros por segmento antes de rotar
+    private final int syncEvery; // Registros por grupo de fsync
+    private final long syncIntervalMs; // Tiempo máximo entre fsync
+
+    private final List<SegmentInfo> sealedSegments = new ArrayList<>();
+    private SegmentInfo activeSegment;
+    private FileChannel activeChannel;
+    private final ByteBuffer writeBuffer;
+    private int pendingRecords;
+    private long lastSync;
+
+    // Constructor del MeasurementLog
+    public MeasurementLog(File directory, long segmentRecords, int syncEvery, long syncIntervalMs)
+            throws IOException {
+        this.directory = directory;
+        this.segmentRecords = segmentRecords;
+        this.syncEvery = syncEvery;
+        this.syncIntervalMs = syncIntervalMs;
+        this.writeBuffer = ByteBuffer.allocateDirect(RECORD_SIZE * Math.max(1, syncEvery));
+        this.lastSync = System.currentTimeMillis();
+
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Could not create log directory " + directory);
+        }
+
+        loadIndex();
+        openActiveSegment();
+    }
+
+    // Método para agregar una medida sin id de sensor al final del log
+    public void append(SensorType sensorType, double measurement, long epochMillis) throws IOException {
+        append(sensorType, measurement, epochMillis, UNKNOWN_SENSOR);
+    }
+
+    // Método para agregar una medida al final del log
+    public void append(SensorType sensorType, double measurement, long epochMillis, int sensorId)
+            throws IOException {
+        if (activeSegment.recordCount >= segmentRecords) {
+            rollSegment();
+        }
+
+        writeBuffer.put((byte) sensorType.ordinal());
+        writeBuffer.putDouble(measurement);
+        writeBuffer.putLong(epochMillis);
+        writeBuffer.putInt(sensorId);
+
+        if (activeSegment.recordCount == 0) {
+            activeSegment.firstEpoch = epochMillis;
+        }
+        activeSegment.lastEpoch = epochMillis;
+        activeSegment.recordCount++;
+        pendingRecords++;
+
+        if (pendingRecords >= syncEvery) {
+            sync();
+        }
+    }
+
+    // Método para forzar el fsync si se cumplió el intervalo de tiempo del grupo
+    public void maybeSync() throws IOException {
+        if (pendingRecords > 0 && System.currentTimeMillis() - lastSync >= syncIntervalMs) {
+            sync();
+        }
+    }
+
+    // Indica si hay medidas agregadas que aún no llegan a disco
+    public boolean hasPendingRecords() {
+        return pendingRecords > 0;
+    }
+
+    // Método para escribir el grupo pendiente y forzarlo a disco
+    public void sync() throws IOException {
+        if (pendingRecords > 0) {
+            writeBuffer.flip();
+            while (writeBuffer.hasRemaining()) {
+                activeChannel.write(writeBuffer);
+            }
+            writeBuffer.clear();
+            activeChannel.force(false);
+            pendingRecords = 0;
+        }
+        lastSync = System.currentTimeMillis();
+    }
+
+    // Método para recorrer todos los registros almacenados
+    public void replay(RecordConsumer consumer) throws IOException {
+        replay(Long.MIN_VALUE, consumer);
+    }
+
+    // Método para recorrer los registros desde un instante, saltando segmentos
+    // completos gracias al índice
+    public void replay(long fromEpoch, RecordConsumer consumer) throws IOException {
+        replayWithSensor(fromEpoch, withoutSensor(consumer));
+    }
+
+    // Método para recorrer los registros desde un instante con el id del sensor
+    public void replayWithSensor(long fromEpoch, SensorRecordConsumer consumer) throws IOException {
+        sync();
+        for (SegmentInfo segment : sealedSegments) {
+            if (segment.lastEpoch >= fromEpoch) {
+                replaySegment(segmentFile(segment.number), segment.recordCount, 0, fromEpoch, consumer);
+            }
+        }
+        replaySegment(segmentFile(activeSegment.number), activeSegment.recordCount, 0, fromEpoch, consumer);
+    }
+
+    // Método para recorrer los registros desde la posición firstRecord (0 es el
+    // primero del log), saltando segmentos completos por su número de registros
+    public void replaySince(long firstRecord, RecordConsumer consumer) throws IOException {
+        replayTail(firstRecord, (sensorType, measurement, epochMillis, sensorId) ->
+                consumer.accept(sensorType, measurement, epochMillis));
+    }
+
+    // Método para recorrer los registros desde la posición firstRecord con el id
+    // del sensor (la cola posterior a un punto de control)
+    public void replayTail(long firstRecord, SensorRecordConsumer consumer) throws IOException {
+        sync();
+        long skip = Math.max(0, firstRecord);
+        for (SegmentInfo segment : sealedSegments) {
+            if (skip >= segment.recordCount) {
+                skip -= segment.recordCount;
+                continue;
+            }
+            replaySegment(segmentFile(segment.number), segment.recordCount, skip, Long.MIN_VALUE, consumer);
+            skip = 0;
+        }
+        if (skip < activeSegment.recordCount) {
+            replaySegment(segmentFile(activeSegment.number), activeSegment.recordCount, skip, Long.MIN_VALUE,
+                    consumer);
+        }
+    }
+
+    // Método para obtener el número total de registros
+    public long size() {
+        long total = activeSegment.recordCount;
+        for (SegmentInfo segment : sealedSegments) {
+            total += segment.recordCount;
+        }
+        return total;
+    }
+
+    // Timestamp del último registro (Long.MIN_VALUE si el log está vacío)
+    public long getLastEpochMillis() {
+        if (activeSegment.recordCount > 0) {
+            return activeSegment.lastEpoch;
+        }
+        return sealedSegments.isEmpty() ? Long.MIN_VALUE : sealedSegments.get(sealedSegments.size() - 1).lastEpoch;
+    }
+
+    // Método para recorrer un log sin abrirlo para escritura, mientras otro
+    // proceso puede estar escribiéndolo (por ejemplo, el monitor en espera que lee
+    // el log del monitor principal). No trunca nada: solo lee los registros
+    // completos. Si el escritor rotó segmentos después de escribir el índice, los
+    // segmentos siguientes se encuentran por número.
+    public static void replayReadOnly(File directory, RecordConsumer consumer) throws IOException {
+        File indexFile = new File(directory, INDEX_FILE);
+        int number = 0;
+        if (indexFile.exists()) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    number = in.readInt();
+                    in.skipNBytes(16);
+                    replaySegment(segmentFile(directory, number), in.readLong(), 0, Long.MIN_VALUE,
+                            withoutSensor(consumer));
+                    number++;
+                }
+            }
+        }
+        for (File file = segmentFile(directory, number); file.exists(); file = segmentFile(directory, ++number)) {
+            // Un segmento recién creado puede no tener aún la cabecera completa: está vacío
+            int recordSize = recordSize(file);
+            if (recordSize <= 0) {
+                continue;
+            }
+            long records = Math.max(0, (file.length() - HEADER_SIZE) / recordSize);
+            replaySegment(file, records, 0, Long.MIN_VALUE, withoutSensor(consumer));
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        sync();
+        activeChannel.close();
+    }
+
+    // Lee registros de la versión del segmento (la cabecera dice el tamaño de registro)
+    private static void replaySegment(File file, long recordCount, long skipRecords, long fromEpoch,
+            SensorRecordConsumer consumer) throws IOException {
+        SensorType[] types = SensorType.values();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+            in.skipNBytes(8);
+            int recordSize = in.readInt();
+            in.skipNBytes(skipRecords * recordSize);
+            for (long i = skipRecords; i < recordCount; i++) {
+                SensorType sensorType = types[in.readByte()];
+                double measurement = in.readDouble();
+                long epochMillis = in.readLong();
+                int sensorId = recordSize == V1_RECORD_SIZE ? UNKNOWN_SENSOR : in.readInt();
+                if (epochMillis >= fromEpoch) {
+                    consumer.accept(sensorType, measurement, epochMillis, sensorId);
+                }
+            }
+        }
+    }
+
+    private static SensorRecordConsumer withoutSensor(RecordConsumer consumer) {
+        return (sensorType, measurement, epochMillis, sensorId) -> consumer.accept(sensorType, measurement,
+                epochMillis);
+    }
+
+    // Tamaño de registro de un segmento según su cabecera (0 si la cabecera está incompleta)
+    private static int recordSize(File file) throws IOException {
+        if (file.length() < HEADER_SIZE) {
+            return 0;
+        }
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            in.skipNBytes(8);
+            return in.readInt();
+        }
+    }
+
+    // Método para sellar el segmento activo y abrir uno nuevo
+    private void rollSegment() throws IOException {
+        sync();
+        activeChannel.close();
+        sealedSegments.add(activeSegment);
+        writeIndex();
+        activeSegment = new SegmentInfo(activeSegment.number + 1, 0, 0, 0);
+        openActiveSegment();
+    }
+
+    // Método para abrir (o crear) el segmento activo. Si el segmento tiene un
+    // registro incompleto al final (caída durante una escritura), se trunca. Un
+    // segmento activo de la versión 1 se sella tal cual y se sigue en uno nuevo.
+    private void openActiveSegment() throws IOException {
+        File file = segmentFile(activeSegment.number);
+        boolean isNew = !file.exists() || file.length() < HEADER_SIZE;
+
+        activeChannel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+
+        if (!isNew && isVersion1()) {
+            long records = (activeChannel.size() - HEADER_SIZE) / V1_RECORD_SIZE;
+            activeChannel.truncate(HEADER_SIZE + records * V1_RECORD_SIZE);
+            activeChannel.force(false);
+            if (records > 0) {
+                activeSegment.recordCount = records;
+                activeSegment.firstEpoch = readEpoch(0, V1_RECORD_SIZE);
+                activeSegment.lastEpoch = readEpoch(records - 1, V1_RECORD_SIZE);
+                activeChannel.close();
+                sealedSegments.add(activeSegment);
+                writeIndex();
+                activeSegment = new SegmentInfo(activeSegment.number + 1, 0, 0, 0);
+                openActiveSegment();
+                return;
+            }
+            isNew = true;
+        }
+
+        if (isNew) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putInt(RECORD_SIZE).flip();
+            activeChannel.truncate(0);
+            activeChannel.write(header, 0);
+            activeChannel.force(false);
+            activeSegment.recordCount = 0;
+        } else {
+            checkHeader(file);
+            long records = (activeChannel.size() - HEADER_SIZE) / RECORD_SIZE;
+            activeChannel.truncate(HEADER_SIZE + records * RECORD_SIZE);
+            activeSegment.recordCount = records;
+            if (records > 0) {
+                activeSegment.firstEpoch = readEpoch(0, RECORD_SIZE);
+                activeSegment.lastEpoch = readEpoch(records - 1, RECORD_SIZE);
+            }
+        }
+        activeChannel.position(activeChannel.size());
+    }
+
+    // Método para leer el timestamp de un registro del segmento activo
+    private long readEpoch(long record, int recordSize) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(8);
+        activeChannel.read(buffer, HEADER_SIZE + record * recordSize + 9);
+        return buffer.flip().getLong();
+    }
+
+    // Indica si el segmento activo es de la versión 1 (registros sin id de sensor)
+    private boolean isVersion1() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        activeChannel.read(header, 0);
+        header.flip();
+        return header.getInt() == MAGIC && header.getInt() == 1 && header.getInt() == V1_RECORD_SIZE;
+    }
+
+    // Método para validar la cabecera de un segmento existente
+    private void checkHeader(File file) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        activeChannel.read(header, 0);
+        header.flip();
+        if (header.getInt() != MAGIC || header.getInt() != VERSION || header.getInt() != RECORD_SIZE) {
+            throw new IOException("Invalid segment header in " + file);
+        }
+    }
+
+    // Método para cargar el índice de segmentos sellados
+    private void loadIndex() throws IOException {
+        File indexFile = new File(directory, INDEX_FILE);
+        int nextSegment = 0;
+        if (indexFile.exists()) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    SegmentInfo segment = new SegmentInfo(in.readInt(), in.readLong(), in.readLong(), in.readLong());
+                    sealedSegments.add(segment);
+                    nextSegment = segment.number + 1;
+                }
+            }
+        }
+        activeSegment = new SegmentInfo(nextSegment, 0, 0, 0);
+    }
+
+    // Método para escribir el índice de forma atómica (archivo temporal + rename)
+    private void writeIndex() throws IOException {
+        File tmp = new File(directory, INDEX_FILE + ".tmp");
+        try (FileOutputStream fileOut = new FileOutputStream(tmp);
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut))) {
+            out.writeInt(sealedSegments.size());
+            for (SegmentInfo segment : sealedSegments) {
+                out.writeInt(segment.number);
+                out.writeLong(segment.firstEpoch);
+                out.writeLong(segment.lastEpoch);
+                out.writeLong(segment.recordCount);
+            }
+            out.flush();
+            fileOut.getFD().sync();
+        }
+        Files.move(tmp.toPath(), new File(directory, INDEX_FILE).toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Método para obtener el archivo de un segmento
+    private File segmentFile(int number) {
+        return segmentFile(directory, number);
+    }
+
+    private static File segmentFile(File directory, int number) {
+        return new File(directory, String.format("segment-%06d.log", number));
+    }
+}
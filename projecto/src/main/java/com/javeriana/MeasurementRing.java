@@ -0,0 +1,141 @@
+package com.javeriana;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// Definición de la clase MeasurementRing
+// Buffer circular acotado y sin bloqueos que conecta las etapas del Monitor
+// (estilo Disruptor). Las ranuras se crean una sola vez y se reutilizan. Hay un
+// único productor (la etapa de recepción); cada etapa consumidora publica hasta
+// qué secuencia procesó y espera a la secuencia de las etapas de las que depende.
+public class MeasurementRing {
+
+    // Ranura del buffer: el mensaje recibido y sus medidas decodificadas
+    static final class Slot {
+        byte[] frame;
+        int length;
+        long journalId = -1; // Diario del broker y offset del mensaje (-1 sin diario)
+        long journalOffset;
+        long brokerMillis; // Hora de envío del broker (0 si no se conoce)
+        SensorType sensorType;
+        int count; // Número de medidas válidas (0 si el mensaje no era válido)
+        double[] measurements = new double[1];
+        long[] epochMillis = new long[1];
+        int[] sensorIds = new int[1];
+        byte[] alerts = new byte[1]; // Motivo de alerta (AlertRules), NONE si no hay alerta o se suprimió
+        int[] suppressed = new int[1]; // Alertas suprimidas antes de ésta
+
+        // Método para asegurar espacio para n medidas
+        void ensureCapacity(int n) {
+            if (measurements.length < n) {
+                measurements = new double[n];
+                epochMillis = new long[n];
+                sensorIds = new int[n];
+                alerts = new byte[n];
+                suppressed = new int[n];
+            }
+        }
+    }
+
+    // Iteraciones de espera activa antes de ceder el procesador
+    private static final int SPIN_TRIES = 100;
+    private static final long PARK_NANOS = 50_000;
+
+    private final Slot[] slots;
+    private final int mask;
+    private final AtomicLong cursor = new AtomicLong(-1); // Última secuencia publicada
+    private volatile AtomicLong[] gatingSequences = new AtomicLong[0];
+
+    // Constructor del MeasurementRing. El tamaño se redondea a potencia de dos.
+    public MeasurementRing(int requestedSize) {
+        int size = Integer.highestOneBit(Math.max(2, requestedSize - 1)) << 1;
+        this.slots = new Slot[size];
+        this.mask = size - 1;
+        for (int i = 0; i < size; i++) {
+            slots[i] = new Slot();
+        }
+    }
+
+    // Método para crear la secuencia de una etapa consumidora
+    public static AtomicLong newSequence() {
+        return new AtomicLong(-1);
+    }
+
+    // Método para indicar las etapas finales: el productor no sobrescribe una
+    // ranura hasta que todas ellas la procesaron
+    public void setGatingSequences(AtomicLong... sequences) {
+        this.gatingSequences = sequences;
+    }
+
+    // Método para reservar la siguiente secuencia (espera si el buffer está lleno)
+    public long next() throws InterruptedException {
+        long next = cursor.get() + 1;
+        int tries = 0;
+        while (next - slots.length > minimum(gatingSequences)) {
+            tries = idle(tries);
+        }
+        return next;
+    }
+
+    // Método para publicar una secuencia ya escrita
+    public void publish(long sequence) {
+        cursor.set(sequence);
+    }
+
+    // Método para obtener la ranura de una secuencia
+    Slot get(long sequence) {
+        return slots[(int) (sequence & mask)];
+    }
+
+    // Secuencia publicada más alta
+    public AtomicLong getCursor() {
+        return cursor;
+    }
+
+    // Mensajes publicados que las etapas finales aún no terminan de procesar
+    public long getDepth() {
+        return cursor.get() - minimum(gatingSequences);
+    }
+
+    public int getSize() {
+        return slots.length;
+    }
+
+    // Método para esperar a que las etapas previas alcancen una secuencia.
+    // Devuelve la secuencia más alta disponible, que puede ser menor que la pedida
+    // si se cumplió el tiempo de espera (para que la etapa haga trabajo ocioso).
+    public static long waitFor(long sequence, AtomicLong[] upstream, long timeoutNanos) throws InterruptedException {
+        long available = minimum(upstream);
+        if (available >= sequence) {
+            return available;
+        }
+        long deadline = System.nanoTime() + timeoutNanos;
+        int tries = 0;
+        while ((available = minimum(upstream)) < sequence && System.nanoTime() < deadline) {
+            tries = idle(tries);
+        }
+        return available;
+    }
+
+    // Método para obtener la secuencia mínima de un grupo de etapas
+    static long minimum(AtomicLong[] sequences) {
+        long minimum = Long.MAX_VALUE;
+        for (AtomicLong sequence : sequences) {
+            minimum = Math.min(minimum, sequence.get());
+        }
+        return minimum;
+    }
+
+    // Estrategia de espera: espera activa corta y luego pausas breves
+    private static int idle(int tries) throws InterruptedException {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new InterruptedException();
+        }
+        if (tries < SPIN_TRIES) {
+            Thread.onSpinWait();
+            return tries + 1;
+        }
+        LockSupport.parkNanos(PARK_NANOS);
+        return tries;
+    }
+}
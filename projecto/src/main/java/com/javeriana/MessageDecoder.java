@@ -0,0 +1,132 @@
+package com.javeriana;
+
+import java.nio.charset.StandardCharsets;
+
+// Definición de la clase MessageDecoder
+// Decodifica los mensajes de medidas (ver MessageEncoder para el formato). El
+// resultado queda en los campos del decoder, que se reutiliza para cada mensaje.
+public class MessageDecoder {
+
+    private static final SensorType[] SENSOR_TYPES = SensorType.values();
+
+    // Si se aceptan también mensajes de texto "tipo#medida#timestamp"
+    private final boolean acceptLegacy;
+
+    private SensorType sensorType;
+    private double measurement;
+    private long epochMillis;
+    private int sensorId;
+
+    // Estado del lote decodificado: los registros se leen con select(i)
+    private byte[] batchFrame;
+    private int recordCount;
+
+    // Constructor del MessageDecoder
+    public MessageDecoder(boolean acceptLegacy) {
+        this.acceptLegacy = acceptLegacy;
+    }
+
+    // Método para decodificar un mensaje completo
+    public boolean decode(byte[] frame) {
+        return decode(frame, frame.length);
+    }
+
+    // Método para decodificar los primeros length bytes de un buffer. Devuelve
+    // false si el mensaje no tiene un formato válido. Un mensaje puede traer
+    // varias medidas: se recorren con getRecordCount() y select(i). Una longitud
+    // negativa (recv(buffer) devuelve -1 al vencer el plazo) es que no hubo mensaje.
+    public boolean decode(byte[] frame, int length) {
+        batchFrame = null;
+        recordCount = 0;
+        if (frame == null || length < 0) {
+            return false;
+        }
+        recordCount = 1;
+        if (length >= 2 && frame[0] >= 0 && frame[0] < SENSOR_TYPES.length) {
+            if (length == MessageEncoder.FRAME_SIZE && frame[1] == MessageEncoder.VERSION) {
+                sensorType = SENSOR_TYPES[frame[0]];
+                measurement = Double.longBitsToDouble(readLong(frame, 2));
+                epochMillis = readLong(frame, 10);
+                sensorId = readInt(frame, 18);
+                return true;
+            }
+            if (frame[1] == MessageEncoder.BATCH_VERSION && length >= MessageEncoder.BATCH_HEADER_SIZE) {
+                int count = ((frame[2] & 0xFF) << 8) | (frame[3] & 0xFF);
+                if (count > 0 && length == MessageEncoder.BATCH_HEADER_SIZE
+                        + count * MessageEncoder.BATCH_RECORD_SIZE) {
+                    sensorType = SENSOR_TYPES[frame[0]];
+                    batchFrame = frame;
+                    recordCount = count;
+                    select(0);
+                    return true;
+                }
+            }
+            return false;
+        }
+        return acceptLegacy && decodeLegacy(frame, length);
+    }
+
+    // Método para cargar el registro i del último mensaje decodificado
+    public void select(int index) {
+        if (batchFrame != null) {
+            int offset = MessageEncoder.BATCH_HEADER_SIZE + index * MessageEncoder.BATCH_RECORD_SIZE;
+            measurement = Double.longBitsToDouble(readLong(batchFrame, offset));
+            epochMillis = readLong(batchFrame, offset + 8);
+            sensorId = readInt(batchFrame, offset + 16);
+        }
+    }
+
+    // Número de medidas del último mensaje decodificado
+    public int getRecordCount() {
+        return recordCount;
+    }
+
+    // Método para decodificar el formato de texto anterior
+    private boolean decodeLegacy(byte[] frame, int length) {
+        String[] parts = new String(frame, 0, length, StandardCharsets.UTF_8).split("#");
+        if (parts.length != 3) {
+            return false;
+        }
+        try {
+            sensorType = SensorType.valueOf(parts[0]);
+            measurement = Double.parseDouble(parts[1]);
+            epochMillis = MeasurementData.toEpochMillis(parts[2]);
+            sensorId = 0;
+            return true;
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    // Getters del último mensaje decodificado
+    public SensorType getSensorType() {
+        return sensorType;
+    }
+
+    public double getMeasurement() {
+        return measurement;
+    }
+
+    public long getEpochMillis() {
+        return epochMillis;
+    }
+
+    public int getSensorId() {
+        return sensorId;
+    }
+
+    @Override
+    public String toString() {
+        return sensorType + "#" + measurement + "#" + MeasurementData.formatTimestamp(epochMillis) + "#" + sensorId;
+    }
+
+    // Métodos para leer enteros big-endian sin crear un ByteBuffer
+    static long readLong(byte[] frame, int offset) {
+        return ((long) readInt(frame, offset) << 32) | (readInt(frame, offset + 4) & 0xFFFFFFFFL);
+    }
+
+    static int readInt(byte[] frame, int offset) {
+        return ((frame[offset] & 0xFF) << 24) | ((frame[offset + 1] & 0xFF) << 16) | ((frame[offset + 2] & 0xFF) << 8)
+                | (frame[offset + 3] & 0xFF);
+    }
+}
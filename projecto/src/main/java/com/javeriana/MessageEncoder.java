@@ -0,0 +1,102 @@
+package com.javeriana;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// Definición de la clase MessageEncoder
+// Codifica medidas en el formato binario de los mensajes. Reutiliza el mismo
+// buffer en cada llamada, por lo que no crea objetos en el camino principal.
+//
+// Formato (big-endian):
+//   [tipo de sensor: 1 byte (ordinal)] [versión: 1 byte]
+//   [medida: double 8 bytes] [timestamp: epoch millis 8 bytes] [id del sensor: int 4 bytes]
+//
+// Formato de lote (versión BATCH_VERSION), varias medidas del mismo tipo en un mensaje:
+//   [tipo de sensor: 1 byte] [versión: 1 byte] [número de registros: 2 bytes]
+//   N x ([medida: 8 bytes] [timestamp: 8 bytes] [id del sensor: 4 bytes])
+//
+// El tipo de sensor va primero para que el filtrado por prefijo de ZeroMQ siga
+// funcionando: basta con suscribirse a topic(tipo).
+public class MessageEncoder {
+
+    public static final byte VERSION = 1;
+    public static final int FRAME_SIZE = 1 + 1 + 8 + 8 + 4;
+
+    public static final byte BATCH_VERSION = 2;
+    public static final int BATCH_HEADER_SIZE = 1 + 1 + 2;
+    public static final int BATCH_RECORD_SIZE = 8 + 8 + 4;
+    public static final int MAX_BATCH = 4096;
+    public static final int MAX_FRAME_SIZE = BATCH_HEADER_SIZE + MAX_BATCH * BATCH_RECORD_SIZE;
+
+    private final byte[] frame = new byte[FRAME_SIZE];
+    private final ByteBuffer buffer = ByteBuffer.wrap(frame);
+
+    // Buffer del lote en construcción (se crea solo si se usan lotes)
+    private byte[] batchFrame;
+    private ByteBuffer batchBuffer;
+    private int batchCount;
+
+    // Método para codificar una medida. El arreglo devuelto se reutiliza en la
+    // siguiente llamada.
+    public byte[] encode(SensorType sensorType, double measurement, long epochMillis, int sensorId) {
+        buffer.clear();
+        buffer.put((byte) sensorType.ordinal());
+        buffer.put(VERSION);
+        buffer.putDouble(measurement);
+        buffer.putLong(epochMillis);
+        buffer.putInt(sensorId);
+        return frame;
+    }
+
+    // Método para iniciar un lote de hasta maxRecords medidas de un tipo de sensor
+    public void startBatch(SensorType sensorType, int maxRecords) {
+        if (maxRecords < 1 || maxRecords > MAX_BATCH) {
+            throw new IllegalArgumentException("Batch size must be between 1 and " + MAX_BATCH);
+        }
+        int size = BATCH_HEADER_SIZE + maxRecords * BATCH_RECORD_SIZE;
+        if (batchFrame == null || batchFrame.length < size) {
+            batchFrame = new byte[size];
+            batchBuffer = ByteBuffer.wrap(batchFrame);
+        }
+        batchBuffer.clear();
+        batchBuffer.put((byte) sensorType.ordinal());
+        batchBuffer.put(BATCH_VERSION);
+        batchBuffer.putShort((short) 0);
+        batchCount = 0;
+    }
+
+    // Método para agregar una medida al lote en construcción
+    public void add(double measurement, long epochMillis, int sensorId) {
+        batchBuffer.putDouble(measurement);
+        batchBuffer.putLong(epochMillis);
+        batchBuffer.putInt(sensorId);
+        batchCount++;
+        batchBuffer.putShort(2, (short) batchCount);
+    }
+
+    // Número de medidas en el lote en construcción
+    public int getBatchCount() {
+        return batchCount;
+    }
+
+    // Bytes válidos del lote (para enviar con send(frame, 0, length, flags))
+    public int getBatchLength() {
+        return batchBuffer.position();
+    }
+
+    // Buffer del lote. Se reutiliza al iniciar el siguiente lote.
+    public byte[] getBatchFrame() {
+        return batchFrame;
+    }
+
+    // Método para obtener el prefijo de suscripción de un tipo de sensor
+    public static byte[] topic(SensorType sensorType) {
+        return new byte[] { (byte) sensorType.ordinal() };
+    }
+
+    // Método para codificar una medida en el formato de texto anterior
+    // ("tipo#medida#timestamp")
+    public static byte[] encodeLegacy(SensorType sensorType, double measurement, String timestamp) {
+        return (sensorType + "#" + measurement + "#" + timestamp).getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,203 @@
+package com.javeriana;
+
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+// Definición de la clase Metrics
+// Métricas del proceso con poco costo en el camino de cada mensaje: los contadores
+// son LongAdder (sin bloqueos ni contención entre hilos) y las latencias van a un
+// LatencyHistogram. Se exportan en el formato de texto de Prometheus por HTTP
+// (GET /metrics); armar el texto solo cuesta cuando alguien consulta.
+//
+// Los nombres siguen las convenciones de Prometheus: <componente>_<qué>_total
+// para contadores y _seconds para latencias (se registran en nanosegundos).
+public class Metrics {
+
+    private static final Metrics GLOBAL = new Metrics();
+    private static final double[] QUANTILES = { 0.5, 0.9, 0.99, 0.999 };
+
+    // Contador que solo crece
+    public static final class Counter {
+        private final LongAdder adder = new LongAdder();
+
+        public void increment() {
+            adder.increment();
+        }
+
+        public void add(long amount) {
+            adder.add(amount);
+        }
+
+        public long get() {
+            return adder.sum();
+        }
+    }
+
+    // Latencias en nanosegundos, exportadas como summary en segundos
+    public static final class Timer {
+        private final LatencyHistogram histogram = new LatencyHistogram();
+        private final LongAdder sumNanos = new LongAdder();
+
+        public void record(long nanos) {
+            histogram.record(nanos);
+            sumNanos.add(Math.max(0, nanos));
+        }
+
+        // Método para registrar el tiempo transcurrido desde startNanos (System.nanoTime)
+        public void recordSince(long startNanos) {
+            record(System.nanoTime() - startNanos);
+        }
+
+        public LatencyHistogram getHistogram() {
+            return histogram;
+        }
+    }
+
+    // Métrica registrada: su tipo, ayuda y cómo escribir sus muestras
+    private static final class Entry {
+        final String name;
+        final String labels;
+        final String type;
+        final String help;
+        final Object source; // Counter, Timer o LongSupplier
+
+        Entry(String name, String labels, String type, String help, Object source) {
+            this.name = name;
+            this.labels = labels;
+            this.type = type;
+            this.help = help;
+            this.source = source;
+        }
+    }
+
+    // Ordenadas por nombre y etiquetas, para agrupar las series de cada métrica
+    private final Map<String, Entry> entries = new TreeMap<>();
+
+    // Métricas del proceso (los componentes de un mismo proceso se distinguen por nombre y etiquetas)
+    public static Metrics global() {
+        return GLOBAL;
+    }
+
+    // Etiqueta para las series de un tipo de sensor: type="ph"
+    public static String typeLabel(SensorType sensorType) {
+        return "type=\"" + sensorType + "\"";
+    }
+
+    // Método para obtener (o crear) un contador
+    public Counter counter(String name, String help, String labels) {
+        return (Counter) register(name, labels, "counter", help, new Counter());
+    }
+
+    // Método para obtener (o crear) un temporizador
+    public Timer timer(String name, String help, String labels) {
+        return (Timer) register(name, labels, "summary", help, new Timer());
+    }
+
+    // Método para exportar un contador que ya lleva el componente (por ejemplo un AtomicLong)
+    public void counterFunction(String name, String help, String labels, LongSupplier value) {
+        put(name, labels, "counter", help, value);
+    }
+
+    // Método para exportar un valor que sube y baja (profundidad de cola, crédito...)
+    public void gauge(String name, String help, String labels, LongSupplier value) {
+        put(name, labels, "gauge", help, value);
+    }
+
+    private synchronized Object register(String name, String labels, String type, String help, Object created) {
+        Entry entry = entries.get(key(name, labels));
+        if (entry != null && entry.type.equals(type)) {
+            return entry.source; // Misma métrica pedida desde otro lugar del proceso
+        }
+        put(name, labels, type, help, created);
+        return created;
+    }
+
+    private synchronized void put(String name, String labels, String type, String help, Object source) {
+        entries.put(key(name, labels), new Entry(name, labels == null ? "" : labels, type, help, source));
+    }
+
+    private static String key(String name, String labels) {
+        return name + "{" + (labels == null ? "" : labels) + "}";
+    }
+
+    // Método para escribir todas las métricas en formato de texto de Prometheus
+    public synchronized String scrape() {
+        StringBuilder text = new StringBuilder(4096);
+        String lastName = null;
+        for (Entry entry : entries.values()) {
+            if (!entry.name.equals(lastName)) {
+                text.append("# HELP ").append(entry.name).append(' ').append(entry.help).append('\n');
+                text.append("# TYPE ").append(entry.name).append(' ').append(entry.type).append('\n');
+                lastName = entry.name;
+            }
+            if (entry.source instanceof Timer) {
+                appendTimer(text, entry, (Timer) entry.source);
+            } else {
+                long value = entry.source instanceof Counter ? ((Counter) entry.source).get()
+                        : ((LongSupplier) entry.source).getAsLong();
+                appendSample(text, entry.name, entry.labels, null, Long.toString(value));
+            }
+        }
+        return text.toString();
+    }
+
+    private static void appendTimer(StringBuilder text, Entry entry, Timer timer) {
+        LatencyHistogram snapshot = timer.histogram.snapshot();
+        for (double quantile : QUANTILES) {
+            appendSample(text, entry.name, entry.labels, "quantile=\"" + quantile + "\"",
+                    seconds(snapshot.getValueAtPercentile(quantile * 100)));
+        }
+        appendSample(text, entry.name + "_sum", entry.labels, null, seconds(timer.sumNanos.sum()));
+        appendSample(text, entry.name + "_count", entry.labels, null, Long.toString(snapshot.getCount()));
+    }
+
+    private static void appendSample(StringBuilder text, String name, String labels, String extraLabel,
+            String value) {
+        text.append(name);
+        if (!labels.isEmpty() || extraLabel != null) {
+            text.append('{').append(labels);
+            if (extraLabel != null) {
+                text.append(labels.isEmpty() ? "" : ",").append(extraLabel);
+            }
+            text.append('}');
+        }
+        text.append(' ').append(value).append('\n');
+    }
+
+    private static String seconds(long nanos) {
+        return Double.toString(nanos / 1e9);
+    }
+
+    // Método para publicar las métricas en http://<host>:<port>/metrics. Devuelve
+    // null (y sigue sin métricas) si el puerto es 0 o está ocupado.
+    public static HttpServer serve(int port) {
+        if (port <= 0) {
+            return null;
+        }
+        try {
+            HttpServer server = HttpServer.create(new InetSocketAddress(port), 0);
+            server.createContext("/metrics", exchange -> {
+                byte[] body = GLOBAL.scrape().getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            });
+            server.start();
+            System.out.println("Metrics on http://localhost:" + port + "/metrics");
+            return server;
+        } catch (IOException e) {
+            System.err.println("Metrics endpoint disabled, could not bind port " + port + ": " + e.getMessage());
+            return null;
+        }
+    }
+}
@@ -4,11 +4,13 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import org.kohsuke.args4j.CmdLineParser;
 import org.kohsuke.args4j.Option;
-import org.zeromq.SocketType;
 import org.zeromq.ZContext;
 import org.zeromq.ZMQ;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -19,6 +21,126 @@ public class Monitor {
     @Option(name = "-t", aliases = "--monitorType", required = true, usage = "Monitor type (oxygeno, ph, or temperatura)")
     private SensorType monitorType;
 
+    @Option(name = "--segmentRecords", usage = "Records per log segment before rolling over")
+    private long segmentRecords = 1_000_000;
+
+    @Option(name = "--syncEvery", usage = "Records per fsync group in the measurement log")
+    private int syncEvery = 256;
+
+    @Option(name = "--syncIntervalMs", usage = "Maximum milliseconds between fsyncs of the measurement log")
+    private long syncIntervalMs = 1000;
+
+    @Option(name = "-e", aliases = "--exportJson", usage = "Export the measurement log to <type>_data.json and exit")
+    private boolean exportJson;
+
+    @Option(name = "--broker", usage = "Broker backend endpoint")
+    private String brokerAddress = "tcp://192.168.0.4:5560"; // IP y puerto del broker
+
+    @Option(name = "--calidad", usage = "Sistema de calidad endpoint")
+    private String calidadAddress = "tcp://192.168.0.4:5555"; // IP y puerto del "sistema de calidad"
+
+    @Option(name = "--shards", usage = "Evaluation threads; measurements are split among them by sensor id")
+    private int shards = 1;
+
+    @Option(name = "--ringSize", usage = "Messages buffered between pipeline stages")
+    private int ringSize = 1024;
+
+    @Option(name = "--windowMs", usage = "Length of the sliding aggregation window in milliseconds")
+    private long windowMs = 10_000;
+
+    @Option(name = "--slideMs", usage = "Tumbling window length and sliding window step in milliseconds")
+    private long slideMs = 1000;
+
+    @Option(name = "--aggregatePort", usage = "Port of the aggregate publisher (default depends on the type)")
+    private int aggregatePort;
+
+    @Option(name = "--noSensorAggregates", usage = "Publish only the aggregate of the whole sensor type")
+    private boolean noSensorAggregates;
+
+    @Option(name = "--rules", usage = "Alert rules file (<type>.min, <type>.max, invalid)")
+    private File rulesFile;
+
+    @Option(name = "--alertDebounceMs", usage = "Milliseconds to suppress repeated alerts of a sensor (0 disables)")
+    private long alertDebounceMs = 5000;
+
+    @Option(name = "--alertBatch", usage = "Maximum alerts per message to the sistema de calidad")
+    private int alertBatch = 64;
+
+    @Option(name = "--alertLingerMs", usage = "Maximum milliseconds an alert waits for its batch to fill")
+    private long alertLingerMs = 200;
+
+    @Option(name = "--heartbeatMs", usage = "Milliseconds between heartbeats published to the HealthChecker")
+    private long heartbeatMs = 100;
+
+    @Option(name = "--checkpointMs", usage = "Milliseconds between window and alert state checkpoints (0 disables)")
+    private long checkpointMs = 10000;
+
+    @Option(name = "--member", usage = "Number of this monitor in the group of its type (ports +100 per member)")
+    private int member;
+
+    @Option(name = "--groupSize", usage = "Monitors of this type sharing its sensors when there is no --registry")
+    private int groupSize = 1;
+
+    @Option(name = "--standby", usage = "Start as a warm standby that takes over when it receives PROMOTE")
+    private boolean standby;
+
+    @Option(name = "--standbyTailRecords", usage = "Recent measurements a standby keeps to fill the log on promotion")
+    private int standbyTailRecords = 1 << 20;
+
+    @Option(name = "--dataDir", usage = "Directory of <type>_data and <type>_data.json (default: working directory)")
+    private File dataDirectory;
+
+    @Option(name = "--historySize", usage = "Recent measurements kept in memory (older ones stay on disk)")
+    private int historySize = 1 << 20;
+
+    @Option(name = "--historyRetentionMs", usage = "Milliseconds of measurements kept in memory (0: no limit)")
+    private long historyRetentionMs;
+
+    @Option(name = "--offHeapHistory", usage = "Keep the in-memory history in direct memory, outside the heap")
+    private boolean offHeapHistory;
+
+    @Option(name = "--registry", usage = "Service registry endpoint used instead of --broker and --calidad")
+    private String registryAddress;
+
+    @Option(name = "--partitions", usage = "Fixed broker cluster instead of --broker: front|back,front|back")
+    private String partitions;
+
+    @Option(name = "--partitionBy", usage = "Key the sensors use to spread over the brokers (sensor or type)")
+    private PartitionKey partitionBy = PartitionKey.sensor;
+
+    @Option(name = "--replay", usage = "Journal replay endpoints of the --broker broker, comma separated")
+    private String replayAddresses;
+
+    @Option(name = "--noReplay", usage = "Do not catch up on the broker journals at startup; only live messages")
+    private boolean noReplay;
+
+    @Option(name = "--advertiseHost", usage = "Host published in the registry for this monitor (default: local IP)")
+    private String advertiseHost;
+
+    @Option(name = "--rcvHwm", usage = "Messages queued from the broker before the subscription drops them")
+    private int rcvHwm = 1000;
+
+    @Option(name = "--legacy", usage = "Also accept the legacy text format (type#value#timestamp)")
+    private boolean legacy;
+
+    @Option(name = "--queryPort", usage = "Port of the series query service (default depends on the type)")
+    private int queryPort;
+
+    @Option(name = "--noSeries", usage = "Do not keep the compressed series nor answer range queries")
+    private boolean noSeries;
+
+    @Option(name = "--chunkPoints", usage = "Measurements per compressed series chunk")
+    private int chunkPoints = 4096;
+
+    @Option(name = "--chunkSealMs", usage = "Maximum milliseconds a series chunk stays in memory before it is written")
+    private long chunkSealMs = 60_000;
+
+    @Option(name = "--metricsPort", usage = "Port of the Prometheus metrics endpoint (default depends on the type)")
+    private int metricsPort = -1;
+
+    @Option(name = "--logPerSecond", usage = "Per-message log lines printed per second at most (0 disables them)")
+    private int logPerSecond = 10;
+
     // Método principal
     public static void main(String[] args) {
         Monitor monitor = new Monitor();// Crear una instancia de la clase Monitor
@@ -29,107 +151,211 @@ public class Monitor {
             // Analizar los argumentos de línea de comandos
             parser.parseArgument(args);
 
-            // Imprimir el tipo de monitor obtenido de los argumentos
-            System.out.println("Monitor Type: " + monitor.monitorType);
-
             // Crear un contexto ZeroMQ
             try (ZContext context = new ZContext()) {
-
-                // Crear un socket ZeroMQ de tipo SUB para recibir mensajes del broker
-                org.zeromq.ZMQ.Socket subscriber = context.createSocket(SocketType.SUB);
-                subscriber.connect("tcp://192.168.0.4:5560"); // IP y puerto del broker
-                String monitorTypeString = monitor.monitorType.toString() + "#";
-                subscriber.subscribe(monitorTypeString.getBytes());
-                System.out.println("Monitor is monitoring " + monitor.monitorType);
-
-                // Crear un socket ZeroMQ de tipo PUSH para enviar alertas al "sistema de
-                // calidad"
-                org.zeromq.ZMQ.Socket calidadSocket = context.createSocket(SocketType.PUSH);
-                calidadSocket.connect("tcp://192.168.0.4:5555"); // IP y puerto del "sistema de calidad"
-
-                // Inicializar ObjectMapper de Jackson
-                ObjectMapper objectMapper = new ObjectMapper();
-                objectMapper.enable(SerializationFeature.INDENT_OUTPUT);
-
-                // Crear o cargar un archivo JSON
-                File jsonFile = new File(monitor.monitorType + "_data.json");
-                List<MeasurementData> measurementDataList;
-
-                if (jsonFile.exists()) {
-                    // Si el archivo existe, cargar datos existentes
-                    measurementDataList = objectMapper.readValue(jsonFile,
-                            objectMapper.getTypeFactory().constructCollectionType(List.class, MeasurementData.class));
-                } else {
-                    // Si el archivo no existe, crear una nueva lista
-                    measurementDataList = new ArrayList<>();
-                }
-
-                // Crear un Poller para verificar eventos de socket
-                ZMQ.Poller poller = context.createPoller(2);
-                poller.register(subscriber, ZMQ.Poller.POLLIN);
-
-                // Crear un socket ZeroMQ de tipo REP para manejar chequeos de salu
-                org.zeromq.ZMQ.Socket healthCheckSocket = context.createSocket(SocketType.REP);
-                int healthCheckPort = getHealthCheckPort(monitor.monitorType);
-                healthCheckSocket.bind("tcp://*:" + healthCheckPort); // Bind to a port determined by the sensor type
-                poller.register(healthCheckSocket, ZMQ.Poller.POLLIN);
-
-                while (!Thread.currentThread().isInterrupted()) {
-                    // Verificar solicitudes de chequeo de salud
-                    if (poller.poll(1000) > 0) {
-                        if (poller.pollin(1)) {
-                            String healthCheckRequest = healthCheckSocket.recvStr(0);// Enlazar a un puerto determinado
-                                                                                     // por el tipo de sensor
-                            System.out.println("Received health check request: " + healthCheckRequest);
-
-                            // Responder con un acuse de recibo (OK) se utilizo PING PONG para el chequeo de
-                            // salud
-                            healthCheckSocket.send("OK", 0);
-                        }
-                    }
-
-                    // Recibir datos del sensor desde el broker
-                    if (poller.pollin(0)) {
-                        String message = subscriber.recvStr(0);
-                        System.out.println("Monitor received: " + message);
-
-                        // Analizar el mensaje
-                        String[] parts = message.split("#");
-                        if (parts.length == 3) {
-                            String sensorType = parts[0];
-                            double measurement = Double.parseDouble(parts[1]);
-                            String timestamp = parts[2];
-
-                            // Verificar valor no válido (-1)
-                            if (measurement == -1.0) {
-                                // Enviar alerta al "sistema de calidad"
-                                sendAlertToSistemaDeCalidad(calidadSocket, sensorType, timestamp);
-                            }
-
-                            // Agregar los datos a la lista
-                            measurementDataList.add(new MeasurementData(sensorType, measurement, timestamp));
-
-                            // Actualizar el archivo JSON
-                            objectMapper.writeValue(jsonFile, measurementDataList);
-                        } else {
-                            System.out.println("Invalid message format");
-                        }
-                    }
-                }
+                monitor.run(context);
             }
+        } catch (IllegalStateException e) {
+            // Una etapa del pipeline falló: salir con error para que el HealthChecker lo reemplace
+            System.err.println(e.getMessage());
+            System.exit(1);
         } catch (Exception e) {
             System.err.println(e.getMessage());
             parser.printUsage(System.err);
         }
     }
 
-    // Método para enviar una alerta al "sistema de calidad"
-    private static void sendAlertToSistemaDeCalidad(org.zeromq.ZMQ.Socket calidadSocket, String sensorType,
-            String timestamp) {
-        // Enviar la alerta al "sistema de calidad
-        String alertMessage = sensorType + "#" + timestamp;
-        calidadSocket.send(alertMessage.getBytes(ZMQ.CHARSET), 0);
-        System.out.println("Sent alert to 'sistema de calidad': SensorType=" + sensorType + ", Timestamp=" + timestamp);
+    // Método que ejecuta el monitor sobre un contexto ZeroMQ hasta que se interrumpe
+    // el proceso (o, dentro de otro proceso, el contexto compartido)
+    public void run(ZContext context) throws Exception {
+        // Imprimir el tipo de monitor obtenido de los argumentos
+        System.out.println("Monitor Type: " + monitorType);
+        SampledLog.setDefaultPerSecond(logPerSecond);
+        if (member < 0 || registryAddress == null && member >= groupSize) {
+            throw new IllegalArgumentException("--member must be between 0 and --groupSize - 1");
+        }
+
+        if (standby) {
+            // El standby solo lee el log del principal; lo abre para escritura al ser promovido
+            MeasurementBuffer history = newHistory();
+            MeasurementLog.replayReadOnly(logDirectory(), history::add);
+            System.out.println("Loaded " + history.size() + " of " + history.getAdded() + " measurements from log");
+            run(this, null, history, context);
+            return;
+        }
+
+        // Abrir el log binario de medidas
+        File jsonFile = new File(dataDirectory, MonitorGroup.memberName(monitorType, member) + "_data.json");
+        try (MeasurementLog measurementLog = openLog()) {
+
+            if (exportJson) {
+                // Exportar el log al archivo JSON y terminar
+                exportJson(measurementLog, jsonFile);
+                System.out.println("Exported " + measurementLog.size() + " measurements to " + jsonFile);
+                return;
+            }
+
+            if (measurementLog.size() == 0 && jsonFile.exists()) {
+                // Migrar el archivo JSON anterior al log la primera vez
+                importJson(measurementLog, jsonFile);
+            }
+
+            // Cargar en memoria la parte más reciente del log (la que cabe en el historial)
+            MeasurementBuffer history = newHistory();
+            measurementLog.replaySince(measurementLog.size() - history.getCapacity(), history::add);
+            System.out.println("Loaded " + history.size() + " of " + measurementLog.size()
+                    + " measurements from log");
+
+            run(this, measurementLog, history, context);
+        }
+    }
+
+    // Método que ejecuta el pipeline del monitor hasta que se interrumpe el proceso
+    private static void run(Monitor monitor, MeasurementLog measurementLog, MeasurementBuffer history,
+            ZContext context) throws Exception {
+        int aggregatePort = monitor.aggregatePort > 0 ? monitor.aggregatePort
+                : monitor.memberPort(getAggregatePort(monitor.monitorType));
+
+        Metrics.serve(monitor.metricsPort >= 0 ? monitor.metricsPort
+                : monitor.memberPort(getMetricsPort(monitor.monitorType)));
+
+        AlertRules alertRules = monitor.rulesFile != null ? AlertRules.load(monitor.rulesFile)
+                : AlertRules.defaults();
+        System.out.println("Alert rules: " + alertRules);
+
+        // Con registro, los brokers y el sistema de calidad se resuelven y se siguen en caliente.
+        // Con varios brokers el monitor se suscribe a los backends de las particiones que necesita.
+        // Los brokers con diario publican también su endpoint de replay en la partición.
+        ServiceRegistry registry = ServiceRegistry.connect(monitor.registryAddress);
+        EndpointWatch brokers;
+        EndpointWatch replays;
+        if (registry != null || monitor.partitions != null) {
+            BrokerPartitions brokerPartitions = BrokerPartitions.of(registry, monitor.partitions, monitor.partitionBy);
+            brokers = brokerPartitions.watchBackends(monitor.monitorType);
+            replays = brokerPartitions.watchReplays(monitor.monitorType);
+        } else {
+            brokers = EndpointWatch.fixed(monitor.brokerAddress);
+            replays = EndpointWatch.fixed(monitor.replayAddresses != null ? monitor.replayAddresses.split(",")
+                    : new String[0]);
+        }
+        EndpointWatch calidad = EndpointWatch.of(registry, ServiceRegistry.CALIDAD, monitor.calidadAddress);
+
+        try {
+            MonitorPipeline pipeline = new MonitorPipeline(context, monitor.monitorType, brokers, calidad,
+                    monitor.memberPort(getHealthCheckPort(monitor.monitorType)), monitor.legacy,
+                    monitor.ringSize, monitor.shards, measurementLog, history,
+                    "tcp://*:" + aggregatePort, monitor.windowMs, monitor.slideMs, !monitor.noSensorAggregates,
+                    alertRules, monitor.alertDebounceMs, monitor.alertBatch, monitor.alertLingerMs,
+                    monitor.memberPort(getHeartbeatPort(monitor.monitorType)), monitor.heartbeatMs);
+            pipeline.setReceiveHighWaterMark(monitor.rcvHwm);
+            if (registry != null) {
+                pipeline.useRegistry(registry, monitor.advertiseHost);
+            }
+            if (registry != null || monitor.groupSize > 1 || monitor.member > 0) {
+                // Con registro todo monitor es parte del grupo de su tipo (aunque sea el único)
+                pipeline.useGroup(MonitorGroup.of(registry, monitor.monitorType, monitor.member, monitor.groupSize));
+            }
+            // Los offsets confirmados se guardan junto al log que los respalda
+            pipeline.useJournal(monitor.noReplay ? null : replays,
+                    new JournalOffsets(new File(monitor.logDirectory(), "journal.offsets")));
+            if (!monitor.noSeries) {
+                int queryPort = monitor.queryPort > 0 ? monitor.queryPort
+                        : monitor.memberPort(getQueryPort(monitor.monitorType));
+                pipeline.useTimeSeries(() -> new TimeSeriesStore(new File(monitor.logDirectory(), "series"),
+                        monitor.chunkPoints, monitor.chunkSealMs), "tcp://*:" + queryPort);
+            }
+            if (monitor.checkpointMs > 0) {
+                // Sin log (standby) no se restaura nada: empieza a guardarlos al ser promovido
+                pipeline.useCheckpoints(new MonitorCheckpoint(new File(monitor.logDirectory(), "checkpoints")),
+                        monitor.checkpointMs);
+            }
+            if (measurementLog == null) {
+                pipeline.enableStandby(monitor::openLog, monitor.memberPort(getControlPort(monitor.monitorType)),
+                        monitor.standbyTailRecords);
+            }
+
+            // Detener las etapas de forma ordenada al terminar el proceso, para que
+            // el último grupo del log llegue a disco
+            Thread mainThread = Thread.currentThread();
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    pipeline.stop();
+                    mainThread.join(1000);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }));
+
+            pipeline.start();
+            pipeline.awaitTermination();
+
+            if (measurementLog == null && pipeline.getMeasurementLog() != null) {
+                // Standby promovido: cerrar el log que abrió al tomar el control
+                pipeline.getMeasurementLog().close();
+            }
+            if (pipeline.getFailedStage() != null) {
+                throw new IllegalStateException("Monitor stopped: stage " + pipeline.getFailedStage() + " failed");
+            }
+        } finally {
+            if (registry != null) {
+                registry.close();
+            }
+        }
+    }
+
+    // Método para abrir el log binario de medidas
+    private MeasurementLog openLog() throws IOException {
+        return new MeasurementLog(logDirectory(), segmentRecords, syncEvery, syncIntervalMs);
+    }
+
+    // Método para crear el historial en memoria
+    private MeasurementBuffer newHistory() {
+        return new MeasurementBuffer(historySize, historyRetentionMs, offHeapHistory);
+    }
+
+    private File logDirectory() {
+        return new File(dataDirectory, MonitorGroup.memberName(monitorType, member) + "_data");
+    }
+
+    // Puerto de este miembro del grupo a partir del puerto del tipo
+    private int memberPort(int port) {
+        return MonitorGroup.port(port, member);
+    }
+
+    // Método para exportar el log binario al formato JSON anterior
+    private static void exportJson(MeasurementLog measurementLog, File jsonFile) throws IOException {
+        List<MeasurementData> measurementDataList = new ArrayList<>();
+        measurementLog.replay((sensorType, measurement, epochMillis) -> measurementDataList.add(
+                new MeasurementData(sensorType.toString(), measurement, MeasurementData.formatTimestamp(epochMillis))));
+
+        // A un temporal y renombrado atómico: una caída no deja un JSON a medias
+        File tmp = new File(jsonFile.getPath() + ".tmp");
+        ObjectMapper objectMapper = new ObjectMapper();
+        objectMapper.enable(SerializationFeature.INDENT_OUTPUT);
+        objectMapper.writeValue(tmp, measurementDataList);
+        Files.move(tmp.toPath(), jsonFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Método para importar un archivo JSON existente al log binario
+    private static void importJson(MeasurementLog measurementLog, File jsonFile) throws IOException {
+        ObjectMapper objectMapper = new ObjectMapper();
+        List<MeasurementData> measurementDataList = objectMapper.readValue(jsonFile,
+                objectMapper.getTypeFactory().constructCollectionType(List.class, MeasurementData.class));
+        for (MeasurementData data : measurementDataList) {
+            measurementLog.append(SensorType.valueOf(data.getSensorType()), data.getMeasurement(),
+                    MeasurementData.toEpochMillis(data.getTimestamp()));
+        }
+        measurementLog.sync();
+        System.out.println("Imported " + measurementDataList.size() + " measurements from " + jsonFile);
+    }
+
+    // Método para enviar un lote de alertas al "sistema de calidad" (una por línea).
+    // No bloquea: devuelve false si el lote no cabe en la cola del socket.
+    static boolean sendAlertsToSistemaDeCalidad(org.zeromq.ZMQ.Socket calidadSocket, StringBuilder batch) {
+        boolean sent = calidadSocket.send(batch.toString().getBytes(ZMQ.CHARSET), ZMQ.DONTWAIT);
+        batch.setLength(0);
+        return sent;
     }
 
     // Método para obtener el puerto de chequeo de salud según el tipo de sensor
@@ -146,4 +372,74 @@ public class Monitor {
                 throw new IllegalArgumentException("Invalid sensor type");
         }
     }
+
+    // Método para obtener el puerto de publicación de agregados según el tipo de sensor
+    private static int getAggregatePort(SensorType sensorType) {
+        switch (sensorType) {
+            case temperatura:
+                return 5572;
+            case ph:
+                return 5573;
+            case oxygeno:
+                return 5574;
+            default:
+                throw new IllegalArgumentException("Invalid sensor type");
+        }
+    }
+
+    // Método para obtener el puerto de los latidos según el tipo de sensor
+    static int getHeartbeatPort(SensorType sensorType) {
+        switch (sensorType) {
+            case temperatura:
+                return 5582;
+            case ph:
+                return 5583;
+            case oxygeno:
+                return 5584;
+            default:
+                throw new IllegalArgumentException("Invalid sensor type");
+        }
+    }
+
+    // Método para obtener el puerto de control del standby según el tipo de sensor
+    static int getControlPort(SensorType sensorType) {
+        switch (sensorType) {
+            case temperatura:
+                return 5592;
+            case ph:
+                return 5593;
+            case oxygeno:
+                return 5594;
+            default:
+                throw new IllegalArgumentException("Invalid sensor type");
+        }
+    }
+
+    // Método para obtener el puerto del servicio de consultas según el tipo de sensor
+    static int getQueryPort(SensorType sensorType) {
+        switch (sensorType) {
+            case temperatura:
+                return 5602;
+            case ph:
+                return 5603;
+            case oxygeno:
+                return 5604;
+            default:
+                throw new IllegalArgumentException("Invalid sensor type");
+        }
+    }
+
+    // Método para obtener el puerto de las métricas según el tipo de sensor
+    static int getMetricsPort(SensorType sensorType) {
+        switch (sensorType) {
+            case temperatura:
+                return 9402;
+            case ph:
+                return 9403;
+            case oxygeno:
+                return 9404;
+            default:
+                throw new IllegalArgumentException("Invalid sensor type");
+        }
+    }
 }
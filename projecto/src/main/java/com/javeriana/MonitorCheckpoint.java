@@ -0,0 +1,199 @@
+package com.javeriana;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.zip.CRC32;
+
+// Definición de la clase MonitorCheckpoint
+// Puntos de control del estado del monitor que no está en el log de medidas: los
+// paneles de las ventanas de agregación y el estado de supresión de alertas de
+// cada sensor. Cada parte lleva la posición del log (número de registros) hasta
+// la que la incluye; al arrancar se carga el último punto de control y se
+// recorre solo la cola del log posterior a él, así que el tiempo de arranque no
+// crece con el tamaño del log.
+//
+// Cada punto de control es un archivo checkpoint-<generación>.bin escrito en un
+// archivo temporal, forzado a disco y renombrado de forma atómica, con un CRC al
+// final: una caída durante la escritura deja el punto de control anterior intacto
+// y un archivo dañado se salta. La generación crece con cada escritura (sigue a
+// la mayor del directorio al arrancar), así que el más reciente es siempre el
+// último aunque el log se haya reiniciado y su posición sea menor que la de un
+// punto de control viejo. Se conservan los KEEP más recientes.
+public class MonitorCheckpoint {
+
+    // Formato: magic, versión, momento (epoch millis), posición y bytes de la
+    // agregación, número de shards y posición y bytes de cada AlertDebouncer, CRC32
+    private static final int MAGIC = 0x4D434B50; // "MCKP"
+    private static final int VERSION = 1;
+    private static final String PREFIX = "checkpoint-";
+    private static final String SUFFIX = ".bin";
+    private static final int KEEP = 2;
+
+    // Estado capturado por las etapas del pipeline
+    public static final class Snapshot {
+        final long takenMillis;
+        final long aggregatorSequence;
+        final byte[] aggregator;
+        final long[] debouncerSequences;
+        final byte[][] debouncers;
+
+        public Snapshot(long takenMillis, long aggregatorSequence, byte[] aggregator, long[] debouncerSequences,
+                byte[][] debouncers) {
+            this.takenMillis = takenMillis;
+            this.aggregatorSequence = aggregatorSequence;
+            this.aggregator = aggregator;
+            this.debouncerSequences = debouncerSequences;
+            this.debouncers = debouncers;
+        }
+
+        // Primer registro del log que no incluye alguna de las partes
+        public long firstSequence() {
+            return Math.min(aggregatorSequence, Arrays.stream(debouncerSequences).min().orElse(Long.MAX_VALUE));
+        }
+
+        // Último registro del log que incluye alguna de las partes (debe estar en disco)
+        public long lastSequence() {
+            return Math.max(aggregatorSequence, Arrays.stream(debouncerSequences).max().orElse(0));
+        }
+    }
+
+    private final File directory;
+    private long generation; // Generación del último punto de control escrito
+
+    // Constructor del MonitorCheckpoint: borra los temporales de una escritura interrumpida
+    public MonitorCheckpoint(File directory) throws IOException {
+        this.directory = directory;
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Could not create checkpoint directory " + directory);
+        }
+        for (File file : files(".tmp")) {
+            Files.deleteIfExists(file.toPath());
+        }
+        File[] checkpoints = files(SUFFIX);
+        if (checkpoints.length > 0) {
+            generation = generation(checkpoints[checkpoints.length - 1]);
+        }
+    }
+
+    // Método para escribir un punto de control y borrar los más viejos
+    public void write(Snapshot snapshot) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(
+                64 + snapshot.aggregator.length + Arrays.stream(snapshot.debouncers).mapToInt(b -> b.length).sum());
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(snapshot.takenMillis);
+        out.writeLong(snapshot.aggregatorSequence);
+        out.writeInt(snapshot.aggregator.length);
+        out.write(snapshot.aggregator);
+        out.writeInt(snapshot.debouncers.length);
+        for (int i = 0; i < snapshot.debouncers.length; i++) {
+            out.writeLong(snapshot.debouncerSequences[i]);
+            out.writeInt(snapshot.debouncers[i].length);
+            out.write(snapshot.debouncers[i]);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        out.writeLong(crc.getValue());
+
+        String name = String.format(PREFIX + "%016d" + SUFFIX, ++generation);
+        File tmp = new File(directory, name + ".tmp");
+        try (FileOutputStream fileOut = new FileOutputStream(tmp)) {
+            bytes.writeTo(fileOut);
+            fileOut.getFD().sync();
+        }
+        Files.move(tmp.toPath(), new File(directory, name).toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        syncDirectory();
+
+        File[] checkpoints = files(SUFFIX);
+        for (int i = 0; i < checkpoints.length - KEEP; i++) {
+            Files.deleteIfExists(checkpoints[i].toPath());
+        }
+    }
+
+    // Método para cargar el punto de control válido más reciente (null si no hay)
+    public Snapshot loadLatest() {
+        File[] checkpoints = files(SUFFIX);
+        for (int i = checkpoints.length - 1; i >= 0; i--) {
+            try {
+                return read(checkpoints[i]);
+            } catch (IOException e) {
+                System.err.println("Skipping checkpoint " + checkpoints[i] + ": " + e.getMessage());
+            }
+        }
+        return null;
+    }
+
+    private static Snapshot read(File file) throws IOException {
+        byte[] data = Files.readAllBytes(file.toPath());
+        if (data.length < 8) {
+            throw new IOException("truncated");
+        }
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length - 8);
+        if (ByteBuffer.wrap(data).getLong(data.length - 8) != crc.getValue()) {
+            throw new IOException("checksum mismatch");
+        }
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data, 0, data.length - 8));
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+            throw new IOException("unknown format");
+        }
+        long takenMillis = in.readLong();
+        long aggregatorSequence = in.readLong();
+        byte[] aggregator = new byte[in.readInt()];
+        in.readFully(aggregator);
+        int shards = in.readInt();
+        long[] debouncerSequences = new long[shards];
+        byte[][] debouncers = new byte[shards][];
+        for (int i = 0; i < shards; i++) {
+            debouncerSequences[i] = in.readLong();
+            debouncers[i] = new byte[in.readInt()];
+            in.readFully(debouncers[i]);
+        }
+        return new Snapshot(takenMillis, aggregatorSequence, aggregator, debouncerSequences, debouncers);
+    }
+
+    // Archivos del directorio con un sufijo, del más viejo al más reciente por generación
+    private File[] files(String suffix) {
+        File[] files = directory.listFiles((dir, name) -> name.startsWith(PREFIX) && name.endsWith(suffix));
+        if (files == null) {
+            return new File[0];
+        }
+        Arrays.sort(files, Comparator.comparingLong(MonitorCheckpoint::generation));
+        return files;
+    }
+
+    // Generación de un archivo según su nombre (0 si el nombre no la trae)
+    private static long generation(File file) {
+        String name = file.getName();
+        int end = name.indexOf('.', PREFIX.length());
+        try {
+            return Long.parseLong(name.substring(PREFIX.length(), end < 0 ? name.length() : end));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    // Forzar a disco la entrada del directorio creada por el rename
+    private void syncDirectory() {
+        try (FileChannel channel = FileChannel.open(directory.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Algunos sistemas no permiten abrir un directorio; el rename sigue siendo atómico
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.javeriana;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+
+// Definición de la clase MonitorGroup
+// Grupo de monitores de un mismo tipo de sensor que se reparten sus sensores con
+// un anillo de hash consistente por id de sensor. Todos los miembros reciben los
+// mensajes del tipo (el tópico del broker es solo el tipo y un lote puede traer
+// varios sensores) y cada uno se queda, al decodificar, con las medidas de los
+// sensores que le tocan: la evaluación, el log, la serie y la agregación de cada
+// sensor quedan en un solo miembro y en orden.
+//
+// El miembro 0 se llama como el tipo ("ph") y los demás "ph.1", "ph.2"...; cada
+// uno usa los puertos del tipo más PORT_STEP por número de miembro y su propio
+// <nombre>_data. Sin registro el grupo es fijo (--groupSize). Con registro cada
+// miembro activo se publica en monitor.group.<tipo> como "nombre|latidos", y al
+// entrar o salir un miembro (o vencer su plazo) los demás reconstruyen el anillo:
+// solo cambian de dueño los sensores del miembro que entró o salió.
+public class MonitorGroup implements ServiceRegistry.Listener {
+
+    // Separación entre los puertos de miembros consecutivos
+    public static final int PORT_STEP = 100;
+
+    // Puntos por miembro en el anillo, como en BrokerPartitions
+    private static final int VIRTUAL_NODES = 160;
+
+    private final SensorType sensorType;
+    private final int member;
+    private final String name;
+    private final ServiceRegistry registry; // null: grupo fijo
+    private volatile HashRing ring;
+    private volatile List<String> members = new ArrayList<>();
+    private String entry; // Entrada publicada en el registro (null si aún no entra)
+
+    private MonitorGroup(SensorType sensorType, int member, ServiceRegistry registry) {
+        this.sensorType = sensorType;
+        this.member = member;
+        this.name = memberName(sensorType, member);
+        this.registry = registry;
+    }
+
+    // Grupo del registro o, sin registro, los groupSize miembros fijos
+    public static MonitorGroup of(ServiceRegistry registry, SensorType sensorType, int member, int groupSize) {
+        if (member < 0 || registry == null && member >= groupSize) {
+            throw new IllegalArgumentException("Member " + member + " is outside a group of " + groupSize);
+        }
+        MonitorGroup group = new MonitorGroup(sensorType, member, registry);
+        if (registry != null) {
+            registry.watch(service(sensorType), group);
+        } else {
+            List<String> entries = new ArrayList<>();
+            for (int i = 0; i < groupSize; i++) {
+                entries.add(memberName(sensorType, i));
+            }
+            group.endpointsChanged(service(sensorType), entries);
+        }
+        return group;
+    }
+
+    // Nombre de un miembro: el tipo para el miembro 0, "tipo.n" para los demás
+    public static String memberName(SensorType sensorType, int member) {
+        return member == 0 ? sensorType.toString() : sensorType + "." + member;
+    }
+
+    // Puerto de un miembro a partir del puerto del tipo
+    public static int port(int basePort, int member) {
+        return basePort + member * PORT_STEP;
+    }
+
+    // Servicio del registro donde se publican los miembros de un tipo
+    public static String service(SensorType sensorType) {
+        return "monitor.group." + sensorType;
+    }
+
+    // Endpoints de latidos de todos los miembros activos de un tipo, al día con el registro
+    public static EndpointWatch watchHeartbeats(ServiceRegistry registry, SensorType sensorType) {
+        EndpointWatch watch = EndpointWatch.fixed();
+        registry.watch(service(sensorType), (service, entries) -> {
+            List<String> heartbeats = new ArrayList<>();
+            for (String entry : entries) {
+                String[] parts = entry.split("\\|");
+                if (parts.length > 1) {
+                    heartbeats.add(parts[1]);
+                }
+            }
+            watch.update(heartbeats);
+        });
+        return watch;
+    }
+
+    @Override
+    public synchronized void endpointsChanged(String service, List<String> entries) {
+        // Este miembro siempre está en su anillo, aunque aún no se vea en el registro
+        TreeSet<String> names = new TreeSet<>();
+        names.add(name);
+        for (String entry : entries) {
+            names.add(entry.split("\\|")[0]);
+        }
+        List<String> current = new ArrayList<>(names);
+        if (current.equals(members)) {
+            return;
+        }
+        members = current;
+        ring = new HashRing(current, VIRTUAL_NODES);
+        System.out.println("Monitor group " + sensorType + ": " + current + " (this is " + name + ")");
+    }
+
+    // Método para saber si un sensor le toca a este miembro
+    public boolean owns(int sensorId) {
+        HashRing current = ring;
+        return current.size() == 1 || name.equals(current.nodeFor(sensorId));
+    }
+
+    // Método para publicarse en el grupo con el endpoint de sus latidos (solo con registro)
+    public synchronized void join(String heartbeatEndpoint) {
+        if (registry != null && entry == null) {
+            entry = name + "|" + heartbeatEndpoint;
+            registry.register(service(sensorType), entry);
+        }
+    }
+
+    // Método para retirarse del grupo: sus sensores pasan a los demás miembros
+    public synchronized void leave() {
+        if (registry != null && entry != null) {
+            registry.deregister(service(sensorType), entry);
+            entry = null;
+        }
+    }
+
+    public SensorType getSensorType() {
+        return sensorType;
+    }
+
+    public int getMember() {
+        return member;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    // Miembros actuales, ordenados por nombre
+    public List<String> getMembers() {
+        return members;
+    }
+}
@@ -0,0 +1,1320 @@
+package com.javeriana;
+
+import org.zeromq.SocketType;
+import org.zeromq.ZContext;
+import org.zeromq.ZMQ;
+import org.zeromq.ZMQException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Definición de la clase MonitorPipeline
+// Procesamiento del Monitor dividido en etapas, cada una en su propio hilo y
+// conectadas por un MeasurementRing:
+//
+//   recepción -> decodificación -> evaluación (N shards por id de sensor) -> alertas
+//                               |-> persistencia
+//                               \-> agregación por ventanas (PUB de agregados)
+//
+// El chequeo de salud y los latidos (heartbeats) salen de otros hilos, de modo
+// que una escritura lenta a disco no retrasa la respuesta al HealthChecker.
+//
+// En modo espera (standby) el pipeline recibe y evalúa todo igual que el
+// principal, pero sin efectos: no escribe el log (guarda la cola reciente en
+// memoria), no envía alertas ni publica agregados, latidos o chequeos de salud.
+// Al recibir PROMOTE por su socket de control abre el log, agrega las medidas de
+// su cola que el principal no escribió (las posteriores al último registro de cada
+// sensor) y se vuelve activo. Desde ahí recupera del diario lo que le falte desde
+// los offsets que guardó el principal, descartando lo que el log ya tiene.
+//
+// Si los brokers llevan diario, cada mensaje trae su offset: la persistencia
+// confirma los offsets ya escritos con fsync y, al reiniciar, la recepción pide
+// a los brokers lo que falta desde ahí (JournalReplay) antes de pasar a lo en vivo.
+//
+// Con puntos de control (MonitorCheckpoint), un hilo pide periódicamente su estado
+// a la agregación y a cada shard de evaluación; cada etapa lo entrega al terminar
+// un lote, con la posición del log hasta la que llega. Al arrancar se restaura el
+// último y se recorre solo la cola del log posterior.
+public class MonitorPipeline {
+
+    // Factoría del log que se abre al promover un monitor en espera
+    public interface LogOpener {
+        MeasurementLog open() throws IOException;
+    }
+
+    // Factoría del almacén de la serie, que se abre cuando el monitor tiene log
+    public interface SeriesOpener {
+        TimeSeriesStore open() throws IOException;
+    }
+
+    // Tiempo máximo de espera de una etapa antes de hacer su trabajo ocioso
+    private static final long IDLE_TIMEOUT_NANOS = 100_000_000;
+    // Intervalo mínimo entre escrituras del archivo de offsets confirmados
+    private static final long OFFSETS_SAVE_INTERVAL_MS = 1000;
+    // Espera máxima por el estado de las etapas y por el fsync del log en un punto de control
+    private static final long CHECKPOINT_TIMEOUT_MS = 5000;
+    // Al promover, parte del log del principal que se revisa para conocer la última
+    // medida de cada sensor: cubre lo que escribió sin alcanzar a guardar sus offsets
+    private static final long PROMOTION_SCAN_MS = 10 * OFFSETS_SAVE_INTERVAL_MS;
+
+    // Estado pedido a las etapas para un punto de control: cada una llena su parte
+    // al terminar un lote, sin esperar a las demás
+    private static final class CheckpointCapture {
+        final CountDownLatch done;
+        long aggregatorSequence;
+        byte[] aggregator;
+        final long[] debouncerSequences;
+        final byte[][] debouncers;
+
+        CheckpointCapture(int shards) {
+            this.done = new CountDownLatch(1 + shards);
+            this.debouncerSequences = new long[shards];
+            this.debouncers = new byte[shards][];
+        }
+    }
+
+    // Estado que se guarda en un punto de control
+    private interface StateWriter {
+        void writeTo(DataOutput out) throws IOException;
+    }
+
+    // Última medida de cada sensor que ya está en el log al promover el standby. Las
+    // medidas de un sensor sin registros en la parte revisada se dan por escritas si
+    // son anteriores a esa parte. Solo la usan la persistencia (al tomar el log) y
+    // después la decodificación.
+    private static final class PromotionFilter {
+        final Map<Integer, Long> lastEpochs;
+        final long floor;
+        final long from; // Primera secuencia del anillo que la persistencia escribe directo al log
+        boolean inFlightRecorded;
+        volatile long until = Long.MAX_VALUE; // Secuencia del anillo hasta la que se aplica
+
+        PromotionFilter(Map<Integer, Long> lastEpochs, long scanFrom, long from) {
+            this.lastEpochs = lastEpochs;
+            this.floor = scanFrom == Long.MIN_VALUE ? Long.MIN_VALUE : scanFrom - 1;
+            this.from = from;
+        }
+
+        // Método para saber si una medida falta en el log; si falta, queda como la última del sensor
+        boolean admit(int sensorId, long epochMillis) {
+            if (epochMillis <= lastEpochs.getOrDefault(sensorId, floor)) {
+                return false;
+            }
+            lastEpochs.put(sensorId, epochMillis);
+            return true;
+        }
+
+        // Método para anotar una medida en vivo que va al log
+        void record(int sensorId, long epochMillis) {
+            lastEpochs.merge(sensorId, epochMillis, Math::max);
+        }
+    }
+
+    private final ZContext context;
+    private final SensorType monitorType;
+    private final EndpointWatch brokerEndpoints;
+    private final EndpointWatch calidadEndpoints;
+    private final int healthCheckPort;
+    private final boolean acceptLegacy;
+    private final int shards;
+    private MeasurementLog measurementLog; // null mientras el monitor está en espera
+    private final MeasurementBuffer history; // Medidas recientes en memoria
+    private final String aggregateAddress;
+    private final long windowMs;
+    private final long slideMs;
+    private final boolean perSensorAggregates;
+    private final AlertRules alertRules;
+    private final AlertDebouncer[] debouncers;
+    private final WindowAggregator aggregator; // Se crea aquí para poder restaurarlo antes de start()
+    private final StringBuilder aggregateLine = new StringBuilder(128);
+    private ZMQ.Socket aggregateSocket;
+    private final int alertBatch;
+    private final long alertLingerMs;
+    private final int heartbeatPort;
+    private final long heartbeatIntervalMs;
+
+    // Registro donde se publican los endpoints del monitor (null sin registro)
+    private ServiceRegistry registry;
+    private String advertiseHost;
+
+    // Grupo de monitores del tipo (null si el monitor recibe todos los sensores) y
+    // medidas descartadas por ser de sensores de otros miembros
+    private MonitorGroup group;
+    private volatile long skippedMeasurements; // Solo lo escribe el hilo decode; lo lee el de métricas
+
+    // Replay del diario de los brokers (null si no se usa) y offsets confirmados
+    private EndpointWatch replayEndpoints;
+    private JournalOffsets journalOffsets;
+
+    // Serie comprimida para consultas por rango (null si no se usa o aún no se abre)
+    private SeriesOpener seriesOpener;
+    private String queryAddress;
+    private volatile TimeSeriesStore series;
+
+    // Puntos de control (null si no se usan). logBase es la posición en el log de la
+    // primera medida del anillo (-1 mientras el monitor no tiene log): una etapa que
+    // procesó N medidas tiene un estado que llega hasta el registro logBase + N.
+    private MonitorCheckpoint checkpoints;
+    private long checkpointIntervalMs;
+    private Metrics.Timer checkpointTimer;
+    private volatile long logBase;
+    private volatile long durableLogSize; // Registros del log ya en disco
+    private volatile CheckpointCapture checkpointCapture;
+
+    // Medidas persistidas y timestamp de la última, para los latidos
+    private final AtomicLong processedCount = new AtomicLong();
+    private volatile long lastProcessedEpochMillis;
+
+    // Control de flujo: mensajes recibidos y perdidos por el SUB (saltos de
+    // secuencia), retraso desde que el broker publicó el último mensaje persistido
+    // y alertas que no cupieron en la cola hacia el sistema de calidad
+    private int receiveHighWaterMark = 1000;
+    private final AtomicLong receivedCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private volatile long brokerLagMillis;
+    private volatile long brokerLagUpdatedMillis;
+    private volatile long droppedAlerts; // Solo lo escribe el hilo alert; lo lee el de métricas
+
+    // Métricas del monitor (etiquetadas con su tipo) y log por mensaje muestreado
+    private final Metrics.Counter invalidMessages;
+    private final Metrics.Counter sentAlerts;
+    private final Metrics.Timer endToEndTimer;
+    private final Metrics.Timer brokerToMonitorTimer;
+    private final Metrics.Timer persistTimer;
+    private final Metrics.Timer alertTimer;
+    private SampledLog receivedLog;
+    private SampledLog alertLog;
+
+    private final MeasurementRing ring;
+    private final AtomicLong decodeSequence = MeasurementRing.newSequence();
+    private final AtomicLong[] evaluateSequences;
+    private final AtomicLong persistSequence = MeasurementRing.newSequence();
+    private final AtomicLong alertSequence = MeasurementRing.newSequence();
+    private final AtomicLong aggregateSequence = MeasurementRing.newSequence();
+
+    private final List<Thread> threads = new CopyOnWriteArrayList<>();
+    private volatile boolean stopping;
+    private volatile String failedStage; // Etapa que terminó sola (null mientras todas corren)
+
+    // Modo espera: el monitor está activo cuando no es standby o ya fue promovido
+    private volatile boolean active = true;
+    private LogOpener logOpener;
+    private int controlPort;
+    private volatile MeasurementLog promotedLog; // Entregado por el hilo de control a la persistencia
+    private final CountDownLatch promoted = new CountDownLatch(1);
+    private volatile long promotedTailRecords;
+    // Cola reciente de medidas que el standby aún no puede escribir
+    private MeasurementBuffer tail;
+    // Filtro de lo recuperado del diario tras la promoción, hasta que el replay se pone al día
+    private volatile PromotionFilter promotionFilter;
+    private volatile long duplicateMeasurements; // Medidas recuperadas que el log ya tenía
+
+    // Constructor del MonitorPipeline
+    public MonitorPipeline(ZContext context, SensorType monitorType, EndpointWatch brokerEndpoints,
+            EndpointWatch calidadEndpoints, int healthCheckPort, boolean acceptLegacy, int ringSize, int shards,
+            MeasurementLog measurementLog, MeasurementBuffer history, String aggregateAddress,
+            long windowMs, long slideMs, boolean perSensorAggregates, AlertRules alertRules, long alertDebounceMs,
+            int alertBatch, long alertLingerMs, int heartbeatPort, long heartbeatIntervalMs) {
+        this.context = context;
+        this.monitorType = monitorType;
+        this.brokerEndpoints = brokerEndpoints;
+        this.calidadEndpoints = calidadEndpoints;
+        this.healthCheckPort = healthCheckPort;
+        this.acceptLegacy = acceptLegacy;
+        this.shards = Math.max(1, shards);
+        this.measurementLog = measurementLog;
+        this.history = history;
+        this.aggregateAddress = aggregateAddress;
+        this.windowMs = windowMs;
+        this.slideMs = slideMs;
+        this.perSensorAggregates = perSensorAggregates;
+        this.alertRules = alertRules;
+        this.alertBatch = Math.max(1, alertBatch);
+        this.alertLingerMs = alertLingerMs;
+        this.heartbeatPort = heartbeatPort;
+        this.heartbeatIntervalMs = heartbeatIntervalMs;
+
+        this.ring = new MeasurementRing(ringSize);
+        this.evaluateSequences = new AtomicLong[this.shards];
+        for (int i = 0; i < this.shards; i++) {
+            evaluateSequences[i] = MeasurementRing.newSequence();
+        }
+        this.debouncers = new AlertDebouncer[this.shards];
+        for (int i = 0; i < this.shards; i++) {
+            debouncers[i] = new AlertDebouncer(alertDebounceMs);
+        }
+        this.aggregator = new WindowAggregator(windowMs, slideMs, perSensorAggregates, System.currentTimeMillis(),
+                this::publishAggregate);
+        this.logBase = measurementLog != null ? measurementLog.size() : -1;
+        this.durableLogSize = Math.max(0, logBase);
+        // El productor espera a las etapas finales: persistencia, alertas y agregación
+        ring.setGatingSequences(persistSequence, alertSequence, aggregateSequence);
+
+        Metrics metrics = Metrics.global();
+        String labels = Metrics.typeLabel(monitorType);
+        this.invalidMessages = metrics.counter("monitor_invalid_messages_total",
+                "Messages from the broker that could not be decoded", labels);
+        this.sentAlerts = metrics.counter("monitor_alerts_sent_total", "Alerts sent to the sistema de calidad",
+                labels);
+        this.endToEndTimer = metrics.timer("monitor_end_to_end_seconds",
+                "From the sensor timestamp to the measurement being persisted", labels);
+        this.brokerToMonitorTimer = metrics.timer("monitor_broker_to_persist_seconds",
+                "From the broker publishing a message to its measurements being persisted", labels);
+        this.persistTimer = metrics.timer("monitor_persist_seconds",
+                "Time to append the measurements of one message to the log", labels);
+        this.alertTimer = metrics.timer("monitor_alert_latency_seconds",
+                "From the sensor timestamp to its alert being sent to the sistema de calidad", labels);
+        metrics.counterFunction("monitor_messages_received_total", "Messages received from the brokers", labels,
+                receivedCount::get);
+        metrics.counterFunction("monitor_messages_dropped_total",
+                "Messages dropped by the subscription (gaps in the broker sequence)", labels, droppedCount::get);
+        metrics.counterFunction("monitor_measurements_persisted_total", "Measurements written to the log", labels,
+                processedCount::get);
+        metrics.counterFunction("monitor_alerts_dropped_total",
+                "Alerts dropped because the sistema de calidad queue was full", labels, () -> droppedAlerts);
+        metrics.gauge("monitor_history_size", "Recent measurements kept in memory", labels, history::size);
+        metrics.counterFunction("monitor_history_evicted_total",
+                "Measurements dropped from memory by size or retention (they stay on disk)", labels,
+                history::getEvicted);
+        metrics.gauge("monitor_queue_depth", "Messages received but not yet processed", labels, ring::getDepth);
+        metrics.gauge("monitor_lag_milliseconds", "Age of the last persisted measurement while messages are queued",
+                labels, this::getLagMillis);
+    }
+
+    // Método para iniciar el pipeline en espera. Debe llamarse antes de start().
+    public void enableStandby(LogOpener logOpener, int controlPort, int tailRecords) {
+        this.active = false;
+        this.logOpener = logOpener;
+        this.controlPort = controlPort;
+        this.tail = new MeasurementBuffer(tailRecords, 0, false, true);
+        Metrics.global().counterFunction("monitor_promotion_duplicates_total",
+                "Measurements replayed after a standby promotion that the log already had",
+                Metrics.typeLabel(monitorType), () -> duplicateMeasurements);
+    }
+
+    // Método para publicar los endpoints del monitor en un registro a medida que
+    // se abren. Debe llamarse antes de start().
+    public void useRegistry(ServiceRegistry registry, String advertiseHost) {
+        this.registry = registry;
+        this.advertiseHost = advertiseHost;
+    }
+
+    // Método para repartir los sensores del tipo con los demás miembros de un grupo:
+    // el monitor solo procesa los sensores que el grupo le asigna y se publica y
+    // late con el nombre de su miembro. Debe llamarse antes de start().
+    public void useGroup(MonitorGroup group) {
+        this.group = group;
+        Metrics.global().counterFunction("monitor_group_skipped_total",
+                "Measurements of sensors owned by other members of the monitor group",
+                Metrics.typeLabel(monitorType), () -> skippedMeasurements);
+    }
+
+    // Nombre con que el monitor se publica y late: el de su miembro del grupo o el tipo
+    private String monitorName() {
+        return group != null ? group.getName() : monitorType.toString();
+    }
+
+    // Número de miembro del monitor en su grupo (0 sin grupo)
+    private int member() {
+        return group != null ? group.getMember() : 0;
+    }
+
+    // Método para confirmar los offsets del diario de los brokers y, si hay
+    // endpoints de replay, recuperar al arrancar lo que falta desde el último
+    // offset confirmado. Debe llamarse antes de start().
+    public void useJournal(EndpointWatch replayEndpoints, JournalOffsets journalOffsets) {
+        this.replayEndpoints = replayEndpoints;
+        this.journalOffsets = journalOffsets;
+    }
+
+    // Método para guardar las medidas también en una serie comprimida y responder
+    // consultas sobre ella en queryAddress. El almacén se abre en la persistencia
+    // cuando el monitor tiene log (en el standby, al ser promovido) y se pone al día
+    // con el log. Debe llamarse antes de start().
+    public void useTimeSeries(SeriesOpener seriesOpener, String queryAddress) {
+        this.seriesOpener = seriesOpener;
+        this.queryAddress = queryAddress;
+    }
+
+    // Método para guardar cada intervalMs un punto de control del estado de las
+    // ventanas y de la supresión de alertas, y restaurar ya el último (con la cola
+    // del log posterior). El standby empieza a guardarlos al ser promovido. Debe
+    // llamarse antes de start().
+    public void useCheckpoints(MonitorCheckpoint checkpoints, long intervalMs) throws IOException {
+        this.checkpoints = checkpoints;
+        this.checkpointIntervalMs = intervalMs;
+        this.checkpointTimer = Metrics.global().timer("monitor_checkpoint_seconds",
+                "Time to write a checkpoint of the window and alert suppression state",
+                Metrics.typeLabel(monitorType));
+        if (measurementLog != null) {
+            restore(checkpoints.loadLatest());
+        }
+    }
+
+    // Método para restaurar un punto de control y aplicarle la cola del log
+    private void restore(MonitorCheckpoint.Snapshot snapshot) throws IOException {
+        if (snapshot == null) {
+            return;
+        }
+        long logSize = measurementLog.size();
+        if (snapshot.lastSequence() > logSize) {
+            System.out.println("Ignoring checkpoint beyond the end of the log (" + snapshot.lastSequence() + " > "
+                    + logSize + " records)");
+            return;
+        }
+        long start = System.nanoTime();
+        boolean aggregates = aggregator.readFrom(new DataInputStream(new ByteArrayInputStream(snapshot.aggregator)));
+        if (!aggregates) {
+            System.out.println("Window settings changed since the checkpoint: aggregates start empty");
+        }
+        for (byte[] state : snapshot.debouncers) {
+            AlertDebouncer.readFrom(new DataInputStream(new ByteArrayInputStream(state)),
+                    sensorId -> debouncers[shardOf(sensorId, shards)]);
+        }
+
+        // Cada parte recibe solo los registros posteriores a su posición. El shard
+        // que guardó un sensor se calcula con el número de shards de entonces.
+        int savedShards = snapshot.debouncers.length;
+        long first = snapshot.firstSequence();
+        long[] position = { first };
+        measurementLog.replayTail(first, (sensorType, measurement, epochMillis, sensorId) -> {
+            long record = position[0]++;
+            if (aggregates && record >= snapshot.aggregatorSequence) {
+                aggregator.add(sensorId, measurement, epochMillis);
+            }
+            if (sensorId != MeasurementLog.UNKNOWN_SENSOR
+                    && record >= snapshot.debouncerSequences[shardOf(sensorId, savedShards)]) {
+                byte reason = alertRules.evaluate(sensorType, measurement);
+                if (reason != AlertRules.NONE) {
+                    debouncers[shardOf(sensorId, shards)].admit(sensorId, reason, epochMillis);
+                }
+            }
+        });
+        System.out.println("Restored checkpoint of " + MeasurementData.formatTimestamp(snapshot.takenMillis)
+                + " and replayed " + (position[0] - first) + " log records after it in "
+                + (System.nanoTime() - start) / 1_000_000 + " ms");
+    }
+
+    // Método para fijar cuántos mensajes encola el SUB antes de descartar (RCVHWM).
+    // Debe llamarse antes de start().
+    public void setReceiveHighWaterMark(int receiveHighWaterMark) {
+        this.receiveHighWaterMark = receiveHighWaterMark;
+    }
+
+    // Método para publicar un endpoint en el que el monitor hizo bind
+    private void advertise(String kind, String bindAddress) {
+        if (registry != null) {
+            registry.register(ServiceRegistry.monitorService(kind, monitorType, member()),
+                    ServiceRegistry.advertise(bindAddress, advertiseHost));
+        }
+    }
+
+    // Método para retirar un endpoint del registro
+    private void withdraw(String kind, String bindAddress) {
+        if (registry != null) {
+            registry.deregister(ServiceRegistry.monitorService(kind, monitorType, member()),
+                    ServiceRegistry.advertise(bindAddress, advertiseHost));
+        }
+    }
+
+    // Log del monitor (el abierto al promoverlo, en modo espera)
+    public MeasurementLog getMeasurementLog() {
+        return measurementLog != null ? measurementLog : promotedLog;
+    }
+
+    // Método para iniciar todos los hilos del pipeline
+    public void start() {
+        receivedLog = new SampledLog();
+        alertLog = new SampledLog();
+        if (!active) {
+            startThread("control", this::runControl, false);
+        }
+        startThread("health-check", this::runHealthCheck);
+        if (seriesOpener != null) {
+            startThread("query", this::runQuery, false); // Sin consultas el monitor sigue procesando
+        }
+        startThread("heartbeat", this::runHeartbeat);
+        if (checkpoints != null) {
+            startThread("checkpoint", this::runCheckpoint, false);
+        }
+        startThread("persist", this::runPersist);
+        startThread("alert", this::runAlert);
+        startThread("aggregate", this::runAggregate);
+        for (int shard = 0; shard < shards; shard++) {
+            int currentShard = shard;
+            startThread("evaluate-" + shard, () -> runEvaluate(currentShard));
+        }
+        startThread("decode", this::runDecode);
+        startThread("receive", this::runReceive);
+        System.out.println("Monitor pipeline started with " + shards + " evaluation shard(s), ring size "
+                + ring.getSize());
+    }
+
+    // Método para esperar a que terminen los hilos
+    public void awaitTermination() throws InterruptedException {
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+
+    // Método para detener el pipeline
+    public void stop() throws InterruptedException {
+        stopping = true;
+        for (Thread thread : threads) {
+            thread.interrupt();
+        }
+        awaitTermination();
+    }
+
+    // Mensajes recibidos que aún no terminan de procesarse
+    public long getQueueDepth() {
+        return ring.getDepth();
+    }
+
+    // Retraso del procesamiento: antigüedad de la última medida persistida mientras
+    // haya mensajes pendientes (0 si el pipeline está al día)
+    public long getLagMillis() {
+        if (ring.getDepth() == 0 || lastProcessedEpochMillis == 0) {
+            return 0;
+        }
+        return Math.max(0, System.currentTimeMillis() - lastProcessedEpochMillis);
+    }
+
+    // Medidas persistidas desde que se inició el pipeline
+    public long getProcessedCount() {
+        return processedCount.get();
+    }
+
+    private void startThread(String name, Runnable stage) {
+        startThread(name, stage, true);
+    }
+
+    // Una etapa esencial que termina sin que se detenga el pipeline (excepción, error de
+    // disco) detiene todo el pipeline: los latidos y el chequeo de salud se callan y el
+    // HealthChecker reemplaza al monitor, en vez de ver vivo a uno que ya no procesa
+    private void startThread(String name, Runnable stage, boolean essential) {
+        Thread thread = new Thread(() -> {
+            try {
+                stage.run();
+            } catch (RuntimeException e) {
+                System.err.println("Monitor stage " + name + " failed: " + e.getMessage());
+            }
+            if (essential && !stopping) {
+                stopping = true;
+                failedStage = name;
+                System.err.println("Monitor stage " + name + " stopped, shutting down the monitor");
+                for (Thread other : threads) {
+                    other.interrupt();
+                }
+            }
+        }, "monitor-" + name);
+        threads.add(thread);
+        thread.start();
+    }
+
+    // Etapa que terminó sola y detuvo el pipeline (null si se detuvo con stop())
+    public String getFailedStage() {
+        return failedStage;
+    }
+
+    // Etapa de recepción: lee los mensajes del broker y los publica en el buffer
+    private void runReceive() {
+        ZMQ.Socket subscriber = context.createSocket(SocketType.SUB);
+        JournalReplay replay = null;
+        try {
+            subscriber.setReceiveTimeOut(100);
+            subscriber.setRcvHWM(receiveHighWaterMark);
+            EndpointWatch.Connection broker = brokerEndpoints.attach(subscriber);
+            List<byte[]> topics = new ArrayList<>();
+            topics.add(MessageEncoder.topic(monitorType));
+            if (acceptLegacy) {
+                String monitorTypeString = monitorType.toString() + "#";
+                topics.add(monitorTypeString.getBytes());
+            }
+            for (byte[] topic : topics) {
+                subscriber.subscribe(topic);
+            }
+            // Lo recuperado del diario no trae hora de envío del broker
+            JournalReplay.Sink sink = (message, journalId, offset) -> publish(message, journalId, offset, 0);
+            // Última secuencia vista de cada tópico, por flujo del broker
+            Map<Long, long[]> topicSequences = new HashMap<>();
+            System.out.println("Monitor is monitoring " + monitorType);
+
+            while (!Thread.currentThread().isInterrupted()) {
+                // Seguir al broker si cambia en el registro, sin reiniciar el monitor
+                if (broker.sync()) {
+                    System.out.println("Monitor subscribed to broker " + broker.getConnected());
+                }
+                // El standby no recupera el diario hasta ser promovido: ahí sigue desde los
+                // offsets del principal lo que su cola no alcanzó a cubrir
+                if (replay == null && replayEndpoints != null && active) {
+                    replay = new JournalReplay(context, replayEndpoints, journalOffsets, topics);
+                }
+                if (replay != null) {
+                    replay.sync();
+                    if (replay.replay(sink)) {
+                        continue; // Mientras haya atraso no se espera por lo en vivo
+                    }
+                    PromotionFilter filter = promotionFilter;
+                    if (filter != null && filter.until == Long.MAX_VALUE && replay.isCaughtUp()) {
+                        // Lo publicado de aquí en adelante ya no repite lo que tiene el log
+                        filter.until = ring.getCursor().get();
+                    }
+                }
+                byte[] frame = subscriber.recv(0);
+                if (frame == null) {
+                    continue; // Tiempo de espera cumplido
+                }
+                receivedCount.incrementAndGet();
+                long journalId = -1;
+                long journalOffset = 0;
+                long previousOffset = -1;
+                long brokerMillis = 0;
+                if (subscriber.hasReceiveMore()) {
+                    byte[] sequenceFrame = subscriber.recv(0);
+                    if (sequenceFrame.length == Broker.SEQUENCE_FRAME_SIZE) {
+                        ByteBuffer buffer = ByteBuffer.wrap(sequenceFrame);
+                        long streamId = buffer.getLong(0);
+                        journalOffset = buffer.getLong(8);
+                        journalId = journalOffset >= 0 ? streamId : -1;
+                        previousOffset = buffer.getLong(16);
+                        brokerMillis = buffer.getLong(32);
+                        countDropped(topicSequences.computeIfAbsent(streamId, id -> new long[256]),
+                                frame.length > 0 ? frame[0] & 0xff : 0, buffer.getLong(24));
+                    }
+                }
+                if (replay != null && journalId >= 0 && !replay.acceptLive(journalId, journalOffset, previousOffset)) {
+                    continue; // Duplicado o aún recuperando ese diario
+                }
+                publish(frame, journalId, journalOffset, brokerMillis);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (replay != null) {
+                replay.close();
+            }
+            context.destroySocket(subscriber);
+        }
+    }
+
+    // Método para contar los mensajes de un tópico que el SUB perdió (saltos en la
+    // secuencia). Una secuencia que retrocede es un broker reiniciado.
+    private void countDropped(long[] sequences, int topic, long sequence) {
+        long last = sequences[topic];
+        if (last > 0 && sequence > last + 1) {
+            droppedCount.addAndGet(sequence - last - 1);
+        }
+        sequences[topic] = sequence;
+    }
+
+    // Método para publicar un mensaje (en vivo o recuperado del diario) en el buffer
+    private void publish(byte[] frame, long journalId, long journalOffset, long brokerMillis)
+            throws InterruptedException {
+        long sequence = ring.next();
+        MeasurementRing.Slot slot = ring.get(sequence);
+        slot.frame = frame;
+        slot.length = frame.length;
+        slot.journalId = journalId;
+        slot.journalOffset = journalOffset;
+        slot.brokerMillis = brokerMillis;
+        ring.publish(sequence);
+    }
+
+    // Etapa de decodificación: convierte el mensaje en medidas dentro de la ranura
+    private void runDecode() {
+        MessageDecoder decoder = new MessageDecoder(acceptLegacy);
+        AtomicLong[] upstream = { ring.getCursor() };
+        long next = 0;
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                long available = MeasurementRing.waitFor(next, upstream, IDLE_TIMEOUT_NANOS);
+                for (; next <= available; next++) {
+                    MeasurementRing.Slot slot = ring.get(next);
+                    decode(decoder, slot);
+                    slot.frame = null;
+                    PromotionFilter filter = promotionFilter;
+                    if (filter != null) {
+                        if (next > filter.until) {
+                            promotionFilter = null;
+                        } else {
+                            filterPromoted(filter, slot, next);
+                        }
+                    }
+                }
+                decodeSequence.set(available);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Método para quitar de una ranura lo recuperado del diario que el log ya tiene.
+    // Lo recuperado no trae hora del broker; lo que llega en vivo solo se anota.
+    private void filterPromoted(PromotionFilter filter, MeasurementRing.Slot slot, long sequence) {
+        if (!filter.inFlightRecorded) {
+            // Lo decodificado antes de la promoción que no alcanzó a entrar a la cola va directo al log
+            for (long inFlight = filter.from; inFlight < sequence; inFlight++) {
+                MeasurementRing.Slot previous = ring.get(inFlight);
+                for (int i = 0; i < previous.count; i++) {
+                    filter.record(previous.sensorIds[i], previous.epochMillis[i]);
+                }
+            }
+            filter.inFlightRecorded = true;
+        }
+        if (slot.journalId < 0 || slot.brokerMillis > 0) {
+            for (int i = 0; i < slot.count; i++) {
+                filter.record(slot.sensorIds[i], slot.epochMillis[i]);
+            }
+            return;
+        }
+        int count = 0;
+        for (int i = 0; i < slot.count; i++) {
+            if (filter.admit(slot.sensorIds[i], slot.epochMillis[i])) {
+                slot.measurements[count] = slot.measurements[i];
+                slot.epochMillis[count] = slot.epochMillis[i];
+                slot.sensorIds[count] = slot.sensorIds[i];
+                slot.alerts[count] = slot.alerts[i];
+                count++;
+            }
+        }
+        duplicateMeasurements += slot.count - count;
+        slot.count = count;
+    }
+
+    private void decode(MessageDecoder decoder, MeasurementRing.Slot slot) {
+        if (!decoder.decode(slot.frame, slot.length)) {
+            slot.count = 0;
+            invalidMessages.increment();
+            System.out.println("Invalid message format");
+            return;
+        }
+        int recordCount = decoder.getRecordCount();
+        // Imprimir cada mensaje limita el throughput: solo una muestra por segundo
+        if (receivedLog.sample()) {
+            if (recordCount == 1) {
+                receivedLog.log("Monitor received: " + decoder);
+            } else {
+                receivedLog.log("Monitor received batch of " + recordCount + " measurements");
+            }
+        }
+
+        slot.ensureCapacity(recordCount);
+        slot.sensorType = decoder.getSensorType();
+        // En un grupo solo se conservan las medidas de los sensores de este miembro
+        int count = 0;
+        for (int i = 0; i < recordCount; i++) {
+            decoder.select(i);
+            int sensorId = decoder.getSensorId();
+            if (group != null && !group.owns(sensorId)) {
+                continue;
+            }
+            slot.measurements[count] = decoder.getMeasurement();
+            slot.epochMillis[count] = decoder.getEpochMillis();
+            slot.sensorIds[count] = sensorId;
+            slot.alerts[count] = AlertRules.NONE;
+            count++;
+        }
+        slot.count = count;
+        skippedMeasurements += recordCount - count;
+    }
+
+    // Etapa de evaluación: cada shard revisa solo las medidas de sus sensores y
+    // suprime las alertas repetidas de cada uno
+    private void runEvaluate(int shard) {
+        AtomicLong[] upstream = { decodeSequence };
+        AtomicLong sequence = evaluateSequences[shard];
+        AlertDebouncer debouncer = debouncers[shard];
+        long next = 0;
+        long measurements = 0;
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                long available = MeasurementRing.waitFor(next, upstream, IDLE_TIMEOUT_NANOS);
+                for (; next <= available; next++) {
+                    MeasurementRing.Slot slot = ring.get(next);
+                    measurements += slot.count;
+                    for (int i = 0; i < slot.count; i++) {
+                        if (shardOf(slot.sensorIds[i]) != shard) {
+                            continue;
+                        }
+                        // Verificar valor no válido (-1) o fuera de rango
+                        byte reason = alertRules.evaluate(slot.sensorType, slot.measurements[i]);
+                        if (reason != AlertRules.NONE) {
+                            int suppressed = debouncer.admit(slot.sensorIds[i], reason, slot.epochMillis[i]);
+                            if (suppressed < 0) {
+                                reason = AlertRules.NONE;
+                            } else {
+                                slot.suppressed[i] = suppressed;
+                            }
+                        }
+                        slot.alerts[i] = reason;
+                    }
+                }
+                sequence.set(available);
+
+                CheckpointCapture capture = checkpointCapture;
+                if (capture != null && capture.debouncers[shard] == null) {
+                    capture.debouncerSequences[shard] = logBase + measurements;
+                    capture.debouncers[shard] = serialize(debouncer::writeTo);
+                    capture.done.countDown();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Método para asignar un sensor a un shard de evaluación
+    private int shardOf(int sensorId) {
+        return shardOf(sensorId, shards);
+    }
+
+    private static int shardOf(int sensorId, int shards) {
+        if (shards == 1) {
+            return 0;
+        }
+        int hash = sensorId * 0x9E3779B9; // Mezclar los bits para repartir ids consecutivos
+        return Math.floorMod(hash ^ (hash >>> 16), shards);
+    }
+
+    // Etapa de persistencia: agrega las medidas al log y al historial en memoria
+    private void runPersist() {
+        AtomicLong[] upstream = { decodeSequence };
+        // Siguiente offset de cada diario, escrito al log pero quizá sin fsync
+        Map<Long, Long> uncommitted = new HashMap<>();
+        long next = 0;
+        try {
+            if (measurementLog != null) {
+                openSeries(measurementLog);
+            }
+            while (!Thread.currentThread().isInterrupted()) {
+                long available = MeasurementRing.waitFor(next, upstream, IDLE_TIMEOUT_NANOS);
+                for (; next <= available; next++) {
+                    MeasurementRing.Slot slot = ring.get(next);
+                    long start = System.nanoTime();
+                    for (int i = 0; i < slot.count; i++) {
+                        if (measurementLog != null) {
+                            measurementLog.append(slot.sensorType, slot.measurements[i], slot.epochMillis[i],
+                                    slot.sensorIds[i]);
+                            if (series != null) {
+                                series.append(slot.epochMillis[i], slot.measurements[i]);
+                            }
+                        } else {
+                            tail.add(slot.sensorType, slot.measurements[i], slot.epochMillis[i], slot.sensorIds[i]);
+                        }
+                        history.add(slot.sensorType, slot.measurements[i], slot.epochMillis[i]);
+                    }
+                    long now = System.currentTimeMillis();
+                    if (slot.count > 0) {
+                        persistTimer.recordSince(start);
+                        for (int i = 0; i < slot.count; i++) {
+                            endToEndTimer.record((now - slot.epochMillis[i]) * 1_000_000L);
+                        }
+                        processedCount.addAndGet(slot.count);
+                        lastProcessedEpochMillis = slot.epochMillis[slot.count - 1];
+                    }
+                    // Lo que recibe el standby no está en el log: al ser promovido sigue desde los offsets
+                    // del principal
+                    if (slot.journalId >= 0 && measurementLog != null) {
+                        uncommitted.put(slot.journalId, slot.journalOffset + 1);
+                    }
+                    if (slot.brokerMillis > 0) {
+                        brokerToMonitorTimer.record((now - slot.brokerMillis) * 1_000_000L);
+                        brokerLagMillis = now - slot.brokerMillis;
+                        brokerLagUpdatedMillis = now;
+                    }
+                }
+                persistSequence.set(available);
+
+                if (measurementLog == null && promotedLog != null) {
+                    takeOver(promotedLog, next);
+                }
+                // Completar el grupo de fsync si pasó el intervalo
+                if (measurementLog != null) {
+                    measurementLog.maybeSync();
+                    if (series != null) {
+                        series.maybeSeal();
+                    }
+                    // Confirmar los offsets solo cuando sus medidas ya están en disco
+                    if (!measurementLog.hasPendingRecords()) {
+                        commitOffsets(uncommitted);
+                        durableLogSize = measurementLog.size();
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            System.err.println("Error writing measurement log: " + e.getMessage());
+        } finally {
+            try {
+                if (measurementLog != null) {
+                    measurementLog.sync();
+                    commitOffsets(uncommitted);
+                    if (journalOffsets != null) {
+                        journalOffsets.save();
+                    }
+                }
+                if (series != null) {
+                    series.close();
+                }
+            } catch (IOException e) {
+                System.err.println("Error syncing measurement log: " + e.getMessage());
+            }
+        }
+    }
+
+    // Método para abrir la serie y agregarle lo que el log tenga de más. Sin serie el
+    // monitor sigue funcionando, solo sin consultas.
+    private void openSeries(MeasurementLog log) {
+        if (seriesOpener == null) {
+            return;
+        }
+        try {
+            TimeSeriesStore store = seriesOpener.open();
+            store.catchUp(log);
+            series = store;
+        } catch (IOException e) {
+            System.err.println("Error opening series, queries disabled: " + e.getMessage());
+        }
+    }
+
+    // Método para confirmar los offsets de las medidas ya persistidas
+    private void commitOffsets(Map<Long, Long> uncommitted) throws IOException {
+        if (journalOffsets == null) {
+            return;
+        }
+        for (Map.Entry<Long, Long> entry : uncommitted.entrySet()) {
+            journalOffsets.commit(entry.getKey(), entry.getValue());
+        }
+        uncommitted.clear();
+        journalOffsets.maybeSave(OFFSETS_SAVE_INTERVAL_MS);
+    }
+
+    // Método para tomar el log al promover el standby: escribe las medidas de la
+    // cola posteriores al último registro de su sensor en el log y activa el monitor
+    private void takeOver(MeasurementLog log, long nextSequence) throws IOException {
+        long lastEpochMillis = log.getLastEpochMillis();
+        long scanFrom = lastEpochMillis == Long.MIN_VALUE ? Long.MIN_VALUE : lastEpochMillis - PROMOTION_SCAN_MS;
+        Map<Integer, Long> lastEpochs = new HashMap<>();
+        log.replayWithSensor(scanFrom, (sensorType, measurement, epochMillis, sensorId) ->
+                lastEpochs.merge(sensorId, epochMillis, Math::max));
+        PromotionFilter filter = new PromotionFilter(lastEpochs, scanFrom, nextSequence);
+        long[] written = new long[1];
+        try {
+            tail.forEach((sensorType, measurement, epochMillis, sensorId) -> {
+                if (filter.admit(sensorId, epochMillis)) {
+                    try {
+                        log.append(sensorType, measurement, epochMillis, sensorId);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    written[0]++;
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        log.sync();
+        if (replayEndpoints != null) {
+            // Offsets que guardó el principal hasta caer: el replay sigue desde ahí y el
+            // filtro descarta lo que la cola o el principal ya escribieron
+            journalOffsets.reload();
+            promotionFilter = filter;
+        }
+        // La próxima medida del anillo va al final del log: desde ahora hay puntos de control
+        durableLogSize = log.size();
+        logBase = log.size() - processedCount.get();
+        measurementLog = log;
+        openSeries(log);
+        promotedTailRecords = written[0];
+        tail = null;
+        active = true;
+        promoted.countDown();
+    }
+
+    // Hilo de control del standby: espera PROMOTE y responde "PROMOTED#<medidas de la cola>"
+    private void runControl() {
+        ZMQ.Socket controlSocket = context.createSocket(SocketType.REP);
+        try {
+            controlSocket.setReceiveTimeOut(100);
+            controlSocket.bind("tcp://*:" + controlPort);
+            advertise("control", "tcp://*:" + controlPort);
+            System.out.println("Monitor is in standby, waiting for PROMOTE on port " + controlPort);
+            while (!Thread.currentThread().isInterrupted()) {
+                String command = controlSocket.recvStr(0);
+                if (command == null) {
+                    continue;
+                }
+                if (!command.equals("PROMOTE")) {
+                    controlSocket.send(active ? "ACTIVE" : "STANDBY#" + history.getAdded(), 0);
+                    continue;
+                }
+                long start = System.nanoTime();
+                promotedLog = logOpener.open();
+                promoted.await();
+                long elapsedMicros = (System.nanoTime() - start) / 1000;
+                controlSocket.send("PROMOTED#" + promotedTailRecords, 0);
+                System.out.println("Monitor promoted in " + elapsedMicros + " us, wrote " + promotedTailRecords
+                        + " measurements missing from the log");
+                withdraw("control", "tcp://*:" + controlPort);
+                return; // El puerto de control queda libre para un nuevo standby
+            }
+        } catch (IOException e) {
+            System.err.println("Error opening measurement log: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            controlSocket.setLinger(0);
+            context.destroySocket(controlSocket);
+        }
+    }
+
+    // Método para esperar a que el monitor esté activo (inmediato si no es standby)
+    private void awaitActive() throws InterruptedException {
+        if (!active) {
+            promoted.await();
+        }
+    }
+
+    // Etapa de alertas: envía al "sistema de calidad" las medidas marcadas, en
+    // lotes de hasta alertBatch alertas o cada alertLingerMs
+    private void runAlert() {
+        ZMQ.Socket calidadSocket = context.createSocket(SocketType.PUSH);
+        try {
+            EndpointWatch.Connection calidad = calidadEndpoints.attach(calidadSocket);
+            StringBuilder batch = new StringBuilder(alertBatch * 48);
+            long[] pendingEpochMillis = new long[alertBatch]; // Timestamps de las medidas del lote
+            int pending = 0;
+            int suppressed = 0;
+            long firstPendingMillis = 0;
+            long next = 0;
+            while (!Thread.currentThread().isInterrupted()) {
+                calidad.sync();
+                long available = MeasurementRing.waitFor(next, evaluateSequences, IDLE_TIMEOUT_NANOS);
+                for (; next <= available; next++) {
+                    MeasurementRing.Slot slot = ring.get(next);
+                    for (int i = 0; i < slot.count; i++) {
+                        if (slot.alerts[i] == AlertRules.NONE || !active) {
+                            continue; // El standby evalúa pero no envía alertas
+                        }
+                        if (pending == 0) {
+                            firstPendingMillis = System.currentTimeMillis();
+                        }
+                        appendAlert(batch, slot, i);
+                        pendingEpochMillis[pending++] = slot.epochMillis[i];
+                        suppressed += slot.suppressed[i];
+                        if (pending == alertBatch) {
+                            sendAlerts(calidadSocket, batch, pendingEpochMillis, pending, suppressed);
+                            pending = 0;
+                            suppressed = 0;
+                        }
+                    }
+                }
+                alertSequence.set(available);
+
+                if (pending > 0 && System.currentTimeMillis() - firstPendingMillis >= alertLingerMs) {
+                    sendAlerts(calidadSocket, batch, pendingEpochMillis, pending, suppressed);
+                    pending = 0;
+                    suppressed = 0;
+                }
+            }
+        } catch (InterruptedException | ZMQException e) {
+            // Un envío bloqueado se interrumpe con ZMQException al detener el pipeline
+            Thread.currentThread().interrupt();
+        } finally {
+            calidadSocket.setLinger(0);
+            context.destroySocket(calidadSocket);
+        }
+    }
+
+    // Método para enviar un lote de alertas sin bloquear la etapa: si el sistema de
+    // calidad no está o su cola está llena, el lote se descarta y se cuenta
+    private void sendAlerts(ZMQ.Socket calidadSocket, StringBuilder batch, long[] epochMillis, int alertCount,
+            int suppressedCount) {
+        if (!Monitor.sendAlertsToSistemaDeCalidad(calidadSocket, batch)) {
+            droppedAlerts += alertCount;
+            if (alertLog.sample()) {
+                alertLog.log("Dropped " + alertCount + " alert(s): 'sistema de calidad' is not keeping up ("
+                        + droppedAlerts + " dropped in total)");
+            }
+            return;
+        }
+        sentAlerts.add(alertCount);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < alertCount; i++) {
+            alertTimer.record((now - epochMillis[i]) * 1_000_000L);
+        }
+        if (alertLog.sample()) {
+            alertLog.log("Sent " + alertCount + " alert(s) to 'sistema de calidad' (" + suppressedCount
+                    + " repeated alert(s) suppressed)");
+        }
+    }
+
+    // Formato de cada alerta: tipo#timestamp#medida#idSensor#motivo#suprimidas
+    private static void appendAlert(StringBuilder batch, MeasurementRing.Slot slot, int i) {
+        if (batch.length() > 0) {
+            batch.append('\n');
+        }
+        batch.append(slot.sensorType)
+                .append('#').append(MeasurementData.formatTimestamp(slot.epochMillis[i]))
+                .append('#').append(slot.measurements[i])
+                .append('#').append(slot.sensorIds[i])
+                .append('#').append(AlertRules.reasonName(slot.alerts[i]))
+                .append('#').append(slot.suppressed[i]);
+    }
+
+    // Etapa de agregación: estadísticas por ventana del tipo y de cada sensor,
+    // publicadas en un PUB aparte para que los tableros no lean el flujo completo
+    private void runAggregate() {
+        aggregateSocket = context.createSocket(SocketType.PUB);
+        try {
+            boolean bound = false;
+
+            AtomicLong[] upstream = { decodeSequence };
+            long next = 0;
+            long measurements = 0;
+            while (!Thread.currentThread().isInterrupted()) {
+                long available = MeasurementRing.waitFor(next, upstream, IDLE_TIMEOUT_NANOS);
+                for (; next <= available; next++) {
+                    MeasurementRing.Slot slot = ring.get(next);
+                    measurements += slot.count;
+                    for (int i = 0; i < slot.count; i++) {
+                        aggregator.add(slot.sensorIds[i], slot.measurements[i], slot.epochMillis[i]);
+                    }
+                }
+                aggregateSequence.set(available);
+
+                CheckpointCapture capture = checkpointCapture;
+                if (capture != null && capture.aggregator == null) {
+                    capture.aggregatorSequence = logBase + measurements;
+                    capture.aggregator = serialize(aggregator::writeTo);
+                    capture.done.countDown();
+                }
+
+                if (!bound && active) {
+                    // El standby mantiene las ventanas al día pero solo publica al ser promovido
+                    aggregateSocket.bind(aggregateAddress);
+                    advertise("aggregate", aggregateAddress);
+                    bound = true;
+                    System.out.println("Publishing " + windowMs + " ms window aggregates every " + slideMs
+                            + " ms on " + aggregateAddress);
+                }
+                // Cerrar las ventanas vencidas aunque no lleguen medidas
+                aggregator.advance(System.currentTimeMillis());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            aggregateSocket.setLinger(0);
+            context.destroySocket(aggregateSocket);
+        }
+    }
+
+    // Receptor de las ventanas cerradas: solo el monitor activo las publica
+    private void publishAggregate(int sensorId, boolean sliding, long start, long end, WindowStats stats) {
+        if (active) {
+            formatAggregate(aggregateLine, sensorId, sliding, start, end, stats);
+            aggregateSocket.send(aggregateLine.toString(), ZMQ.DONTWAIT);
+        }
+    }
+
+    // Hilo de puntos de control: cada checkpointIntervalMs pide su estado a la
+    // agregación y a los shards de evaluación, espera a que el log tenga en disco
+    // los registros que ese estado incluye y lo escribe
+    private void runCheckpoint() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                Thread.sleep(checkpointIntervalMs);
+                if (logBase < 0) {
+                    continue; // Standby: aún no tiene log
+                }
+                CheckpointCapture capture = new CheckpointCapture(shards);
+                checkpointCapture = capture;
+                boolean captured = capture.done.await(CHECKPOINT_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                checkpointCapture = null;
+                if (!captured) {
+                    System.err.println("Checkpoint skipped: pipeline stages did not answer");
+                    continue;
+                }
+                MonitorCheckpoint.Snapshot snapshot = new MonitorCheckpoint.Snapshot(System.currentTimeMillis(),
+                        capture.aggregatorSequence, capture.aggregator, capture.debouncerSequences,
+                        capture.debouncers);
+                if (!awaitDurable(snapshot.lastSequence())) {
+                    System.err.println("Checkpoint skipped: measurement log not synced");
+                    continue;
+                }
+                long start = System.nanoTime();
+                try {
+                    checkpoints.write(snapshot);
+                    checkpointTimer.recordSince(start);
+                } catch (IOException e) {
+                    System.err.println("Error writing checkpoint: " + e.getMessage());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Método para esperar a que los primeros records registros del log estén en disco
+    private boolean awaitDurable(long records) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + CHECKPOINT_TIMEOUT_MS;
+        while (durableLogSize < records) {
+            if (System.currentTimeMillis() > deadline) {
+                return false;
+            }
+            Thread.sleep(10);
+        }
+        return true;
+    }
+
+    private static byte[] serialize(StateWriter state) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            state.writeTo(new DataOutputStream(bytes));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // No ocurre al escribir en memoria
+        }
+        return bytes.toByteArray();
+    }
+
+    // Formato: agg#tipo#(all|idSensor)#(tumbling|sliding)#inicio#fin#conteo#min#max#media#p50#p90#p99#noValidas
+    private void formatAggregate(StringBuilder line, int sensorId, boolean sliding, long start, long end,
+            WindowStats stats) {
+        line.setLength(0);
+        line.append("agg#").append(monitorType).append('#');
+        if (sensorId == WindowAggregator.ALL_SENSORS) {
+            line.append("all");
+        } else {
+            line.append(sensorId);
+        }
+        line.append('#').append(sliding ? "sliding" : "tumbling")
+                .append('#').append(start)
+                .append('#').append(end)
+                .append('#').append(stats.getCount())
+                .append('#').append(stats.getMin())
+                .append('#').append(stats.getMax())
+                .append('#').append(stats.getMean())
+                .append('#').append(stats.getQuantile(0.5))
+                .append('#').append(stats.getQuantile(0.9))
+                .append('#').append(stats.getQuantile(0.99))
+                .append('#').append(stats.getInvalidCount());
+    }
+
+    // Hilo de latidos: publica cada heartbeatIntervalMs
+    // hb#monitor#secuencia#timestamp#profundidadCola#retrasoMs#medidasPorSegundo#recibidos#perdidos#retrasoBrokerMs
+    // (monitor es el tipo o, en un grupo, el nombre del miembro: ph, ph.1...)
+    // El retraso desde el broker compara relojes de dos máquinas: supone relojes sincronizados (NTP).
+    private void runHeartbeat() {
+        ZMQ.Socket heartbeatSocket = context.createSocket(SocketType.PUB);
+        try {
+            awaitActive();
+            heartbeatSocket.bind("tcp://*:" + heartbeatPort);
+            advertise("heartbeat", "tcp://*:" + heartbeatPort);
+            if (group != null) {
+                // Desde ahora los demás miembros le dejan sus sensores
+                group.join(ServiceRegistry.advertise("tcp://*:" + heartbeatPort, advertiseHost));
+            }
+            long sequence = 0;
+            long lastCount = processedCount.get();
+            long lastNanos = System.nanoTime();
+            while (!Thread.currentThread().isInterrupted()) {
+                Thread.sleep(heartbeatIntervalMs);
+                long count = processedCount.get();
+                long nanos = System.nanoTime();
+                long rate = (count - lastCount) * 1_000_000_000L / Math.max(1, nanos - lastNanos);
+                lastCount = count;
+                lastNanos = nanos;
+
+                long now = System.currentTimeMillis();
+                // Sin mensajes recientes no hay retraso que informar
+                long lag = now - brokerLagUpdatedMillis > 1000 ? 0 : brokerLagMillis;
+                String heartbeat = "hb#" + monitorName() + "#" + (++sequence) + "#" + now + "#"
+                        + ring.getDepth() + "#" + getLagMillis() + "#" + rate + "#" + receivedCount.get() + "#"
+                        + droppedCount.get() + "#" + Math.max(0, lag);
+                heartbeatSocket.send(heartbeat, ZMQ.DONTWAIT);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (group != null) {
+                group.leave();
+            }
+            heartbeatSocket.setLinger(0);
+            context.destroySocket(heartbeatSocket);
+        }
+    }
+
+    // Hilo de consultas sobre la serie (ver SeriesQueryService)
+    private void runQuery() {
+        ZMQ.Socket querySocket = context.createSocket(SocketType.REP);
+        try {
+            awaitActive();
+            querySocket.setReceiveTimeOut(100);
+            querySocket.bind(queryAddress);
+            advertise("query", queryAddress);
+            SeriesQueryService service = null;
+            while (!Thread.currentThread().isInterrupted()) {
+                String request = querySocket.recvStr(0);
+                if (request == null) {
+                    continue;
+                }
+                TimeSeriesStore store = series;
+                if (store == null) {
+                    querySocket.send("ERROR#series not available", 0);
+                    continue;
+                }
+                if (service == null) {
+                    service = new SeriesQueryService(store, false);
+                }
+                querySocket.send(service.handle(request), 0);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            context.destroySocket(querySocket);
+        }
+    }
+
+    // Hilo del chequeo de salud: responde "OK#<solicitud>" a cada solicitud, para que
+    // el HealthChecker pueda asociar la respuesta con su sonda
+    private void runHealthCheck() {
+        ZMQ.Socket healthCheckSocket = context.createSocket(SocketType.REP);
+        try {
+            awaitActive();
+            healthCheckSocket.setReceiveTimeOut(100);
+            healthCheckSocket.bind("tcp://*:" + healthCheckPort); // Bind to a port determined by the sensor type
+            advertise("health", "tcp://*:" + healthCheckPort);
+
+            while (!Thread.currentThread().isInterrupted()) {
+                String healthCheckRequest = healthCheckSocket.recvStr(0);
+                if (healthCheckRequest == null) {
+                    continue;
+                }
+
+                // Responder con un acuse de recibo (OK) se utilizo PING PONG para el chequeo de
+                // salud. Las sondas llegan varias veces por segundo, por eso no se imprimen.
+                healthCheckSocket.send("OK#" + healthCheckRequest, 0);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            context.destroySocket(healthCheckSocket);
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.javeriana;
+
+//Enum que especifica con qué clave se reparten los sensores entre los brokers
+public enum PartitionKey {
+
+    // Por id de sensor: la carga de cada tipo se reparte entre todos los brokers
+    sensor,
+    // Por tipo de sensor: cada monitor solo necesita el broker de su tipo
+    type;
+
+    // Clave de una medida en el anillo de brokers
+    public long keyOf(SensorType sensorType, int sensorId) {
+        return this == sensor ? sensorId : -1 - sensorType.ordinal();
+    }
+}
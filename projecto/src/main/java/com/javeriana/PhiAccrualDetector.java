@@ -0,0 +1,86 @@
+package com.javeriana;
+
+// Definición de la clase PhiAccrualDetector
+// Detector de fallas "phi accrual" (Hayashibara et al.). En lugar de un plazo
+// fijo, guarda los intervalos entre latidos recientes y calcula qué tan
+// improbable es no haber recibido un latido en el tiempo transcurrido:
+// phi = -log10(P(intervalo > transcurrido)), con la distribución normal de los
+// intervalos observados. phi = 1 es un 10% de probabilidad de equivocarse al
+// declarar la falla, phi = 8 es una en cien millones.
+public class PhiAccrualDetector {
+
+    private final long[] intervals;
+    private final double minStdDevMillis;
+    private int count;
+    private int next;
+    private double sum;
+    private double sumOfSquares;
+    private long lastHeartbeatMillis = -1;
+
+    // Constructor del PhiAccrualDetector. El intervalo esperado sirve de
+    // estimación inicial hasta tener latidos reales.
+    public PhiAccrualDetector(int windowSize, long expectedIntervalMillis, double minStdDevMillis) {
+        this.intervals = new long[windowSize];
+        this.minStdDevMillis = minStdDevMillis;
+        addInterval(expectedIntervalMillis);
+    }
+
+    // Método para registrar un latido
+    public void heartbeat(long nowMillis) {
+        if (lastHeartbeatMillis >= 0) {
+            addInterval(nowMillis - lastHeartbeatMillis);
+        }
+        lastHeartbeatMillis = nowMillis;
+    }
+
+    // Método para calcular phi en este instante (0 si aún no hay latidos)
+    public double phi(long nowMillis) {
+        if (lastHeartbeatMillis < 0) {
+            return 0;
+        }
+        double elapsed = nowMillis - lastHeartbeatMillis;
+        double mean = getMeanMillis();
+        double variance = sumOfSquares / count - mean * mean;
+        double stdDev = Math.max(minStdDevMillis, Math.sqrt(Math.max(0, variance)));
+        // Aproximación logística de la CDF normal, evita calcular la función de error
+        double y = (elapsed - mean) / stdDev;
+        double e = Math.exp(-y * (1.5976 + 0.070566 * y * y));
+        if (elapsed > mean) {
+            return -Math.log10(e / (1.0 + e));
+        }
+        return -Math.log10(1.0 - 1.0 / (1.0 + e));
+    }
+
+    // Milisegundos desde el último latido (-1 si no hay)
+    public long millisSinceLastHeartbeat(long nowMillis) {
+        return lastHeartbeatMillis < 0 ? -1 : nowMillis - lastHeartbeatMillis;
+    }
+
+    public double getMeanMillis() {
+        return sum / count;
+    }
+
+    // Método para olvidar el historial (por ejemplo, al reemplazar el monitor)
+    public void reset(long expectedIntervalMillis) {
+        count = 0;
+        next = 0;
+        sum = 0;
+        sumOfSquares = 0;
+        lastHeartbeatMillis = -1;
+        addInterval(expectedIntervalMillis);
+    }
+
+    private void addInterval(long interval) {
+        if (count == intervals.length) {
+            long oldest = intervals[next];
+            sum -= oldest;
+            sumOfSquares -= (double) oldest * oldest;
+        } else {
+            count++;
+        }
+        intervals[next] = interval;
+        next = (next + 1) % intervals.length;
+        sum += interval;
+        sumOfSquares += (double) interval * interval;
+    }
+}
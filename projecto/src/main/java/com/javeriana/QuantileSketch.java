@@ -0,0 +1,171 @@
+package com.javeriana;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+// Definición de la clase QuantileSketch
+// Resumen de cuantiles con error relativo acotado (estilo DDSketch): cada valor
+// cae en una cubeta logarítmica y solo se guardan los contadores en arreglos
+// primitivos. Agregar un valor es O(1) y dos resúmenes se combinan sumando
+// cubetas, lo que permite armar ventanas deslizantes a partir de ventanas cortas.
+public class QuantileSketch {
+
+    // Error relativo de los cuantiles
+    private static final double RELATIVE_ACCURACY = 0.01;
+    private static final double GAMMA = (1 + RELATIVE_ACCURACY) / (1 - RELATIVE_ACCURACY);
+    private static final double LOG_GAMMA = Math.log(GAMMA);
+    // Valores con magnitud menor se cuentan como cero
+    private static final double MIN_INDEXABLE = 1e-9;
+
+    // Cubetas de valores positivos y negativos (por magnitud)
+    private final BucketStore positive = new BucketStore();
+    private final BucketStore negative = new BucketStore();
+    private long zeroCount;
+    private long count;
+
+    // Contadores de un rango contiguo de cubetas [offset, offset + length). El
+    // arreglo crece solo cuando llega un índice fuera del rango.
+    private static final class BucketStore {
+        long[] counts = new long[0];
+        int offset;
+
+        void add(int index, long amount) {
+            if (counts.length == 0) {
+                counts = new long[16];
+                offset = index - 8;
+            } else if (index < offset || index >= offset + counts.length) {
+                int newOffset = Math.min(offset, index);
+                int newEnd = Math.max(offset + counts.length, index + 1);
+                long[] grown = new long[Math.max(newEnd - newOffset, counts.length * 2)];
+                System.arraycopy(counts, 0, grown, offset - newOffset, counts.length);
+                counts = grown;
+                offset = newOffset;
+            }
+            counts[index - offset] += amount;
+        }
+
+        // Solo el rango de cubetas con valores
+        void writeTo(DataOutput out) throws IOException {
+            int first = 0;
+            int end = counts.length;
+            while (first < end && counts[first] == 0) {
+                first++;
+            }
+            while (end > first && counts[end - 1] == 0) {
+                end--;
+            }
+            out.writeInt(offset + first);
+            out.writeInt(end - first);
+            for (int i = first; i < end; i++) {
+                out.writeLong(counts[i]);
+            }
+        }
+
+        void readFrom(DataInput in) throws IOException {
+            int first = in.readInt();
+            int length = in.readInt();
+            Arrays.fill(counts, 0);
+            for (int i = 0; i < length; i++) {
+                add(first + i, in.readLong());
+            }
+        }
+
+        void merge(BucketStore other) {
+            for (int i = 0; i < other.counts.length; i++) {
+                if (other.counts[i] != 0) {
+                    add(other.offset + i, other.counts[i]);
+                }
+            }
+        }
+    }
+
+    // Método para agregar un valor
+    public void add(double value) {
+        count++;
+        if (value > MIN_INDEXABLE) {
+            positive.add(index(value), 1);
+        } else if (value < -MIN_INDEXABLE) {
+            negative.add(index(-value), 1);
+        } else {
+            zeroCount++;
+        }
+    }
+
+    // Método para sumar otro resumen a este
+    public void merge(QuantileSketch other) {
+        if (other.count == 0) {
+            return;
+        }
+        positive.merge(other.positive);
+        negative.merge(other.negative);
+        zeroCount += other.zeroCount;
+        count += other.count;
+    }
+
+    // Método para vaciar el resumen conservando los arreglos
+    public void clear() {
+        Arrays.fill(positive.counts, 0);
+        Arrays.fill(negative.counts, 0);
+        zeroCount = 0;
+        count = 0;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    // Método para guardar el resumen (puntos de control del monitor)
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeLong(count);
+        out.writeLong(zeroCount);
+        positive.writeTo(out);
+        negative.writeTo(out);
+    }
+
+    // Método para reemplazar el resumen por uno guardado con writeTo
+    public void readFrom(DataInput in) throws IOException {
+        count = in.readLong();
+        zeroCount = in.readLong();
+        positive.readFrom(in);
+        negative.readFrom(in);
+    }
+
+    // Método para estimar el valor en un cuantil (0-1)
+    public double getQuantile(double quantile) {
+        if (count == 0) {
+            return Double.NaN;
+        }
+        long rank = (long) (quantile * (count - 1));
+        long seen = 0;
+        // Negativos: de mayor magnitud (más pequeños) a menor
+        for (int i = negative.counts.length - 1; i >= 0; i--) {
+            seen += negative.counts[i];
+            if (seen > rank) {
+                return -value(negative.offset + i);
+            }
+        }
+        seen += zeroCount;
+        if (seen > rank) {
+            return 0;
+        }
+        for (int i = 0; i < positive.counts.length; i++) {
+            seen += positive.counts[i];
+            if (seen > rank) {
+                return value(positive.offset + i);
+            }
+        }
+        return 0;
+    }
+
+    // Método para obtener la cubeta de una magnitud
+    private static int index(double magnitude) {
+        return (int) Math.ceil(Math.log(magnitude) / LOG_GAMMA);
+    }
+
+    // Valor representativo de una cubeta (error relativo <= RELATIVE_ACCURACY)
+    private static double value(int index) {
+        return 2 * Math.pow(GAMMA, index) / (GAMMA + 1);
+    }
+}
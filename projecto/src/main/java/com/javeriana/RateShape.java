@@ -0,0 +1,26 @@
+package com.javeriana;
+
+//Enum que especifica la forma de la tasa de envío del generador de carga
+public enum RateShape {
+
+    // Tasa constante
+    constant,
+    // Ráfagas: toda la carga del periodo se concentra en una fracción (duty) del mismo
+    burst,
+    // Rampa: la tasa crece linealmente desde cero hasta la tasa objetivo durante un periodo
+    ramp;
+
+    // Método para obtener el factor a aplicar sobre la tasa objetivo en un instante
+    public double factor(long elapsedMs, long periodMs, double duty) {
+        switch (this) {
+            case constant:
+                return 1.0;
+            case burst:
+                return (elapsedMs % periodMs) < periodMs * duty ? 1.0 / duty : 0.0;
+            case ramp:
+                return Math.min(1.0, (double) elapsedMs / periodMs);
+            default:
+                throw new IllegalArgumentException("Invalid rate shape");
+        }
+    }
+}
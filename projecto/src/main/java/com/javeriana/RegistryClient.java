@@ -0,0 +1,204 @@
+package com.javeriana;
+
+import org.zeromq.SocketType;
+import org.zeromq.ZContext;
+import org.zeromq.ZMQ.Socket;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Definición de la clase RegistryClient
+// Cliente de un RegistryServer. Las solicitudes van por un REQ con tiempo de
+// espera; si el registro no responde, el socket se descarta y se crea otro (un
+// REQ sin respuesta queda inservible). Un hilo de fondo renueva el plazo de los
+// endpoints registrados y consulta los servicios vigilados, avisando a los
+// receptores cuando cambian. Si el registro está caído se conservan los últimos
+// endpoints conocidos, así que los componentes siguen funcionando con ellos.
+public class RegistryClient implements ServiceRegistry {
+
+    // Plazo de los endpoints registrados y frecuencia de renovación y consulta
+    private static final long LEASE_MS = 3000;
+    private static final long REFRESH_MS = 500;
+    private static final int REQUEST_TIMEOUT_MS = 1000;
+
+    private final String address;
+    private final ZContext context = new ZContext();
+    private Socket socket;
+
+    // Endpoints registrados por este proceso, para renovarlos
+    private final Map<String, Set<String>> registered = new HashMap<>();
+    // Últimos endpoints conocidos y receptores de cada servicio vigilado
+    private final Map<String, List<String>> known = new HashMap<>();
+    private final Map<String, List<Listener>> listeners = new HashMap<>();
+
+    private final Thread refresher;
+    private volatile boolean closed;
+
+    // Constructor del RegistryClient
+    public RegistryClient(String address) {
+        this.address = address;
+        this.refresher = new Thread(this::runRefresh, "registry-refresh");
+        this.refresher.setDaemon(true);
+        this.refresher.start();
+    }
+
+    @Override
+    public void register(String service, String endpoint) {
+        synchronized (registered) {
+            registered.computeIfAbsent(service, s -> new LinkedHashSet<>()).add(endpoint);
+        }
+        if (request("REGISTER#" + service + "#" + endpoint + "#" + LEASE_MS) == null) {
+            System.out.println("Registry " + address + " unavailable, will register " + service + " later");
+        }
+    }
+
+    @Override
+    public void deregister(String service, String endpoint) {
+        synchronized (registered) {
+            Set<String> endpoints = registered.get(service);
+            if (endpoints != null) {
+                endpoints.remove(endpoint);
+            }
+        }
+        request("DEREGISTER#" + service + "#" + endpoint);
+    }
+
+    @Override
+    public List<String> resolve(String service) {
+        List<String> endpoints = fetch(service);
+        if (endpoints == null) {
+            synchronized (known) {
+                List<String> last = known.get(service);
+                return last == null ? new ArrayList<>() : new ArrayList<>(last);
+            }
+        }
+        return endpoints;
+    }
+
+    @Override
+    public void watch(String service, Listener listener) {
+        List<String> endpoints = resolve(service);
+        synchronized (known) {
+            listeners.computeIfAbsent(service, s -> new ArrayList<>()).add(listener);
+            known.putIfAbsent(service, endpoints);
+        }
+        listener.endpointsChanged(service, endpoints);
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        refresher.interrupt();
+        List<String[]> endpoints = new ArrayList<>();
+        synchronized (registered) {
+            for (Map.Entry<String, Set<String>> entry : registered.entrySet()) {
+                for (String endpoint : entry.getValue()) {
+                    endpoints.add(new String[] { entry.getKey(), endpoint });
+                }
+            }
+            registered.clear();
+        }
+        // Retirarse del registro sin esperar a que venza el plazo
+        for (String[] endpoint : endpoints) {
+            request("DEREGISTER#" + endpoint[0] + "#" + endpoint[1]);
+        }
+        synchronized (this) {
+            context.close();
+        }
+    }
+
+    // Hilo de fondo: renueva los registros y consulta los servicios vigilados
+    private void runRefresh() {
+        while (!closed) {
+            try {
+                Thread.sleep(REFRESH_MS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            List<String[]> leases = new ArrayList<>();
+            synchronized (registered) {
+                for (Map.Entry<String, Set<String>> entry : registered.entrySet()) {
+                    for (String endpoint : entry.getValue()) {
+                        leases.add(new String[] { entry.getKey(), endpoint });
+                    }
+                }
+            }
+            for (String[] lease : leases) {
+                request("REGISTER#" + lease[0] + "#" + lease[1] + "#" + LEASE_MS);
+            }
+
+            List<String> services;
+            synchronized (known) {
+                services = new ArrayList<>(listeners.keySet());
+            }
+            for (String service : services) {
+                List<String> endpoints = fetch(service);
+                if (endpoints != null) {
+                    notifyIfChanged(service, endpoints);
+                }
+            }
+        }
+    }
+
+    private void notifyIfChanged(String service, List<String> endpoints) {
+        List<Listener> serviceListeners;
+        synchronized (known) {
+            if (endpoints.equals(known.get(service))) {
+                return;
+            }
+            known.put(service, endpoints);
+            serviceListeners = new ArrayList<>(listeners.get(service));
+        }
+        System.out.println("Registry: " + service + " -> " + endpoints);
+        for (Listener listener : serviceListeners) {
+            listener.endpointsChanged(service, endpoints);
+        }
+    }
+
+    // Método para consultar un servicio (null si el registro no respondió)
+    private List<String> fetch(String service) {
+        String reply = request("RESOLVE#" + service);
+        if (reply == null || !reply.startsWith("OK#")) {
+            return null;
+        }
+        String list = reply.substring(3);
+        return list.isEmpty() ? new ArrayList<>() : new ArrayList<>(Arrays.asList(list.split(",")));
+    }
+
+    // Método para enviar una solicitud y esperar la respuesta (null si no llega a tiempo)
+    private synchronized String request(String request) {
+        if (context.isClosed()) {
+            return null;
+        }
+        try {
+            if (socket == null) {
+                socket = context.createSocket(SocketType.REQ);
+                socket.setLinger(0);
+                socket.setReceiveTimeOut(REQUEST_TIMEOUT_MS);
+                socket.connect(address);
+            }
+            socket.send(request, 0);
+            String reply = socket.recvStr(0);
+            if (reply == null) {
+                // Sin respuesta: el REQ quedó esperando, se reemplaza
+                context.destroySocket(socket);
+                socket = null;
+            } else if (reply.startsWith("ERROR")) {
+                System.err.println("Registry rejected " + request + ": " + reply);
+            }
+            return reply;
+        } catch (RuntimeException e) {
+            // Contexto cerrado o error de ZeroMQ: se trata como registro no disponible
+            socket = null;
+            return null;
+        }
+    }
+}
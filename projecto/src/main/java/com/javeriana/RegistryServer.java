@@ -0,0 +1,99 @@
+package com.javeriana;
+
+import org.kohsuke.args4j.CmdLineParser;
+import org.kohsuke.args4j.Option;
+import org.zeromq.SocketType;
+import org.zeromq.ZContext;
+import org.zeromq.ZMQ;
+import org.zeromq.ZMQ.Socket;
+
+import java.util.List;
+
+// Definición de la clase RegistryServer
+// Servicio de registro por ZeroMQ (REP) sobre un LocalRegistry. Protocolo:
+//   REGISTER#servicio#endpoint#plazoMs -> OK   (también renueva el plazo)
+//   DEREGISTER#servicio#endpoint       -> OK
+//   RESOLVE#servicio                   -> OK#endpoint1,endpoint2,...
+// Los errores se responden con ERROR#mensaje. Un endpoint cuyo plazo vence sin
+// renovarse se retira, de modo que un componente caído desaparece del registro.
+public class RegistryServer {
+
+    // Definición de opciones de línea de comandos usando args4j
+    @Option(name = "--bind", usage = "Endpoint where the registry listens")
+    private String bindAddress = "tcp://*:5600";
+
+    private final LocalRegistry registry = new LocalRegistry();
+
+    public static void main(String[] args) {
+        RegistryServer server = new RegistryServer();
+        CmdLineParser parser = new CmdLineParser(server);
+
+        try {
+            parser.parseArgument(args);
+        } catch (Exception e) {
+            System.err.println(e.getMessage());
+            parser.printUsage(System.err);
+            return;
+        }
+
+        try (ZContext context = new ZContext()) {
+            server.run(context);
+        }
+    }
+
+    // Método que atiende solicitudes hasta que se interrumpe el hilo
+    public void run(ZContext context) {
+        Socket socket = context.createSocket(SocketType.REP);
+        try {
+            socket.setReceiveTimeOut(100);
+            socket.bind(bindAddress);
+            System.out.println("Service registry listening on " + bindAddress);
+
+            while (!Thread.currentThread().isInterrupted()) {
+                String request = socket.recvStr(0);
+                if (request != null) {
+                    socket.send(handle(request, System.currentTimeMillis()), 0);
+                }
+                registry.expire(System.currentTimeMillis());
+            }
+        } finally {
+            context.destroySocket(socket);
+        }
+    }
+
+    // Método para procesar una solicitud y devolver la respuesta
+    private String handle(String request, long now) {
+        String[] parts = request.split("#");
+        try {
+            switch (parts[0]) {
+                case "REGISTER":
+                    if (parts.length != 4) {
+                        break;
+                    }
+                    if (!registry.resolve(parts[1]).contains(parts[2])) {
+                        System.out.println("Registered " + parts[1] + " at " + parts[2]);
+                    }
+                    registry.register(parts[1], parts[2], now + Long.parseLong(parts[3]));
+                    return "OK";
+                case "DEREGISTER":
+                    if (parts.length != 3) {
+                        break;
+                    }
+                    registry.deregister(parts[1], parts[2]);
+                    System.out.println("Deregistered " + parts[1] + " at " + parts[2]);
+                    return "OK";
+                case "RESOLVE":
+                    if (parts.length != 2) {
+                        break;
+                    }
+                    List<String> endpoints = registry.resolve(parts[1]);
+                    return "OK#" + String.join(",", endpoints);
+                default:
+                    return "ERROR#unknown command " + parts[0];
+            }
+        } catch (NumberFormatException e) {
+            return "ERROR#invalid lease " + e.getMessage();
+        }
+        return "ERROR#invalid request " + request;
+    }
+}
@@ -0,0 +1,87 @@
+package com.javeriana;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Definición de la clase SampledLog
+// Log por mensaje sin costo en el camino rápido: cada línea de un mismo tipo
+// (por ejemplo "Monitor received") se registra como máximo perSecond veces por
+// segundo y la escritura a la consola la hace un hilo aparte. Quien registra
+// pregunta primero sample(), así que el texto solo se arma para las líneas que
+// se van a imprimir. Si la cola se llena, las líneas se descartan en lugar de
+// frenar al hilo que registra.
+//
+// Uso:
+//   if (log.sample()) {
+//       log.log("Monitor received: " + decoder);
+//   }
+public class SampledLog {
+
+    private static final BlockingQueue<String> QUEUE = new ArrayBlockingQueue<>(4096);
+    private static final AtomicLong LOST = new AtomicLong();
+    private static volatile int defaultPerSecond = 10;
+
+    static {
+        Thread writer = new Thread(SampledLog::runWriter, "sampled-log");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    private final int perSecond;
+    private final AtomicLong window = new AtomicLong();
+    private final AtomicLong inWindow = new AtomicLong();
+    private final AtomicLong suppressed = new AtomicLong();
+
+    // Constructor del SampledLog con el límite por defecto del proceso
+    public SampledLog() {
+        this(defaultPerSecond);
+    }
+
+    // Constructor del SampledLog: perSecond <= 0 no imprime nada
+    public SampledLog(int perSecond) {
+        this.perSecond = perSecond;
+    }
+
+    // Método para fijar el límite de los SampledLog que se creen después (opción --logPerSecond)
+    public static void setDefaultPerSecond(int perSecond) {
+        defaultPerSecond = perSecond;
+    }
+
+    // Indica si la siguiente línea se imprime; las demás solo se cuentan
+    public boolean sample() {
+        long second = System.nanoTime() / 1_000_000_000L;
+        long current = window.get();
+        if (second != current && window.compareAndSet(current, second)) {
+            inWindow.set(0);
+        }
+        if (inWindow.incrementAndGet() <= perSecond) {
+            return true;
+        }
+        suppressed.incrementAndGet();
+        return false;
+    }
+
+    // Método para encolar una línea elegida por sample(), con las omitidas desde la anterior
+    public void log(String line) {
+        long skipped = suppressed.getAndSet(0);
+        if (!QUEUE.offer(skipped > 0 ? line + " (" + skipped + " similar lines skipped)" : line)) {
+            LOST.incrementAndGet();
+        }
+    }
+
+    private static void runWriter() {
+        try {
+            while (true) {
+                String line = QUEUE.take();
+                long lost = LOST.getAndSet(0);
+                if (lost > 0) {
+                    System.out.println("(" + lost + " log lines lost: console too slow)");
+                }
+                System.out.println(line);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -1,22 +1,24 @@
 package com.javeriana;
 
 // Importaciones de las bibliotecas necesarias
+import com.sun.net.httpserver.HttpServer; // Para detener el endpoint de métricas
 import org.kohsuke.args4j.CmdLineParser; // Para analizar argumentos de línea de comandos
 import org.kohsuke.args4j.Option; // Para definir opciones de línea de comandos
-import org.zeromq.SocketType; // Para el tipo de socket ZeroMQ
 import org.zeromq.ZContext; // Para el contexto ZeroMQ
 import org.zeromq.ZMQ; // Para la comunicación ZeroMQ
 
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
-import java.util.Random;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.util.concurrent.locks.LockSupport;
 
 // Definición de la clase principal Sensor
 public class Sensor {
 
+    // Tiempo que el contexto sigue intentando entregar el último lote al cerrarse
+    static final int CLOSE_LINGER_MS = 1000;
+
     // Definición de opciones de línea de comandos usando args4j
     @Option(name = "-t", aliases = "--sensorType", required = true, usage = "Sensor type (oxygen, ph, or temperature)")
     private SensorType sensorType;
@@ -27,6 +29,74 @@ public class Sensor {
     @Option(name = "-c", aliases = "--configFile", required = true, usage = "Configuration file name")
     private String configFile;
 
+    @Option(name = "-m", aliases = "--mode", usage = "Ingest mode matching the broker (rep, router or pull)")
+    private IngestMode mode = IngestMode.rep;
+
+    @Option(name = "--broker", usage = "Broker frontend endpoint")
+    private String brokerAddress = "tcp://localhost:5559";
+
+    @Option(name = "--registry", usage = "Service registry endpoint used to find the brokers instead of --broker")
+    private String registryAddress;
+
+    @Option(name = "--partitions", usage = "Fixed broker cluster instead of --broker: front|back,front|back")
+    private String partitions;
+
+    @Option(name = "--partitionBy", usage = "Key that spreads sensors over the brokers (sensor or type)")
+    private PartitionKey partitionBy = PartitionKey.sensor;
+
+    @Option(name = "--sensorId", usage = "Sensor id sent in each message (defaults to the process id)")
+    private int sensorId = (int) ProcessHandle.current().pid();
+
+    @Option(name = "--batchSize", usage = "Measurements packed per message (1 disables batching)")
+    private int batchSize = 1;
+
+    @Option(name = "--maxLingerMs", usage = "Maximum milliseconds a partial batch waits before being sent")
+    private long maxLingerMs = 100;
+
+    @Option(name = "--count", usage = "Load generator: number of simulated sensors in this process")
+    private int count = 1;
+
+    @Option(name = "--sockets", usage = "Load generator: sockets (and threads) shared by the simulated sensors")
+    private int sockets = Runtime.getRuntime().availableProcessors();
+
+    @Option(name = "--shape", usage = "Load generator: rate shape (constant, burst or ramp)")
+    private RateShape shape = RateShape.constant;
+
+    @Option(name = "--shapePeriodMs", usage = "Load generator: burst period or ramp duration in milliseconds")
+    private long shapePeriodMs = 10_000;
+
+    @Option(name = "--burstDuty", usage = "Load generator: fraction of each burst period that carries the load")
+    private double burstDuty = 0.2;
+
+    @Option(name = "--durationSec", usage = "Load generator: test duration in seconds (0 runs forever)")
+    private long durationSec = 0;
+
+    @Option(name = "--seed", usage = "Random seed for reproducible measurement sequences")
+    private Long seed;
+
+    @Option(name = "--legacy", usage = "Send the legacy text format (type#value#timestamp)")
+    private boolean legacy;
+
+    @Option(name = "--metricsPort", usage = "Port of the Prometheus metrics endpoint (0 disables it)")
+    private int metricsPort = 0;
+
+    @Option(name = "--logPerSecond", usage = "Per-message log lines printed per second at most (0 disables them)")
+    private int logPerSecond = 10;
+
+    // Métricas del sensor y log por mensaje muestreado
+    private Metrics.Counter sentCounter;
+    private Metrics.Counter droppedCounter;
+    private Metrics.Timer replyTimer;
+    private SampledLog sendLog;
+    private SampledLog replyLog;
+
+    // Inicio del lote en construcción (0 si no hay lote abierto)
+    private long batchStart;
+
+    // Control de flujo en modo router: mensajes sin confirmar y crédito del broker
+    private long unacked;
+    private int credit = Integer.MAX_VALUE;
+
     // Método principal
     public static void main(String[] args) {
         Sensor sensor = new Sensor();// Crear una instancia de la clase Sensor
@@ -36,131 +106,301 @@ public class Sensor {
         try {
 
             parser.parseArgument(args);// Analizar los argumentos de línea de comandos
+            if (sensor.burstDuty <= 0 || sensor.burstDuty > 1) {
+                throw new IllegalArgumentException("--burstDuty must be in (0, 1]");
+            }
 
             // Analizar los argumentos de línea de comandos
             System.out.println("Sensor Type: " + sensor.sensorType);
             System.out.println("Interval: " + sensor.interval + " milliseconds");
             System.out.println("Config File: " + sensor.configFile);
+            System.out.println("Mode: " + sensor.mode);
+            System.out.println("Sensor Id: " + sensor.sensorId);
+            if (sensor.batchSize > 1) {
+                System.out.println("Batch Size: " + sensor.batchSize + " (linger " + sensor.maxLingerMs + " ms)");
+            }
+
+            SampledLog.setDefaultPerSecond(sensor.logPerSecond);
+            HttpServer metricsServer = Metrics.serve(sensor.metricsPort);
 
             // Leer el archivo de configuración
             double[] probabilities = readConfigFile(sensor.configFile);
 
-            // Crear un contexto ZeroMQ y un socket de tipo REQ
-            try (ZContext context = new ZContext()) {
-                ZMQ.Socket socket = context.createSocket(SocketType.REQ);
-                socket.connect("tcp://localhost:5559");
+            // Brokers fijos o publicados en el registro; cada sensor va al broker que le
+            // asigna el anillo de hash consistente, que cambia si un broker entra o sale
+            ServiceRegistry registry = ServiceRegistry.connect(sensor.registryAddress);
+            BrokerPartitions brokers = BrokerPartitions.of(registry,
+                    sensor.partitions != null ? sensor.partitions : sensor.brokerAddress, sensor.partitionBy);
 
-                // Bucle principal del sensor
-                while (!Thread.currentThread().isInterrupted()) {
+            // Generador de medidas (determinista si se indicó una semilla)
+            MeasurementGenerator generator = sensor.seed != null
+                    ? new MeasurementGenerator(sensor.sensorType, probabilities, sensor.seed)
+                    : new MeasurementGenerator(sensor.sensorType, probabilities);
 
-                    // Generar una medida del sensor
-                    double measurement = generateMeasurement(sensor.sensorType, probabilities);
+            // Al terminar el proceso se interrumpe el envío para mandar los lotes pendientes
+            Thread mainThread = Thread.currentThread();
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                mainThread.interrupt();
+                try {
+                    mainThread.join(5000);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }));
 
-                    // Obtener la fecha y hora actual en un formato específico
-                    LocalDateTime now = LocalDateTime.now();
-                    DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
-                    String timestamp = now.format(formatter);
+            if (sensor.count > 1) {
+                // Modo generador de carga: muchos sensores simulados en este proceso.
+                // Cada sensor envía una medida cada intervalo.
+                double rate = sensor.interval > 0 ? sensor.count * 1000.0 / sensor.interval : 0;
+                SensorLoadGenerator loadGenerator = new SensorLoadGenerator(sensor.sensorType, generator,
+                        sensor.mode, brokers, sensor.count, sensor.sensorId, sensor.sockets,
+                        sensor.batchSize, sensor.maxLingerMs, rate, sensor.shape, sensor.shapePeriodMs,
+                        sensor.burstDuty, sensor.durationSec * 1000);
+                boolean interrupted = false;
+                try (ZContext context = new ZContext()) {
+                    try {
+                        loadGenerator.run(context);
+                    } finally {
+                        // El contexto se cierra sin la interrupción pendiente para esperar su linger
+                        interrupted = Thread.interrupted();
+                    }
+                } finally {
+                    if (metricsServer != null) {
+                        metricsServer.stop(0);
+                    }
+                }
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+                return;
+            }
 
-                    // Enviar la medida del sensor al servidor
-                    String message = sensor.sensorType + "#" + measurement + "#" + timestamp;
-                    System.out.println(sensor.sensorType + " sending: " + message);
-                    socket.send(message.getBytes(ZMQ.CHARSET));
-                    byte[] reply = socket.recv(0);
-                    System.out.println(sensor.sensorType + " received: " + new String(reply, ZMQ.CHARSET));
+            // Crear un contexto ZeroMQ y un socket según el modo de ingesta
+            boolean interrupted = false;
+            try (ZContext context = new ZContext()) {
+                // Al cerrar el contexto (que aplica su linger a cada socket) se espera poco
+                // a que salga el último lote; con el linger 0 por defecto se descartaría
+                context.setLinger(CLOSE_LINGER_MS);
+                ZMQ.Socket socket = context.createSocket(sensor.mode.getSensorSocketType());
+                sensor.mode.configureSensorSocket(socket);
+                EndpointWatch.Connection broker = brokers.watchFrontend(sensor.sensorType, sensor.sensorId)
+                        .attach(socket);
 
-                    // Esperar el intervalo especificado antes de enviar el próximo mensaje
-                    Thread.sleep(sensor.interval);
+                // Codificador binario reutilizable
+                MessageEncoder encoder = new MessageEncoder();
+                sensor.registerMetrics();
+
+                try {
+                    sensor.runLoop(socket, broker, encoder, generator);
+                } finally {
+                    // Sin la interrupción pendiente, para que ZeroMQ pueda enviar el lote y
+                    // cerrar el contexto esperando su entrega
+                    interrupted = Thread.interrupted();
+                    sensor.flushBatch(socket, encoder);
                 }
             } catch (InterruptedException e) {
                 // Manejar la excepción de interrupción
             }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
         } catch (Exception e) {
             System.err.println(e.getMessage());
             parser.printUsage(System.err);
         }
     }
 
-    // Método para leer el archivo de configuración
-    private static double[] readConfigFile(String configFile) throws IOException {
-        try (BufferedReader reader = new BufferedReader(new FileReader(configFile))) {
-            double[] probabilities = new double[3];
-            for (int i = 0; i < 3; i++) {
-                probabilities[i] = Double.parseDouble(reader.readLine().split(" ")[0]);
+    // Bucle principal del sensor: una medida por intervalo
+    private void runLoop(ZMQ.Socket socket, EndpointWatch.Connection broker, MessageEncoder encoder,
+            MeasurementGenerator generator) throws InterruptedException {
+        while (!Thread.currentThread().isInterrupted()) {
+
+            // Aplicar los cambios de broker publicados en el registro
+            if (broker.sync()) {
+                System.out.println(sensorType + " broker endpoints: " + broker.getConnected());
             }
-            return probabilities;
+            if (!broker.isConnected()) {
+                Thread.sleep(Math.max(100, interval)); // Aún no hay broker registrado
+                continue;
+            }
+
+            // Generar una medida del sensor
+            double measurement = generator.next();
+
+            // Enviar la medida del sensor al servidor
+            if (batchSize > 1 && !legacy) {
+                addToBatch(socket, encoder, measurement);
+            } else if (legacy) {
+                // Obtener la fecha y hora actual en el formato de texto
+                String timestamp = LocalDateTime.now().format(MeasurementData.TIMESTAMP_FORMAT);
+
+                if (sendLog.sample()) {
+                    sendLog.log(sensorType + " sending: " + sensorType + "#"
+                            + measurement + "#" + timestamp);
+                }
+                send(socket, MessageEncoder.encodeLegacy(sensorType, measurement, timestamp));
+            } else {
+                if (sendLog.sample()) {
+                    sendLog.log(sensorType + " sending: " + measurement);
+                }
+                send(socket, encoder.encode(sensorType, measurement,
+                        System.currentTimeMillis(), sensorId));
+            }
+
+            // Esperar el intervalo especificado antes de enviar el próximo mensaje
+            pause(socket, encoder);
         }
     }
 
-    // Método para generar una medida del sensor
-    private static double generateMeasurement(SensorType sensorType, double[] probabilities) {
-        Random random = new Random();
-        double value;
-        double randomValue = random.nextDouble();
-
-        // Verificar en qué rango de probabilidad cae el valor aleatorio
-        if (randomValue < probabilities[0]) {
-            // Valor dentro del rango
-            value = generateValueWithinRange(sensorType);
-        } else if (randomValue < probabilities[0] + probabilities[1]) {
-            // Valor fuera del rango
-            value = generateValueOutsideRange(sensorType);
-        } else {
-            // Valor inválido
-            value = generateInvalidValue();
+    // Método para crear las métricas y los logs muestreados del sensor
+    private void registerMetrics() {
+        Metrics metrics = Metrics.global();
+        String labels = Metrics.typeLabel(sensorType);
+        sentCounter = metrics.counter("sensor_messages_sent_total", "Messages sent to the broker", labels);
+        droppedCounter = metrics.counter("sensor_messages_dropped_total",
+                "Messages dropped because the broker queue was full", labels);
+        replyTimer = metrics.timer("sensor_reply_seconds", "Rep mode: from sending a message to the broker reply",
+                labels);
+        metrics.gauge("sensor_unacked_messages", "Router mode: messages sent and not yet acknowledged", labels,
+                () -> unacked);
+        sendLog = new SampledLog();
+        replyLog = new SampledLog();
+    }
+
+    // Método para agregar una medida al lote y enviarlo cuando se llena o cuando
+    // pasa el tiempo máximo de espera
+    private void addToBatch(ZMQ.Socket socket, MessageEncoder encoder, double measurement) {
+        long now = System.currentTimeMillis();
+        if (batchStart == 0) {
+            encoder.startBatch(sensorType, batchSize);
+            batchStart = now;
         }
+        encoder.add(measurement, now, sensorId);
 
-        return value;
+        if (encoder.getBatchCount() >= batchSize || now - batchStart >= maxLingerMs) {
+            flushBatch(socket, encoder);
+        }
     }
 
-    // Métodos para generar valores de medida según el tipo de sensor
-    private static double generateValueWithinRange(SensorType sensorType) {
-        switch (sensorType) {
-            case temperatura:
-                return generateRandomInRange(68, 89);
-            case ph:
-                return generateRandomInRange(6.0, 8.0);
-            case oxygeno:
-                return generateRandomInRange(2, 11);
-            default:
-                throw new IllegalArgumentException("Invalid sensor type");
+    // Método para enviar el lote abierto, si hay uno
+    private void flushBatch(ZMQ.Socket socket, MessageEncoder encoder) {
+        if (batchStart == 0) {
+            return;
         }
+        if (sendLog.sample()) {
+            sendLog.log(sensorType + " sending batch of " + encoder.getBatchCount() + " measurements");
+        }
+        send(socket, encoder.getBatchFrame(), encoder.getBatchLength());
+        batchStart = 0;
     }
 
-    private static double generateValueOutsideRange(SensorType sensorType) {
-        switch (sensorType) {
-            case temperatura:
-                return generateRandomOutsideRange(68, 89);
-            case ph:
-                return generateRandomOutsideRange(6.0, 8.0);
-            case oxygeno:
-                return generateRandomOutsideRange(2, 11);
-            default:
-                throw new IllegalArgumentException("Invalid sensor type");
+    // Método para esperar el intervalo entre medidas. Con un lote abierto se
+    // despierta al vencer su tiempo máximo de espera y lo envía, sin esperar a la
+    // siguiente medida.
+    private void pause(ZMQ.Socket socket, MessageEncoder encoder) throws InterruptedException {
+        long wakeUp = System.currentTimeMillis() + interval;
+        while (true) {
+            long now = System.currentTimeMillis();
+            if (batchStart != 0 && now - batchStart >= maxLingerMs) {
+                flushBatch(socket, encoder);
+            }
+            long wait = wakeUp - now;
+            if (batchStart != 0) {
+                wait = Math.min(wait, batchStart + maxLingerMs - now);
+            }
+            if (wakeUp <= now) {
+                return;
+            }
+            Thread.sleep(Math.max(1, wait));
         }
     }
 
-    private static double generateInvalidValue() {
-        // Se usa -1.0 para indicar que el valor es inválido
-        return -1.0;
+    // Método para enviar un mensaje al broker según el modo de ingesta
+    private void send(ZMQ.Socket socket, byte[] message) {
+        send(socket, message, message.length);
     }
 
-    private static double generateRandomInRange(double min, double max) {
-        Random random = new Random();
-        return min + (max - min) * random.nextDouble();
-    }
+    // Método para enviar los primeros length bytes de un buffer al broker
+    private void send(ZMQ.Socket socket, byte[] message, int length) {
+        if (mode == IngestMode.rep) {
+            // REQ: esperar la respuesta del broker
+            long start = System.nanoTime();
+            socket.send(message, 0, length, 0);
+            sentCounter.increment();
+            byte[] reply = socket.recv(0);
+            if (reply == null) {
+                System.out.println(sensorType + " received no reply from the broker");
+                return;
+            }
+            replyTimer.recordSince(start);
+            if (replyLog.sample()) {
+                replyLog.log(sensorType + " received: " + new String(reply, ZMQ.CHARSET));
+            }
+            return;
+        }
 
-    private static double generateRandomOutsideRange(double min, double max) {
-        Random random = new Random();
-        double value;
-        double range = max - min;
-        double randomMultiplier = random.nextDouble();
-        if (random.nextBoolean()) {
-            // Generar un valor por debajo del mínimo
-            value = min - range * randomMultiplier;
+        if (mode == IngestMode.router) {
+            waitForCredit(socket);
+        }
+
+        // DEALER o PUSH: enviar sin bloquear; si la cola está llena se descarta
+        if (!socket.send(message, 0, length, ZMQ.DONTWAIT)) {
+            droppedCounter.increment();
+            if (sendLog.sample()) {
+                sendLog.log(sensorType + " dropped message: broker queue is full");
+            }
         } else {
-            // Generar un valor por encima del máximo
-            value = max + range * randomMultiplier;
+            sentCounter.increment();
+            if (mode == IngestMode.router) {
+                unacked++;
+            }
+        }
+
+        if (mode == IngestMode.router) {
+            readAcks(socket);
+        }
+    }
+
+    // Método para esperar, si el sensor agotó su crédito, a que el broker confirme.
+    // Tras un segundo sin acks (broker reiniciado) se olvidan los pendientes.
+    private void waitForCredit(ZMQ.Socket socket) {
+        long deadline = System.currentTimeMillis() + 1000;
+        while (unacked >= credit) {
+            readAcks(socket);
+            if (unacked < credit) {
+                return;
+            }
+            if (System.currentTimeMillis() >= deadline) {
+                unacked = 0;
+                return;
+            }
+            LockSupport.parkNanos(1_000_000);
+        }
+    }
+
+    // Método para leer los acks agrupados que hayan llegado, sin esperar
+    private void readAcks(ZMQ.Socket socket) {
+        byte[] reply;
+        while ((reply = socket.recv(ZMQ.DONTWAIT)) != null) {
+            if (replyLog.sample()) {
+                replyLog.log(sensorType + " received: " + new String(reply, ZMQ.CHARSET));
+            }
+            unacked = Math.max(0, unacked - SensorLoadGenerator.parseAckCount(reply));
+            int ackCredit = SensorLoadGenerator.parseAckCredit(reply);
+            if (ackCredit > 0) {
+                credit = ackCredit;
+            }
+        }
+    }
+
+    // Método para leer el archivo de configuración
+    private static double[] readConfigFile(String configFile) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new FileReader(configFile))) {
+            double[] probabilities = new double[3];
+            for (int i = 0; i < 3; i++) {
+                probabilities[i] = Double.parseDouble(reader.readLine().split(" ")[0]);
+            }
+            return probabilities;
         }
-        return value;
     }
 }
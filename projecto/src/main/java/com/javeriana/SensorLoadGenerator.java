@@ -0,0 +1,425 @@
+package com.javeriana;
+
+import org.zeromq.ZContext;
+import org.zeromq.ZMQ;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// Definición de la clase SensorLoadGenerator
+// Simula muchos sensores en un solo proceso para pruebas de capacidad. Los
+// sensores se reparten entre un grupo pequeño de hilos; cada hilo tiene su propio
+// socket (los sockets de ZeroMQ no son seguros entre hilos) y envía por turnos las
+// medidas de sus sensores a la tasa indicada por la forma de carga. Con varios
+// brokers, cada hilo abre un socket por broker y envía cada medida al broker que
+// el anillo de hash consistente asigna a su sensor.
+//
+// En modo router los acks traen el crédito del broker (mensajes sin confirmar
+// permitidos): un socket sin crédito espera los acks antes de seguir enviando,
+// así que cuando los monitores se atrasan la tasa baja en lugar de perder datos.
+public class SensorLoadGenerator {
+
+    // Capacidad del registro de envíos pendientes de ack por socket
+    private static final int PENDING_CAPACITY = 1 << 16;
+    // Sin acks por este tiempo (broker reiniciado) se olvidan los envíos pendientes
+    private static final long CREDIT_TIMEOUT_NANOS = 1_000_000_000L;
+
+    private final SensorType sensorType;
+    private final MeasurementGenerator generator;
+    private final IngestMode mode;
+    private final BrokerPartitions partitions;
+    private final int count;
+    private final int firstSensorId;
+    private final int sockets;
+    private final int batchSize;
+    private final long maxLingerMs; // Espera máxima de un lote incompleto
+    private final double ratePerSecond; // Tasa total objetivo (<= 0 sin límite)
+    private final RateShape shape;
+    private final long shapePeriodMs;
+    private final double burstDuty;
+    private final long durationMs; // Duración de la prueba (0 sin límite)
+
+    // Métricas compartidas con el hilo de reporte
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong acked = new AtomicLong();
+    private final AtomicLong throttledNanos = new AtomicLong();
+    private volatile int lastCredit = -1;
+    private final LatencyHistogram ackLatency = new LatencyHistogram();
+
+    private volatile boolean running = true;
+
+    // Constructor del SensorLoadGenerator
+    public SensorLoadGenerator(SensorType sensorType, MeasurementGenerator generator, IngestMode mode,
+            BrokerPartitions partitions, int count, int firstSensorId, int sockets, int batchSize, long maxLingerMs,
+            double ratePerSecond, RateShape shape, long shapePeriodMs, double burstDuty, long durationMs) {
+        this.sensorType = sensorType;
+        this.generator = generator;
+        this.mode = mode;
+        this.partitions = partitions;
+        this.count = count;
+        this.firstSensorId = firstSensorId;
+        this.sockets = Math.max(1, Math.min(sockets, count));
+        this.batchSize = batchSize;
+        this.maxLingerMs = maxLingerMs;
+        this.ratePerSecond = ratePerSecond;
+        this.shape = shape;
+        this.shapePeriodMs = Math.max(1, shapePeriodMs);
+        this.burstDuty = burstDuty;
+        this.durationMs = durationMs;
+    }
+
+    // Método para ejecutar la prueba de carga. Fija el linger del contexto: los sockets
+    // cerrados (y el contexto al cerrarse) esperan poco a entregar su último lote.
+    public void run(ZContext context) throws InterruptedException {
+        context.setLinger(Sensor.CLOSE_LINGER_MS);
+        System.out.println("Simulating " + count + " " + sensorType + " sensors on " + sockets + " sockets, rate "
+                + (ratePerSecond > 0 ? ratePerSecond + " msgs/s" : "unlimited") + ", shape " + shape);
+
+        registerMetrics();
+        ExecutorService workers = Executors.newFixedThreadPool(sockets);
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor();
+        long start = System.currentTimeMillis();
+
+        // Repartir los sensores entre los hilos
+        int perSocket = count / sockets;
+        int remainder = count % sockets;
+        int nextId = firstSensorId;
+        for (int i = 0; i < sockets; i++) {
+            int sensors = perSocket + (i < remainder ? 1 : 0);
+            int firstId = nextId;
+            nextId += sensors;
+            // Cada hilo tiene su propio generador, derivado en orden del original
+            MeasurementGenerator workerGenerator = generator.split();
+            workers.submit(() -> runWorker(context, workerGenerator, firstId, sensors, start));
+        }
+
+        // Reportar cada segundo la tasa alcanzada y la latencia de los acks
+        long[] lastSent = { 0, 0 };
+        LatencyHistogram[] lastLatency = { ackLatency.snapshot() };
+        reporter.scheduleAtFixedRate(() -> {
+            long total = sent.get();
+            long throttled = throttledNanos.get();
+            LatencyHistogram current = ackLatency.snapshot();
+            String credit = lastCredit < 0 ? "" : ", credit " + lastCredit + ", waited for credit "
+                    + (throttled - lastSent[1]) / 1_000_000 + " ms";
+            report("Sent " + (total - lastSent[0]) + " msgs/s" + credit, current.minus(lastLatency[0]));
+            lastSent[0] = total;
+            lastSent[1] = throttled;
+            lastLatency[0] = current;
+        }, 1, 1, TimeUnit.SECONDS);
+
+        try {
+            if (durationMs > 0) {
+                Thread.sleep(durationMs);
+            } else {
+                workers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            }
+        } finally {
+            // Interrumpido al terminar el proceso: igual se espera a que los hilos envíen sus lotes
+            boolean interrupted = Thread.interrupted();
+            running = false;
+            reporter.shutdownNow();
+            workers.shutdown();
+            workers.awaitTermination(5, TimeUnit.SECONDS);
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        long elapsed = System.currentTimeMillis() - start;
+        report("Total: sent " + sent.get() + " (" + (sent.get() * 1000 / Math.max(1, elapsed)) + " msgs/s), dropped "
+                + dropped.get() + ", acked " + acked.get() + ", waited for credit "
+                + throttledNanos.get() / 1_000_000 + " ms", ackLatency);
+    }
+
+    // Método para exportar los contadores de la prueba en el endpoint de métricas
+    private void registerMetrics() {
+        Metrics metrics = Metrics.global();
+        String labels = Metrics.typeLabel(sensorType);
+        metrics.counterFunction("sensor_messages_sent_total", "Messages sent to the broker", labels, sent::get);
+        metrics.counterFunction("sensor_messages_dropped_total", "Messages dropped because the broker queue was full",
+                labels, dropped::get);
+        metrics.counterFunction("sensor_messages_acked_total", "Router mode: messages acknowledged by the broker",
+                labels, acked::get);
+        metrics.counterFunction("sensor_credit_wait_nanoseconds_total", "Router mode: time spent waiting for credit",
+                labels, throttledNanos::get);
+        metrics.gauge("sensor_credit", "Router mode: last credit announced by the broker", labels, () -> lastCredit);
+    }
+
+    // Método para imprimir una línea de reporte con los percentiles de latencia
+    private void report(String prefix, LatencyHistogram latency) {
+        if (latency.getCount() == 0) {
+            System.out.println(prefix);
+            return;
+        }
+        System.out.printf("%s | ack latency ms p50=%.2f p90=%.2f p99=%.2f p99.9=%.2f max=%.2f%n", prefix,
+                latency.getValueAtPercentile(50) / 1e6, latency.getValueAtPercentile(90) / 1e6,
+                latency.getValueAtPercentile(99) / 1e6, latency.getValueAtPercentile(99.9) / 1e6,
+                latency.getMax() / 1e6);
+    }
+
+    // Socket hacia un broker, con su lote en construcción y los tiempos de envío
+    // de los mensajes pendientes de ack, en orden (FIFO)
+    private static final class Lane {
+        final String frontend;
+        final ZMQ.Socket socket;
+        final MessageEncoder encoder = new MessageEncoder();
+        long batchStart;
+        final long[] pending = new long[PENDING_CAPACITY];
+        long pendingHead;
+        long pendingTail;
+        int credit = Integer.MAX_VALUE; // Sin límite hasta el primer ack con crédito
+        long waitingSince; // Inicio de la espera por crédito (0 si no espera)
+
+        Lane(String frontend, ZMQ.Socket socket) {
+            this.frontend = frontend;
+            this.socket = socket;
+        }
+    }
+
+    // Ciclo de un hilo: envía por turnos las medidas de los sensores
+    // [firstId, firstId + sensors), cada una al broker que le asigna el anillo
+    private void runWorker(ZContext context, MeasurementGenerator generator, int firstId, int sensors,
+            long start) {
+        double workerRate = ratePerSecond / sockets;
+        PartitionKey partitionKey = partitions.getPartitionKey();
+
+        // Un socket por broker, indexado como los nodos del anillo
+        HashRing ring = null;
+        Lane[] lanes = new Lane[0];
+
+        double tokens = 1;
+        long lastRefill = System.nanoTime();
+        int sensorIndex = 0;
+
+        try {
+            while (running && !Thread.currentThread().isInterrupted()) {
+                // Rebalancear si un broker entró o salió; sin brokers no se genera carga
+                HashRing currentRing = partitions.getRing();
+                if (currentRing != ring) {
+                    ring = currentRing;
+                    lanes = rebuildLanes(context, lanes, ring);
+                }
+                if (lanes.length == 0) {
+                    LockSupport.parkNanos(100_000_000);
+                    continue;
+                }
+
+                // Enviar los lotes incompletos que cumplieron su espera máxima (tasa baja o fuera de ráfaga)
+                if (batchSize > 1) {
+                    long nowMillis = System.currentTimeMillis();
+                    for (Lane batchLane : lanes) {
+                        if (batchLane.batchStart != 0 && nowMillis - batchLane.batchStart >= maxLingerMs) {
+                            flushBatch(batchLane);
+                        }
+                    }
+                }
+
+                // Broker del siguiente sensor; sin crédito se espera por sus acks
+                int sensorId = firstId + sensorIndex;
+                Lane lane = lanes[ring.indexFor(partitionKey.keyOf(sensorType, sensorId))];
+                if (!hasCredit(lane)) {
+                    long waitStart = System.nanoTime();
+                    LockSupport.parkNanos(100_000);
+                    throttledNanos.addAndGet(System.nanoTime() - waitStart);
+                    continue;
+                }
+
+                // Control de tasa con un cubo de fichas según la forma de carga
+                long now = System.nanoTime();
+                if (workerRate > 0) {
+                    double rate = workerRate
+                            * shape.factor(System.currentTimeMillis() - start, shapePeriodMs, burstDuty);
+                    tokens = Math.min(tokens + rate * (now - lastRefill) / 1e9, Math.max(1, rate / 100));
+                    lastRefill = now;
+                    if (tokens < 1) {
+                        for (Lane idleLane : lanes) {
+                            drainAcks(idleLane);
+                        }
+                        LockSupport.parkNanos(rate > 0 ? (long) Math.min(1e6, (1 - tokens) * 1e9 / rate) : 1_000_000);
+                        continue;
+                    }
+                    tokens -= 1;
+                }
+
+                // Generar la medida del siguiente sensor
+                sensorIndex = sensorIndex + 1 == sensors ? 0 : sensorIndex + 1;
+                double measurement = generator.next();
+                long epochMillis = System.currentTimeMillis();
+                MessageEncoder encoder = lane.encoder;
+
+                if (batchSize > 1) {
+                    if (lane.batchStart == 0) {
+                        encoder.startBatch(sensorType, batchSize);
+                        lane.batchStart = epochMillis;
+                    }
+                    encoder.add(measurement, epochMillis, sensorId);
+                    if (encoder.getBatchCount() >= batchSize) {
+                        flushBatch(lane);
+                    }
+                } else {
+                    send(lane, encoder.encode(sensorType, measurement, epochMillis, sensorId),
+                            MessageEncoder.FRAME_SIZE);
+                }
+            }
+        } finally {
+            // Al terminar la prueba se envía lo que quede en los lotes
+            for (Lane lane : lanes) {
+                flushBatch(lane);
+                closeLane(context, lane);
+            }
+        }
+    }
+
+    // Método para enviar el lote abierto de un socket, si hay uno
+    private void flushBatch(Lane lane) {
+        if (lane.batchStart == 0) {
+            return;
+        }
+        send(lane, lane.encoder.getBatchFrame(), lane.encoder.getBatchLength());
+        lane.batchStart = 0;
+    }
+
+    // Método para enviar un mensaje según el modo de ingesta
+    private void send(Lane lane, byte[] frame, int length) {
+        ZMQ.Socket socket = lane.socket;
+        long sendTime = System.nanoTime();
+        if (mode == IngestMode.rep) {
+            socket.send(frame, 0, length, 0);
+            if (socket.recv(0) != null) {
+                ackLatency.record(System.nanoTime() - sendTime);
+                acked.incrementAndGet();
+            }
+            sent.incrementAndGet();
+        } else if (socket.send(frame, 0, length, ZMQ.DONTWAIT)) {
+            sent.incrementAndGet();
+            if (mode == IngestMode.router) {
+                if (lane.pendingTail - lane.pendingHead == PENDING_CAPACITY) {
+                    lane.pendingHead++; // Se descarta el más antiguo si el registro está lleno
+                }
+                lane.pending[(int) (lane.pendingTail++ & (PENDING_CAPACITY - 1))] = sendTime;
+                drainAcks(lane);
+            }
+        } else {
+            dropped.incrementAndGet();
+        }
+    }
+
+    // Método para ajustar los sockets a los brokers del anillo: se conservan los de
+    // los brokers que siguen, se abren los de los nuevos y se cierran los demás
+    private Lane[] rebuildLanes(ZContext context, Lane[] lanes, HashRing ring) {
+        Map<String, Lane> current = new HashMap<>();
+        for (Lane lane : lanes) {
+            current.put(lane.frontend, lane);
+        }
+        Lane[] rebuilt = new Lane[ring.size()];
+        for (int i = 0; i < rebuilt.length; i++) {
+            String frontend = ring.getNode(i);
+            Lane lane = current.remove(frontend);
+            if (lane == null) {
+                ZMQ.Socket socket = context.createSocket(mode.getSensorSocketType());
+                mode.configureSensorSocket(socket);
+                socket.connect(frontend);
+                lane = new Lane(frontend, socket);
+            }
+            rebuilt[i] = lane;
+        }
+        for (Lane lane : current.values()) {
+            flushBatch(lane);
+            closeLane(context, lane);
+        }
+        return rebuilt;
+    }
+
+    // destroySocket aplica el linger del contexto (ver run); socket.close() no serviría:
+    // el contexto lo volvería a cerrar con su linger al terminar
+    private static void closeLane(ZContext context, Lane lane) {
+        context.destroySocket(lane.socket);
+    }
+
+    // Método para revisar si un socket puede enviar según el crédito del broker
+    private boolean hasCredit(Lane lane) {
+        if (mode != IngestMode.router || lane.pendingTail - lane.pendingHead < lane.credit) {
+            lane.waitingSince = 0;
+            return true;
+        }
+        drainAcks(lane);
+        if (lane.pendingTail - lane.pendingHead < lane.credit) {
+            lane.waitingSince = 0;
+            return true;
+        }
+        long now = System.nanoTime();
+        if (lane.waitingSince == 0) {
+            lane.waitingSince = now;
+        } else if (now - lane.waitingSince > CREDIT_TIMEOUT_NANOS) {
+            // El broker no confirma (reiniciado o perdió los acks): no esperar para siempre
+            lane.pendingHead = lane.pendingTail;
+            lane.waitingSince = 0;
+            return true;
+        }
+        return false;
+    }
+
+    // Método para leer los acks agrupados ("nominal#<n>#<crédito>") sin bloquear.
+    // Cada ack confirma los n mensajes más antiguos pendientes del socket.
+    private void drainAcks(Lane lane) {
+        if (mode != IngestMode.router) {
+            return;
+        }
+        byte[] reply;
+        while ((reply = lane.socket.recv(ZMQ.DONTWAIT)) != null) {
+            int confirmed = parseAckCount(reply);
+            int credit = parseAckCredit(reply);
+            if (credit > 0) {
+                lane.credit = credit;
+                lastCredit = credit;
+            }
+            long now = System.nanoTime();
+            for (int i = 0; i < confirmed && lane.pendingHead < lane.pendingTail; i++) {
+                ackLatency.record(now - lane.pending[(int) (lane.pendingHead++ & (PENDING_CAPACITY - 1))]);
+            }
+            acked.addAndGet(confirmed);
+        }
+    }
+
+    // Método para obtener el crédito de un ack (-1 si el broker no lo envía)
+    static int parseAckCredit(byte[] reply) {
+        int fields = 0;
+        int credit = -1;
+        for (byte b : reply) {
+            if (b == '#') {
+                fields++;
+                credit = fields == 2 ? 0 : credit;
+            } else if (fields == 2 && b >= '0' && b <= '9') {
+                credit = credit * 10 + (b - '0');
+            }
+        }
+        return fields == 2 ? credit : -1;
+    }
+
+    // Método para obtener el número de mensajes confirmados de un ack
+    static int parseAckCount(byte[] reply) {
+        int count = 0;
+        boolean digits = false;
+        for (byte b : reply) {
+            if (b == '#') {
+                if (digits) {
+                    break;
+                }
+                digits = true;
+            } else if (digits && b >= '0' && b <= '9') {
+                count = count * 10 + (b - '0');
+            } else if (digits) {
+                break;
+            }
+        }
+        return digits ? count : 1;
+    }
+}
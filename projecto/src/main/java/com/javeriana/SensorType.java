@@ -1,8 +1,25 @@
 package com.javeriana;
 
-//Enum que especifica los tipos de sensores
+//Enum que especifica los tipos de sensores y su rango de valores válidos
 public enum SensorType {
 
-    oxygeno, ph, temperatura
+    oxygeno(2, 11), ph(6.0, 8.0), temperatura(68, 89);
 
+    private final double min;
+    private final double max;
+
+    SensorType(double min, double max) {
+        this.min = min;
+        this.max = max;
+    }
+
+    // Límite inferior del rango válido
+    public double getMin() {
+        return min;
+    }
+
+    // Límite superior del rango válido
+    public double getMax() {
+        return max;
+    }
 }
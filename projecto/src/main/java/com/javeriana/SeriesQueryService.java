@@ -0,0 +1,165 @@
+package com.javeriana;
+
+import org.kohsuke.args4j.CmdLineParser;
+import org.kohsuke.args4j.Option;
+import org.zeromq.SocketType;
+import org.zeromq.ZContext;
+import org.zeromq.ZMQ;
+
+import java.io.File;
+import java.io.IOException;
+
+// Definición de la clase SeriesQueryService
+// Servicio de consultas (REQ/REP) sobre la serie de medidas de un tipo
+// (TimeSeriesStore). El monitor lo atiende en su propio hilo; también se puede
+// ejecutar aparte sobre el almacén que escribe el monitor, en solo lectura.
+// Los tiempos son epoch millis y los rangos [desde, hasta). Solicitudes:
+//   INFO                         -> OK#bloques#medidas#bytes#primerTimestamp#últimoTimestamp
+//   AGG#desde#hasta              -> OK#conteo#noValidas#min#max#media#bloquesResumidos#bloquesLeídos
+//   BUCKETS#desde#hasta#pasoMs   -> OK#intervalos#bloquesResumidos#bloquesLeídos y una línea por
+//                                   intervalo: inicio#conteo#noValidas#min#max#media
+//   POINTS#desde#hasta#máximo    -> OK#medidas y una línea por medida: timestamp#medida
+// Las líneas van en el mismo frame, separadas por salto de línea (como los lotes de alertas).
+public class SeriesQueryService {
+
+    // Límites para que una consulta no arme respuestas enormes
+    private static final int MAX_BUCKETS = 100_000;
+    private static final int MAX_POINTS = 1_000_000;
+
+    // Opciones del servicio independiente
+    @Option(name = "-t", aliases = "--monitorType", required = true, usage = "Type whose series is queried")
+    private SensorType monitorType;
+
+    @Option(name = "--dir", usage = "Series directory (default: <type>_data/series)")
+    private File directory;
+
+    @Option(name = "--bind", usage = "Query endpoint (default: the query port of the type)")
+    private String bindAddress;
+
+    private TimeSeriesStore store;
+    private boolean readOnly;
+
+    // Constructor usado por args4j
+    public SeriesQueryService() {
+    }
+
+    // Constructor del SeriesQueryService sobre un almacén abierto. Con readOnly
+    // se cargan los bloques nuevos del índice antes de cada consulta.
+    public SeriesQueryService(TimeSeriesStore store, boolean readOnly) {
+        this.store = store;
+        this.readOnly = readOnly;
+    }
+
+    public static void main(String[] args) {
+        SeriesQueryService service = new SeriesQueryService();
+        CmdLineParser parser = new CmdLineParser(service);
+        try {
+            parser.parseArgument(args);
+        } catch (Exception e) {
+            System.err.println(e.getMessage());
+            parser.printUsage(System.err);
+            return;
+        }
+        File directory = service.directory != null ? service.directory
+                : new File(service.monitorType + "_data", "series");
+        String bindAddress = service.bindAddress != null ? service.bindAddress
+                : "tcp://*:" + Monitor.getQueryPort(service.monitorType);
+        try (TimeSeriesStore store = TimeSeriesStore.openReadOnly(directory); ZContext context = new ZContext()) {
+            service.store = store;
+            service.readOnly = true;
+            System.out.println("Series " + directory + ": " + store.describe());
+            service.run(context, bindAddress);
+        } catch (IOException e) {
+            System.err.println("Error opening series: " + e.getMessage());
+        }
+    }
+
+    // Método para atender consultas hasta que se interrumpa el hilo
+    public void run(ZContext context, String bindAddress) {
+        ZMQ.Socket socket = context.createSocket(SocketType.REP);
+        try {
+            socket.setReceiveTimeOut(100);
+            socket.bind(bindAddress);
+            System.out.println("Answering series queries on " + bindAddress);
+            while (!Thread.currentThread().isInterrupted()) {
+                String request = socket.recvStr(0);
+                if (request != null) {
+                    socket.send(handle(request), 0);
+                }
+            }
+        } finally {
+            context.destroySocket(socket);
+        }
+    }
+
+    // Método para responder una solicitud
+    public String handle(String request) {
+        String[] parts = request.split("#");
+        try {
+            if (readOnly) {
+                store.refresh();
+            }
+            switch (parts[0]) {
+                case "INFO":
+                    return "OK#" + store.describe();
+                case "AGG":
+                    if (parts.length == 3) {
+                        TimeSeriesSummary summary = new TimeSeriesSummary();
+                        TimeSeriesStore.QueryCost cost = store.aggregate(Long.parseLong(parts[1]),
+                                Long.parseLong(parts[2]), summary);
+                        return "OK#" + summary + "#" + cost;
+                    }
+                    break;
+                case "BUCKETS":
+                    if (parts.length == 4) {
+                        return buckets(Long.parseLong(parts[1]), Long.parseLong(parts[2]), Long.parseLong(parts[3]));
+                    }
+                    break;
+                case "POINTS":
+                    if (parts.length == 4) {
+                        return points(Long.parseLong(parts[1]), Long.parseLong(parts[2]),
+                                Integer.parseInt(parts[3]));
+                    }
+                    break;
+                default:
+                    break;
+            }
+            return "ERROR#invalid request " + request;
+        } catch (NumberFormatException e) {
+            return "ERROR#invalid number in " + request;
+        } catch (IOException e) {
+            return "ERROR#" + e.getMessage();
+        }
+    }
+
+    private String buckets(long from, long to, long stepMs) throws IOException {
+        if (stepMs <= 0 || to <= from) {
+            return "ERROR#empty range or step";
+        }
+        long count = (to - from + stepMs - 1) / stepMs;
+        if (count > MAX_BUCKETS) {
+            return "ERROR#more than " + MAX_BUCKETS + " buckets";
+        }
+        TimeSeriesSummary[] buckets = new TimeSeriesSummary[(int) count];
+        TimeSeriesStore.QueryCost cost = store.buckets(from, to, stepMs, buckets);
+        StringBuilder reply = new StringBuilder(32 + buckets.length * 48);
+        reply.append("OK#").append(buckets.length).append('#').append(cost);
+        for (int i = 0; i < buckets.length; i++) {
+            reply.append('\n').append(from + i * stepMs).append('#').append(buckets[i]);
+        }
+        return reply.toString();
+    }
+
+    private String points(long from, long to, int limit) throws IOException {
+        int max = Math.max(0, Math.min(limit, MAX_POINTS));
+        StringBuilder lines = new StringBuilder();
+        int[] count = new int[1];
+        store.points(from, to, (epochMillis, measurement) -> {
+            if (count[0] < max) {
+                lines.append('\n').append(epochMillis).append('#').append(measurement);
+                count[0]++;
+            }
+        });
+        return "OK#" + count[0] + lines;
+    }
+}
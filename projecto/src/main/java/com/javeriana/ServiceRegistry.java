@@ -0,0 +1,82 @@
+package com.javeriana;
+
+import java.io.Closeable;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.List;
+
+// Definición de la interfaz ServiceRegistry
+// Registro de servicios: cada componente publica los endpoints en los que
+// atiende (por ejemplo "calidad" -> tcp://10.0.0.5:5555) y los demás los
+// resuelven y los vigilan en lugar de usar IPs fijas. Hay dos implementaciones:
+//   - RegistryClient: habla con un RegistryServer por ZeroMQ (REQ/REP)
+//   - LocalRegistry: en memoria, para correr todo dentro de un mismo proceso
+public interface ServiceRegistry extends Closeable {
+
+    // Nombres de los servicios (los brokers se publican en BrokerPartitions.SERVICE)
+    String CALIDAD = "calidad";
+    String CALIDAD_QUERY = "calidad.query";
+
+    // Receptor de cambios en los endpoints de un servicio
+    interface Listener {
+        void endpointsChanged(String service, List<String> endpoints);
+    }
+
+    // Método para publicar un endpoint; se mantiene vigente hasta deregister o close
+    void register(String service, String endpoint);
+
+    // Método para retirar un endpoint (por ejemplo, el de un monitor caído)
+    void deregister(String service, String endpoint);
+
+    // Método para obtener los endpoints actuales de un servicio
+    List<String> resolve(String service);
+
+    // Método para vigilar un servicio: el receptor se llama con los endpoints
+    // actuales y luego en cada cambio
+    void watch(String service, Listener listener);
+
+    @Override
+    void close();
+
+    // Nombre del servicio de un monitor, por ejemplo "monitor.heartbeat.ph"
+    static String monitorService(String kind, SensorType sensorType) {
+        return "monitor." + kind + "." + sensorType;
+    }
+
+    // Nombre del servicio de un miembro de un grupo de monitores, por ejemplo
+    // "monitor.heartbeat.ph.1" (el miembro 0 usa el del tipo)
+    static String monitorService(String kind, SensorType sensorType, int member) {
+        return "monitor." + kind + "." + MonitorGroup.memberName(sensorType, member);
+    }
+
+    // Método para conectarse a un registro: "local" es el registro en memoria del
+    // proceso; cualquier otro valor es el endpoint de un RegistryServer. Devuelve
+    // null si no se indicó registro (los componentes usan sus direcciones fijas).
+    static ServiceRegistry connect(String address) {
+        if (address == null || address.isEmpty()) {
+            return null;
+        }
+        if (address.equals("local")) {
+            return LocalRegistry.shared();
+        }
+        return new RegistryClient(address);
+    }
+
+    // Método para armar el endpoint que se publica a partir del puerto en que se
+    // hizo bind ("tcp://*:5560" -> "tcp://<host>:5560")
+    static String advertise(String bindAddress, String host) {
+        if (host == null || host.isEmpty()) {
+            host = localHost();
+        }
+        return bindAddress.replace("*", host).replace("0.0.0.0", host);
+    }
+
+    // Dirección IP de esta máquina
+    static String localHost() {
+        try {
+            return InetAddress.getLocalHost().getHostAddress();
+        } catch (UnknownHostException e) {
+            return "127.0.0.1";
+        }
+    }
+}
@@ -1,31 +1,204 @@
 package com.javeriana;
 
+import org.kohsuke.args4j.CmdLineParser;
+import org.kohsuke.args4j.Option;
 import org.zeromq.SocketType;
 import org.zeromq.ZContext;
 import org.zeromq.ZMQ;
 
+import java.io.File;
+import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.time.format.DateTimeParseException;
 
 // Definición de la clase SistemaDeCalidad
+// Recibe las alertas de los monitores, las guarda (AlertStore), lleva contadores
+// móviles por tipo (AlertRates) y responde consultas sobre ellas (AlertQueryService).
+// La recepción drena el socket PULL por lotes de hasta --drainBatch mensajes y
+// escribe cada lote al almacén de una vez.
 public class SistemaDeCalidad {
 
+    // Definición de opciones de línea de comandos usando args4j
+    @Option(name = "--bind", usage = "Endpoint where monitors send their alerts")
+    private String bindAddress = "tcp://192.168.0.4:5555"; // IP y puerto del "sistema de calidad"
+
+    @Option(name = "--queryBind", usage = "Endpoint of the alert query service")
+    private String queryAddress = "tcp://*:5556";
+
+    @Option(name = "--dataDir", usage = "Directory where alerts are stored")
+    private File dataDirectory = new File("calidad_data");
+
+    @Option(name = "--syncIntervalMs", usage = "Maximum milliseconds between forcing stored alerts to disk")
+    private long syncIntervalMs = 1000;
+
+    @Option(name = "--drainBatch", usage = "Maximum alert messages received before writing them to the store")
+    private int drainBatch = 256;
+
+    @Option(name = "--registry", usage = "Service registry endpoint where this endpoint is published")
+    private String registryAddress;
+
+    @Option(name = "--advertiseHost", usage = "Host published in the registry for wildcard binds (default: local IP)")
+    private String advertiseHost;
+
+    @Option(name = "--metricsPort", usage = "HTTP port of the Prometheus metrics endpoint (0 disables it)")
+    private int metricsPort = 9401;
+
+    @Option(name = "--logPerSecond", usage = "Alerts printed per second at most; the rest are only counted")
+    private int logPerSecond = 100;
+
+    private volatile boolean running = true;
+    private AlertStore store;
+    private final AlertRates rates = new AlertRates();
+    private final long[] receivedByType = new long[SensorType.values().length];
+    private Metrics.Counter alertsReceived;
+    private Metrics.Counter batchesReceived;
+    private Metrics.Counter invalidAlerts;
+    private Metrics.Timer storeTimer;
+    private SampledLog alertLog;
+
+    // Último timestamp convertido: las alertas de un lote suelen compartir el segundo
+    private String lastTimestamp;
+    private long lastEpochMillis;
+
     // Método principal
     public static void main(String[] args) {
+        SistemaDeCalidad sistemaDeCalidad = new SistemaDeCalidad();
+        CmdLineParser parser = new CmdLineParser(sistemaDeCalidad);
+        try {
+            parser.parseArgument(args);
+        } catch (Exception e) {
+            System.err.println(e.getMessage());
+            parser.printUsage(System.err);
+            return;
+        }
+
+        // Dejar de recibir y cerrar el almacén de forma ordenada al terminar el proceso
+        Thread mainThread = Thread.currentThread();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            sistemaDeCalidad.stop();
+            try {
+                mainThread.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
         try (ZContext context = new ZContext()) {
+            sistemaDeCalidad.run(context);
+        }
+    }
+
+    // Método para detener la recepción; run() cierra el almacén y termina
+    public void stop() {
+        running = false;
+    }
+
+    // Método que recibe alertas sobre un contexto ZeroMQ hasta que se llama a stop()
+    public void run(ZContext context) {
+        Metrics metrics = Metrics.global();
+        alertsReceived = metrics.counter("calidad_alerts_received_total", "Alerts received from the monitors", null);
+        batchesReceived = metrics.counter("calidad_alert_batches_total",
+                "Alert messages (batches) received from the monitors", null);
+        invalidAlerts = metrics.counter("calidad_invalid_alerts_total", "Alerts that could not be parsed", null);
+        storeTimer = metrics.timer("calidad_store_write_seconds", "Time to write a drained batch to the store", null);
+        for (SensorType sensorType : SensorType.values()) {
+            metrics.gauge("calidad_alerts_last_minute", "Alerts received in the last 60 seconds",
+                    Metrics.typeLabel(sensorType),
+                    () -> rates.count(sensorType, 60, System.currentTimeMillis()));
+        }
+        Metrics.serve(metricsPort);
+        // Una tormenta de alertas no debe frenar la recepción por imprimirlas todas
+        alertLog = new SampledLog(logPerSecond);
+
+        ServiceRegistry registry = ServiceRegistry.connect(registryAddress);
+        try (AlertStore alertStore = new AlertStore(dataDirectory, syncIntervalMs)) {
+            store = alertStore;
+            long stored = 0;
+            for (SensorType sensorType : SensorType.values()) {
+                stored += store.size(sensorType);
+            }
+            System.out.println("Loaded " + stored + " stored alerts from " + dataDirectory);
+
             // Socket ZeroMQ para recibir alertas de los monitores
             ZMQ.Socket calidadSocket = context.createSocket(SocketType.PULL);
-            calidadSocket.bind("tcp://192.168.0.4:5555"); // IP y puerto del "sistema de calidad"
+            calidadSocket.setReceiveTimeOut(100);
+            calidadSocket.bind(bindAddress);
+
+            AlertQueryService queryService = new AlertQueryService(store, rates);
+            Thread queryThread = new Thread(() -> queryService.run(context, queryAddress), "calidad-query");
+            queryThread.start();
+            if (registry != null) {
+                // Los monitores encuentran el sistema de calidad en el registro
+                registry.register(ServiceRegistry.CALIDAD, ServiceRegistry.advertise(bindAddress, advertiseHost));
+                registry.register(ServiceRegistry.CALIDAD_QUERY,
+                        ServiceRegistry.advertise(queryAddress, advertiseHost));
+            }
 
             System.out.println("Sistema de Calidad is ready to receive alerts.");
 
-            while (true) {
-                // Recibir y mostrar el mensaje de alerta
-                byte[] alertMessageBytes = calidadSocket.recv(0);
-                String alertMessage = new String(alertMessageBytes, StandardCharsets.UTF_8);
-                System.out.println("Received alert: " + alertMessage);
+            try {
+                while (running) {
+                    // Recibir un lote de mensajes (cada uno con alertas separadas por salto
+                    // de línea) y escribirlo al almacén de una vez
+                    byte[] alertMessageBytes = calidadSocket.recv(0);
+                    int drained = 0;
+                    while (alertMessageBytes != null) {
+                        receive(alertMessageBytes);
+                        alertMessageBytes = ++drained < drainBatch ? calidadSocket.recv(ZMQ.DONTWAIT) : null;
+                    }
+                    long start = System.nanoTime();
+                    store.flush();
+                    if (drained > 0) {
+                        storeTimer.recordSince(start);
+                        long now = System.currentTimeMillis();
+                        for (SensorType sensorType : SensorType.values()) {
+                            if (receivedByType[sensorType.ordinal()] > 0) {
+                                rates.add(sensorType, receivedByType[sensorType.ordinal()], now);
+                                receivedByType[sensorType.ordinal()] = 0;
+                            }
+                        }
+                    }
+                }
+            } finally {
+                queryThread.interrupt();
+                queryThread.join();
+                context.destroySocket(calidadSocket);
             }
         } catch (Exception e) {
             System.err.println(e.getMessage());
+        } finally {
+            if (registry != null) {
+                registry.close();
+            }
+        }
+    }
+
+    // Método para procesar un mensaje de alertas: tipo#timestamp#medida#idSensor#motivo#suprimidas
+    private void receive(byte[] alertMessageBytes) {
+        String alertMessage = new String(alertMessageBytes, StandardCharsets.UTF_8);
+        batchesReceived.increment();
+        for (String alert : alertMessage.split("\n")) {
+            alertsReceived.increment();
+            if (alertLog.sample()) {
+                alertLog.log("Received alert: " + alert);
+            }
+            String[] parts = alert.split("#");
+            byte reason = parts.length == 6 ? AlertRules.reasonCode(parts[4]) : -1;
+            if (reason <= AlertRules.NONE) {
+                invalidAlerts.increment();
+                continue;
+            }
+            try {
+                SensorType sensorType = SensorType.valueOf(parts[0]);
+                if (!parts[1].equals(lastTimestamp)) {
+                    lastEpochMillis = MeasurementData.toEpochMillis(parts[1]);
+                    lastTimestamp = parts[1];
+                }
+                store.append(sensorType, lastEpochMillis, Double.parseDouble(parts[2]), Integer.parseInt(parts[3]),
+                        reason, Integer.parseInt(parts[5]));
+                receivedByType[sensorType.ordinal()]++;
+            } catch (IllegalArgumentException | DateTimeParseException e) {
+                invalidAlerts.increment();
+            }
         }
     }
 }
@@ -0,0 +1,224 @@
+package com.javeriana;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+// Definición de la clase TimeSeriesChunk
+// Bloque comprimido de una serie de medidas (un tipo de sensor), al estilo de
+// Gorilla (Pelkonen et al., 2015). Los timestamps se guardan como delta de delta:
+// con medidas a intervalos casi regulares la mayoría ocupa 1 bit. Los valores se
+// guardan como XOR con el anterior: un valor repetido ocupa 1 bit y uno parecido
+// solo los bits que cambian. Los timestamps pueden retroceder (las medidas de
+// varios sensores llegan un poco desordenadas), por eso las diferencias van en
+// zigzag.
+//
+// Formato serializado: número de medidas (int), primer timestamp (long) y el
+// flujo de bits. El bloque también lleva el resumen (rango de tiempo, conteo,
+// mínimo, máximo, suma) que el índice guarda para no descomprimirlo.
+public class TimeSeriesChunk {
+
+    static final int HEADER_SIZE = 4 + 8;
+
+    // Receptor de las medidas de un bloque
+    public interface PointConsumer {
+        void accept(long epochMillis, double measurement);
+    }
+
+    private final BitWriter bits = new BitWriter();
+    private final TimeSeriesSummary summary = new TimeSeriesSummary();
+    private int count;
+    private long firstTimestamp;
+    private long previousTimestamp;
+    private long previousDelta;
+    private long previousValue;
+    private int previousLeading = -1; // Ventana de bits significativos del último XOR
+    private int previousTrailing;
+
+    // Método para agregar una medida al bloque
+    public void add(long epochMillis, double measurement) {
+        long valueBits = Double.doubleToRawLongBits(measurement);
+        if (count == 0) {
+            firstTimestamp = epochMillis;
+            bits.write(valueBits, 64);
+        } else {
+            long delta = epochMillis - previousTimestamp;
+            writeTimestamp(delta - previousDelta);
+            previousDelta = delta;
+            writeValue(valueBits ^ previousValue);
+        }
+        previousTimestamp = epochMillis;
+        previousValue = valueBits;
+        summary.add(epochMillis, measurement);
+        count++;
+    }
+
+    // Delta de delta en zigzag: '0' si es cero, si no un prefijo de 2 a 4 bits y 7, 12, 20 o 64 bits
+    private void writeTimestamp(long deltaOfDelta) {
+        long zigzag = (deltaOfDelta << 1) ^ (deltaOfDelta >> 63);
+        if (zigzag == 0) {
+            bits.write(0, 1);
+        } else if (zigzag < 1 << 7) {
+            bits.write(0b10, 2);
+            bits.write(zigzag, 7);
+        } else if (zigzag < 1 << 12) {
+            bits.write(0b110, 3);
+            bits.write(zigzag, 12);
+        } else if (zigzag < 1 << 20) {
+            bits.write(0b1110, 4);
+            bits.write(zigzag, 20);
+        } else {
+            bits.write(0b1111, 4);
+            bits.write(zigzag, 64);
+        }
+    }
+
+    // XOR con el valor anterior: '0' si es igual; '10' y los bits dentro de la
+    // ventana anterior; o '11', ceros a la izquierda (5 bits), largo - 1 (6 bits) y los bits
+    private void writeValue(long xor) {
+        if (xor == 0) {
+            bits.write(0, 1);
+            return;
+        }
+        int leading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+        int trailing = Long.numberOfTrailingZeros(xor);
+        if (previousLeading >= 0 && leading >= previousLeading && trailing >= previousTrailing) {
+            bits.write(0b10, 2);
+            bits.write(xor >>> previousTrailing, 64 - previousLeading - previousTrailing);
+            return;
+        }
+        int significant = 64 - leading - trailing;
+        bits.write(0b11, 2);
+        bits.write(leading, 5);
+        bits.write(significant - 1, 6);
+        bits.write(xor >>> trailing, significant);
+        previousLeading = leading;
+        previousTrailing = trailing;
+    }
+
+    // Número de medidas del bloque
+    public int getCount() {
+        return count;
+    }
+
+    public long getFirstTimestamp() {
+        return firstTimestamp;
+    }
+
+    // Resumen de las medidas del bloque
+    public TimeSeriesSummary getSummary() {
+        return summary;
+    }
+
+    // Método para serializar el bloque
+    public byte[] toBytes() {
+        int bitBytes = (int) ((bits.length + 7) >>> 3);
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + bitBytes);
+        buffer.putInt(count).putLong(firstTimestamp);
+        for (int i = 0; i < bitBytes; i++) {
+            buffer.put((byte) (bits.words[i >>> 3] >>> (56 - ((i & 7) << 3))));
+        }
+        return buffer.array();
+    }
+
+    // Método para descomprimir un bloque serializado
+    public static void decode(byte[] data, PointConsumer consumer) {
+        ByteBuffer header = ByteBuffer.wrap(data);
+        int count = header.getInt();
+        long timestamp = header.getLong();
+        if (count == 0) {
+            return;
+        }
+        BitReader in = new BitReader(data, HEADER_SIZE);
+        long valueBits = in.read(64);
+        consumer.accept(timestamp, Double.longBitsToDouble(valueBits));
+        long delta = 0;
+        int leading = 0;
+        int trailing = 0;
+        for (int i = 1; i < count; i++) {
+            delta += readTimestamp(in);
+            timestamp += delta;
+            if (in.read(1) != 0) {
+                if (in.read(1) != 0) {
+                    leading = (int) in.read(5);
+                    trailing = 64 - leading - ((int) in.read(6) + 1);
+                }
+                valueBits ^= in.read(64 - leading - trailing) << trailing;
+            }
+            consumer.accept(timestamp, Double.longBitsToDouble(valueBits));
+        }
+    }
+
+    private static long readTimestamp(BitReader in) {
+        int width;
+        if (in.read(1) == 0) {
+            return 0;
+        } else if (in.read(1) == 0) {
+            width = 7;
+        } else if (in.read(1) == 0) {
+            width = 12;
+        } else if (in.read(1) == 0) {
+            width = 20;
+        } else {
+            width = 64;
+        }
+        long zigzag = in.read(width);
+        return (zigzag >>> 1) ^ -(zigzag & 1);
+    }
+
+    // Escritor de bits, del más significativo al menos significativo de cada long
+    private static final class BitWriter {
+        long[] words = new long[64];
+        long length; // Bits escritos
+
+        void write(long value, int width) {
+            if (width == 0) {
+                return;
+            }
+            if (width < 64) {
+                value &= (1L << width) - 1;
+            }
+            int word = (int) (length >>> 6);
+            if (word + 1 >= words.length) {
+                words = Arrays.copyOf(words, words.length * 2);
+            }
+            int free = 64 - (int) (length & 63);
+            if (width <= free) {
+                words[word] |= value << (free - width);
+            } else {
+                int rest = width - free;
+                words[word] |= value >>> rest;
+                words[word + 1] |= value << (64 - rest);
+            }
+            length += width;
+        }
+    }
+
+    // Lector de bits sobre un bloque serializado
+    private static final class BitReader {
+        private final long[] words;
+        private long position;
+
+        BitReader(byte[] data, int offset) {
+            int bytes = data.length - offset;
+            words = new long[(bytes + 7) / 8 + 1];
+            for (int i = 0; i < bytes; i++) {
+                words[i >>> 3] |= (data[offset + i] & 0xffL) << (56 - ((i & 7) << 3));
+            }
+        }
+
+        long read(int width) {
+            if (width == 0) {
+                return 0;
+            }
+            int word = (int) (position >>> 6);
+            int used = (int) (position & 63);
+            position += width;
+            long high = (words[word] << used) >>> (64 - width);
+            int available = 64 - used;
+            if (width <= available) {
+                return high;
+            }
+            return high | (words[word + 1] >>> (64 - (width - available)));
+        }
+    }
+}
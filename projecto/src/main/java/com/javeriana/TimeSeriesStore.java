@@ -0,0 +1,438 @@
+package com.javeriana;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+// Definición de la clase TimeSeriesStore
+// Almacén de la serie de medidas de un tipo para consultas por rango de tiempo.
+// Las medidas se agrupan en bloques comprimidos (TimeSeriesChunk) de hasta
+// chunkPoints medidas; al sellarse, cada bloque se agrega al archivo de su
+// partición de tiempo (<inicio de la hora>.chunks) y su entrada al índice
+// disperso (series.index): ubicación, CRC y resumen. Una consulta recorre el
+// índice (una entrada cada varios miles de medidas), usa el resumen de los
+// bloques que caen completos en el rango y solo lee y descomprime los bloques de
+// los bordes; los de otras horas ni se abren.
+//
+// Un solo hilo escribe (la persistencia del monitor) y otros pueden consultar a
+// la vez. El bloque abierto vive en memoria: si el proceso cae se pierde, y al
+// reiniciar se recupera desde el log de medidas (catchUp), que es el registro
+// durable. El bloque se escribe antes que su entrada del índice, así que una
+// entrada siempre tiene sus datos completos.
+public class TimeSeriesStore implements Closeable {
+
+    private static final String INDEX_FILE = "series.index";
+    private static final String SUFFIX = ".chunks";
+    // Entrada del índice: partición, offset, largo, CRC, tiempo mín/máx, conteos, mín, máx y suma
+    private static final int ENTRY_SIZE = 8 + 8 + 4 + 4 + 8 + 8 + 8 + 8 + 8 + 8 + 8;
+    // Duración de cada partición (un archivo por hora)
+    static final long PARTITION_MS = 3_600_000;
+
+    // Bloque sellado: dónde está y su resumen
+    private static final class ChunkInfo {
+        final long partition;
+        final long offset;
+        final int length;
+        final int crc;
+        final TimeSeriesSummary summary;
+        long maxTimeSoFar; // Máximo de los bloques hasta este: creciente, permite búsqueda binaria
+
+        ChunkInfo(long partition, long offset, int length, int crc, TimeSeriesSummary summary) {
+            this.partition = partition;
+            this.offset = offset;
+            this.length = length;
+            this.crc = crc;
+            this.summary = summary;
+        }
+    }
+
+    // Vista consistente para una consulta: bloques sellados y copia del bloque abierto
+    private static final class View {
+        final ChunkInfo[] chunks;
+        final byte[] open; // null si el bloque abierto no tiene medidas del rango
+
+        View(ChunkInfo[] chunks, byte[] open) {
+            this.chunks = chunks;
+            this.open = open;
+        }
+    }
+
+    // Resultado de una consulta con lo que costó responderla
+    public static final class QueryCost {
+        int chunksSummarized; // Bloques resueltos con su resumen del índice
+        int chunksDecoded; // Bloques leídos y descomprimidos
+
+        @Override
+        public String toString() {
+            return chunksSummarized + "#" + chunksDecoded;
+        }
+    }
+
+    private final File directory;
+    private final int chunkPoints;
+    private final long sealIntervalMs;
+    private final boolean readOnly;
+
+    private volatile ChunkInfo[] chunks = new ChunkInfo[0];
+    private final Map<Long, FileChannel> readChannels = new HashMap<>();
+    private FileChannel indexChannel;
+    private long indexEntries;
+
+    // Bloque abierto (solo el escritor lo modifica; las consultas lo leen con el candado)
+    private TimeSeriesChunk open = new TimeSeriesChunk();
+    private long openSinceMillis;
+    private FileChannel writeChannel;
+    private long writePartition = Long.MIN_VALUE;
+    private final Map<Long, Long> partitionEnds = new HashMap<>();
+
+    // Constructor del TimeSeriesStore: abre (o crea) el almacén para escribir
+    public TimeSeriesStore(File directory, int chunkPoints, long sealIntervalMs) throws IOException {
+        this(directory, chunkPoints, sealIntervalMs, false);
+    }
+
+    private TimeSeriesStore(File directory, int chunkPoints, long sealIntervalMs, boolean readOnly)
+            throws IOException {
+        this.directory = directory;
+        this.chunkPoints = Math.max(1, chunkPoints);
+        this.sealIntervalMs = sealIntervalMs;
+        this.readOnly = readOnly;
+        if (!readOnly) {
+            if (!directory.exists() && !directory.mkdirs()) {
+                throw new IOException("Could not create series directory " + directory);
+            }
+            indexChannel = FileChannel.open(new File(directory, INDEX_FILE).toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+        refresh();
+        if (!readOnly) {
+            // Descartar la entrada incompleta o sin datos que dejó una caída
+            indexChannel.truncate(indexEntries * ENTRY_SIZE);
+            for (ChunkInfo chunk : chunks) {
+                partitionEnds.merge(chunk.partition, chunk.offset + chunk.length, Math::max);
+            }
+        }
+    }
+
+    // Método para abrir un almacén que escribe otro proceso; refresh() carga los bloques nuevos
+    public static TimeSeriesStore openReadOnly(File directory) throws IOException {
+        return new TimeSeriesStore(directory, 1, 0, true);
+    }
+
+    // Método para agregar una medida al bloque abierto
+    public synchronized void append(long epochMillis, double measurement) throws IOException {
+        if (open.getCount() == 0) {
+            openSinceMillis = System.currentTimeMillis();
+        }
+        open.add(epochMillis, measurement);
+        if (open.getCount() >= chunkPoints) {
+            seal();
+        }
+    }
+
+    // Método para sellar el bloque abierto si lleva más de sealIntervalMs en memoria
+    public synchronized void maybeSeal() throws IOException {
+        if (open.getCount() > 0 && System.currentTimeMillis() - openSinceMillis >= sealIntervalMs) {
+            seal();
+        }
+    }
+
+    // Método para agregar las medidas del log que aún no están en el almacén (las
+    // del bloque abierto que se perdió en una caída). Las medidas llegan al log y
+    // al almacén en el mismo orden, así que basta con saltar las que ya tiene.
+    public void catchUp(MeasurementLog measurementLog) throws IOException {
+        long stored = getPointCount();
+        long logged = measurementLog.size();
+        if (stored > logged) {
+            System.out.println("Series " + directory + " has " + (stored - logged) + " measurements more than the log");
+            return;
+        }
+        if (stored == logged) {
+            return;
+        }
+        IOException[] failure = new IOException[1];
+        measurementLog.replaySince(stored, (sensorType, measurement, epochMillis) -> {
+            try {
+                if (failure[0] == null) {
+                    append(epochMillis, measurement);
+                }
+            } catch (IOException e) {
+                failure[0] = e;
+            }
+        });
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+        seal();
+        System.out.println("Series " + directory + " caught up with " + (logged - stored) + " measurements");
+    }
+
+    // Medidas del almacén, incluidas las del bloque abierto
+    public synchronized long getPointCount() {
+        long total = open.getCount();
+        for (ChunkInfo chunk : chunks) {
+            total += chunk.summary.getTotalCount();
+        }
+        return total;
+    }
+
+    // Resumen de todo el almacén: INFO del servicio de consultas
+    public synchronized String describe() {
+        TimeSeriesSummary total = new TimeSeriesSummary();
+        long bytes = 0;
+        for (ChunkInfo chunk : chunks) {
+            total.merge(chunk.summary);
+            bytes += chunk.length;
+        }
+        total.merge(open.getSummary());
+        return chunks.length + "#" + total.getTotalCount() + "#" + bytes + "#"
+                + (total.isEmpty() ? 0 : total.getMinTime()) + "#" + (total.isEmpty() ? 0 : total.getMaxTime());
+    }
+
+    // Método para agregar las medidas con timestamp en [from, to) a un resumen
+    public QueryCost aggregate(long from, long to, TimeSeriesSummary result) throws IOException {
+        QueryCost cost = new QueryCost();
+        View view = view(from, to);
+        ChunkInfo[] current = view.chunks;
+        for (int i = firstCandidate(current, from); i < current.length; i++) {
+            TimeSeriesSummary summary = current[i].summary;
+            if (summary.getMinTime() >= to || summary.getMaxTime() < from) {
+                continue;
+            }
+            if (summary.getMinTime() >= from && summary.getMaxTime() < to) {
+                result.merge(summary);
+                cost.chunksSummarized++;
+            } else {
+                TimeSeriesChunk.decode(read(current[i]), (epochMillis, measurement) -> {
+                    if (epochMillis >= from && epochMillis < to) {
+                        result.add(epochMillis, measurement);
+                    }
+                });
+                cost.chunksDecoded++;
+            }
+        }
+        decodeOpen(view, from, to, result::add);
+        return cost;
+    }
+
+    // Método para agregar las medidas de [from, to) en intervalos de stepMs
+    public QueryCost buckets(long from, long to, long stepMs, TimeSeriesSummary[] result) throws IOException {
+        QueryCost cost = new QueryCost();
+        for (int b = 0; b < result.length; b++) {
+            result[b] = new TimeSeriesSummary();
+        }
+        TimeSeriesChunk.PointConsumer bucketer = (epochMillis, measurement) -> {
+            if (epochMillis >= from && epochMillis < to) {
+                result[(int) ((epochMillis - from) / stepMs)].add(epochMillis, measurement);
+            }
+        };
+        View view = view(from, to);
+        ChunkInfo[] current = view.chunks;
+        for (int i = firstCandidate(current, from); i < current.length; i++) {
+            TimeSeriesSummary summary = current[i].summary;
+            if (summary.getMinTime() >= to || summary.getMaxTime() < from) {
+                continue;
+            }
+            long firstBucket = (summary.getMinTime() - from) / stepMs;
+            if (summary.getMinTime() >= from && summary.getMaxTime() < to
+                    && firstBucket == (summary.getMaxTime() - from) / stepMs) {
+                result[(int) firstBucket].merge(summary);
+                cost.chunksSummarized++;
+            } else {
+                TimeSeriesChunk.decode(read(current[i]), bucketer);
+                cost.chunksDecoded++;
+            }
+        }
+        decodeOpen(view, from, to, bucketer);
+        return cost;
+    }
+
+    // Método para recorrer las medidas de [from, to), en el orden en que llegaron
+    public QueryCost points(long from, long to, TimeSeriesChunk.PointConsumer consumer) throws IOException {
+        QueryCost cost = new QueryCost();
+        TimeSeriesChunk.PointConsumer filter = (epochMillis, measurement) -> {
+            if (epochMillis >= from && epochMillis < to) {
+                consumer.accept(epochMillis, measurement);
+            }
+        };
+        View view = view(from, to);
+        ChunkInfo[] current = view.chunks;
+        for (int i = firstCandidate(current, from); i < current.length; i++) {
+            TimeSeriesSummary summary = current[i].summary;
+            if (summary.getMinTime() < to && summary.getMaxTime() >= from) {
+                TimeSeriesChunk.decode(read(current[i]), filter);
+                cost.chunksDecoded++;
+            }
+        }
+        decodeOpen(view, from, to, filter);
+        return cost;
+    }
+
+    // Método para cargar las entradas del índice que se agregaron desde la última
+    // vez (el almacén de solo lectura lo llama antes de cada consulta)
+    public synchronized void refresh() throws IOException {
+        File indexFile = new File(directory, INDEX_FILE);
+        long available = indexFile.length() / ENTRY_SIZE;
+        if (available <= indexEntries) {
+            return;
+        }
+        FileChannel channel = indexChannel != null ? indexChannel
+                : FileChannel.open(indexFile.toPath(), StandardOpenOption.READ);
+        try {
+            ByteBuffer buffer = ByteBuffer.allocate((int) ((available - indexEntries) * ENTRY_SIZE));
+            channel.read(buffer, indexEntries * ENTRY_SIZE);
+            buffer.flip();
+            ChunkInfo[] loaded = Arrays.copyOf(chunks, (int) available);
+            int count = chunks.length;
+            while (buffer.remaining() >= ENTRY_SIZE) {
+                ChunkInfo chunk = new ChunkInfo(buffer.getLong(), buffer.getLong(), buffer.getInt(), buffer.getInt(),
+                        new TimeSeriesSummary(buffer.getLong(), buffer.getLong(), buffer.getLong(), buffer.getLong(),
+                                buffer.getDouble(), buffer.getDouble(), buffer.getDouble()));
+                if (chunk.offset + chunk.length > partitionFile(chunk.partition).length()) {
+                    break; // Entrada sin sus datos: la escritura se interrumpió
+                }
+                chunk.maxTimeSoFar = Math.max(chunk.summary.getMaxTime(),
+                        count > 0 ? loaded[count - 1].maxTimeSoFar : Long.MIN_VALUE);
+                loaded[count++] = chunk;
+            }
+            indexEntries = count;
+            chunks = Arrays.copyOf(loaded, count);
+        } finally {
+            if (channel != indexChannel) {
+                channel.close();
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (!readOnly) {
+            seal();
+            indexChannel.close();
+            if (writeChannel != null) {
+                writeChannel.close();
+            }
+        }
+        for (FileChannel channel : readChannels.values()) {
+            channel.close();
+        }
+        readChannels.clear();
+    }
+
+    // Método para escribir el bloque abierto en su partición y agregarlo al índice
+    private synchronized void seal() throws IOException {
+        if (open.getCount() == 0) {
+            return;
+        }
+        byte[] data = open.toBytes();
+        long partition = Math.floorDiv(open.getFirstTimestamp(), PARTITION_MS) * PARTITION_MS;
+        if (partition != writePartition) {
+            if (writeChannel != null) {
+                writeChannel.close();
+            }
+            writeChannel = FileChannel.open(partitionFile(partition).toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE);
+            writePartition = partition;
+        }
+        // Lo que haya después del último bloque indexado quedó de una escritura interrumpida
+        long offset = partitionEnds.getOrDefault(partition, 0L);
+        writeChannel.write(ByteBuffer.wrap(data), offset);
+        writeChannel.force(false);
+        partitionEnds.put(partition, offset + data.length);
+
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        TimeSeriesSummary summary = open.getSummary();
+        ByteBuffer entry = ByteBuffer.allocate(ENTRY_SIZE);
+        entry.putLong(partition).putLong(offset).putInt(data.length).putInt((int) crc.getValue())
+                .putLong(summary.getMinTime()).putLong(summary.getMaxTime())
+                .putLong(summary.getCount()).putLong(summary.getInvalidCount())
+                .putDouble(summary.getCount() == 0 ? Double.POSITIVE_INFINITY : summary.getMin())
+                .putDouble(summary.getCount() == 0 ? Double.NEGATIVE_INFINITY : summary.getMax())
+                .putDouble(summary.getSum())
+                .flip();
+        indexChannel.write(entry, indexEntries * ENTRY_SIZE);
+        indexChannel.force(false);
+
+        ChunkInfo chunk = new ChunkInfo(partition, offset, data.length, (int) crc.getValue(), summary);
+        ChunkInfo[] current = chunks;
+        chunk.maxTimeSoFar = Math.max(summary.getMaxTime(),
+                current.length > 0 ? current[current.length - 1].maxTimeSoFar : Long.MIN_VALUE);
+        ChunkInfo[] sealed = Arrays.copyOf(current, current.length + 1);
+        sealed[current.length] = chunk;
+        chunks = sealed; // Publicar a las consultas
+        indexEntries++;
+        open = new TimeSeriesChunk();
+    }
+
+    // Método para tomar los bloques sellados y, si tiene medidas del rango, una copia
+    // del bloque abierto, sin que un sellado entre medio deje medidas fuera
+    private synchronized View view(long from, long to) {
+        TimeSeriesSummary summary = open.getSummary();
+        boolean overlaps = open.getCount() > 0 && summary.getMinTime() < to && summary.getMaxTime() >= from;
+        return new View(chunks, overlaps ? open.toBytes() : null);
+    }
+
+    // Método para descomprimir las medidas de [from, to) del bloque abierto
+    private static void decodeOpen(View view, long from, long to, TimeSeriesChunk.PointConsumer consumer) {
+        if (view.open == null) {
+            return;
+        }
+        TimeSeriesChunk.decode(view.open, (epochMillis, measurement) -> {
+            if (epochMillis >= from && epochMillis < to) {
+                consumer.accept(epochMillis, measurement);
+            }
+        });
+    }
+
+    // Primer bloque que puede tener medidas desde from (búsqueda binaria sobre maxTimeSoFar)
+    private static int firstCandidate(ChunkInfo[] current, long from) {
+        int low = 0;
+        int high = current.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (current[middle].maxTimeSoFar < from) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    // Método para leer un bloque sellado y verificar su CRC
+    private byte[] read(ChunkInfo chunk) throws IOException {
+        FileChannel channel;
+        synchronized (readChannels) {
+            channel = readChannels.get(chunk.partition);
+            if (channel == null) {
+                channel = FileChannel.open(partitionFile(chunk.partition).toPath(), StandardOpenOption.READ);
+                readChannels.put(chunk.partition, channel);
+            }
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(chunk.length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, chunk.offset + buffer.position()) < 0) {
+                throw new IOException("Series chunk at " + chunk.offset + " of partition " + chunk.partition
+                        + " is truncated");
+            }
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array());
+        if ((int) crc.getValue() != chunk.crc) {
+            throw new IOException("Series chunk at " + chunk.offset + " of partition " + chunk.partition
+                    + " is corrupt");
+        }
+        return buffer.array();
+    }
+
+    private File partitionFile(long partition) {
+        return new File(directory, String.format("%015d", partition) + SUFFIX);
+    }
+}
@@ -0,0 +1,107 @@
+package com.javeriana;
+
+// Definición de la clase TimeSeriesSummary
+// Resumen de un conjunto de medidas: rango de tiempo, conteo, mínimo, máximo y
+// suma. El índice de la serie guarda uno por bloque, así que una consulta de
+// rango + agregado combina los resúmenes de los bloques que caen completos en el
+// rango y solo descomprime los de los bordes. Como en WindowStats, las medidas
+// no válidas (-1) se cuentan aparte.
+public class TimeSeriesSummary {
+
+    private long minTime = Long.MAX_VALUE;
+    private long maxTime = Long.MIN_VALUE;
+    private long count;
+    private long invalidCount;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+    private double sum;
+
+    // Constructor de un resumen vacío
+    public TimeSeriesSummary() {
+    }
+
+    // Constructor con los valores leídos del índice
+    TimeSeriesSummary(long minTime, long maxTime, long count, long invalidCount, double min, double max,
+            double sum) {
+        this.minTime = minTime;
+        this.maxTime = maxTime;
+        this.count = count;
+        this.invalidCount = invalidCount;
+        this.min = min;
+        this.max = max;
+        this.sum = sum;
+    }
+
+    // Método para agregar una medida
+    public void add(long epochMillis, double measurement) {
+        minTime = Math.min(minTime, epochMillis);
+        maxTime = Math.max(maxTime, epochMillis);
+        if (measurement == MeasurementGenerator.INVALID_VALUE) {
+            invalidCount++;
+            return;
+        }
+        count++;
+        sum += measurement;
+        min = Math.min(min, measurement);
+        max = Math.max(max, measurement);
+    }
+
+    // Método para sumar otro resumen
+    public void merge(TimeSeriesSummary other) {
+        minTime = Math.min(minTime, other.minTime);
+        maxTime = Math.max(maxTime, other.maxTime);
+        count += other.count;
+        invalidCount += other.invalidCount;
+        sum += other.sum;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    // Indica si el resumen no tiene ninguna medida (válida o no)
+    public boolean isEmpty() {
+        return count == 0 && invalidCount == 0;
+    }
+
+    // Medidas válidas y no válidas
+    public long getTotalCount() {
+        return count + invalidCount;
+    }
+
+    public long getMinTime() {
+        return minTime;
+    }
+
+    public long getMaxTime() {
+        return maxTime;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getInvalidCount() {
+        return invalidCount;
+    }
+
+    public double getMin() {
+        return count == 0 ? Double.NaN : min;
+    }
+
+    public double getMax() {
+        return count == 0 ? Double.NaN : max;
+    }
+
+    public double getSum() {
+        return sum;
+    }
+
+    public double getMean() {
+        return count == 0 ? Double.NaN : sum / count;
+    }
+
+    // Formato de las respuestas del servicio de consultas: conteo#noValidas#min#max#media
+    @Override
+    public String toString() {
+        return count + "#" + invalidCount + "#" + getMin() + "#" + getMax() + "#" + getMean();
+    }
+}
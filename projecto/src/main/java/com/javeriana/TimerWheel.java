@@ -0,0 +1,105 @@
+package com.javeriana;
+
+// Definición de la clase TimerWheel
+// Rueda de temporizadores (hashed timing wheel): el tiempo se divide en ticks de
+// tickMs y cada plazo se guarda en la casilla de su tick. Programar un plazo es
+// O(1) y en cada avance solo se revisan las casillas de los ticks transcurridos.
+// Los plazos más lejanos que una vuelta completa esperan en su casilla hasta que
+// llega su vuelta.
+//
+// No hay cancelación: cada plazo lleva un token y quien lo recibe al vencer lo
+// compara con su estado actual (por ejemplo, el número de la última sonda) para
+// descartar los plazos obsoletos. No es segura para hilos.
+public class TimerWheel {
+
+    // Receptor de los plazos vencidos
+    public interface Expiry {
+        void expired(int key, long token, long deadlineMillis);
+    }
+
+    private static final class Timeout {
+        long deadline;
+        int key;
+        long token;
+        Timeout next;
+    }
+
+    private final long tickMs;
+    private final Timeout[] buckets;
+    private final int mask;
+    private long currentTick;
+    private Timeout free; // Plazos vencidos para reutilizar
+    private int size;
+
+    // Constructor del TimerWheel. El número de casillas se redondea a potencia de dos.
+    public TimerWheel(long tickMs, int wheelSize, long nowMillis) {
+        int size = Integer.highestOneBit(Math.max(2, wheelSize - 1)) << 1;
+        this.tickMs = tickMs;
+        this.buckets = new Timeout[size];
+        this.mask = size - 1;
+        this.currentTick = nowMillis / tickMs;
+    }
+
+    // Método para programar un plazo
+    public void schedule(long deadlineMillis, int key, long token) {
+        Timeout timeout = free;
+        if (timeout != null) {
+            free = timeout.next;
+        } else {
+            timeout = new Timeout();
+        }
+        timeout.deadline = deadlineMillis;
+        timeout.key = key;
+        timeout.token = token;
+        // Un plazo ya vencido se revisa en el siguiente avance
+        long tick = Math.max(currentTick, ceilDiv(deadlineMillis, tickMs));
+        int index = (int) (tick & mask);
+        timeout.next = buckets[index];
+        buckets[index] = timeout;
+        size++;
+    }
+
+    // Método para avanzar hasta nowMillis y entregar los plazos vencidos
+    public void advance(long nowMillis, Expiry expiry) {
+        long targetTick = nowMillis / tickMs;
+        // Después de una pausa larga basta con recorrer una vuelta
+        long fromTick = Math.max(currentTick, targetTick - mask);
+        // Lo que se programe desde los receptores cae desde el tick final en adelante
+        currentTick = targetTick;
+        for (long tick = fromTick; tick <= targetTick; tick++) {
+            // Se separa la lista de la casilla antes de entregar: si un receptor programa
+            // en esta misma casilla, su plazo queda en la casilla nueva y no se pierde
+            int index = (int) (tick & mask);
+            Timeout timeout = buckets[index];
+            buckets[index] = null;
+            while (timeout != null) {
+                Timeout next = timeout.next;
+                if (timeout.deadline <= nowMillis) {
+                    size--;
+                    expiry.expired(timeout.key, timeout.token, timeout.deadline);
+                    timeout.next = free;
+                    free = timeout;
+                } else {
+                    // Aún no vence (le falta alguna vuelta): vuelve a la casilla
+                    timeout.next = buckets[index];
+                    buckets[index] = timeout;
+                }
+                timeout = next;
+            }
+        }
+    }
+
+    // Milisegundos hasta el siguiente tick (para el tiempo de espera del poll)
+    public long millisToNextTick(long nowMillis) {
+        return tickMs - nowMillis % tickMs;
+    }
+
+    // Plazos pendientes
+    public int size() {
+        return size;
+    }
+
+    private static long ceilDiv(long value, long divisor) {
+        return -Math.floorDiv(-value, divisor);
+    }
+}
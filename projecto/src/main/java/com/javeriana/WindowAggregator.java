@@ -0,0 +1,225 @@
+package com.javeriana;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.function.IntFunction;
+
+// Definición de la clase WindowAggregator
+// Agregación incremental por ventanas de tiempo, para el tipo de sensor completo
+// y para cada sensor. El tiempo se divide en paneles de slideMs; cada medida se
+// suma al panel de su timestamp (tiempo de evento). Cuando el reloj pasa el fin de
+// un panel, éste se cierra y se emiten dos agregados:
+//   - tumbling: solo el panel cerrado
+//   - sliding: los últimos windowMs / slideMs paneles combinados
+// Las medidas de un panel ya cerrado se descartan y se cuentan como tardías. Los
+// sensores sin medidas durante toda una ventana se olvidan.
+//
+// No es seguro para hilos: lo usa únicamente la etapa de agregación del Monitor.
+public class WindowAggregator {
+
+    // Receptor de los agregados de cada panel cerrado
+    public interface Listener {
+        // sensorId es ALL_SENSORS para el agregado del tipo completo
+        void onWindow(int sensorId, boolean sliding, long startMillis, long endMillis, WindowStats stats);
+    }
+
+    // Identificador del agregado de todos los sensores del tipo
+    public static final int ALL_SENSORS = Integer.MIN_VALUE;
+
+    // Estado de una clave: un arreglo circular de paneles
+    private static final class KeyState {
+        final int sensorId;
+        final WindowStats[] panes;
+        final long[] paneIds;
+        long lastPane;
+
+        KeyState(int sensorId, int paneCount) {
+            this.sensorId = sensorId;
+            this.panes = new WindowStats[paneCount];
+            this.paneIds = new long[paneCount];
+            for (int i = 0; i < paneCount; i++) {
+                panes[i] = new WindowStats();
+                paneIds[i] = Long.MIN_VALUE;
+            }
+        }
+
+        void add(long pane, double measurement) {
+            int index = (int) Math.floorMod(pane, (long) panes.length);
+            if (paneIds[index] != pane) {
+                panes[index].clear();
+                paneIds[index] = pane;
+            }
+            panes[index].add(measurement);
+            lastPane = Math.max(lastPane, pane);
+        }
+
+        WindowStats pane(long pane) {
+            int index = (int) Math.floorMod(pane, (long) panes.length);
+            return paneIds[index] == pane ? panes[index] : null;
+        }
+
+        void writeTo(DataOutput out) throws IOException {
+            out.writeInt(sensorId);
+            out.writeLong(lastPane);
+            for (int i = 0; i < panes.length; i++) {
+                out.writeLong(paneIds[i]);
+                if (paneIds[i] != Long.MIN_VALUE) {
+                    panes[i].writeTo(out);
+                }
+            }
+        }
+
+        void readFrom(DataInput in) throws IOException {
+            lastPane = in.readLong();
+            for (int i = 0; i < panes.length; i++) {
+                paneIds[i] = in.readLong();
+                panes[i].clear();
+                if (paneIds[i] != Long.MIN_VALUE) {
+                    panes[i].readFrom(in);
+                }
+            }
+        }
+    }
+
+    private final long slideMs;
+    private final int paneCount;
+    private final boolean perSensor;
+    private final Listener listener;
+
+    private final KeyState all;
+    private final IntObjectMap<KeyState> sensors = new IntObjectMap<>();
+    private final IntFunction<KeyState> newKeyState;
+
+    // Último panel cerrado; las medidas anteriores a él ya no se aceptan
+    private long closedPane;
+    private long lateCount;
+    private final WindowStats scratch = new WindowStats();
+
+    // Constructor del WindowAggregator
+    public WindowAggregator(long windowMs, long slideMs, boolean perSensor, long nowMillis, Listener listener) {
+        if (slideMs <= 0 || windowMs < slideMs) {
+            throw new IllegalArgumentException("Window must be at least one slide long");
+        }
+        this.slideMs = slideMs;
+        this.paneCount = (int) ((windowMs + slideMs - 1) / slideMs);
+        this.perSensor = perSensor;
+        this.listener = listener;
+        this.all = new KeyState(ALL_SENSORS, paneCount);
+        this.newKeyState = sensorId -> new KeyState(sensorId, paneCount);
+        this.closedPane = Math.floorDiv(nowMillis, slideMs) - 1;
+    }
+
+    // Método para agregar una medida. Una medida sin id de sensor conocido (del log
+    // de una versión anterior) solo cuenta en el agregado del tipo.
+    public void add(int sensorId, double measurement, long epochMillis) {
+        long pane = Math.floorDiv(epochMillis, slideMs);
+        if (pane <= closedPane) {
+            lateCount++;
+            return;
+        }
+        all.add(pane, measurement);
+        if (perSensor && sensorId != MeasurementLog.UNKNOWN_SENSOR) {
+            sensors.computeIfAbsent(sensorId, newKeyState).add(pane, measurement);
+        }
+    }
+
+    // Método para cerrar los paneles que terminaron antes de nowMillis
+    public void advance(long nowMillis) {
+        long lastComplete = Math.floorDiv(nowMillis, slideMs) - 1;
+        if (lastComplete - closedPane > paneCount) {
+            // Saltar los paneles sin datos posibles (por ejemplo, tras una pausa larga)
+            closedPane = lastComplete - paneCount;
+        }
+        while (closedPane < lastComplete) {
+            closedPane++;
+            close(closedPane);
+        }
+    }
+
+    // Método para guardar los paneles abiertos (puntos de control del monitor)
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeLong(slideMs);
+        out.writeInt(paneCount);
+        out.writeLong(closedPane);
+        all.writeTo(out);
+        out.writeInt(perSensor ? sensors.size() : 0);
+        if (perSensor) {
+            IOException[] error = { null };
+            sensors.forEachValue(state -> {
+                try {
+                    state.writeTo(out);
+                } catch (IOException e) {
+                    error[0] = e;
+                }
+            });
+            if (error[0] != null) {
+                throw error[0];
+            }
+        }
+    }
+
+    // Método para reemplazar los paneles por unos guardados con writeTo. Devuelve
+    // false (y no cambia nada) si se guardaron con otra ventana o paso.
+    public boolean readFrom(DataInput in) throws IOException {
+        if (in.readLong() != slideMs || in.readInt() != paneCount) {
+            return false;
+        }
+        closedPane = in.readLong();
+        in.readInt(); // Id de ALL_SENSORS
+        all.readFrom(in);
+        int sensorCount = in.readInt();
+        for (int i = 0; i < sensorCount; i++) {
+            KeyState state = newKeyState.apply(in.readInt());
+            state.readFrom(in);
+            if (perSensor) {
+                sensors.computeIfAbsent(state.sensorId, id -> state);
+            }
+        }
+        return true;
+    }
+
+    // Medidas descartadas por llegar después de cerrado su panel
+    public long getLateCount() {
+        return lateCount;
+    }
+
+    // Número de sensores con estado activo
+    public int getSensorCount() {
+        return sensors.size();
+    }
+
+    private void close(long pane) {
+        emit(all, pane);
+        if (!perSensor) {
+            return;
+        }
+        boolean[] evict = { false };
+        sensors.forEachValue(state -> {
+            emit(state, pane);
+            evict[0] |= state.lastPane <= pane - paneCount;
+        });
+        if (evict[0]) {
+            sensors.removeIf(state -> state.lastPane <= pane - paneCount);
+        }
+    }
+
+    private void emit(KeyState state, long pane) {
+        long end = (pane + 1) * slideMs;
+        WindowStats tumbling = state.pane(pane);
+        if (tumbling != null) {
+            listener.onWindow(state.sensorId, false, pane * slideMs, end, tumbling);
+        }
+        if (state.lastPane <= pane - paneCount) {
+            return; // Ventana deslizante vacía
+        }
+        scratch.clear();
+        for (long p = pane - paneCount + 1; p <= pane; p++) {
+            WindowStats stats = state.pane(p);
+            if (stats != null) {
+                scratch.merge(stats);
+            }
+        }
+        listener.onWindow(state.sensorId, true, end - paneCount * slideMs, end, scratch);
+    }
+}
@@ -0,0 +1,103 @@
+package com.javeriana;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+// Definición de la clase WindowStats
+// Estadísticas acumuladas de una ventana: conteo, mínimo, máximo, suma y un
+// resumen de cuantiles. Todas se actualizan en O(1) por medida y se pueden
+// combinar, de modo que una ventana deslizante es la suma de sus ventanas cortas.
+// Las medidas no válidas (-1) solo se cuentan aparte, sin afectar las estadísticas.
+public class WindowStats {
+
+    private long count;
+    private long invalidCount;
+    private double sum;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+    private final QuantileSketch sketch = new QuantileSketch();
+
+    // Método para agregar una medida
+    public void add(double measurement) {
+        if (measurement == MeasurementGenerator.INVALID_VALUE) {
+            invalidCount++;
+            return;
+        }
+        count++;
+        sum += measurement;
+        min = Math.min(min, measurement);
+        max = Math.max(max, measurement);
+        sketch.add(measurement);
+    }
+
+    // Método para sumar las estadísticas de otra ventana
+    public void merge(WindowStats other) {
+        count += other.count;
+        invalidCount += other.invalidCount;
+        sum += other.sum;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+        sketch.merge(other.sketch);
+    }
+
+    // Método para vaciar la ventana y reutilizarla
+    public void clear() {
+        count = 0;
+        invalidCount = 0;
+        sum = 0;
+        min = Double.POSITIVE_INFINITY;
+        max = Double.NEGATIVE_INFINITY;
+        sketch.clear();
+    }
+
+    // Método para guardar las estadísticas (puntos de control del monitor)
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeLong(count);
+        out.writeLong(invalidCount);
+        out.writeDouble(sum);
+        out.writeDouble(min);
+        out.writeDouble(max);
+        sketch.writeTo(out);
+    }
+
+    // Método para reemplazar las estadísticas por unas guardadas con writeTo
+    public void readFrom(DataInput in) throws IOException {
+        count = in.readLong();
+        invalidCount = in.readLong();
+        sum = in.readDouble();
+        min = in.readDouble();
+        max = in.readDouble();
+        sketch.readFrom(in);
+    }
+
+    // Indica si la ventana no recibió ninguna medida (válida o no)
+    public boolean isEmpty() {
+        return count == 0 && invalidCount == 0;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getInvalidCount() {
+        return invalidCount;
+    }
+
+    public double getMin() {
+        return count == 0 ? Double.NaN : min;
+    }
+
+    public double getMax() {
+        return count == 0 ? Double.NaN : max;
+    }
+
+    public double getMean() {
+        return count == 0 ? Double.NaN : sum / count;
+    }
+
+    // Método para estimar el valor en un cuantil (0-1)
+    public double getQuantile(double quantile) {
+        return sketch.getQuantile(quantile);
+    }
+}